@@ -31,6 +31,14 @@ import java.util.Objects;
  *       time (note that this does not have an influence on the number of ticks counted);</li>
  *     <li><b>const caching</b> (boolean): when {@code true}, boxed numeric constants are stored
  *       as static fields rather than being instantiated (and boxed) at execution time;</li>
+ *     <li><b>type feedback</b> (boolean): when {@code true}, arithmetic and comparison
+ *       operations whose operand types are not known at compile time are emitted as
+ *       {@code invokedynamic} call sites that specialise themselves to the operand types
+ *       observed at execution time;</li>
+ *     <li><b>inlining</b> (boolean): when {@code true}, calls to small local functions
+ *       are replaced by the code of the called function. Since the inlined code accesses
+ *       the caller's variables directly, upvalues rebound using the debug library
+ *       (e.g., by {@code debug.upvaluejoin}) are not observed by the inlined code;</li>
  *     <li><b>node size limit</b> (int): when positive, long functions are split up into smaller
  *       Java methods (each containing at most the specified number of IR nodes); otherwise,
  *       a single method containing the entire function code is generated. Java class files
@@ -87,6 +95,16 @@ public final class CompilerSettings {
 	 */
 	public static final boolean DEFAULT_BYTE_STRING_MODE = true;
 
+	/**
+	 * The default type feedback mode.
+	 */
+	public static final boolean DEFAULT_TYPE_FEEDBACK_MODE = false;
+
+	/**
+	 * The default inlining mode.
+	 */
+	public static final boolean DEFAULT_INLINING_MODE = false;
+
 	/**
 	 * The default method size limit.
 	 */
@@ -96,6 +114,8 @@ public final class CompilerSettings {
 	private final boolean constFolding;
 	private final boolean constCaching;
 	private final boolean byteStrings;
+	private final boolean typeFeedback;
+	private final boolean inlining;
 	private final int nodeSizeLimit;
 
 	CompilerSettings(
@@ -103,12 +123,16 @@ public final class CompilerSettings {
 			boolean constFolding,
 			boolean constCaching,
 			boolean byteStrings,
+			boolean typeFeedback,
+			boolean inlining,
 			int nodeSizeLimit) {
 
 		this.cpuAccountingMode = Objects.requireNonNull(cpuAccountingMode);
 		this.constFolding = constFolding;
 		this.constCaching = constCaching;
 		this.byteStrings = byteStrings;
+		this.typeFeedback = typeFeedback;
+		this.inlining = inlining;
 		this.nodeSizeLimit = nodeSizeLimit;
 	}
 
@@ -123,6 +147,8 @@ public final class CompilerSettings {
 				&& this.constFolding == that.constFolding
 				&& this.constCaching == that.constCaching
 				&& this.byteStrings == that.byteStrings
+				&& this.typeFeedback == that.typeFeedback
+				&& this.inlining == that.inlining
 				&& this.nodeSizeLimit == that.nodeSizeLimit;
 	}
 
@@ -132,6 +158,8 @@ public final class CompilerSettings {
 		result = 31 * result + (constFolding ? 1 : 0);
 		result = 31 * result + (constCaching ? 1 : 0);
 		result = 31 * result + (byteStrings ? 1 : 0);
+		result = 31 * result + (typeFeedback ? 1 : 0);
+		result = 31 * result + (inlining ? 1 : 0);
 		result = 31 * result + nodeSizeLimit;
 		return result;
 	}
@@ -146,6 +174,8 @@ public final class CompilerSettings {
 	 * @param constFolding  const folding mode
 	 * @param constCaching  const caching mode
 	 * @param byteStrings  byte string mode
+	 * @param typeFeedback  type feedback mode
+	 * @param inlining  inlining mode
 	 * @param nodeSizeLimit  node size limit
 	 * @return  the corresponding compiler settings
 	 *
@@ -156,10 +186,67 @@ public final class CompilerSettings {
 			boolean constFolding,
 			boolean constCaching,
 			boolean byteStrings,
+			boolean typeFeedback,
+			boolean inlining,
 			int nodeSizeLimit) {
 
 		return new CompilerSettings(
-				cpuAccountingMode, constFolding, constCaching, byteStrings, nodeSizeLimit);
+				cpuAccountingMode, constFolding, constCaching, byteStrings, typeFeedback, inlining, nodeSizeLimit);
+	}
+
+	/**
+	 * Returns the compiler settings with the given parameters and the default inlining mode.
+	 *
+	 * <p>When {@code nodeSizeLimit} is non-positive, no chunking of the body method
+	 * will be performed.</p>
+	 *
+	 * @param cpuAccountingMode  CPU accounting mode, must not be {@code null}
+	 * @param constFolding  const folding mode
+	 * @param constCaching  const caching mode
+	 * @param byteStrings  byte string mode
+	 * @param typeFeedback  type feedback mode
+	 * @param nodeSizeLimit  node size limit
+	 * @return  the corresponding compiler settings
+	 *
+	 * @throws NullPointerException  if {@code cpuAccountingMode} is {@code null}
+	 */
+	public static CompilerSettings of(
+			CPUAccountingMode cpuAccountingMode,
+			boolean constFolding,
+			boolean constCaching,
+			boolean byteStrings,
+			boolean typeFeedback,
+			int nodeSizeLimit) {
+
+		return of(cpuAccountingMode, constFolding, constCaching, byteStrings, typeFeedback,
+				DEFAULT_INLINING_MODE, nodeSizeLimit);
+	}
+
+	/**
+	 * Returns the compiler settings with the given parameters and the default type
+	 * feedback and inlining modes.
+	 *
+	 * <p>When {@code nodeSizeLimit} is non-positive, no chunking of the body method
+	 * will be performed.</p>
+	 *
+	 * @param cpuAccountingMode  CPU accounting mode, must not be {@code null}
+	 * @param constFolding  const folding mode
+	 * @param constCaching  const caching mode
+	 * @param byteStrings  byte string mode
+	 * @param nodeSizeLimit  node size limit
+	 * @return  the corresponding compiler settings
+	 *
+	 * @throws NullPointerException  if {@code cpuAccountingMode} is {@code null}
+	 */
+	public static CompilerSettings of(
+			CPUAccountingMode cpuAccountingMode,
+			boolean constFolding,
+			boolean constCaching,
+			boolean byteStrings,
+			int nodeSizeLimit) {
+
+		return of(cpuAccountingMode, constFolding, constCaching, byteStrings,
+				DEFAULT_TYPE_FEEDBACK_MODE, nodeSizeLimit);
 	}
 
 	/**
@@ -173,6 +260,8 @@ public final class CompilerSettings {
 				DEFAULT_CONST_FOLDING_MODE,
 				DEFAULT_CONST_CACHING_MODE,
 				DEFAULT_BYTE_STRING_MODE,
+				DEFAULT_TYPE_FEEDBACK_MODE,
+				DEFAULT_INLINING_MODE,
 				DEFAULT_NODE_SIZE_LIMIT);
 	}
 
@@ -216,6 +305,24 @@ public final class CompilerSettings {
 		return byteStrings;
 	}
 
+	/**
+	 * Returns the type feedback mode.
+	 *
+	 * @return  the type feedback mode
+	 */
+	public boolean typeFeedback() {
+		return typeFeedback;
+	}
+
+	/**
+	 * Returns the inlining mode.
+	 *
+	 * @return  the inlining mode
+	 */
+	public boolean inlining() {
+		return inlining;
+	}
+
 	/**
 	 * Returns the node size limit.
 	 *
@@ -237,7 +344,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withCPUAccountingMode(CPUAccountingMode mode) {
 		return mode != this.cpuAccountingMode
-				? new CompilerSettings(mode, constFolding, constCaching, byteStrings, nodeSizeLimit)
+				? new CompilerSettings(mode, constFolding, constCaching, byteStrings, typeFeedback, inlining, nodeSizeLimit)
 				: this;
 	}
 
@@ -251,7 +358,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withConstFolding(boolean mode) {
 		return mode != this.constFolding
-				? new CompilerSettings(cpuAccountingMode, mode, constCaching, byteStrings, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, mode, constCaching, byteStrings, typeFeedback, inlining, nodeSizeLimit)
 				: this;
 	}
 
@@ -265,7 +372,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withConstCaching(boolean mode) {
 		return mode != this.constCaching
-				? new CompilerSettings(cpuAccountingMode, constFolding, mode, byteStrings, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, mode, byteStrings, typeFeedback, inlining, nodeSizeLimit)
 				: this;
 	}
 
@@ -278,7 +385,35 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withByteStrings(boolean mode) {
 		return mode != this.byteStrings
-				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, mode, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, mode, typeFeedback, inlining, nodeSizeLimit)
+				: this;
+	}
+
+	/**
+	 * Returns compiler settings derived from this compiler settings by updating
+	 * the type feedback mode to {@code mode}.
+	 *
+	 * @param mode  new type feedback mode
+	 * @return  settings derived from {@code this} by updating the type feedback mode
+	 *          to {@code mode}
+	 */
+	public CompilerSettings withTypeFeedback(boolean mode) {
+		return mode != this.typeFeedback
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, byteStrings, mode, inlining, nodeSizeLimit)
+				: this;
+	}
+
+	/**
+	 * Returns compiler settings derived from this compiler settings by updating
+	 * the inlining mode to {@code mode}.
+	 *
+	 * @param mode  new inlining mode
+	 * @return  settings derived from {@code this} by updating the inlining mode
+	 *          to {@code mode}
+	 */
+	public CompilerSettings withInlining(boolean mode) {
+		return mode != this.inlining
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, byteStrings, typeFeedback, mode, nodeSizeLimit)
 				: this;
 	}
 
@@ -292,7 +427,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withNodeSizeLimit(int limit) {
 		return limit != this.nodeSizeLimit
-				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, byteStrings, limit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, byteStrings, typeFeedback, inlining, limit)
 				: this;
 	}
 
@@ -354,11 +354,43 @@ class IRTranslatorTransformer extends Transformer {
 		insns.add(new BinOp(bop, dest, swap ? r : l, swap ? l : r));
 	}
 
+	private void concat(BinaryOperationExpr e) {
+		// the concatenation operator is right-associative: a .. b .. c is a .. (b .. c)
+		List<Expr> operands = new ArrayList<>();
+		Expr rest = e;
+		while (rest instanceof BinaryOperationExpr
+				&& ((BinaryOperationExpr) rest).op() == Operator.Binary.CONCAT) {
+			BinaryOperationExpr be = (BinaryOperationExpr) rest;
+			operands.add(be.left());
+			rest = be.right();
+		}
+		operands.add(rest);
+
+		if (operands.size() == 2) {
+			eagerBinOp(e.op(), e.left(), e.right());
+			return;
+		}
+
+		List<Val> args = new ArrayList<>();
+		for (Expr o : operands) {
+			o.accept(this);
+			args.add(popVal());
+		}
+
+		Val dest = provider.newVal();
+		vals.push(dest);
+
+		// TODO: line
+
+		insns.add(new Concat(dest, Collections.unmodifiableList(args)));
+	}
+
 	@Override
 	public Expr transform(BinaryOperationExpr e) {
 		switch (e.op()) {
 			case AND: and(e.left(), e.right()); break;
 			case OR: or(e.left(), e.right()); break;
+			case CONCAT: concat(e); break;
 			default: eagerBinOp(e.op(), e.left(), e.right()); break;
 		}
 		return e;
@@ -34,6 +34,7 @@ import net.sandius.rembulan.compiler.tf.CPUAccounter;
 import net.sandius.rembulan.compiler.tf.CodeSimplifier;
 import net.sandius.rembulan.compiler.tf.ConstFolder;
 import net.sandius.rembulan.compiler.tf.DeadCodePruner;
+import net.sandius.rembulan.compiler.tf.FunctionInliner;
 import net.sandius.rembulan.parser.ParseException;
 import net.sandius.rembulan.parser.Parser;
 import net.sandius.rembulan.parser.TokenMgrError;
@@ -143,12 +144,15 @@ public class LuaCompiler {
 
 	}
 
-	ProcessedFunc processFunction(IRFunc fn) {
+	ProcessedFunc processFunction(IRFunc fn, Module module) {
 		fn = CPUAccounter.insertCPUAccounting(fn);
+		if (settings.inlining()) {
+			fn = FunctionInliner.inlineLocalFunctions(fn, module);
+		}
 		fn = optimise(fn);
 
-		SlotAllocInfo slots = SlotAllocator.allocateSlots(fn);
 		TypeInfo types = Typer.analyseTypes(fn);
+		SlotAllocInfo slots = SlotAllocator.allocateSlots(fn, types);
 		DependencyInfo deps = DependencyAnalyser.analyse(fn);
 
 		return new ProcessedFunc(fn, slots, types, deps);
@@ -158,7 +162,7 @@ public class LuaCompiler {
 		Map<FunctionId, ProcessedFunc> pfs = new HashMap<>();
 
 		for (IRFunc fn : sortTopologically(m)) {
-			ProcessedFunc pf = processFunction(fn);
+			ProcessedFunc pf = processFunction(fn, m);
 			pfs.put(fn.id(), pf);
 		}
 
@@ -19,19 +19,29 @@ package net.sandius.rembulan.compiler.analysis;
 import net.sandius.rembulan.compiler.ir.AbstractVal;
 import net.sandius.rembulan.compiler.ir.Var;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
 public class SlotAllocInfo {
 
+	// what a slot may hold: any (boxed) value, or an unboxed integer or float
+	public enum SlotKind {
+		OBJECT,
+		INTEGER,
+		FLOAT
+	}
+
 	private final Map<AbstractVal, Integer> valSlots;
 	private final Map<Var, Integer> varSlots;
+	private final Map<Integer, SlotKind> slotKinds;
 	private final int numSlots;
 
-	public SlotAllocInfo(Map<AbstractVal, Integer> valSlots, Map<Var, Integer> varSlots) {
+	public SlotAllocInfo(Map<AbstractVal, Integer> valSlots, Map<Var, Integer> varSlots, Map<Integer, SlotKind> slotKinds) {
 		this.valSlots = Objects.requireNonNull(valSlots);
 		this.varSlots = Objects.requireNonNull(varSlots);
+		this.slotKinds = Objects.requireNonNull(slotKinds);
 
 		int n = 0;
 		for (Integer i : varSlots.values()) {
@@ -43,6 +53,10 @@ public class SlotAllocInfo {
 		this.numSlots = n + 1;
 	}
 
+	public SlotAllocInfo(Map<AbstractVal, Integer> valSlots, Map<Var, Integer> varSlots) {
+		this(valSlots, varSlots, Collections.<Integer, SlotKind>emptyMap());
+	}
+
 	public int slotOf(AbstractVal v) {
 		Integer idx = valSlots.get(Objects.requireNonNull(v));
 		if (idx != null) {
@@ -63,6 +77,11 @@ public class SlotAllocInfo {
 		}
 	}
 
+	public SlotKind slotKind(int idx) {
+		SlotKind kind = slotKinds.get(idx);
+		return kind != null ? kind : SlotKind.OBJECT;
+	}
+
 	public int numSlots() {
 		return numSlots;
 	}
@@ -17,6 +17,9 @@
 package net.sandius.rembulan.compiler.analysis;
 
 import net.sandius.rembulan.compiler.IRFunc;
+import net.sandius.rembulan.compiler.analysis.SlotAllocInfo.SlotKind;
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
+import net.sandius.rembulan.compiler.analysis.types.Type;
 import net.sandius.rembulan.compiler.ir.*;
 
 import java.util.*;
@@ -24,16 +27,24 @@ import java.util.*;
 public class SlotAllocator {
 
 	private final IRFunc fn;
+	private final TypeInfo types;  // may be null
 
 	private final Map<AbstractVal, Integer> valSlots;
 	private final Map<Var, Integer> varSlots;
+	private final Map<Integer, SlotKind> slotKinds;
 
 	private IRNode currentNode;
 
-	public SlotAllocator(IRFunc fn) {
+	public SlotAllocator(IRFunc fn, TypeInfo types) {
 		this.fn = Objects.requireNonNull(fn);
+		this.types = types;
 		this.valSlots = new HashMap<>();
 		this.varSlots = new HashMap<>();
+		this.slotKinds = new HashMap<>();
+	}
+
+	public SlotAllocator(IRFunc fn) {
+		this(fn, null);
 	}
 
 	public static SlotAllocInfo allocateSlots(IRFunc fn) {
@@ -41,6 +52,27 @@ public class SlotAllocator {
 		return allocator.process();
 	}
 
+	// values statically known to be integers or floats get their own, unboxed slots
+	public static SlotAllocInfo allocateSlots(IRFunc fn, TypeInfo types) {
+		SlotAllocator allocator = new SlotAllocator(fn, Objects.requireNonNull(types));
+		return allocator.process();
+	}
+
+	private static SlotKind kindOf(Type t) {
+		if (t.isSubtypeOf(LuaTypes.NUMBER_INTEGER)) return SlotKind.INTEGER;
+		else if (t.isSubtypeOf(LuaTypes.NUMBER_FLOAT)) return SlotKind.FLOAT;
+		else return SlotKind.OBJECT;
+	}
+
+	private SlotKind kindOf(AbstractVal v) {
+		return types != null ? kindOf(types.typeOf(v)) : SlotKind.OBJECT;
+	}
+
+	private SlotKind kindOf(Var v) {
+		// reified variables hold a Variable instance
+		return types != null && !types.isReified(v) ? kindOf(types.typeOf(v)) : SlotKind.OBJECT;
+	}
+
 	private IRNode node() {
 		if (currentNode == null) {
 			throw new IllegalStateException("Current node is null");
@@ -104,22 +136,29 @@ public class SlotAllocator {
 		return occupied;
 	}
 
-	private int findFreeSlot(LivenessInfo liveness, IRNode node) {
+	private boolean isCompatible(int idx, SlotKind kind) {
+		SlotKind k = slotKinds.get(idx);
+		return k == null || k == kind;
+	}
+
+	private int findFreeSlot(LivenessInfo liveness, IRNode node, SlotKind kind) {
 		BitSet occupied = occupiedSlots(liveness, node);
 
 		int idx = 0;
-		while (occupied.get(idx)) {
+		while (occupied.get(idx) || !isCompatible(idx, kind)) {
 			idx++;
 		}
 
 		assert (!occupied.get(idx));
 
+		slotKinds.put(idx, kind);
 		return idx;
 	}
 
 	private void assignParamSlots(List<Var> params) {
 		int idx = 0;
 		for (Var v : params) {
+			slotKinds.put(idx, SlotKind.OBJECT);
 			varSlots.put(v, idx++);
 		}
 	}
@@ -128,14 +167,14 @@ public class SlotAllocator {
 		if (hasSlot(v)) {
 			throw new IllegalStateException("Slot already assigned for variable " + v);
 		}
-		varSlots.put(v, findFreeSlot(liveness, node));
+		varSlots.put(v, findFreeSlot(liveness, node, kindOf(v)));
 	}
 
 	private void assignSlot(AbstractVal v, LivenessInfo liveness, IRNode node) {
 		if (hasSlot(v)) {
 			throw new IllegalStateException("Slot already assigned for value " + v);
 		}
-		valSlots.put(v, findFreeSlot(liveness, node));
+		valSlots.put(v, findFreeSlot(liveness, node, kindOf(v)));
 	}
 
 	public SlotAllocInfo process() {
@@ -164,7 +203,8 @@ public class SlotAllocator {
 
 		return new SlotAllocInfo(
 				Collections.unmodifiableMap(valSlots),
-				Collections.unmodifiableMap(varSlots));
+				Collections.unmodifiableMap(varSlots),
+				Collections.unmodifiableMap(slotKinds));
 	}
 
 	private void assignSlots(BasicBlock b, AllocatorVisitor visitor) {
@@ -35,17 +35,20 @@ public class TypeInfo {
 	private final Map<AbstractVal, Type> types;
 	private final Map<MultiVal, TypeSeq> multiTypes;
 	private final Map<Var, Boolean> vars;
+	private final Map<Var, Type> varTypes;
 	private final TypeSeq returnType;
 
 	protected TypeInfo(
 			Map<AbstractVal, Type> types,
 			Map<MultiVal, TypeSeq> multiTypes,
 			Map<Var, Boolean> vars,
+			Map<Var, Type> varTypes,
 			TypeSeq returnType) {
 
 		this.types = Objects.requireNonNull(types);
 		this.multiTypes = Objects.requireNonNull(multiTypes);
 		this.vars = Objects.requireNonNull(vars);
+		this.varTypes = Objects.requireNonNull(varTypes);
 		this.returnType = Objects.requireNonNull(returnType);
 	}
 
@@ -54,6 +57,7 @@ public class TypeInfo {
 			Map<PhiVal, Type> phiValTypes,
 			Map<MultiVal, TypeSeq> multiValTypes,
 			Set<Var> vars, Set<Var> reifiedVars,
+			Map<Var, Type> varTypes,
 			TypeSeq returnType) {
 
 		Map<AbstractVal, Type> types = new HashMap<>();
@@ -81,7 +85,7 @@ public class TypeInfo {
 			}
 		}
 
-		return new TypeInfo(types, multiTypes, vs, returnType);
+		return new TypeInfo(types, multiTypes, vs, new HashMap<>(varTypes), returnType);
 	}
 
 	public Iterable<AbstractVal> vals() {
@@ -132,6 +136,19 @@ public class TypeInfo {
 		}
 	}
 
+	// the join of the types of all values stored into v
+	public Type typeOf(Var v) {
+		Objects.requireNonNull(v);
+
+		Type t = varTypes.get(v);
+		if (t == null) {
+			throw new NoSuchElementException("No type information for variable " + v);
+		}
+		else {
+			return t;
+		}
+	}
+
 	public TypeSeq returnType() {
 		return returnType;
 	}
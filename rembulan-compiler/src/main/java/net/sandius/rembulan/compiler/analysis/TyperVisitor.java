@@ -18,6 +18,7 @@ package net.sandius.rembulan.compiler.analysis;
 
 import net.sandius.rembulan.compiler.IRFunc;
 import net.sandius.rembulan.compiler.analysis.types.FunctionType;
+import net.sandius.rembulan.compiler.analysis.types.LiteralType;
 import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
 import net.sandius.rembulan.compiler.analysis.types.ReturnType;
 import net.sandius.rembulan.compiler.analysis.types.Type;
@@ -27,6 +28,7 @@ import net.sandius.rembulan.compiler.ir.*;
 import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
@@ -45,6 +47,7 @@ class TyperVisitor extends CodeVisitor {
 
 	private final Set<Var> allVars;
 	private final Set<Var> reifiedVars;
+	private final Map<Var, Type> varTypes;
 
 	private final Set<Label> seen;
 	private final Queue<Label> open;
@@ -62,6 +65,7 @@ class TyperVisitor extends CodeVisitor {
 
 		this.allVars = new HashSet<>();
 		this.reifiedVars = new HashSet<>();
+		this.varTypes = new HashMap<>();
 
 		this.seen = new HashSet<>();
 		this.open = new ArrayDeque<>();
@@ -70,7 +74,7 @@ class TyperVisitor extends CodeVisitor {
 	}
 
 	public TypeInfo valTypes() {
-		return TypeInfo.of(valTypes, phiValTypes, multiValTypes, allVars, reifiedVars, returnType());
+		return TypeInfo.of(valTypes, phiValTypes, multiValTypes, allVars, reifiedVars, varTypes, returnType());
 	}
 
 	private static TypeSeq returnTypeToTypeSeq(ReturnType rt) {
@@ -131,6 +135,7 @@ class TyperVisitor extends CodeVisitor {
 			Objects.requireNonNull(v);
 			allVars.add(v);
 			types.put(v, Objects.requireNonNull(t));
+			varTypes.put(v, joinTypes(varTypes.get(v), t));
 		}
 
 		public Type load(Var v) {
@@ -440,6 +445,31 @@ class TyperVisitor extends CodeVisitor {
 		assign(node.dest(), result);
 	}
 
+	@Override
+	public void visit(Concat node) {
+		List<Val> args = node.args();
+
+		// emulate the right-associative evaluation order
+		Type result = typeOf(args.get(args.size() - 1));
+		boolean allStringable = stringable(result);
+		for (int i = args.size() - 2; i >= 0; i--) {
+			Type l = typeOf(args.get(i));
+			allStringable &= stringable(l);
+			Type emulatedResult = result instanceof LiteralType
+					? Typer.emulateOp(BinOp.Op.CONCAT, l, result)
+					: null;
+			result = emulatedResult != null
+					? emulatedResult
+					: allStringable ? LuaTypes.STRING : LuaTypes.ANY;
+		}
+
+		if (!allStringable) {
+			mayCallMetamethod();
+		}
+
+		assign(node.dest(), result);
+	}
+
 	@Override
 	public void visit(UnOp node) {
 		Type a = typeOf(node.arg());
@@ -23,12 +23,16 @@ import net.sandius.rembulan.compiler.CompilerSettings;
 import net.sandius.rembulan.compiler.FunctionId;
 import net.sandius.rembulan.compiler.analysis.SlotAllocInfo;
 import net.sandius.rembulan.compiler.analysis.TypeInfo;
+import net.sandius.rembulan.compiler.analysis.types.LiteralType;
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
 import net.sandius.rembulan.compiler.gen.ClassNameTranslator;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ASMUtils;
 import net.sandius.rembulan.compiler.gen.asm.helpers.BoxedPrimitivesMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ConversionMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.DispatchMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ExecutionContextMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.FieldCacheMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.OperatorMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ReturnBufferMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.TableMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.VariableMethods;
@@ -120,15 +124,67 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	}
 
 	protected int slot(AbstractVal v) {
-		return runMethod.slotOffset() + slots.slotOf(v);
+		return slots.slotOf(v);
 	}
 
 	protected int slot(Var v) {
-		return runMethod.slotOffset() + slots.slotOf(v);
+		return slots.slotOf(v);
 	}
 
 	protected int nextLocalVariableIndex() {
-		return runMethod.slotOffset() + slots.numSlots();
+		return runMethod.slotOffset() + runMethod.registersSize();
+	}
+
+	private Type slotType(AbstractVal v) {
+		return runMethod.registerType(slot(v));
+	}
+
+	// load v as an object, boxing it if it is held in an unboxed slot
+	private InsnList load(AbstractVal v) {
+		return runMethod.loadBoxedRegister(slot(v));
+	}
+
+	private InsnList load(Var v) {
+		return runMethod.loadBoxedRegister(slot(v));
+	}
+
+	// store the object at the top of the stack into v, unboxing it if necessary
+	private InsnList store(AbstractVal v) {
+		return runMethod.storeBoxedRegister(slot(v));
+	}
+
+	private InsnList store(Var v) {
+		return runMethod.storeBoxedRegister(slot(v));
+	}
+
+	// store the value of type t at the top of the stack into v
+	private InsnList store(AbstractVal v, Type t) {
+		InsnList il = new InsnList();
+		if (t.equals(slotType(v))) {
+			il.add(runMethod.storeRegister(slot(v)));
+		}
+		else {
+			il.add(RunMethod.box(t));
+			il.add(store(v));
+		}
+		return il;
+	}
+
+	// copy the contents of register src to register dest
+	private InsnList move(int src, int dest) {
+		InsnList il = new InsnList();
+		if (src == dest) {
+			// no-op
+		}
+		else if (runMethod.registerType(src).equals(runMethod.registerType(dest))) {
+			il.add(runMethod.loadRegister(src));
+			il.add(runMethod.storeRegister(dest));
+		}
+		else {
+			il.add(runMethod.loadBoxedRegister(src));
+			il.add(runMethod.storeBoxedRegister(dest));
+		}
+		return il;
 	}
 
 	private LabelNode l(Object o) {
@@ -187,6 +243,30 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		return il;
 	}
 
+	// identifies a per-site field cache; never equal to any other constant
+	private static final class FieldCacheSite {
+
+		private final ByteString key;
+
+		FieldCacheSite(ByteString key) {
+			this.key = Objects.requireNonNull(key);
+		}
+
+	}
+
+	private InsnList newFieldCache(ByteString key) {
+		final FieldCacheSite site = new FieldCacheSite(key);
+		RunMethod.ConstFieldInstance cfi = new RunMethod.ConstFieldInstance(
+				site, "_k_" + constFields.size(), context.thisClassType(), FieldCacheMethods.selfTpe()) {
+			@Override
+			public void doInstantiate(InsnList il) {
+				il.add(FieldCacheMethods.newCache(newByteString(site.key)));
+			}
+		};
+		constFields.add(cfi);
+		return cfi.accessInsns();
+	}
+
 	private InsnList loadCachedConst(Object constValue) {
 		for (RunMethod.ConstFieldInstance cfi : constFields) {
 			if (cfi.value().equals(constValue)) {
@@ -340,14 +420,12 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(PhiStore node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(move(slot(node.src()), slot(node.dest())));
 	}
 
 	@Override
 	public void visit(PhiLoad node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(move(slot(node.src()), slot(node.dest())));
 	}
 
 	@Override
@@ -355,71 +433,75 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		if (types.isReified(node.var())) {
 			il.add(new TypeInsnNode(NEW, Type.getInternalName(Variable.class)));
 			il.add(new InsnNode(DUP));
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
+			il.add(load(node.src()));
 			il.add(VariableMethods.constructor());
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			il.add(store(node.var()));
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			il.add(move(slot(node.src()), slot(node.var())));
 		}
 	}
 
 	@Override
 	public void visit(VarStore node) {
 		if (types.isReified(node.var())) {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(load(node.var()));
 			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
+			il.add(load(node.src()));
 			il.add(VariableMethods.set());
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			il.add(move(slot(node.src()), slot(node.var())));
 		}
 	}
 
 	@Override
 	public void visit(VarLoad node) {
 		if (types.isReified(node.var())) {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(load(node.var()));
 			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
 			il.add(VariableMethods.get());
+			il.add(store(node.dest()));
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(move(slot(node.var()), slot(node.dest())));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
 	}
 
 	@Override
 	public void visit(UpLoad node) {
 		il.add(loadUpvalueRef(node.upval()));
 		il.add(VariableMethods.get());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(UpStore node) {
 		il.add(loadUpvalueRef(node.upval()));
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
+		il.add(load(node.src()));
 		il.add(VariableMethods.set());
 	}
 
 	@Override
 	public void visit(LoadConst.Nil node) {
 		il.add(new InsnNode(ACONST_NULL));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(LoadConst.Bool node) {
 		il.add(BoxedPrimitivesMethods.loadBoxedBoolean(node.value()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(LoadConst.Int node) {
+		if (slotType(node.dest()).equals(Type.LONG_TYPE)) {
+			il.add(ASMUtils.loadLong(node.value()));
+			il.add(store(node.dest(), Type.LONG_TYPE));
+			return;
+		}
+
 		if (context.compilerSettings.constCaching()) {
 			il.add(loadCachedConst(node.value()));
 		}
@@ -427,11 +509,17 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(ASMUtils.loadLong(node.value()));
 			il.add(BoxedPrimitivesMethods.box(Type.LONG_TYPE, Type.getType(Long.class)));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(LoadConst.Flt node) {
+		if (slotType(node.dest()).equals(Type.DOUBLE_TYPE)) {
+			il.add(ASMUtils.loadDouble(node.value()));
+			il.add(store(node.dest(), Type.DOUBLE_TYPE));
+			return;
+		}
+
 		if (context.compilerSettings.constCaching()) {
 			il.add(loadCachedConst(node.value()));
 		}
@@ -439,7 +527,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(ASMUtils.loadDouble(node.value()));
 			il.add(BoxedPrimitivesMethods.box(Type.DOUBLE_TYPE, Type.getType(Double.class)));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -458,7 +546,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(new LdcInsnNode(node.value()));
 		}
 
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	private static String dispatchMethodName(BinOp.Op op) {
@@ -496,25 +584,235 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 	}
 
+	// the JVM type of a value statically known to be a number of a specific kind, or null
+	private Type numericType(Val v) {
+		if (types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_INTEGER)) return Type.LONG_TYPE;
+		else if (types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_FLOAT)) return Type.DOUBLE_TYPE;
+		else return null;
+	}
+
+	// load the numeric value v as a value of the primitive type t
+	private InsnList loadNumeric(Val v, Type t) {
+		InsnList il = new InsnList();
+		Type st = slotType(v);
+		if (st.equals(Type.LONG_TYPE) || st.equals(Type.DOUBLE_TYPE)) {
+			il.add(runMethod.loadRegister(slot(v)));
+			if (!st.equals(t)) {
+				assert (st.equals(Type.LONG_TYPE) && t.equals(Type.DOUBLE_TYPE));
+				il.add(new InsnNode(L2D));
+			}
+		}
+		else {
+			il.add(load(v));
+			il.add(ASMUtils.checkCast(Number.class));
+			il.add(BoxedPrimitivesMethods.unbox(Number.class, t));
+		}
+		return il;
+	}
+
+	private static Type widerNumericType(Type a, Type b) {
+		return a.equals(Type.LONG_TYPE) && b.equals(Type.LONG_TYPE) ? Type.LONG_TYPE : Type.DOUBLE_TYPE;
+	}
+
+	private void staticBinOp(BinOp node, String methodName, Type argType, Type returnType) {
+		il.add(loadNumeric(node.left(), argType));
+		il.add(loadNumeric(node.right(), argType));
+		il.add(OperatorMethods.rawBinaryOperator(methodName, returnType, argType));
+		il.add(store(node.dest(), returnType));
+	}
+
+	private void staticComparison(BinOp node, String methodName, Type lt, Type rt, boolean negate) {
+		il.add(loadNumeric(node.left(), lt));
+		il.add(loadNumeric(node.right(), rt));
+		il.add(OperatorMethods.rawComparison(methodName, lt, rt));
+		if (negate) {
+			il.add(new InsnNode(ICONST_1));
+			il.add(new InsnNode(IXOR));
+		}
+		il.add(BoxedPrimitivesMethods.box(Type.BOOLEAN_TYPE, Type.getType(Boolean.class)));
+		il.add(store(node.dest()));
+	}
+
+	// emit operations on numbers of statically known kinds directly, without dispatch
+	private boolean tryEmitStaticBinOp(BinOp node) {
+		Type lt = numericType(node.left());
+		Type rt = numericType(node.right());
+
+		if (lt == null || rt == null) {
+			return false;
+		}
+
+		Type t = widerNumericType(lt, rt);
+		boolean integer = t.equals(Type.LONG_TYPE);
+
+		switch (node.op()) {
+			case ADD:
+			case SUB:
+			case MUL:
+			case MOD:
+			case IDIV:
+				staticBinOp(node, dispatchMethodName(node.op()), t, t);
+				return true;
+
+			case DIV:
+			case POW:
+				staticBinOp(node, dispatchMethodName(node.op()), t, Type.DOUBLE_TYPE);
+				return true;
+
+			case BAND:
+			case BOR:
+			case BXOR:
+			case SHL:
+			case SHR:
+				if (integer) {
+					staticBinOp(node, dispatchMethodName(node.op()), t, t);
+					return true;
+				}
+				else {
+					// floats must be converted, and may fail to convert
+					return false;
+				}
+
+			case EQ:
+			case LT:
+			case LE:
+				staticComparison(node, dispatchMethodName(node.op()), lt, rt, false);
+				return true;
+
+			case NEQ:
+				staticComparison(node, OP_EQ, lt, rt, true);
+				return true;
+
+			default:
+				return false;
+		}
+	}
+
+	private static boolean hasTypeFeedback(BinOp.Op op) {
+		switch (op) {
+			case ADD:
+			case SUB:
+			case MUL:
+			case DIV:
+			case MOD:
+			case IDIV:
+			case POW:
+			case EQ:
+			case NEQ:
+			case LT:
+			case LE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	// the result is returned by the call site, or left in the return buffer when resuming
+	private void typeFeedbackBinOp(BinOp node) {
+		ResumptionPoint rp = newResumptionPoint();
+		il.add(rp.save());
+
+		LabelNode l_done = new LabelNode();
+
+		il.add(loadExecutionContext());
+		il.add(load(node.left()));
+		il.add(load(node.right()));
+		il.add(DispatchMethods.dynamicOperator(dispatchMethodName(node.op())));
+		il.add(new JumpInsnNode(GOTO, l_done));
+
+		il.add(rp.resume());
+		il.add(retrieve_0());
+
+		il.add(l_done);
+		il.add(ASMUtils.frameSame1(Object.class));
+		il.add(store(node.dest()));
+	}
+
 	@Override
 	public void visit(BinOp node) {
+		if (tryEmitStaticBinOp(node)) {
+			return;
+		}
+
+		if (context.compilerSettings.typeFeedback() && hasTypeFeedback(node.op())) {
+			typeFeedbackBinOp(node);
+			return;
+		}
+
 		ResumptionPoint rp = newResumptionPoint();
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.left())));
-		il.add(new VarInsnNode(ALOAD, slot(node.right())));
+		il.add(load(node.left()));
+		il.add(load(node.right()));
 		il.add(DispatchMethods.dynamic(dispatchMethodName(node.op()), 2));
 
 		il.add(rp.resume());
 		il.add(retrieve_0());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
+	}
+
+	@Override
+	public void visit(Concat node) {
+		ResumptionPoint rp = newResumptionPoint();
+		il.add(rp.save());
+
+		il.add(loadExecutionContext());
+
+		// pass the operands packed in an array
+		il.add(ASMUtils.loadInt(node.args().size()));
+		il.add(new TypeInsnNode(ANEWARRAY, Type.getInternalName(Object.class)));
+		int idx = 0;
+		for (Val v : node.args()) {
+			il.add(new InsnNode(DUP));
+			il.add(ASMUtils.loadInt(idx++));
+			il.add(load(v));
+			il.add(new InsnNode(AASTORE));
+		}
+
+		il.add(DispatchMethods.concat_array());
+
+		il.add(rp.resume());
+		il.add(retrieve_0());
+		il.add(store(node.dest()));
+	}
+
+	// emit unary minus and bitwise negation of numbers of statically known kinds directly
+	private boolean tryEmitStaticUnOp(UnOp node) {
+		Type t = numericType(node.arg());
+
+		if (t == null) {
+			return false;
+		}
+
+		switch (node.op()) {
+			case UNM:
+				break;
+			case BNOT:
+				if (t.equals(Type.LONG_TYPE)) {
+					break;
+				}
+				else {
+					return false;
+				}
+			default:
+				return false;
+		}
+
+		il.add(loadNumeric(node.arg(), t));
+		il.add(OperatorMethods.rawUnaryOperator(dispatchMethodName(node.op()), t, t));
+		il.add(store(node.dest(), t));
+		return true;
 	}
 
 	@Override
 	public void visit(UnOp node) {
+		if (tryEmitStaticUnOp(node)) {
+			return;
+		}
+
 		if (node.op() == UnOp.Op.NOT) {
-			il.add(new VarInsnNode(ALOAD, slot(node.arg())));
+			il.add(load(node.arg()));
 			il.add(ConversionMethods.booleanValueOf());
 			il.add(new InsnNode(ICONST_1));
 			il.add(new InsnNode(IXOR));
@@ -525,47 +823,295 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(rp.save());
 
 			il.add(loadExecutionContext());
-			il.add(new VarInsnNode(ALOAD, slot(node.arg())));
+			il.add(load(node.arg()));
 			il.add(DispatchMethods.dynamic(dispatchMethodName(node.op()), 1));
 
 			il.add(rp.resume());
 			il.add(retrieve_0());
 		}
 
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(TabNew node) {
 		il.add(loadExecutionContext());
 		il.add(ExecutionContextMethods.newTable(node.array(), node.hash()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
+	}
+
+	private boolean isStaticallyTable(Val v) {
+		return types.typeOf(v).isSubtypeOf(LuaTypes.TABLE);
+	}
+
+	private boolean isStaticallyInteger(Val v) {
+		return types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_INTEGER);
+	}
+
+	private ByteString constantStringKey(Val v) {
+		if (types.typeOf(v) instanceof LiteralType) {
+			Object value = ((LiteralType<?>) types.typeOf(v)).value();
+			if (value instanceof ByteString) {
+				return (ByteString) value;
+			}
+		}
+		return null;
+	}
+
+	private InsnList loadIntegerKey(Val key) {
+		InsnList il = new InsnList();
+
+		if (types.typeOf(key) instanceof LiteralType) {
+			// the key is a compile-time constant
+			LiteralType<?> lt = (LiteralType<?>) types.typeOf(key);
+			il.add(ASMUtils.loadLong(((Number) lt.value()).longValue()));
+		}
+		else {
+			il.add(loadNumeric(key, Type.LONG_TYPE));
+		}
+
+		return il;
+	}
+
+	private InsnList loadTable(Val obj) {
+		InsnList il = new InsnList();
+		il.add(load(obj));
+		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
+		return il;
+	}
+
+	private void integerKeyTabGet(TabGet node) {
+		/*
+		 In Java terms:
+
+			if (obj instanceof Table) {  // omitted when obj is statically known to be a table
+				Object v = ((Table) obj).rawget(key);
+				if (v != null) {
+					dest = v;
+					goto done;
+				}
+			}
+			Dispatch.index(context, obj, key);
+			dest = context.getReturnBuffer().get0();
+		 done:
+		*/
+
+		LabelNode l_pop = new LabelNode();
+		LabelNode l_slow = new LabelNode();
+		LabelNode l_done = new LabelNode();
+
+		if (!isStaticallyTable(node.obj())) {
+			il.add(load(node.obj()));
+			il.add(new TypeInsnNode(INSTANCEOF, Type.getInternalName(Table.class)));
+			il.add(new JumpInsnNode(IFEQ, l_slow));
+		}
+
+		il.add(loadTable(node.obj()));
+		il.add(loadIntegerKey(node.key()));
+		il.add(TableMethods.rawget_int());
+		il.add(new InsnNode(DUP));
+		il.add(new JumpInsnNode(IFNULL, l_pop));
+		il.add(store(node.dest()));
+		il.add(new JumpInsnNode(GOTO, l_done));
+
+		il.add(l_pop);
+		il.add(ASMUtils.frameSame1(Object.class));
+		il.add(new InsnNode(POP));
+
+		il.add(l_slow);
+		il.add(ASMUtils.frameSame());
+
+		ResumptionPoint rp = newResumptionPoint();
+		il.add(rp.save());
+
+		il.add(loadExecutionContext());
+		il.add(load(node.obj()));
+		il.add(loadIntegerKey(node.key()));
+		il.add(DispatchMethods.index_int());
+
+		il.add(rp.resume());
+		il.add(retrieve_0());
+		il.add(store(node.dest()));
+
+		il.add(l_done);
+		il.add(ASMUtils.frameSame());
+	}
+
+	private void integerKeyTabSet(TabSet node) {
+		/*
+		 In Java terms:
+
+			if (obj instanceof Table) {  // omitted when obj is statically known to be a table
+				if (((Table) obj).rawget(key) != null) {
+					((Table) obj).rawset(key, value);
+					goto done;
+				}
+			}
+			Dispatch.setindex(context, obj, key, value);
+		 done:
+		*/
+
+		LabelNode l_slow = new LabelNode();
+		LabelNode l_done = new LabelNode();
+
+		if (!isStaticallyTable(node.obj())) {
+			il.add(load(node.obj()));
+			il.add(new TypeInsnNode(INSTANCEOF, Type.getInternalName(Table.class)));
+			il.add(new JumpInsnNode(IFEQ, l_slow));
+		}
+
+		il.add(loadTable(node.obj()));
+		il.add(loadIntegerKey(node.key()));
+		il.add(TableMethods.rawget_int());
+		il.add(new JumpInsnNode(IFNULL, l_slow));
+
+		il.add(loadTable(node.obj()));
+		il.add(loadIntegerKey(node.key()));
+		il.add(load(node.value()));
+		il.add(TableMethods.rawset_int());
+		il.add(new JumpInsnNode(GOTO, l_done));
+
+		il.add(l_slow);
+		il.add(ASMUtils.frameSame());
+
+		ResumptionPoint rp = newResumptionPoint();
+		il.add(rp.save());
+
+		il.add(loadExecutionContext());
+		il.add(load(node.obj()));
+		il.add(loadIntegerKey(node.key()));
+		il.add(load(node.value()));
+		il.add(DispatchMethods.setindex_int());
+
+		il.add(rp.resume());
+
+		il.add(l_done);
+		il.add(ASMUtils.frameSame());
+	}
+
+	private void stringKeyTabGet(TabGet node, ByteString key) {
+		/*
+		 In Java terms:
+
+			Object v = CACHE.rawget(obj);  // CACHE is a per-site FieldCache for key
+			if (v != null) {
+				dest = v;
+				goto done;
+			}
+			Dispatch.index(context, obj, key);
+			dest = context.getReturnBuffer().get0();
+		 done:
+		*/
+
+		LabelNode l_pop = new LabelNode();
+		LabelNode l_done = new LabelNode();
+
+		il.add(newFieldCache(key));
+		il.add(load(node.obj()));
+		il.add(FieldCacheMethods.rawget());
+		il.add(new InsnNode(DUP));
+		il.add(new JumpInsnNode(IFNULL, l_pop));
+		il.add(store(node.dest()));
+		il.add(new JumpInsnNode(GOTO, l_done));
+
+		il.add(l_pop);
+		il.add(ASMUtils.frameSame1(Object.class));
+		il.add(new InsnNode(POP));
+
+		ResumptionPoint rp = newResumptionPoint();
+		il.add(rp.save());
+
+		il.add(loadExecutionContext());
+		il.add(load(node.obj()));
+		il.add(load(node.key()));
+		il.add(DispatchMethods.index());
+
+		il.add(rp.resume());
+		il.add(retrieve_0());
+		il.add(store(node.dest()));
+
+		il.add(l_done);
+		il.add(ASMUtils.frameSame());
+	}
+
+	private void stringKeyTabSet(TabSet node, ByteString key) {
+		/*
+		 In Java terms:
+
+			if (!CACHE.rawsetIfPresent(obj, value)) {  // CACHE is a per-site FieldCache for key
+				Dispatch.setindex(context, obj, key, value);
+			}
+		*/
+
+		LabelNode l_done = new LabelNode();
+
+		il.add(newFieldCache(key));
+		il.add(load(node.obj()));
+		il.add(load(node.value()));
+		il.add(FieldCacheMethods.rawsetIfPresent());
+		il.add(new JumpInsnNode(IFNE, l_done));
+
+		ResumptionPoint rp = newResumptionPoint();
+		il.add(rp.save());
+
+		il.add(loadExecutionContext());
+		il.add(load(node.obj()));
+		il.add(load(node.key()));
+		il.add(load(node.value()));
+		il.add(DispatchMethods.setindex());
+
+		il.add(rp.resume());
+
+		il.add(l_done);
+		il.add(ASMUtils.frameSame());
 	}
 
 	@Override
 	public void visit(TabGet node) {
+		if (isStaticallyInteger(node.key())) {
+			integerKeyTabGet(node);
+			return;
+		}
+
+		ByteString stringKey = constantStringKey(node.key());
+		if (stringKey != null) {
+			stringKeyTabGet(node, stringKey);
+			return;
+		}
+
 		ResumptionPoint rp = newResumptionPoint();
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
+		il.add(load(node.obj()));
+		il.add(load(node.key()));
 		il.add(DispatchMethods.index());
 
 		il.add(rp.resume());
 		il.add(retrieve_0());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(TabSet node) {
+		if (isStaticallyInteger(node.key())) {
+			integerKeyTabSet(node);
+			return;
+		}
+
+		ByteString stringKey = constantStringKey(node.key());
+		if (stringKey != null) {
+			stringKeyTabSet(node, stringKey);
+			return;
+		}
+
 		ResumptionPoint rp = newResumptionPoint();
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.obj()));
+		il.add(load(node.key()));
+		il.add(load(node.value()));
 		il.add(DispatchMethods.setindex());
 
 		il.add(rp.resume());
@@ -573,19 +1119,19 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(TabRawSet node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.key()));
+		il.add(load(node.value()));
 		il.add(TableMethods.rawset());
 	}
 
 	@Override
 	public void visit(TabRawSetInt node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
 		il.add(ASMUtils.loadLong(node.idx()));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.value()));
 		il.add(TableMethods.rawset_int());
 	}
 
@@ -618,7 +1164,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 		il.add(begin);
 
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
 		il.add(new VarInsnNode(ASTORE, lv_idx_tab));
 
@@ -731,7 +1277,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				for (Val v : vl.addrs()) {
 					il.add(new VarInsnNode(ALOAD, lv_idx_args));
 					il.add(ASMUtils.loadInt(idx++));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new InsnNode(AASTORE));
 				}
 
@@ -765,7 +1311,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			if (k <= maxKind) {
 				// pass arguments on the JVM stack
 				for (Val v : vl.addrs()) {
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 				}
 				return k;
 			}
@@ -778,7 +1324,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				for (Val v : vl.addrs()) {
 					il.add(new InsnNode(DUP));
 					il.add(ASMUtils.loadInt(idx++));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new InsnNode(AASTORE));
 				}
 
@@ -800,7 +1346,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	public void visit(TCall node) {
 		il.add(loadExecutionContext());
 		il.add(loadReturnBuffer());
-		il.add(new VarInsnNode(ALOAD, slot(node.target())));  // call target
+		il.add(load(node.target()));  // call target
 		int kind = loadVList(node.args(), ReturnBufferMethods.MAX_TAILCALL_KIND);  // call args
 		il.add(ReturnBufferMethods.tailCall(kind));
 		il.add(_return());
@@ -812,9 +1358,9 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.fn())));  // call target
+		il.add(load(node.fn()));  // call target
 		int kind = loadVList(node.args(), DispatchMethods.MAX_CALL_KIND);  // call args
-		il.add(DispatchMethods.call(kind));
+		il.add(DispatchMethods.dynamicCall(kind));
 
 		il.add(rp.resume());
 	}
@@ -824,7 +1370,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(loadExecutionContext());
 		il.add(loadReturnBuffer());
 		il.add(ReturnBufferMethods.get(node.idx()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -903,7 +1449,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				else {
 					Var v = (Var) var;
 					assert (context.types.isReified(v));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
 				}
 			}
@@ -971,14 +1517,20 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 
 		il.add(cu.fetchInstanceInsns());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(ToNumber node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
+		if (numericType(node.src()) != null) {
+			// already a number
+			il.add(move(slot(node.src()), slot(node.dest())));
+			return;
+		}
+
+		il.add(load(node.src()));
 		il.add(ConversionMethods.toNumericalValue(node.desc()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -1005,7 +1557,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.Nil cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.addr())));
+		il.add(load(cond.addr()));
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
 			// local jump
@@ -1024,7 +1576,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.Bool cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.addr())));
+		il.add(load(cond.addr()));
 		il.add(ConversionMethods.booleanValueOf());
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
@@ -1045,13 +1597,19 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.NumLoopEnd cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.var())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(new VarInsnNode(ALOAD, slot(cond.limit())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(new VarInsnNode(ALOAD, slot(cond.step())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(DispatchMethods.continueLoop());
+
+		if (numericType(cond.var()) != null && numericType(cond.step()) != null) {
+			il.add(staticContinueLoop(cond));
+		}
+		else {
+			il.add(load(cond.var()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(cond.limit()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(cond.step()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(DispatchMethods.continueLoop());
+		}
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
 			// local jump
@@ -1067,6 +1625,116 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 	}
 
+	private InsnList loadLoopOperand(Val v) {
+		Type t = numericType(v);
+		if (t != null) {
+			return loadNumeric(v, t);
+		}
+		else {
+			InsnList il = new InsnList();
+			il.add(load(v));
+			il.add(ASMUtils.checkCast(Number.class));
+			return il;
+		}
+	}
+
+	private Type loopOperandType(Val v) {
+		Type t = numericType(v);
+		return t != null ? t : Type.getType(Number.class);
+	}
+
+	// a <= b, with a and b loaded as primitives whenever their kinds are known
+	private InsnList loopLe(Val a, Val b) {
+		InsnList il = new InsnList();
+		Type at = loopOperandType(a);
+		Type bt = loopOperandType(b);
+
+		il.add(loadLoopOperand(a));
+		il.add(loadLoopOperand(b));
+
+		if (at.equals(Type.LONG_TYPE) && bt.equals(Type.LONG_TYPE)) {
+			LabelNode l_false = new LabelNode();
+			LabelNode l_done = new LabelNode();
+			il.add(new InsnNode(LCMP));
+			il.add(new JumpInsnNode(IFGT, l_false));
+			il.add(new InsnNode(ICONST_1));
+			il.add(new JumpInsnNode(GOTO, l_done));
+			il.add(l_false);
+			il.add(new FrameNode(F_SAME, 0, null, 0, null));
+			il.add(new InsnNode(ICONST_0));
+			il.add(l_done);
+			il.add(new FrameNode(F_SAME1, 0, null, 1, new Object[] { Opcodes.INTEGER }));
+		}
+		else if (numericType(a) != null && numericType(b) != null) {
+			il.add(OperatorMethods.rawComparison(OP_LE, at, bt));
+		}
+		else {
+			il.add(DispatchMethods.le(at, bt));
+		}
+
+		return il;
+	}
+
+	// leaves true on the stack iff the loop should continue; var and step are numbers of
+	// statically known kinds, and are not boxed unless the limit is
+	private InsnList staticContinueLoop(Branch.Condition.NumLoopEnd cond) {
+		InsnList il = new InsnList();
+
+		Val var = cond.var();
+		Val limit = cond.limit();
+		Val step = cond.step();
+
+		if (types.typeOf(step) instanceof LiteralType) {
+			// the direction of the loop is known at compile time
+			double sign = ((Number) ((LiteralType<?>) types.typeOf(step)).value()).doubleValue();
+			if (sign > 0) {
+				il.add(loopLe(var, limit));
+			}
+			else if (sign < 0) {
+				il.add(loopLe(limit, var));
+			}
+			else {
+				// zero or NaN
+				il.add(new InsnNode(ICONST_0));
+			}
+		}
+		else {
+			Type st = numericType(step);
+			boolean integer = st.equals(Type.LONG_TYPE);
+
+			LabelNode l_nonpositive = new LabelNode();
+			LabelNode l_stop = new LabelNode();
+			LabelNode l_done = new LabelNode();
+
+			// step > 0 (false for NaN)
+			il.add(loadNumeric(step, st));
+			il.add(integer ? new InsnNode(LCONST_0) : new InsnNode(DCONST_0));
+			il.add(new InsnNode(integer ? LCMP : DCMPL));
+			il.add(new JumpInsnNode(IFLE, l_nonpositive));
+			il.add(loopLe(var, limit));
+			il.add(new JumpInsnNode(GOTO, l_done));
+
+			// step < 0 (false for NaN)
+			il.add(l_nonpositive);
+			il.add(new FrameNode(F_SAME, 0, null, 0, null));
+			il.add(loadNumeric(step, st));
+			il.add(integer ? new InsnNode(LCONST_0) : new InsnNode(DCONST_0));
+			il.add(new InsnNode(integer ? LCMP : DCMPG));
+			il.add(new JumpInsnNode(IFGE, l_stop));
+			il.add(loopLe(limit, var));
+			il.add(new JumpInsnNode(GOTO, l_done));
+
+			il.add(l_stop);
+			il.add(new FrameNode(F_SAME, 0, null, 0, null));
+			il.add(new InsnNode(ICONST_0));
+
+			il.add(l_done);
+			il.add(new FrameNode(F_SAME1, 0, null, 1, new Object[] { Opcodes.INTEGER }));
+		}
+
+		return il;
+	}
+
 	private void staticCpuWithdraw(int cost) {
 		switch (context.compilerSettings.cpuAccountingMode()) {
 			case NO_CPU_ACCOUNTING: {
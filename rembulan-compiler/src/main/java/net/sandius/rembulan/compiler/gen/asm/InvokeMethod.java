@@ -76,10 +76,11 @@ class InvokeMethod {
 
 			// we have (invokeKind - 1) standalone parameters, mapping them onto numSlots
 
-			for (int paramIdx : slotParamMap) {
+			for (int slotIdx = 0; slotIdx < slotParamMap.length; slotIdx++) {
+				int paramIdx = slotParamMap[slotIdx];
 				if (paramIdx < 0) {
 					// slot unused
-					il.add(new InsnNode(ACONST_NULL));
+					il.add(RunMethod.defaultValue(runMethod.registerType(slotIdx)));
 				}
 				else {
 					// used by the parameter #paramIdx
@@ -222,7 +223,7 @@ class InvokeMethod {
 				}
 			}
 
-			// now assemble the run() method invocation, filling in nulls for non-parameter slots
+			// now assemble the run() method invocation, filling in default values for non-parameter slots
 
 			il.add(new VarInsnNode(ALOAD, 0));  // this
 			il.add(new VarInsnNode(ALOAD, 1));  // context
@@ -230,10 +231,11 @@ class InvokeMethod {
 			if (context.isVararg()) {
 				il.add(new VarInsnNode(ALOAD, lv_varargs));
 			}
-			for (int paramIdx : slotParamMap) {
+			for (int slotIdx = 0; slotIdx < slotParamMap.length; slotIdx++) {
+				int paramIdx = slotParamMap[slotIdx];
 				if (paramIdx < 0) {
 					// slot not used by a parameter
-					il.add(new InsnNode(ACONST_NULL));
+					il.add(RunMethod.defaultValue(runMethod.registerType(slotIdx)));
 				}
 				else {
 					// slot is parameter #paramIdx
@@ -62,6 +62,7 @@ class ResumeMethod {
 
 			LabelNode begin = new LabelNode();
 			LabelNode vars = new LabelNode();
+			LabelNode regs = new LabelNode();
 			LabelNode end = new LabelNode();
 
 			il.add(begin);
@@ -97,28 +98,27 @@ class ResumeMethod {
 								ASMUtils.arrayTypeFor(Object.class)),
 						false
 				));
+				il.add(new VarInsnNode(ASTORE, 4));
+				il.add(regs);
 
 				// varargs stored as the 0th element
-				int numRegs = runMethod.numOfRegisters() + (context.isVararg() ? 1 : 0);
+				int idx = 0;
 
-				for (int i = 0; i < numRegs; i++) {
-
-					// Note: it might be more elegant to use a local variable
-					// to store the array instead of having to perform SWAPs
-
-					if (i + 1 < numRegs) {
-						il.add(new InsnNode(DUP));
-					}
-					il.add(ASMUtils.loadInt(i));
+				if (context.isVararg()) {
+					il.add(new VarInsnNode(ALOAD, 4));
+					il.add(ASMUtils.loadInt(idx++));
 					il.add(new InsnNode(AALOAD));
-					if (i == 0 && context.isVararg()) {
-						il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
-					}
+					il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
+				}
 
-					if (i + 1 < numRegs) {
-						il.add(new InsnNode(SWAP));
-					}
+				for (int i = 0; i < runMethod.numOfRegisters(); i++) {
+					il.add(new VarInsnNode(ALOAD, 4));
+					il.add(ASMUtils.loadInt(idx++));
+					il.add(new InsnNode(AALOAD));
+					il.add(RunMethod.unbox(runMethod.registerType(i)));
 				}
+
+				locals.add(new LocalVariableNode("regs", ASMUtils.arrayTypeFor(Object.class).getDescriptor(), null, regs, end, 4));
 			}
 
 			// call run(...)
@@ -133,7 +133,7 @@ class ResumeMethod {
 			locals.add(new LocalVariableNode("ss", Type.getDescriptor(DefaultSavedState.class), null, vars, end, 3));
 
 			// TODO: maxStack, maxLocals
-			node.maxStack = 3 + (runMethod.numOfRegisters() > 0 ? 3: 0);
+			node.maxStack = 3 + (context.isVararg() ? 1 : 0) + runMethod.registersSize() + 2;
 			node.maxLocals = 5;
 		}
 		else
@@ -16,9 +16,11 @@
 
 package net.sandius.rembulan.compiler.gen.asm;
 
+import net.sandius.rembulan.compiler.analysis.SlotAllocInfo;
 import net.sandius.rembulan.compiler.gen.CodeSegmenter;
 import net.sandius.rembulan.compiler.gen.SegmentedCode;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ASMUtils;
+import net.sandius.rembulan.compiler.gen.asm.helpers.BoxedPrimitivesMethods;
 import net.sandius.rembulan.compiler.ir.BasicBlock;
 import net.sandius.rembulan.compiler.ir.Label;
 import net.sandius.rembulan.impl.DefaultSavedState;
@@ -49,6 +51,11 @@ class RunMethod {
 	private final List<MethodNode> methodNodes;
 	private final boolean resumable;
 
+	// registers holding integers and floats are unboxed, taking up two local variable slots
+	private final Type[] registerTypes;
+	private final int[] registerLocals;
+	private final int registersSize;
+
 	private final List<ClosureFieldInstance> closureFields;
 	private final List<ConstFieldInstance> constFields;
 
@@ -64,6 +71,18 @@ class RunMethod {
 	public RunMethod(ASMBytecodeEmitter context) {
 		this.context = Objects.requireNonNull(context);
 
+		int numRegs = context.slots.numSlots();
+		this.registerTypes = new Type[numRegs];
+		this.registerLocals = new int[numRegs];
+		int lv = slotOffset();
+		for (int i = 0; i < numRegs; i++) {
+			Type t = typeForSlotKind(context.slots.slotKind(i));
+			registerTypes[i] = t;
+			registerLocals[i] = lv;
+			lv += t.getSize();
+		}
+		this.registersSize = lv - slotOffset();
+
 		final SegmentedCode segmentedCode = CodeSegmenter.segment(
 				context.fn.code(),
 				context.compilerSettings.nodeSizeLimit());
@@ -134,6 +153,82 @@ class RunMethod {
 		return context.isVararg() ? LV_VARARGS + 1 : LV_VARARGS;
 	}
 
+	private static Type typeForSlotKind(SlotAllocInfo.SlotKind kind) {
+		switch (kind) {
+			case INTEGER: return Type.LONG_TYPE;
+			case FLOAT:   return Type.DOUBLE_TYPE;
+			default:      return Type.getType(Object.class);
+		}
+	}
+
+	public Type registerType(int idx) {
+		return registerTypes[idx];
+	}
+
+	// index of the local variable holding the register #idx
+	public int registerLocal(int idx) {
+		return registerLocals[idx];
+	}
+
+	// number of local variable slots taken up by the registers
+	public int registersSize() {
+		return registersSize;
+	}
+
+	static InsnList box(Type t) {
+		InsnList il = new InsnList();
+		if (t.equals(Type.LONG_TYPE)) {
+			il.add(BoxedPrimitivesMethods.box(Type.LONG_TYPE, Long.class));
+		}
+		else if (t.equals(Type.DOUBLE_TYPE)) {
+			il.add(BoxedPrimitivesMethods.box(Type.DOUBLE_TYPE, Double.class));
+		}
+		return il;
+	}
+
+	static InsnList unbox(Type t) {
+		InsnList il = new InsnList();
+		if (t.equals(Type.LONG_TYPE)) {
+			il.add(ASMUtils.checkCast(Long.class));
+			il.add(BoxedPrimitivesMethods.longValue(Long.class));
+		}
+		else if (t.equals(Type.DOUBLE_TYPE)) {
+			il.add(ASMUtils.checkCast(Double.class));
+			il.add(BoxedPrimitivesMethods.doubleValue(Double.class));
+		}
+		return il;
+	}
+
+	static AbstractInsnNode defaultValue(Type t) {
+		if (t.equals(Type.LONG_TYPE)) return new InsnNode(LCONST_0);
+		else if (t.equals(Type.DOUBLE_TYPE)) return new InsnNode(DCONST_0);
+		else return new InsnNode(ACONST_NULL);
+	}
+
+	AbstractInsnNode loadRegister(int idx) {
+		return new VarInsnNode(registerType(idx).getOpcode(ILOAD), registerLocal(idx));
+	}
+
+	AbstractInsnNode storeRegister(int idx) {
+		return new VarInsnNode(registerType(idx).getOpcode(ISTORE), registerLocal(idx));
+	}
+
+	// loads the register as an object, boxing it if necessary
+	InsnList loadBoxedRegister(int idx) {
+		InsnList il = new InsnList();
+		il.add(loadRegister(idx));
+		il.add(box(registerType(idx)));
+		return il;
+	}
+
+	// stores the object at the top of the stack into the register, unboxing it if necessary
+	InsnList storeBoxedRegister(int idx) {
+		InsnList il = new InsnList();
+		il.add(unbox(registerType(idx)));
+		il.add(storeRegister(idx));
+		return il;
+	}
+
 	public boolean isResumable() {
 		return resumable;
 	}
@@ -158,7 +253,7 @@ class RunMethod {
 			args.add(ASMUtils.arrayTypeFor(Object.class));
 		}
 		for (int i = 0; i < numOfRegisters(); i++) {
-			args.add(Type.getType(Object.class));
+			args.add(registerType(i));
 		}
 		return Type.getMethodType(context.savedStateClassType(), args.toArray(new Type[0]));
 	}
@@ -172,6 +267,10 @@ class RunMethod {
 				false);
 	}
 
+	private int snapshotRegisterLocal(int idx, int regOffset) {
+		return regOffset + registerLocal(idx) - slotOffset();
+	}
+
 	public MethodNode snapshotMethodNode() {
 		MethodNode node = new MethodNode(
 				ACC_PRIVATE,
@@ -199,10 +298,18 @@ class RunMethod {
 		il.add(ASMUtils.loadInt(numRegs));
 		il.add(new TypeInsnNode(ANEWARRAY, Type.getInternalName(Object.class)));
 		{
-			for (int i = 0; i < numRegs; i++) {
+			int idx = 0;
+			if (context.isVararg()) {
 				il.add(new InsnNode(DUP));
-				il.add(ASMUtils.loadInt(i));
-				il.add(new VarInsnNode(ALOAD, 2 + i));
+				il.add(ASMUtils.loadInt(idx++));
+				il.add(new VarInsnNode(ALOAD, 2));
+				il.add(new InsnNode(AASTORE));
+			}
+			for (int i = 0; i < numOfRegisters(); i++) {
+				il.add(new InsnNode(DUP));
+				il.add(ASMUtils.loadInt(idx++));
+				il.add(new VarInsnNode(registerType(i).getOpcode(ILOAD), snapshotRegisterLocal(i, regOffset)));
+				il.add(box(registerType(i)));
 				il.add(new InsnNode(AASTORE));
 			}
 		}
@@ -224,11 +331,11 @@ class RunMethod {
 			locals.add(new LocalVariableNode("varargs", ASMUtils.arrayTypeFor(Object.class).getDescriptor(), null, begin, end, 2));
 		}
 		for (int i = 0; i < numOfRegisters(); i++) {
-			locals.add(new LocalVariableNode("r_" + i, Type.getDescriptor(Object.class), null, begin, end, regOffset + i));
+			locals.add(new LocalVariableNode("r_" + i, registerType(i).getDescriptor(), null, begin, end, snapshotRegisterLocal(i, regOffset)));
 		}
 
-		node.maxLocals = 2 + numOfRegisters();
-		node.maxStack = 4 + 3;  // 4 to get register array at top, +3 to add element to it
+		node.maxLocals = regOffset + registersSize();
+		node.maxStack = 4 + 4;  // 4 to get register array at top, +4 to add (a possibly wide) element to it
 
 		return node;
 	}
@@ -246,7 +353,7 @@ class RunMethod {
 			args.add(ASMUtils.arrayTypeFor(Object.class));
 		}
 		for (int i = 0; i < numOfRegisters(); i++) {
-			args.add(Type.getType(Object.class));
+			args.add(registerType(i));
 		}
 		return Type.getMethodType(returnType, args.toArray(new Type[0]));
 	}
@@ -307,7 +414,7 @@ class RunMethod {
 			il.add(new VarInsnNode(ALOAD, LV_VARARGS));
 		}
 		for (int i = 0; i < numOfRegisters(); i++) {
-			il.add(new VarInsnNode(ALOAD, slotOffset() + i));
+			il.add(loadRegister(i));
 		}
 		il.add(snapshotMethodInvokeInsn());
 
@@ -438,7 +545,7 @@ class RunMethod {
 		}
 
 		for (int i = 0; i < numOfRegisters(); i++) {
-			locals.add(new LocalVariableNode("s_" + i, Type.getDescriptor(Object.class), null, l_begin, l_end, slotOffset() + i));
+			locals.add(new LocalVariableNode("s_" + i, registerType(i).getDescriptor(), null, l_begin, l_end, registerLocal(i)));
 		}
 
 		return locals;
@@ -543,7 +650,7 @@ class RunMethod {
 
 		InsnList il = node.instructions;
 
-		int lvOffset = slotOffset() + numOfRegisters();
+		int lvOffset = slotOffset() + registersSize();
 
 		int lv_rpp        = lvOffset + 0;
 		int lv_methodIdx  = lvOffset + 1;
@@ -628,7 +735,7 @@ class RunMethod {
 				il.add(new VarInsnNode(ALOAD, LV_VARARGS));
 			}
 			for (int j = 0; j < numOfRegisters(); j++) {
-				il.add(new VarInsnNode(ALOAD, slotOffset() + j));
+				il.add(loadRegister(j));
 			}
 
 			il.add(new MethodInsnNode(INVOKESPECIAL,
@@ -685,10 +792,18 @@ class RunMethod {
 				}
 				il.add(ASMUtils.loadInt(i));
 				il.add(new InsnNode(AALOAD));
-				if (i == 0 && context.isVararg()) {
-					il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
+				if (context.isVararg()) {
+					if (i == 0) {
+						il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
+						il.add(new VarInsnNode(ASTORE, LV_VARARGS));
+					}
+					else {
+						il.add(storeBoxedRegister(i - 1));
+					}
+				}
+				else {
+					il.add(storeBoxedRegister(i));
 				}
-				il.add(new VarInsnNode(ASTORE, LV_VARARGS + i));
 			}
 		}
 
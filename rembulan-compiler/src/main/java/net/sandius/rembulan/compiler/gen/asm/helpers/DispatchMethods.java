@@ -18,13 +18,21 @@ package net.sandius.rembulan.compiler.gen.asm.helpers;
 
 import net.sandius.rembulan.runtime.Dispatch;
 import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.LuaCallSite;
+import net.sandius.rembulan.runtime.OperatorCallSite;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import static org.objectweb.asm.Opcodes.H_INVOKESTATIC;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
 
 public class DispatchMethods {
@@ -78,6 +86,27 @@ public class DispatchMethods {
 				false);
 	}
 
+	private static final Handle OPERATOR_CALL_SITE_BOOTSTRAP = new Handle(
+			H_INVOKESTATIC,
+			Type.getInternalName(OperatorCallSite.class),
+			"bootstrap",
+			Type.getMethodDescriptor(
+					Type.getType(CallSite.class),
+					Type.getType(MethodHandles.Lookup.class),
+					Type.getType(String.class),
+					Type.getType(MethodType.class)));
+
+	public static AbstractInsnNode dynamicOperator(String methodName) {
+		return new InvokeDynamicInsnNode(
+				methodName,
+				Type.getMethodDescriptor(
+						Type.getType(Object.class),
+						Type.getType(ExecutionContext.class),
+						Type.getType(Object.class),
+						Type.getType(Object.class)),
+				OPERATOR_CALL_SITE_BOOTSTRAP);
+	}
+
 	public static AbstractInsnNode numeric(String methodName, int numArgs) {
 		Type[] args = new Type[numArgs];
 		Arrays.fill(args, Type.getType(Number.class));
@@ -99,6 +128,45 @@ public class DispatchMethods {
 		return dynamic(OP_SETINDEX, 3);
 	}
 
+	public static AbstractInsnNode index_int() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				OP_INDEX,
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ExecutionContext.class),
+						Type.getType(Object.class),
+						Type.LONG_TYPE),
+				false);
+	}
+
+	public static AbstractInsnNode setindex_int() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				OP_SETINDEX,
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ExecutionContext.class),
+						Type.getType(Object.class),
+						Type.LONG_TYPE,
+						Type.getType(Object.class)),
+				false);
+	}
+
+	public static AbstractInsnNode concat_array() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				OP_CONCAT,
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ExecutionContext.class),
+						ASMUtils.arrayTypeFor(Object.class)),
+				false);
+	}
+
 	public static int adjustKind_call(int kind) {
 		return kind > 0 ? (call_method(kind).exists() ? kind : 0) : 0;
 	}
@@ -119,6 +187,35 @@ public class DispatchMethods {
 		return call_method(kind).toMethodInsnNode();
 	}
 
+	private static final Handle CALL_SITE_BOOTSTRAP = new Handle(
+			H_INVOKESTATIC,
+			Type.getInternalName(LuaCallSite.class),
+			"bootstrap",
+			Type.getMethodDescriptor(
+					Type.getType(CallSite.class),
+					Type.getType(MethodHandles.Lookup.class),
+					Type.getType(String.class),
+					Type.getType(MethodType.class)));
+
+	public static AbstractInsnNode dynamicCall(int kind) {
+		return new InvokeDynamicInsnNode(
+				OP_CALL,
+				call_method(kind).getMethodType().getDescriptor(),
+				CALL_SITE_BOOTSTRAP);
+	}
+
+	public static AbstractInsnNode le(Type leftType, Type rightType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				OP_LE,
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						leftType,
+						rightType),
+				false);
+	}
+
 	public static AbstractInsnNode continueLoop() {
 		return new MethodInsnNode(
 				INVOKESTATIC,
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.gen.asm.helpers;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.impl.FieldCache;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.NEW;
+
+public class FieldCacheMethods {
+
+	private FieldCacheMethods() {
+		// not to be instantiated
+	}
+
+	public static Type selfTpe() {
+		return Type.getType(FieldCache.class);
+	}
+
+	public static InsnList newCache(InsnList loadKey) {
+		InsnList il = new InsnList();
+
+		il.add(new TypeInsnNode(NEW, selfTpe().getInternalName()));
+		il.add(new InsnNode(DUP));
+		il.add(loadKey);
+		il.add(new MethodInsnNode(
+				INVOKESPECIAL,
+				selfTpe().getInternalName(),
+				"<init>",
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ByteString.class)),
+				false));
+
+		return il;
+	}
+
+	public static AbstractInsnNode rawget() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				selfTpe().getInternalName(),
+				"rawget",
+				Type.getMethodDescriptor(
+						Type.getType(Object.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
+	public static AbstractInsnNode rawsetIfPresent() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				selfTpe().getInternalName(),
+				"rawsetIfPresent",
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						Type.getType(Object.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
+}
@@ -47,6 +47,29 @@ public class OperatorMethods {
 				false);
 	}
 
+	public static AbstractInsnNode rawUnaryOperator(String methodName, Type returnType, Type argType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(LuaMathOperators.class),
+				methodName,
+				Type.getMethodDescriptor(
+						returnType,
+						argType),
+				false);
+	}
+
+	public static AbstractInsnNode rawComparison(String methodName, Type leftType, Type rightType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(LuaMathOperators.class),
+				methodName,
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						leftType,
+						rightType),
+				false);
+	}
+
 	public static AbstractInsnNode stringLen() {
 		return new MethodInsnNode(
 				INVOKESTATIC,
@@ -29,6 +29,17 @@ public class TableMethods {
 		// not to be instantiated
 	}
 
+	public static AbstractInsnNode rawget_int() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				Type.getInternalName(Table.class),
+				"rawget",
+				Type.getMethodDescriptor(
+						Type.getType(Object.class),
+						Type.LONG_TYPE),
+				false);
+	}
+
 	public static AbstractInsnNode rawset_int() {
 		return new MethodInsnNode(
 				INVOKEVIRTUAL,
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.compiler.ir;
+
+import net.sandius.rembulan.util.Check;
+
+import java.util.List;
+import java.util.Objects;
+
+public class Concat extends BodyNode {
+
+	private final Val dest;
+	private final List<Val> args;
+
+	public Concat(Val dest, List<Val> args) {
+		this.dest = Objects.requireNonNull(dest);
+		this.args = Objects.requireNonNull(args);
+		Check.gt(args.size(), 1);
+	}
+
+	public Val dest() {
+		return dest;
+	}
+
+	public List<Val> args() {
+		return args;
+	}
+
+	@Override
+	public void accept(IRVisitor visitor) {
+		visitor.visit(this);
+	}
+
+}
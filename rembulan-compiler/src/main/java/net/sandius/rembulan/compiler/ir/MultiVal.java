@@ -29,4 +29,8 @@ public class MultiVal {
 		return "*" + idx;
 	}
 
+	public int idx() {
+		return idx;
+	}
+
 }
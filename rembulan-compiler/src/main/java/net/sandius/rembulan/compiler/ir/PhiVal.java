@@ -29,4 +29,8 @@ public class PhiVal extends AbstractVal {
 		return "&" + idx;
 	}
 
+	public int idx() {
+		return idx;
+	}
+
 }
@@ -26,11 +26,15 @@ public class RegProvider {
 
 	private int varIdx;
 
+	public RegProvider(int valIdx, int phiValIdx, int multiValIdx, int varIdx) {
+		this.valIdx = valIdx;
+		this.phiValIdx = phiValIdx;
+		this.multiValIdx = multiValIdx;
+		this.varIdx = varIdx;
+	}
+
 	public RegProvider() {
-		this.valIdx = 0;
-		this.phiValIdx = 0;
-		this.varIdx = 0;
-		this.multiValIdx = 0;
+		this(0, 0, 0, 0);
 	}
 
 	public Val newVal() {
@@ -29,4 +29,8 @@ public class Val extends AbstractVal {
 		return ":" + idx;
 	}
 
+	public int idx() {
+		return idx;
+	}
+
 }
@@ -29,4 +29,8 @@ public class Var extends AbstractVar {
 		return "$" + idx;
 	}
 
+	public int idx() {
+		return idx;
+	}
+
 }
@@ -74,8 +74,9 @@ class BranchInlinerVisitor extends CodeTransformerVisitor {
 			// t evaluates to false
 			inline = !cond.expected();
 		}
-		else if (t.isSubtypeOf(LuaTypes.ANY) && !t.equals(LuaTypes.ANY) && !t.isSubtypeOf(LuaTypes.BOOLEAN)) {
-			// t evaluates to true
+		else if (t.isSubtypeOf(LuaTypes.ANY) && !t.equals(LuaTypes.ANY)
+				&& !t.isSubtypeOf(LuaTypes.BOOLEAN) && !LuaTypes.BOOLEAN.isSubtypeOf(t)) {
+			// t evaluates to true (note that abstract types such as non-nil include boolean)
 			inline = cond.expected();
 		}
 		else {
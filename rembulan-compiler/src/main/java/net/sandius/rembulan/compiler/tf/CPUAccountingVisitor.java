@@ -141,6 +141,11 @@ class CPUAccountingVisitor extends CodeTransformerVisitor {
 			account.staticCost();
 		}
 
+		@Override
+		public void visit(Concat node) {
+			account.staticCost();
+		}
+
 		@Override
 		public void visit(TabNew node) {
 			account.staticCost();
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.tf;
+
+import net.sandius.rembulan.compiler.FunctionId;
+import net.sandius.rembulan.compiler.IRFunc;
+import net.sandius.rembulan.compiler.Module;
+import net.sandius.rembulan.compiler.ir.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Inlining of calls to small local functions.
+ *
+ * <p>A call is inlined when its target is a closure that is either created immediately
+ * before the call, or stored in a local variable that is not captured by any closure
+ * (i.e., is not reassigned in a nested function, and the function is not recursive)
+ * and that is never reassigned. In addition, the called function must not be a vararg
+ * function, its code must not exceed {@link #MAX_FUNCTION_SIZE} nodes, the call must
+ * have a fixed number of arguments, and its results must only be accessed individually
+ * (i.e., not passed on as a multi-value).</p>
+ *
+ * <p>The code of the called function is copied into the caller with fresh registers
+ * and labels. Its parameters become local variables of the caller, and its upvalues
+ * are replaced by the variables and upvalues of the caller that the closure captures.
+ * Returns store the results into phi values read by the caller after the call, and tail
+ * calls become ordinary calls.</p>
+ *
+ * <p>The code of the called function is copied including its CPU accounting nodes, and
+ * the cost of the call remains accounted for in the caller. This transformation
+ * must therefore be applied to code whose CPU accounting has already been initialised.</p>
+ */
+public class FunctionInliner {
+
+	/**
+	 * The maximum number of nodes in a function inlined by this transformation.
+	 */
+	public static final int MAX_FUNCTION_SIZE = 32;
+
+	/**
+	 * The maximum number of nodes inlined into a single function.
+	 */
+	public static final int MAX_INLINED_NODES = 512;
+
+	private final IRFunc fn;
+	private final Module module;
+	private final InlineAnalysisVisitor analysis;
+	private final RegProvider provider;
+	private final Map<FunctionId, IRFunc> callees;
+	private final Map<Call, IRFunc> inlined;
+	private final Map<MultiVal, List<PhiVal>> results;
+	private int nextLabelIdx;
+
+	private FunctionInliner(IRFunc fn, Module module) {
+		this.fn = Objects.requireNonNull(fn);
+		this.module = Objects.requireNonNull(module);
+		this.analysis = new InlineAnalysisVisitor();
+		analysis.visit(fn);
+		// fresh registers are named after those already used in fn
+		this.provider = analysis.regProvider();
+		this.callees = new HashMap<>();
+		this.inlined = new HashMap<>();
+		this.results = new HashMap<>();
+	}
+
+	/**
+	 * Inlines calls to small local functions in {@code fn}, taking the code of the called
+	 * functions from {@code module}.
+	 *
+	 * @param fn  the function to transform, must not be {@code null}
+	 * @param module  the module containing {@code fn}, must not be {@code null}
+	 * @return  {@code fn} with the calls to small local functions inlined
+	 *
+	 * @throws NullPointerException  if {@code fn} or {@code module} is {@code null}
+	 */
+	public static IRFunc inlineLocalFunctions(IRFunc fn, Module module) {
+		FunctionInliner inliner = new FunctionInliner(fn, module);
+		return fn.update(inliner.transform());
+	}
+
+	private static int size(IRFunc fn) {
+		int size = 0;
+		Iterator<BasicBlock> it = fn.code().blockIterator();
+		while (it.hasNext()) {
+			BasicBlock b = it.next();
+			for (BodyNode n : b.body()) {
+				if (!(n instanceof CPUWithdraw) && !(n instanceof Line)) {
+					size += 1;
+				}
+			}
+			size += 1;  // the block end
+		}
+		return size;
+	}
+
+	private IRFunc callee(FunctionId id) {
+		IRFunc result = callees.get(id);
+		if (result == null) {
+			result = CPUAccounter.insertCPUAccounting(module.get(id));
+			callees.put(id, result);
+		}
+		return result;
+	}
+
+	// the closure called by call if it may be inlined, or null
+	private Closure inlinableClosure(Call call) {
+		if (call.args().isMulti()) {
+			return null;
+		}
+
+		BodyNode def = analysis.def(call.fn());
+		if (def instanceof Closure) {
+			return (Closure) def;
+		}
+		else if (def instanceof VarLoad) {
+			return analysis.closureIn(((VarLoad) def).var());
+		}
+		else {
+			return null;
+		}
+	}
+
+	private void plan() {
+		int budget = MAX_INLINED_NODES;
+
+		Iterator<BasicBlock> it = fn.code().blockIterator();
+		while (it.hasNext()) {
+			for (BodyNode n : it.next().body()) {
+				if (!(n instanceof Call)) {
+					continue;
+				}
+
+				Call call = (Call) n;
+				Closure closure = inlinableClosure(call);
+				if (closure == null || closure.id().equals(fn.id())) {
+					continue;
+				}
+
+				IRFunc callee = callee(closure.id());
+				int size = size(callee);
+				if (callee.isVararg() || size > MAX_FUNCTION_SIZE || size > budget) {
+					continue;
+				}
+
+				List<MultiGet> gets = analysis.multiGets(call.dest());
+				if (gets == null) {
+					continue;
+				}
+
+				int numResults = 0;
+				for (MultiGet g : gets) {
+					numResults = Math.max(numResults, g.idx() + 1);
+				}
+
+				List<PhiVal> phis = new ArrayList<>();
+				for (int i = 0; i < numResults; i++) {
+					phis.add(provider.newPhiVal());
+				}
+
+				inlined.put(call, callee);
+				results.put(call.dest(), Collections.unmodifiableList(phis));
+				budget -= size;
+			}
+		}
+	}
+
+	private Code transform() {
+		plan();
+
+		if (inlined.isEmpty()) {
+			return fn.code();
+		}
+
+		nextLabelIdx = analysis.maxLabelIdx() + 1;
+
+		List<BasicBlock> blocks = new ArrayList<>();
+
+		Iterator<BasicBlock> it = fn.code().blockIterator();
+		while (it.hasNext()) {
+			BasicBlock block = it.next();
+
+			Label label = block.label();
+			List<BodyNode> body = new ArrayList<>();
+			Line line = null;
+
+			for (BodyNode n : block.body()) {
+				if (n instanceof Line) {
+					line = (Line) n;
+				}
+
+				if (n instanceof MultiGet && results.containsKey(((MultiGet) n).src())) {
+					MultiGet mg = (MultiGet) n;
+					body.add(new PhiLoad(mg.dest(), results.get(mg.src()).get(mg.idx())));
+				}
+				else if (n instanceof Call && inlined.containsKey(n)) {
+					Call call = (Call) n;
+					Label contLabel = new Label(nextLabelIdx++);
+
+					List<BasicBlock> calleeBlocks = inline(call, body, contLabel);
+
+					blocks.add(new BasicBlock(label, Collections.unmodifiableList(body),
+							new ToNext(calleeBlocks.get(0).label())));
+					blocks.addAll(calleeBlocks);
+
+					// continue in the caller
+					label = contLabel;
+					body = new ArrayList<>();
+					if (line != null) {
+						body.add(new Line(line.lineNumber()));
+					}
+				}
+				else {
+					body.add(n);
+				}
+			}
+
+			blocks.add(new BasicBlock(label, Collections.unmodifiableList(body), block.end()));
+		}
+
+		return Code.of(blocks);
+	}
+
+	// initialises the parameters in body, and returns the code of the called function
+	private List<BasicBlock> inline(Call call, List<BodyNode> body, Label contLabel) {
+		IRFunc callee = inlined.get(call);
+		Closure closure = inlinableClosure(call);
+
+		assert (closure != null);
+		assert (closure.args().size() == callee.upvals().size());
+
+		Map<UpVar, AbstractVar> upvals = new HashMap<>();
+		for (int i = 0; i < callee.upvals().size(); i++) {
+			upvals.put(callee.upvals().get(i), closure.args().get(i));
+		}
+
+		// excess arguments are dropped, missing arguments are nil
+		Map<Var, Var> params = new HashMap<>();
+		List<Val> args = call.args().addrs();
+		for (int i = 0; i < callee.params().size(); i++) {
+			Var param = provider.newVar();
+			params.put(callee.params().get(i), param);
+
+			Val arg;
+			if (i < args.size()) {
+				arg = args.get(i);
+			}
+			else {
+				arg = provider.newVal();
+				body.add(new LoadConst.Nil(arg));
+			}
+			body.add(new VarInit(param, arg));
+		}
+
+		InlinedCodeVisitor visitor = new InlinedCodeVisitor(
+				provider, params, upvals, contLabel, results.get(call.dest()), nextLabelIdx);
+		visitor.visit(callee);
+		nextLabelIdx = visitor.nextLabelIdx();
+
+		return visitor.result();
+	}
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.tf;
+
+import net.sandius.rembulan.compiler.IRFunc;
+import net.sandius.rembulan.compiler.ir.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// collects the definitions and uses relevant to inlining
+class InlineAnalysisVisitor extends CodeVisitor {
+
+	private final Map<Val, BodyNode> valDefs;
+	private final Set<Val> multiplyDefined;
+	private final Map<Var, List<BodyNode>> varDefs;
+	private final Set<Var> captured;
+	private final Set<Var> pending;
+	private final Set<Var> readBeforeStore;
+	private final Map<MultiVal, List<MultiGet>> multiGets;
+	private final Set<MultiVal> escaping;
+	private int maxLabelIdx;
+	private int maxValIdx;
+	private int maxPhiValIdx;
+	private int maxMultiValIdx;
+	private int maxVarIdx;
+
+	public InlineAnalysisVisitor() {
+		this.valDefs = new HashMap<>();
+		this.multiplyDefined = new HashSet<>();
+		this.varDefs = new HashMap<>();
+		this.captured = new HashSet<>();
+		this.pending = new HashSet<>();
+		this.readBeforeStore = new HashSet<>();
+		this.multiGets = new HashMap<>();
+		this.escaping = new HashSet<>();
+		this.maxLabelIdx = 0;
+		this.maxValIdx = -1;
+		this.maxPhiValIdx = -1;
+		this.maxMultiValIdx = -1;
+		this.maxVarIdx = -1;
+	}
+
+	// the unique node defining v, or null
+	public BodyNode def(Val v) {
+		return multiplyDefined.contains(v) ? null : valDefs.get(v);
+	}
+
+	// the closure stored in v, if v is only ever initialised to nil and then set to a closure
+	public Closure closureIn(Var v) {
+		if (captured.contains(v)) {
+			// may be reassigned in a nested function, or the function is recursive
+			return null;
+		}
+
+		if (readBeforeStore.contains(v)) {
+			// may be called while still nil
+			return null;
+		}
+
+		List<BodyNode> defs = varDefs.get(v);
+		if (defs == null) {
+			return null;
+		}
+
+		Closure result = null;
+		int nils = 0;
+		for (BodyNode n : defs) {
+			Val src = n instanceof VarInit ? ((VarInit) n).src() : ((VarStore) n).src();
+			BodyNode srcDef = def(src);
+
+			if (srcDef instanceof Closure && result == null) {
+				result = (Closure) srcDef;
+			}
+			else if (srcDef instanceof LoadConst.Nil && n instanceof VarInit && nils == 0) {
+				nils += 1;
+			}
+			else {
+				return null;
+			}
+		}
+
+		return result;
+	}
+
+	// the MultiGet nodes reading from mv, or null if mv is used in any other way
+	public List<MultiGet> multiGets(MultiVal mv) {
+		if (escaping.contains(mv)) {
+			return null;
+		}
+		else {
+			List<MultiGet> result = multiGets.get(mv);
+			return result != null ? result : new ArrayList<MultiGet>();
+		}
+	}
+
+	public int maxLabelIdx() {
+		return maxLabelIdx;
+	}
+
+	// a register provider continuing after the registers used in the visited function
+	public RegProvider regProvider() {
+		return new RegProvider(maxValIdx + 1, maxPhiValIdx + 1, maxMultiValIdx + 1, maxVarIdx + 1);
+	}
+
+	private void def(Val v, BodyNode node) {
+		maxValIdx = Math.max(maxValIdx, v.idx());
+		if (valDefs.put(v, node) != null) {
+			multiplyDefined.add(v);
+		}
+	}
+
+	private void def(Var v, BodyNode node) {
+		maxVarIdx = Math.max(maxVarIdx, v.idx());
+		List<BodyNode> defs = varDefs.get(v);
+		if (defs == null) {
+			defs = new ArrayList<>();
+			varDefs.put(v, defs);
+		}
+		defs.add(node);
+	}
+
+	private void use(VList vl) {
+		if (vl.isMulti()) {
+			escaping.add(vl.suffix());
+		}
+	}
+
+	private void seen(PhiVal pv) {
+		maxPhiValIdx = Math.max(maxPhiValIdx, pv.idx());
+	}
+
+	private void seen(MultiVal mv) {
+		maxMultiValIdx = Math.max(maxMultiValIdx, mv.idx());
+	}
+
+	@Override
+	public void visit(IRFunc func) {
+		for (Var v : func.params()) {
+			maxVarIdx = Math.max(maxVarIdx, v.idx());
+		}
+		super.visit(func);
+	}
+
+	@Override
+	public void visit(BasicBlock block) {
+		super.visit(block);
+
+		// the variable must be set in the same block in which it is initialised to nil
+		readBeforeStore.addAll(pending);
+		pending.clear();
+	}
+
+	@Override
+	public void visit(Label node) {
+		maxLabelIdx = Math.max(maxLabelIdx, node.idx());
+	}
+
+	@Override
+	public void visit(LoadConst.Nil node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(LoadConst.Bool node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(LoadConst.Int node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(LoadConst.Flt node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(LoadConst.Str node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(BinOp node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(UnOp node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(Concat node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(TabNew node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(TabGet node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(TabRawAppendMulti node) {
+		escaping.add(node.src());
+	}
+
+	@Override
+	public void visit(VarInit node) {
+		def(node.var(), node);
+		if (valDefs.get(node.src()) instanceof LoadConst.Nil) {
+			pending.add(node.var());
+		}
+	}
+
+	@Override
+	public void visit(VarLoad node) {
+		def(node.dest(), node);
+		if (pending.contains(node.var())) {
+			readBeforeStore.add(node.var());
+		}
+	}
+
+	@Override
+	public void visit(VarStore node) {
+		def(node.var(), node);
+		pending.remove(node.var());
+	}
+
+	@Override
+	public void visit(UpLoad node) {
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(Ret node) {
+		use(node.args());
+	}
+
+	@Override
+	public void visit(TCall node) {
+		use(node.args());
+	}
+
+	@Override
+	public void visit(Call node) {
+		use(node.args());
+		seen(node.dest());
+	}
+
+	@Override
+	public void visit(Vararg node) {
+		seen(node.dest());
+	}
+
+	@Override
+	public void visit(MultiGet node) {
+		def(node.dest(), node);
+
+		List<MultiGet> gets = multiGets.get(node.src());
+		if (gets == null) {
+			gets = new ArrayList<>();
+			multiGets.put(node.src(), gets);
+		}
+		gets.add(node);
+	}
+
+	@Override
+	public void visit(PhiStore node) {
+		seen(node.dest());
+	}
+
+	@Override
+	public void visit(PhiLoad node) {
+		def(node.dest(), node);
+		seen(node.src());
+	}
+
+	@Override
+	public void visit(Closure node) {
+		for (AbstractVar v : node.args()) {
+			if (v instanceof Var) {
+				captured.add((Var) v);
+			}
+		}
+		def(node.dest(), node);
+	}
+
+	@Override
+	public void visit(ToNumber node) {
+		def(node.dest(), node);
+	}
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.tf;
+
+import net.sandius.rembulan.compiler.ir.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// copies the code of an inlined function into the caller, using fresh registers and labels
+class InlinedCodeVisitor extends CodeVisitor {
+
+	private final RegProvider provider;
+	private final Map<UpVar, AbstractVar> upvals;
+	private final Label contLabel;
+	private final List<PhiVal> results;
+
+	private final Map<Val, Val> vals;
+	private final Map<PhiVal, PhiVal> phiVals;
+	private final Map<MultiVal, MultiVal> multiVals;
+	private final Map<Var, Var> vars;
+	private final Map<Label, Label> labels;
+	private int nextLabelIdx;
+
+	private final List<BasicBlock> blocks;
+	private List<BodyNode> body;
+	private BlockTermNode end;
+
+	public InlinedCodeVisitor(
+			RegProvider provider,
+			Map<Var, Var> params,
+			Map<UpVar, AbstractVar> upvals,
+			Label contLabel,
+			List<PhiVal> results,
+			int firstLabelIdx) {
+
+		this.provider = Objects.requireNonNull(provider);
+		this.upvals = Objects.requireNonNull(upvals);
+		this.contLabel = Objects.requireNonNull(contLabel);
+		this.results = Objects.requireNonNull(results);
+
+		this.vals = new HashMap<>();
+		this.phiVals = new HashMap<>();
+		this.multiVals = new HashMap<>();
+		this.vars = new HashMap<>(params);
+		this.labels = new HashMap<>();
+		this.nextLabelIdx = firstLabelIdx;
+
+		this.blocks = new ArrayList<>();
+	}
+
+	public List<BasicBlock> result() {
+		return blocks;
+	}
+
+	public int nextLabelIdx() {
+		return nextLabelIdx;
+	}
+
+	public Label label(Label l) {
+		Label result = labels.get(l);
+		if (result == null) {
+			result = new Label(nextLabelIdx++);
+			labels.put(l, result);
+		}
+		return result;
+	}
+
+	private Val val(Val v) {
+		Val result = vals.get(v);
+		if (result == null) {
+			result = provider.newVal();
+			vals.put(v, result);
+		}
+		return result;
+	}
+
+	private PhiVal phiVal(PhiVal pv) {
+		PhiVal result = phiVals.get(pv);
+		if (result == null) {
+			result = provider.newPhiVal();
+			phiVals.put(pv, result);
+		}
+		return result;
+	}
+
+	private MultiVal multiVal(MultiVal mv) {
+		MultiVal result = multiVals.get(mv);
+		if (result == null) {
+			result = provider.newMultiVal();
+			multiVals.put(mv, result);
+		}
+		return result;
+	}
+
+	private Var var(Var v) {
+		Var result = vars.get(v);
+		if (result == null) {
+			result = provider.newVar();
+			vars.put(v, result);
+		}
+		return result;
+	}
+
+	private AbstractVar upval(UpVar uv) {
+		AbstractVar result = upvals.get(uv);
+		if (result == null) {
+			throw new IllegalStateException("Unknown upvalue: " + uv);
+		}
+		return result;
+	}
+
+	private AbstractVar abstractVar(AbstractVar v) {
+		if (v instanceof Var) return var((Var) v);
+		else if (v instanceof UpVar) return upval((UpVar) v);
+		else throw new IllegalStateException("Illegal abstract var: " + v);
+	}
+
+	private List<Val> vals(List<Val> vs) {
+		List<Val> result = new ArrayList<>();
+		for (Val v : vs) {
+			result.add(val(v));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	private VList vlist(VList vl) {
+		return new VList(vals(vl.addrs()), vl.isMulti() ? multiVal(vl.suffix()) : null);
+	}
+
+	@Override
+	public void visit(BasicBlock block) {
+		body = new ArrayList<>();
+		end = null;
+
+		try {
+			super.visit(block);
+			assert (end != null);
+			blocks.add(new BasicBlock(label(block.label()), Collections.unmodifiableList(body), end));
+		}
+		finally {
+			body = null;
+			end = null;
+		}
+	}
+
+	@Override
+	public void visit(LoadConst.Nil node) {
+		body.add(new LoadConst.Nil(val(node.dest())));
+	}
+
+	@Override
+	public void visit(LoadConst.Bool node) {
+		body.add(new LoadConst.Bool(val(node.dest()), node.value()));
+	}
+
+	@Override
+	public void visit(LoadConst.Int node) {
+		body.add(new LoadConst.Int(val(node.dest()), node.value()));
+	}
+
+	@Override
+	public void visit(LoadConst.Flt node) {
+		body.add(new LoadConst.Flt(val(node.dest()), node.value()));
+	}
+
+	@Override
+	public void visit(LoadConst.Str node) {
+		body.add(new LoadConst.Str(val(node.dest()), node.value()));
+	}
+
+	@Override
+	public void visit(BinOp node) {
+		body.add(new BinOp(node.op(), val(node.dest()), val(node.left()), val(node.right())));
+	}
+
+	@Override
+	public void visit(UnOp node) {
+		body.add(new UnOp(node.op(), val(node.dest()), val(node.arg())));
+	}
+
+	@Override
+	public void visit(Concat node) {
+		body.add(new Concat(val(node.dest()), vals(node.args())));
+	}
+
+	@Override
+	public void visit(TabNew node) {
+		body.add(new TabNew(val(node.dest()), node.array(), node.hash()));
+	}
+
+	@Override
+	public void visit(TabGet node) {
+		body.add(new TabGet(val(node.dest()), val(node.obj()), val(node.key())));
+	}
+
+	@Override
+	public void visit(TabSet node) {
+		body.add(new TabSet(val(node.obj()), val(node.key()), val(node.value())));
+	}
+
+	@Override
+	public void visit(TabRawSet node) {
+		body.add(new TabRawSet(val(node.obj()), val(node.key()), val(node.value())));
+	}
+
+	@Override
+	public void visit(TabRawSetInt node) {
+		body.add(new TabRawSetInt(val(node.obj()), node.idx(), val(node.value())));
+	}
+
+	@Override
+	public void visit(TabRawAppendMulti node) {
+		body.add(new TabRawAppendMulti(val(node.obj()), (int) node.firstIdx(), multiVal(node.src())));
+	}
+
+	@Override
+	public void visit(VarInit node) {
+		body.add(new VarInit(var(node.var()), val(node.src())));
+	}
+
+	@Override
+	public void visit(VarLoad node) {
+		body.add(new VarLoad(val(node.dest()), var(node.var())));
+	}
+
+	@Override
+	public void visit(VarStore node) {
+		body.add(new VarStore(var(node.var()), val(node.src())));
+	}
+
+	@Override
+	public void visit(UpLoad node) {
+		// the upvalue is a variable or an upvalue of the caller
+		AbstractVar v = upval(node.upval());
+		if (v instanceof Var) {
+			body.add(new VarLoad(val(node.dest()), (Var) v));
+		}
+		else {
+			body.add(new UpLoad(val(node.dest()), (UpVar) v));
+		}
+	}
+
+	@Override
+	public void visit(UpStore node) {
+		AbstractVar v = upval(node.upval());
+		if (v instanceof Var) {
+			body.add(new VarStore((Var) v, val(node.src())));
+		}
+		else {
+			body.add(new UpStore((UpVar) v, val(node.src())));
+		}
+	}
+
+	@Override
+	public void visit(Vararg node) {
+		throw new IllegalStateException("Vararg in an inlined function");
+	}
+
+	// store the first results.size() values of (addrs, suffix) to results, and continue
+	// in the caller; addrs and suffix have already been mapped
+	private void returnTo(List<Val> addrs, MultiVal suffix) {
+		for (int i = 0; i < results.size(); i++) {
+			Val v;
+			if (i < addrs.size()) {
+				v = addrs.get(i);
+			}
+			else {
+				v = provider.newVal();
+				if (suffix != null) {
+					body.add(new MultiGet(v, suffix, i - addrs.size()));
+				}
+				else {
+					body.add(new LoadConst.Nil(v));
+				}
+			}
+			body.add(new PhiStore(results.get(i), v));
+		}
+		end = new Jmp(contLabel);
+	}
+
+	@Override
+	public void visit(Ret node) {
+		VList vl = vlist(node.args());
+		returnTo(vl.addrs(), vl.suffix());
+	}
+
+	@Override
+	public void visit(TCall node) {
+		// the tail call becomes an ordinary call
+		MultiVal mv = provider.newMultiVal();
+		body.add(new Call(mv, val(node.target()), vlist(node.args())));
+		returnTo(Collections.<Val>emptyList(), mv);
+	}
+
+	@Override
+	public void visit(Call node) {
+		body.add(new Call(multiVal(node.dest()), val(node.fn()), vlist(node.args())));
+	}
+
+	@Override
+	public void visit(MultiGet node) {
+		body.add(new MultiGet(val(node.dest()), multiVal(node.src()), node.idx()));
+	}
+
+	@Override
+	public void visit(PhiStore node) {
+		body.add(new PhiStore(phiVal(node.dest()), val(node.src())));
+	}
+
+	@Override
+	public void visit(PhiLoad node) {
+		body.add(new PhiLoad(val(node.dest()), phiVal(node.src())));
+	}
+
+	@Override
+	public void visit(Label node) {
+		// labels are mapped in visit(BasicBlock)
+	}
+
+	@Override
+	public void visit(Jmp node) {
+		end = new Jmp(label(node.jmpDest()));
+	}
+
+	@Override
+	public void visit(Closure node) {
+		List<AbstractVar> args = new ArrayList<>();
+		for (AbstractVar v : node.args()) {
+			args.add(abstractVar(v));
+		}
+		body.add(new Closure(val(node.dest()), node.id(), Collections.unmodifiableList(args)));
+	}
+
+	@Override
+	public void visit(ToNumber node) {
+		body.add(new ToNumber(val(node.dest()), val(node.src()), node.desc()));
+	}
+
+	@Override
+	public void visit(ToNext node) {
+		end = new ToNext(label(node.label()));
+	}
+
+	@Override
+	public void visit(Branch branch) {
+		final Branch.Condition cond;
+		Branch.Condition c = branch.condition();
+		if (c instanceof Branch.Condition.Nil) {
+			cond = new Branch.Condition.Nil(val(((Branch.Condition.Nil) c).addr()));
+		}
+		else if (c instanceof Branch.Condition.Bool) {
+			Branch.Condition.Bool b = (Branch.Condition.Bool) c;
+			cond = new Branch.Condition.Bool(val(b.addr()), b.expected());
+		}
+		else if (c instanceof Branch.Condition.NumLoopEnd) {
+			Branch.Condition.NumLoopEnd nle = (Branch.Condition.NumLoopEnd) c;
+			cond = new Branch.Condition.NumLoopEnd(val(nle.var()), val(nle.limit()), val(nle.step()));
+		}
+		else {
+			throw new IllegalStateException("Illegal branch condition: " + c);
+		}
+
+		end = new Branch(cond, label(branch.jmpDest()), label(branch.next()));
+	}
+
+	@Override
+	public void visit(CPUWithdraw node) {
+		body.add(new CPUWithdraw(node.cost()));
+	}
+
+	@Override
+	public void visit(Line node) {
+		body.add(new Line(node.lineNumber()));
+	}
+
+}
@@ -477,7 +477,8 @@ public class FormattingPrinterVisitor extends Visitor {
 
 	@Override
 	public void visit(Numeral.FloatNumeral node) {
-		out.print(LuaFormat.toString(node.value()));
+		// not LuaFormat.toString(double), which only retains 14 significant digits
+		out.print(Double.toString(node.value()).toLowerCase());
 	}
 
 	@Override
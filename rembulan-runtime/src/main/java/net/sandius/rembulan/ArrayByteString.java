@@ -29,16 +29,68 @@ import java.util.Objects;
 
 /**
  * A byte string backed by a byte array.
+ *
+ * <p>The byte string may be a <i>view</i> of a range of a larger array that it shares
+ * with the string it was obtained from using {@link #substring(int, int)}. In order to
+ * avoid retaining large arrays by small substrings, substrings share the array only when
+ * they are not too short, and when the array is not much larger than the substring
+ * (see {@link #MIN_VIEW_LENGTH} and {@link #MAX_VIEW_RATIO}). Otherwise, the substring
+ * is a compact copy of the range.</p>
  */
 class ArrayByteString extends ByteString {
 
 	static final ArrayByteString EMPTY_INSTANCE = new ArrayByteString(new byte[0]);
 
+	/**
+	 * Substrings shorter than this are always copied: their copy takes up no more
+	 * memory than a view.
+	 */
+	static final int MIN_VIEW_LENGTH = 16;
+
+	/**
+	 * Substrings are copied when the backing array is more than this many times longer
+	 * than the substring.
+	 */
+	static final int MAX_VIEW_RATIO = 8;
+
 	private final byte[] bytes;
+	private final int offset;
+	private final int length;
 	private int hashCode;
 
-	ArrayByteString(byte[] bytes) {
+	ArrayByteString(byte[] bytes, int offset, int length) {
 		this.bytes = Objects.requireNonNull(bytes);
+		this.offset = offset;
+		this.length = length;
+	}
+
+	ArrayByteString(byte[] bytes) {
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Returns a byte string with the contents of {@code bytes} between {@code start}
+	 * (inclusive) and {@code end} (exclusive), either sharing {@code bytes} or copying
+	 * the range, according to the policy described in the class documentation.
+	 *
+	 * <p>The array {@code bytes} must not be modified afterwards.</p>
+	 *
+	 * @param bytes  the byte array, must not be {@code null}
+	 * @param start  the index of the first byte (inclusive)
+	 * @param end  the index of the last byte (exclusive)
+	 * @return  a byte string with the contents of the range
+	 */
+	static ArrayByteString slice(byte[] bytes, int start, int end) {
+		int len = end - start;
+		if (len == bytes.length) {
+			return new ArrayByteString(bytes);
+		}
+		else if (len < MIN_VIEW_LENGTH || bytes.length / MAX_VIEW_RATIO > len) {
+			return new ArrayByteString(Arrays.copyOfRange(bytes, start, end));
+		}
+		else {
+			return new ArrayByteString(bytes, start, len);
+		}
 	}
 
 	@Override
@@ -57,9 +109,9 @@ class ArrayByteString extends ByteString {
 	public int hashCode() {
 		int hc = hashCode;
 		if (hc == 0) {
-			if (bytes.length > 0) {
-				for (byte b : bytes) {
-					hc = (hc * 31) + (b & 0xff);
+			if (length > 0) {
+				for (int i = offset; i < offset + length; i++) {
+					hc = (hc * 31) + (bytes[i] & 0xff);
 				}
 				hashCode = hc;
 			}
@@ -80,42 +132,45 @@ class ArrayByteString extends ByteString {
 
 	@Override
 	public String toRawString() {
-		char[] chars = new char[bytes.length];
+		char[] chars = new char[length];
 		for (int i = 0; i < chars.length; i++) {
-			chars[i] = (char) (bytes[i] & 0xff);
+			chars[i] = (char) (bytes[offset + i] & 0xff);
 		}
 		return String.valueOf(chars);
 	}
 
 	@Override
 	public int length() {
-		return bytes.length;
+		return length;
 	}
 
 	@Override
 	int maybeLength() {
-		return bytes.length;
+		return length;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return bytes.length == 0;
+		return length == 0;
 	}
 
 	@Override
 	public byte byteAt(int index) {
-		return bytes[index];
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return bytes[offset + index];
 	}
 
 	@Override
 	public ByteIterator byteIterator() {
-		return new ArrayByteIterator(bytes);
+		return new ArrayByteIterator(bytes, offset, length);
 	}
 
 	@Override
 	public InputStream asInputStream() {
 		// no need to go via the iterator
-		return new ByteArrayInputStream(bytes);
+		return new ByteArrayInputStream(bytes, offset, length);
 	}
 
 	private static void checkSubstringBounds(int start, int end, int len) {
@@ -127,18 +182,28 @@ class ArrayByteString extends ByteString {
 
 	@Override
 	public ByteString substring(int start, int end) {
-		checkSubstringBounds(start, end, bytes.length);
-		return new ArrayByteString(Arrays.copyOfRange(bytes, start, end));
+		checkSubstringBounds(start, end, length);
+		return slice(bytes, offset + start, offset + end);
 	}
 
 	@Override
 	public byte[] getBytes() {
-		return Arrays.copyOf(bytes, bytes.length);
+		return Arrays.copyOfRange(bytes, offset, offset + length);
+	}
+
+	@Override
+	byte[] sharedBytes() {
+		return bytes;
+	}
+
+	@Override
+	int sharedOffset() {
+		return offset;
 	}
 
 	@Override
 	public void putTo(ByteBuffer buffer) {
-		buffer.put(bytes);
+		buffer.put(bytes, offset, length);
 	}
 
 	@Override
@@ -149,7 +214,7 @@ class ArrayByteString extends ByteString {
 
 	@Override
 	public boolean startsWith(byte b) {
-		return bytes.length > 0 && bytes[0] == b;
+		return length > 0 && bytes[offset] == b;
 	}
 
 }
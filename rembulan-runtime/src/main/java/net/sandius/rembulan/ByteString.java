@@ -41,6 +41,9 @@ import java.util.Objects;
  *       &mdash; constructed using {@link #wrap(byte[])}.</li>
  * </ul>
  *
+ * <p>Additionally, the result of {@link #concat(ByteString)} may be a <i>rope</i>
+ * that refers to both operands, and copies their contents only once needed.</p>
+ *
  * <p>The {@code ByteString} class provides the functionality for treating both cases
  * as sequences of bytes when they take part in Lua operations, and as Java strings when
  * used by an outer Java application. However, these perspectives are as <i>lazy</i>
@@ -50,6 +53,13 @@ import java.util.Objects;
  */
 public abstract class ByteString implements Comparable<ByteString> {
 
+	/**
+	 * The maximum length of the result of {@link #concat(ByteString)} that is copied eagerly.
+	 * Longer results are represented by a rope, deferring the copy until the contents
+	 * are needed.
+	 */
+	static final int MAX_EAGER_CONCAT_LENGTH = 64;
+
 	ByteString() {
 		// no-op: package-private to restrict access
 	}
@@ -290,6 +300,19 @@ public abstract class ByteString implements Comparable<ByteString> {
 	 */
 	public abstract void putTo(ByteBuffer buffer);
 
+	/**
+	 * Returns a read-only view of the contents of this byte string as a byte buffer.
+	 *
+	 * <p>The position of the buffer is {@code 0}, its limit is {@link #length()} and
+	 * its byte order is {@link java.nio.ByteOrder#BIG_ENDIAN}. Whenever possible,
+	 * the buffer is backed by the bytes of this byte string rather than by a copy.</p>
+	 *
+	 * @return  a read-only byte buffer with the contents of this byte string
+	 */
+	public ByteBuffer asReadOnlyBuffer() {
+		return ByteBuffer.wrap(sharedBytes(), sharedOffset(), length()).slice().asReadOnlyBuffer();
+	}
+
 	/**
 	 * Writes the contents of this byte string to the specified {@code stream}.
 	 *
@@ -408,6 +431,11 @@ public abstract class ByteString implements Comparable<ByteString> {
 	 * may (<i>but might not necessarily</i>) preserve unmappable and malformed characters
 	 * occurring in the two strings.</p>
 	 *
+	 * <p>Unless the result is short, this method does not copy the contents of the two
+	 * byte strings: the copy is deferred until the contents of the result are
+	 * needed. Building a string by repeated concatenation therefore takes time linear
+	 * in the length of the result.</p>
+	 *
 	 * @param other  the byte string to concatenate this byte string with, must not be {@code null}
 	 * @return  this byte string concatenated with {@code other}
 	 *
@@ -417,6 +445,11 @@ public abstract class ByteString implements Comparable<ByteString> {
 		if (other.isEmpty()) return this;
 		else if (this.isEmpty()) return other;
 
+		long len = (long) this.length() + (long) other.length();
+		if (len > MAX_EAGER_CONCAT_LENGTH && len <= Integer.MAX_VALUE) {
+			return new RopeByteString(this, other);
+		}
+
 		byte[] thisBytes = this.getBytes();
 		byte[] otherBytes = other.getBytes();
 
@@ -456,6 +489,51 @@ public abstract class ByteString implements Comparable<ByteString> {
 
 	// TODO: add contains(ByteString)
 
+	/**
+	 * Returns the index of the first occurrence of the byte string {@code s} in this
+	 * byte string that starts at or after the index {@code fromIndex}, or {@code -1}
+	 * if there is no such occurrence.
+	 *
+	 * <p>A negative {@code fromIndex} is treated as zero. The empty byte string occurs
+	 * at every index from {@code 0} to {@code length()} (inclusive).</p>
+	 *
+	 * @param s  the byte string to search for, must not be {@code null}
+	 * @param fromIndex  the index to start the search at
+	 * @return  the index of the first occurrence of {@code s} at or after {@code fromIndex},
+	 *          or {@code -1} if not found
+	 *
+	 * @throws NullPointerException  if {@code s} is {@code null}
+	 */
+	public int indexOf(ByteString s, int fromIndex) {
+		return ByteStringSearch.indexOf(
+				this.sharedBytes(), this.sharedOffset(), this.length(),
+				s.sharedBytes(), s.sharedOffset(), s.length(),
+				fromIndex);
+	}
+
+	/**
+	 * Returns an array containing the bytes of this byte string without making
+	 * a defensive copy when possible. The result must not be modified.
+	 *
+	 * <p>The bytes of this byte string are the {@link #length()} bytes of the result
+	 * starting at the index {@link #sharedOffset()}.</p>
+	 *
+	 * @return  an array containing the bytes of this byte string, not to be modified
+	 */
+	byte[] sharedBytes() {
+		return getBytes();
+	}
+
+	/**
+	 * Returns the index of the first byte of this byte string in the array returned
+	 * by {@link #sharedBytes()}.
+	 *
+	 * @return  the offset of this byte string in {@link #sharedBytes()}
+	 */
+	int sharedOffset() {
+		return 0;
+	}
+
 	/**
 	 * Returns {@code true} if the byte string contains the byte {@code b}.
 	 *
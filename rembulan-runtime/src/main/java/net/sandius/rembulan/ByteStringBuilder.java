@@ -18,6 +18,7 @@ package net.sandius.rembulan;
 
 import net.sandius.rembulan.util.Check;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -227,7 +228,14 @@ public class ByteStringBuilder {
 	 * @throws NullPointerException  if {@code string} is {@code null}
 	 */
 	public ByteStringBuilder append(ByteString string) {
-		return append(string.getBytes());
+		int len = string.length();
+		if (len > 0) {
+			ensureCapacity(length + len);
+			// no need for a defensive copy of the contents of string
+			string.putTo(ByteBuffer.wrap(buffer, length, len));
+			length += len;
+		}
+		return this;
 	}
 
 	/**
@@ -265,6 +273,32 @@ public class ByteStringBuilder {
 		return append(charSequence, Charset.defaultCharset());
 	}
 
+	/**
+	 * Ensures that at least {@code len} bytes can be appended to this builder without
+	 * resizing, and returns the backing array. The caller may then write up to {@code len}
+	 * bytes to the array starting at {@link #length()}, and make them part of the constructed
+	 * sequence by calling {@link #commit(int)}.
+	 *
+	 * @param len  the number of bytes to reserve, must not be negative
+	 * @return  the backing array of this builder
+	 */
+	byte[] reserve(int len) {
+		ensureCapacity(length + len);
+		return buffer;
+	}
+
+	/**
+	 * Appends {@code len} bytes previously written to the array returned
+	 * by {@link #reserve(int)}.
+	 *
+	 * @param len  the number of bytes written, must not be greater than the number
+	 *             of bytes reserved
+	 */
+	void commit(int len) {
+		assert (length + len <= buffer.length);
+		length += len;
+	}
+
 	/**
 	 * Returns a byte string consisting of the bytes in this builder.
 	 *
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+/**
+ * Substring search in byte arrays.
+ *
+ * <p>Short needles and haystacks are searched for by a simple scan for the first byte
+ * of the needle, which the JIT compiler handles well. Longer needles are searched for
+ * using the Boyer-Moore-Horspool algorithm, which skips over up to the length
+ * of the needle at each step.</p>
+ */
+final class ByteStringSearch {
+
+	private ByteStringSearch() {
+		// not to be instantiated
+	}
+
+	// use Horspool for needles at least this long...
+	static final int MIN_HORSPOOL_NEEDLE_LENGTH = 4;
+
+	// ...in haystacks at least this long
+	static final int MIN_HORSPOOL_HAYSTACK_LENGTH = 64;
+
+	/**
+	 * Returns the index of the first occurrence of {@code needle} in {@code haystack}
+	 * starting at or after {@code fromIndex}, or {@code -1} if not found.
+	 *
+	 * <p>The haystack consists of the {@code n} bytes of the array {@code haystack} starting
+	 * at {@code hoff}, and the needle of the {@code m} bytes of the array {@code needle}
+	 * starting at {@code noff}. {@code fromIndex} and the result are relative
+	 * to {@code hoff}.</p>
+	 *
+	 * @param haystack  the array to search in, must not be {@code null}
+	 * @param hoff  the offset of the haystack in {@code haystack}
+	 * @param n  the length of the haystack
+	 * @param needle  the array to search for, must not be {@code null}
+	 * @param noff  the offset of the needle in {@code needle}
+	 * @param m  the length of the needle
+	 * @param fromIndex  the index to start the search at; negative values are treated as zero
+	 * @return  the index of the first occurrence of {@code needle}, or {@code -1}
+	 */
+	static int indexOf(byte[] haystack, int hoff, int n, byte[] needle, int noff, int m, int fromIndex) {
+		if (fromIndex < 0) {
+			fromIndex = 0;
+		}
+
+		if (m == 0) {
+			return fromIndex <= n ? fromIndex : -1;
+		}
+		else if (fromIndex >= n || m > n - fromIndex) {
+			return -1;
+		}
+		else if (m < MIN_HORSPOOL_NEEDLE_LENGTH || n - fromIndex < MIN_HORSPOOL_HAYSTACK_LENGTH) {
+			return scan(haystack, hoff, n, needle, noff, m, fromIndex);
+		}
+		else {
+			return horspool(haystack, hoff, n, needle, noff, m, fromIndex);
+		}
+	}
+
+	/**
+	 * Returns the index of the first occurrence of {@code needle} in {@code haystack}
+	 * starting at or after {@code fromIndex}, or {@code -1} if not found.
+	 *
+	 * @param haystack  the array to search in, must not be {@code null}
+	 * @param needle  the array to search for, must not be {@code null}
+	 * @param fromIndex  the index to start the search at; negative values are treated as zero
+	 * @return  the index of the first occurrence of {@code needle}, or {@code -1}
+	 */
+	static int indexOf(byte[] haystack, byte[] needle, int fromIndex) {
+		return indexOf(haystack, 0, haystack.length, needle, 0, needle.length, fromIndex);
+	}
+
+	private static boolean regionMatches(byte[] haystack, int offset, byte[] needle, int noff, int len) {
+		for (int j = 0; j < len; j++) {
+			if (haystack[offset + j] != needle[noff + j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int scan(byte[] haystack, int hoff, int n, byte[] needle, int noff, int m, int fromIndex) {
+		byte first = needle[noff];
+		int last = hoff + n - m;
+
+		for (int i = hoff + fromIndex; i <= last; i++) {
+			if (haystack[i] == first && regionMatches(haystack, i, needle, noff, m)) {
+				return i - hoff;
+			}
+		}
+		return -1;
+	}
+
+	private static int horspool(byte[] haystack, int hoff, int n, byte[] needle, int noff, int m, int fromIndex) {
+		int last = hoff + n - m;
+
+		// shift by the distance of the last occurrence of the byte from the end of the needle,
+		// not counting the last byte of the needle
+		int[] shift = new int[256];
+		for (int i = 0; i < shift.length; i++) {
+			shift[i] = m;
+		}
+		for (int i = 0; i < m - 1; i++) {
+			shift[needle[noff + i] & 0xff] = m - 1 - i;
+		}
+
+		byte lastByte = needle[noff + m - 1];
+		int i = hoff + fromIndex;
+		while (i <= last) {
+			byte b = haystack[i + m - 1];
+			if (b == lastByte && regionMatches(haystack, i, needle, noff, m - 1)) {
+				return i - hoff;
+			}
+			i += shift[b & 0xff];
+		}
+		return -1;
+	}
+
+}
@@ -36,27 +36,21 @@ public final class Conversions {
 	 * optional sign, the numerical value is the corresponding float. Otherwise, the {@code s}
 	 * does not have a numerical value.</p>
 	 *
-	 * <p>Leading and trailing whitespace in {@code s} is ignored by this method.</p>
+	 * <p>Leading and trailing whitespace in {@code s} is ignored by this method. Decimal
+	 * integer literals that do not fit in a {@code long} are converted to floats, while
+	 * hexadecimal integer literals wrap around (as in PUC-Lua).</p>
 	 *
 	 * <p>Numbers returned by this method are in the canonical representation.</p>
 	 *
-	 * @param s  string to convert to numerical value, may be {@code null}
+	 * <p>This method does not convert {@code s} to a {@code java.lang.String}.</p>
+	 *
+	 * @param s  string to convert to numerical value, must not be {@code null}
 	 * @return  a number representing the numerical value of {@code s} (in the canonical
 	 *          representation), or {@code null} if {@code s} does not have a numerical value
 	 */
 	public static Number numericalValueOf(ByteString s) {
-		String trimmed = s.toString().trim();
-		try {
-			return Long.valueOf(LuaFormat.parseInteger(trimmed));
-		}
-		catch (NumberFormatException ei) {
-			try {
-				return Double.valueOf(LuaFormat.parseFloat(trimmed));
-			}
-			catch (NumberFormatException ef) {
-				return null;
-			}
-		}
+		int offset = s.sharedOffset();
+		return NumberParser.parse(s.sharedBytes(), offset, offset + s.length());
 	}
 
 	/**
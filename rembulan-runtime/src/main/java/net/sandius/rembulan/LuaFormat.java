@@ -143,7 +143,29 @@ public final class LuaFormat {
 	 * @return  byte string representation of {@code l}
 	 */
 	public static ByteString toByteString(long l) {
-		return ByteString.of(toString(l));
+		byte[] bytes = new byte[NumberFormatter.integerLength(l)];
+		NumberFormatter.putInteger(l, bytes, 0);
+		return ByteString.wrap(bytes);
+	}
+
+	/**
+	 * Appends the Lua format byte string representation of the integer value {@code l}
+	 * to the builder {@code builder}.
+	 *
+	 * <p>This is equivalent to {@code builder.append(toByteString(l))}, but does not
+	 * allocate an intermediate byte string.</p>
+	 *
+	 * @param builder  the builder to append to, must not be {@code null}
+	 * @param l  the integer value
+	 * @return  {@code builder}
+	 *
+	 * @throws NullPointerException  if {@code builder} is {@code null}
+	 */
+	public static ByteStringBuilder appendTo(ByteStringBuilder builder, long l) {
+		byte[] buf = builder.reserve(NumberFormatter.MAX_INTEGER_LENGTH);
+		int off = builder.length();
+		builder.commit(NumberFormatter.putInteger(l, buf, off) - off);
+		return builder;
 	}
 
 	/**
@@ -160,26 +182,51 @@ public final class LuaFormat {
 		return toByteString(f).toString();
 	}
 
-	private static ByteString finiteDoubleToByteString(double f) {
-		// f assumed not to be NaN or infinite
-		// TODO: check precision used in Lua
-		// TODO: don't go via java.lang.String
-		String s = Double.toString(f).toLowerCase();
-		return ByteString.of(s);
-	}
-
 	private static final ByteString NEG_INF = ByteString.constOf("-" + INF);
 
 	/**
 	 * Returns the Lua format byte string representation of the float value {@code f}.
 	 *
+	 * <p>As in PUC-Lua, finite floats are formatted using the C format {@code "%.14g"},
+	 * with {@code ".0"} appended to results that look like integers (e.g. {@code "1.0"},
+	 * but {@code "1e+15"}).</p>
+	 *
 	 * @param f  the float value
 	 * @return  byte string representation of {@code f}
 	 */
 	public static ByteString toByteString(double f) {
 		if (Double.isNaN(f)) return NAN;
 		else if (Double.isInfinite(f)) return f > 0 ? INF : NEG_INF;
-		else return finiteDoubleToByteString(f);
+		else {
+			byte[] buf = new byte[NumberFormatter.MAX_FLOAT_LENGTH];
+			int len = NumberFormatter.putFloat(f, buf, 0);
+			return ByteString.copyOf(buf, 0, len);
+		}
+	}
+
+	/**
+	 * Appends the Lua format byte string representation of the float value {@code f}
+	 * to the builder {@code builder}.
+	 *
+	 * <p>This is equivalent to {@code builder.append(toByteString(f))}, but does not
+	 * allocate an intermediate byte string.</p>
+	 *
+	 * @param builder  the builder to append to, must not be {@code null}
+	 * @param f  the float value
+	 * @return  {@code builder}
+	 *
+	 * @throws NullPointerException  if {@code builder} is {@code null}
+	 */
+	public static ByteStringBuilder appendTo(ByteStringBuilder builder, double f) {
+		if (Double.isNaN(f) || Double.isInfinite(f)) {
+			return builder.append(toByteString(f));
+		}
+		else {
+			byte[] buf = builder.reserve(NumberFormatter.MAX_FLOAT_LENGTH);
+			int off = builder.length();
+			builder.commit(NumberFormatter.putFloat(f, buf, off) - off);
+			return builder;
+		}
 	}
 
 	private static int hexValue(int c) {
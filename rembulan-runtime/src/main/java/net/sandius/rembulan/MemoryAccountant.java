@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan;
+
+/**
+ * An accountant keeping track of the memory allocated by a Lua state.
+ *
+ * <p>The runtime and the standard library report the approximate size (in bytes) of objects
+ * allocated on behalf of a Lua program (such as tables and strings) using
+ * {@link #allocate(long)}. The reported amounts are estimates, and are reported in batches:
+ * for instance, tables report the growth of their internal storage rather than every
+ * individual assignment. The accountant tracks the <i>cumulative</i> amount of memory
+ * allocated; memory reclaimed by the garbage collector is not reported back.</p>
+ *
+ * <p>An accountant may enforce a memory limit either by throwing
+ * a {@link MemoryLimitExceededException} from {@link #allocate(long)}, which raises
+ * a Lua error in the allocating code, or by returning {@code true} from
+ * {@link #shouldPause()}, which pauses the execution of the Lua program at the next
+ * opportunity (see {@link net.sandius.rembulan.runtime.ExecutionContext#pauseIfRequested()}).</p>
+ *
+ * <p>For basic implementations of this interface, see the utility class
+ * {@link net.sandius.rembulan.impl.MemoryAccountants}.</p>
+ */
+public interface MemoryAccountant {
+
+	/**
+	 * Informs the accountant that approximately {@code bytes} bytes are about to be
+	 * allocated or have been allocated.
+	 *
+	 * <p>The behaviour of this method is undefined if {@code bytes} is negative.</p>
+	 *
+	 * @param bytes  the number of bytes, must not be negative
+	 *
+	 * @throws MemoryLimitExceededException  if the allocation exceeds the memory limit
+	 *                                       enforced by this accountant
+	 */
+	void allocate(long bytes);
+
+	/**
+	 * Polls the accountant, returning {@code true} if the execution of the Lua program
+	 * should be paused.
+	 *
+	 * @return  {@code true} if the execution should be paused
+	 */
+	boolean shouldPause();
+
+}
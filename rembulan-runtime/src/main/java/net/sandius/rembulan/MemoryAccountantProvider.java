@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+/**
+ * An object providing access to the memory accountant of a Lua state.
+ *
+ * <p>State contexts that keep track of the memory allocated by the state implement this
+ * interface in addition to {@link StateContext}. Code allocating objects on behalf of
+ * a Lua program should obtain the accountant of a state context using
+ * {@link net.sandius.rembulan.impl.MemoryAccountants#forContext(StateContext)}, which
+ * also handles state contexts that do not implement this interface.</p>
+ */
+public interface MemoryAccountantProvider {
+
+	/**
+	 * Returns the memory accountant of this state.
+	 *
+	 * <p>Code allocating objects on behalf of a Lua program (for instance, library functions
+	 * constructing strings) should report the approximate size of these objects
+	 * to this accountant using {@link MemoryAccountant#allocate(long)}.</p>
+	 *
+	 * @return  the memory accountant of this state, never {@code null}
+	 */
+	MemoryAccountant getMemoryAccountant();
+
+}
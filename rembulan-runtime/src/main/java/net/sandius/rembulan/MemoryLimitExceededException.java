@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan;
+
+/**
+ * An exception thrown by a {@link MemoryAccountant} when an allocation exceeds
+ * the memory limit of the Lua state.
+ *
+ * <p>The error object of this exception is the string {@code "not enough memory"},
+ * as in PUC-Lua. Like other Lua errors, the exception may be caught in Lua programs
+ * using {@code pcall}.</p>
+ */
+public class MemoryLimitExceededException extends LuaRuntimeException {
+
+	/**
+	 * Constructs a new {@code MemoryLimitExceededException}.
+	 */
+	public MemoryLimitExceededException() {
+		super("not enough memory");
+	}
+
+}
@@ -189,7 +189,7 @@ public final class Metatables {
 
 		Table mt = o.getMetatable();
 		if (mt != null) {
-			return mt.rawget(event);
+			return rawgetEvent(mt, event);
 		}
 		else {
 			return null;
@@ -217,13 +217,76 @@ public final class Metatables {
 
 		Table mt = metatableProvider.getMetatable(o);
 		if (mt != null) {
-			return mt.rawget(event);
+			return rawgetEvent(mt, event);
 		}
 		else {
 			return null;
 		}
 	}
 
+	/**
+	 * Returns the index of the bit representing {@code event} in the cache of absent
+	 * metamethods maintained by {@link Table}, or {@code -1} if {@code event} is not
+	 * one of the metatable keys defined in this class.
+	 *
+	 * <p>Events are compared by reference: since the keys are compile-time constants
+	 * at all call sites in the runtime, this test is cheap (and is typically folded
+	 * away entirely by the JIT compiler). Keys equal to but distinct from the constants
+	 * defined here are merely not cached.</p>
+	 *
+	 * @param event  the metatable key, may be {@code null}
+	 * @return  the cache bit index of {@code event}, or {@code -1} if {@code event}
+	 *          is not cached
+	 */
+	static int eventIndex(ByteString event) {
+		if (event == MT_INDEX) return 0;
+		else if (event == MT_NEWINDEX) return 1;
+		else if (event == MT_CALL) return 2;
+		else if (event == MT_EQ) return 3;
+		else if (event == MT_LT) return 4;
+		else if (event == MT_LE) return 5;
+		else if (event == MT_LEN) return 6;
+		else if (event == MT_CONCAT) return 7;
+		else if (event == MT_ADD) return 8;
+		else if (event == MT_SUB) return 9;
+		else if (event == MT_MUL) return 10;
+		else if (event == MT_DIV) return 11;
+		else if (event == MT_MOD) return 12;
+		else if (event == MT_POW) return 13;
+		else if (event == MT_UNM) return 14;
+		else if (event == MT_IDIV) return 15;
+		else if (event == MT_BAND) return 16;
+		else if (event == MT_BOR) return 17;
+		else if (event == MT_BXOR) return 18;
+		else if (event == MT_BNOT) return 19;
+		else if (event == MT_SHL) return 20;
+		else if (event == MT_SHR) return 21;
+		else if (event == MT_MODE) return 22;
+		else return -1;
+	}
+
+	private static Object rawgetEvent(Table mt, ByteString event) {
+		int idx = eventIndex(event);
+		if (idx < 0) {
+			return mt.rawget(event);
+		}
+		else if (mt.isMetamethodKnownAbsent(idx)) {
+			return null;
+		}
+		else {
+			Object handler = mt.rawget(event);
+			if (handler == null) {
+				mt.markMetamethodAbsent(idx);
+				// the event may have been added (and the cache invalidated) by another thread
+				// since the lookup: if so, discard the bit that has just been set
+				if (mt.rawget(event) != null) {
+					mt.clearAbsentMetamethods();
+				}
+			}
+			return handler;
+		}
+	}
+
 	/**
 	 * Returns the metatable entry {@code event} for {@code a} or in {@code b}, or {@code null}
 	 * if neither {@code a} nor {@code b} has such an entry in their metatable.
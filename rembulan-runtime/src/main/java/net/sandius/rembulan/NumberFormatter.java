@@ -0,0 +1,373 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Conversion of numbers to their Lua string representation, writing ASCII bytes directly
+ * into byte arrays.
+ *
+ * <p>Integers are formatted in decimal. Finite floats are formatted like the C format
+ * {@code "%.14g"} (as in PUC-Lua), with {@code ".0"} appended when the result
+ * looks like an integer.</p>
+ *
+ * <p>The 14 significant digits of a float {@code f} are the correctly rounded
+ * (half-to-even) value of {@code f * 10^s} for the appropriate scale {@code s}. For floats
+ * between approximately 10<sup>-14</sup> and 2<sup>63</sup>, this product is computed
+ * exactly using 128-bit integer arithmetic on the binary significand of {@code f}.
+ * Other floats take a slow path via {@link BigDecimal}.</p>
+ */
+final class NumberFormatter {
+
+	private NumberFormatter() {
+		// not to be instantiated
+	}
+
+	/**
+	 * The maximum length of a formatted integer.
+	 */
+	static final int MAX_INTEGER_LENGTH = 20;  // "-9223372036854775808"
+
+	/**
+	 * The maximum length of a formatted finite float.
+	 */
+	static final int MAX_FLOAT_LENGTH = 21;  // "-1.2345678901234e-308"
+
+	private static final int PRECISION = 14;
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+	private static final long[] POWERS_OF_FIVE = new long[28];
+
+	static {
+		long p = 1;
+		for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = p;
+			p *= 10;
+		}
+		p = 1;
+		for (int i = 0; i < POWERS_OF_FIVE.length; i++) {
+			POWERS_OF_FIVE[i] = p;
+			p *= 5;
+		}
+	}
+
+	private static final long MIN_DIGITS = POWERS_OF_TEN[PRECISION - 1];
+	private static final long MAX_DIGITS = POWERS_OF_TEN[PRECISION];
+
+	private static final byte[] LONG_MIN_VALUE = {
+			'-', '9', '2', '2', '3', '3', '7', '2', '0', '3', '6', '8', '5', '4', '7', '7', '5', '8', '0', '8'
+	};
+
+	// the number of decimal digits of l >= 0
+	private static int digitCount(long l) {
+		int n = 1;
+		while (n < POWERS_OF_TEN.length && l >= POWERS_OF_TEN[n]) {
+			n += 1;
+		}
+		return n;
+	}
+
+	// writes exactly count least significant decimal digits of l >= 0 to buf at off
+	private static int putDigits(long l, int count, byte[] buf, int off) {
+		int end = off + count;
+		for (int i = end - 1; i >= off; i--) {
+			buf[i] = (byte) ('0' + (int) (l % 10));
+			l /= 10;
+		}
+		return end;
+	}
+
+	/**
+	 * Returns the length of the decimal representation of the integer {@code l}.
+	 *
+	 * @param l  the integer
+	 * @return  the length of the representation of {@code l}
+	 */
+	static int integerLength(long l) {
+		if (l >= 0) {
+			return digitCount(l);
+		}
+		else {
+			return l != Long.MIN_VALUE ? 1 + digitCount(-l) : LONG_MIN_VALUE.length;
+		}
+	}
+
+	/**
+	 * Writes the decimal representation of the integer {@code l} to {@code buf} starting
+	 * at {@code off}, and returns the offset just past the last byte written. The array
+	 * must have room for at least {@link #integerLength(long)} bytes.
+	 *
+	 * @param l  the integer to format
+	 * @param buf  the array to write to, must not be {@code null}
+	 * @param off  the offset to start writing at
+	 * @return  the offset following the representation of {@code l}
+	 */
+	static int putInteger(long l, byte[] buf, int off) {
+		if (l == Long.MIN_VALUE) {
+			System.arraycopy(LONG_MIN_VALUE, 0, buf, off, LONG_MIN_VALUE.length);
+			return off + LONG_MIN_VALUE.length;
+		}
+		if (l < 0) {
+			buf[off++] = '-';
+			l = -l;
+		}
+		return putDigits(l, digitCount(l), buf, off);
+	}
+
+	/**
+	 * Writes the Lua representation of the finite float {@code f} to {@code buf} starting
+	 * at {@code off}, and returns the offset just past the last byte written. The array
+	 * must have room for at least {@link #MAX_FLOAT_LENGTH} bytes.
+	 *
+	 * @param f  the float to format, must be finite
+	 * @param buf  the array to write to, must not be {@code null}
+	 * @param off  the offset to start writing at
+	 * @return  the offset following the representation of {@code f}
+	 */
+	static int putFloat(double f, byte[] buf, int off) {
+		if (Double.doubleToRawLongBits(f) < 0) {
+			buf[off++] = '-';
+			f = -f;
+		}
+
+		if (f == 0.0) {
+			buf[off++] = '0';
+			buf[off++] = '.';
+			buf[off++] = '0';
+			return off;
+		}
+
+		long dec = fastDecimal(f);
+		if (dec < 0) {
+			dec = slowDecimal(f);
+		}
+
+		long digits = dec >>> EXPONENT_BITS;
+		int exp = (int) (dec & EXPONENT_MASK) - EXPONENT_BIAS;
+
+		// drop trailing zeros
+		int n = PRECISION;
+		while (digits % 10 == 0) {
+			digits /= 10;
+			n -= 1;
+		}
+
+		if (exp < -4 || exp >= PRECISION) {
+			// d.ddde+XX
+			off = putDigits(digits / POWERS_OF_TEN[n - 1], 1, buf, off);
+			if (n > 1) {
+				buf[off++] = '.';
+				off = putDigits(digits, n - 1, buf, off);
+			}
+			buf[off++] = 'e';
+			if (exp < 0) {
+				buf[off++] = '-';
+				exp = -exp;
+			}
+			else {
+				buf[off++] = '+';
+			}
+			off = putDigits(exp, exp < 100 ? 2 : 3, buf, off);
+		}
+		else if (exp >= 0) {
+			int intLen = exp + 1;
+			if (n <= intLen) {
+				// integral value: pad with zeros and append ".0"
+				off = putDigits(digits, n, buf, off);
+				for (int i = n; i < intLen; i++) {
+					buf[off++] = '0';
+				}
+				buf[off++] = '.';
+				buf[off++] = '0';
+			}
+			else {
+				long div = POWERS_OF_TEN[n - intLen];
+				off = putDigits(digits / div, intLen, buf, off);
+				buf[off++] = '.';
+				off = putDigits(digits % div, n - intLen, buf, off);
+			}
+		}
+		else {
+			// 0.000ddd
+			buf[off++] = '0';
+			buf[off++] = '.';
+			for (int i = -1; i > exp; i--) {
+				buf[off++] = '0';
+			}
+			off = putDigits(digits, n, buf, off);
+		}
+
+		return off;
+	}
+
+	// the 14 significant digits and the decimal exponent are packed into a single long
+	private static final int EXPONENT_BITS = 11;
+	private static final int EXPONENT_BIAS = 1 << (EXPONENT_BITS - 1);
+	private static final long EXPONENT_MASK = (1L << EXPONENT_BITS) - 1;
+
+	private static long pack(long digits, int exp) {
+		return (digits << EXPONENT_BITS) | (exp + EXPONENT_BIAS);
+	}
+
+	/**
+	 * Returns the packed decimal representation of the positive finite float {@code f}
+	 * with {@link #PRECISION} significant digits, or {@code -1} if {@code f} is out of
+	 * range of the fast path.
+	 */
+	private static long fastDecimal(double f) {
+		long bits = Double.doubleToRawLongBits(f);
+		int biasedExp = (int) (bits >>> 52);
+		if (biasedExp == 0) {
+			// subnormal
+			return -1;
+		}
+
+		// f == m * 2^q
+		long m = (bits & ((1L << 52) - 1)) | (1L << 52);
+		int q = biasedExp - 1075;
+
+		// the estimate may be off by one in either direction
+		int exp = (int) Math.floor(Math.log10(f));
+
+		for (int attempt = 0; attempt < 3; attempt++) {
+			int s = PRECISION - 1 - exp;
+
+			// floor(f * 10^s), and whether the remainder is above, at or below one half
+			long fl;
+			boolean half;
+			boolean aboveHalf;
+
+			if (s >= 0) {
+				if (s >= POWERS_OF_FIVE.length) {
+					return -1;
+				}
+
+				// f * 10^s == (m * 5^s) * 2^(q + s)
+				long a = POWERS_OF_FIVE[s];
+				long aLo = a & 0xffffffffL;
+				long aHi = a >>> 32;
+				long bLo = m & 0xffffffffL;
+				long bHi = m >>> 32;
+				long ll = aLo * bLo;
+				long mid = (ll >>> 32) + (aLo * bHi & 0xffffffffL) + (aHi * bLo & 0xffffffffL);
+				long lo = (ll & 0xffffffffL) | (mid << 32);
+				long hi = aHi * bHi + (aLo * bHi >>> 32) + (aHi * bLo >>> 32) + (mid >>> 32);
+
+				int shift = q + s;
+				if (shift >= 0) {
+					if (hi != 0 || shift >= 63 || lo < 0 || lo > (Long.MAX_VALUE >>> shift)) {
+						return -1;
+					}
+					fl = lo << shift;
+					half = false;
+					aboveHalf = false;
+				}
+				else {
+					int k = -shift;
+					if (k < 64) {
+						if ((hi >>> k) != 0) {
+							return -1;
+						}
+						fl = (lo >>> k) | (hi << (64 - k));
+						half = ((lo >>> (k - 1)) & 1) != 0;
+						aboveHalf = half && k > 1 && (lo & ((1L << (k - 1)) - 1)) != 0;
+					}
+					else if (k < 128) {
+						int j = k - 64;
+						fl = hi >>> j;
+						if (j > 0) {
+							half = ((hi >>> (j - 1)) & 1) != 0;
+							aboveHalf = half && (lo != 0 || (j > 1 && (hi & ((1L << (j - 1)) - 1)) != 0));
+						}
+						else {
+							half = lo < 0;
+							aboveHalf = half && (lo & Long.MAX_VALUE) != 0;
+						}
+					}
+					else {
+						return -1;
+					}
+					if (fl < 0) {
+						return -1;
+					}
+				}
+			}
+			else {
+				int t = -s;
+				if (t >= POWERS_OF_TEN.length || q > 10) {
+					return -1;
+				}
+
+				// f * 10^s == v / d
+				long v;
+				long d = POWERS_OF_TEN[t];
+				if (q >= 0) {
+					v = m << q;
+				}
+				else {
+					if (d > (Long.MAX_VALUE >>> 1) >>> -q) {
+						return -1;
+					}
+					v = m;
+					d <<= -q;
+				}
+
+				fl = v / d;
+				long r2 = (v % d) << 1;
+				half = r2 >= d;
+				aboveHalf = r2 > d;
+			}
+
+			if (fl < MIN_DIGITS) {
+				exp -= 1;
+			}
+			else if (fl >= MAX_DIGITS) {
+				exp += 1;
+			}
+			else {
+				// round half to even
+				if (aboveHalf || (half && (fl & 1) != 0)) {
+					fl += 1;
+					if (fl == MAX_DIGITS) {
+						fl = MIN_DIGITS;
+						exp += 1;
+					}
+				}
+				return pack(fl, exp);
+			}
+		}
+
+		return -1;
+	}
+
+	private static final MathContext MATH_CONTEXT = new MathContext(PRECISION, RoundingMode.HALF_EVEN);
+
+	/**
+	 * Returns the packed decimal representation of the positive finite float {@code f}
+	 * with {@link #PRECISION} significant digits.
+	 */
+	private static long slowDecimal(double f) {
+		BigDecimal bd = new BigDecimal(f).round(MATH_CONTEXT);
+		int precision = bd.precision();
+		long digits = bd.unscaledValue().longValue() * POWERS_OF_TEN[PRECISION - precision];
+		return pack(digits, precision - bd.scale() - 1);
+	}
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Conversion of strings to numbers following the rules of the Lua 5.3 function
+ * {@code lua_stringtonumber}, reading ASCII bytes directly from byte arrays.
+ *
+ * <p>A string is converted to an integer if it is a decimal integer numeral that fits
+ * in a {@code long}, or a hexadecimal integer numeral (wrapping around on overflow).
+ * Otherwise, it is converted to a float if it is a decimal or hexadecimal float numeral.
+ * Numerals may be preceded by a sign, and surrounded by whitespace.</p>
+ *
+ * <p>Floats whose decimal significand and exponent are small enough to be converted exactly
+ * (as described by William D. Clinger in <i>How to Read Floating Point Numbers
+ * Accurately</i>) are computed directly; other floats are converted by
+ * {@link Double#parseDouble(String)} after they have been validated.</p>
+ */
+final class NumberParser {
+
+	private NumberParser() {
+		// not to be instantiated
+	}
+
+	private static final Long[] SMALL_INTEGERS = new Long[1024];
+
+	static {
+		for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+			SMALL_INTEGERS[i] = Long.valueOf(i);
+		}
+	}
+
+	/**
+	 * Returns the integer {@code l} boxed as a {@code Long}, using a cached instance
+	 * for small non-negative values.
+	 *
+	 * @param l  the integer to box
+	 * @return  {@code l} as a {@code Long}
+	 */
+	static Long box(long l) {
+		return l >= 0 && l < SMALL_INTEGERS.length ? SMALL_INTEGERS[(int) l] : Long.valueOf(l);
+	}
+
+	// the largest significand that is exactly representable as a double
+	private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+	private static final double[] EXACT_POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// the number of decimal significand digits that always fit in a long
+	private static final int MAX_SIGNIFICAND_DIGITS = 18;
+
+	// saturate exponents at this value while parsing
+	private static final int MAX_EXPONENT = 100000;
+
+	private static boolean isSpace(int c) {
+		// as in the C function isspace: ' ', '\t', '\n', '\v', '\f', '\r'
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+
+	private static int digitValue(int c) {
+		return c >= '0' && c <= '9' ? c - '0' : -1;
+	}
+
+	private static int hexValue(int c) {
+		if (c >= '0' && c <= '9') return c - '0';
+		else if (c >= 'a' && c <= 'f') return 10 + c - 'a';
+		else if (c >= 'A' && c <= 'F') return 10 + c - 'A';
+		else return -1;
+	}
+
+	/**
+	 * Returns the numerical value of the bytes {@code bytes} between {@code from} (inclusive)
+	 * and {@code to} (exclusive) as a {@link Long} or a {@link Double}, or {@code null}
+	 * if they are not a Lua numeral.
+	 *
+	 * @param bytes  the bytes to parse, must not be {@code null}
+	 * @param from  the index of the first byte to parse
+	 * @param to  the index following the last byte to parse
+	 * @return  the numerical value of the bytes, or {@code null}
+	 */
+	static Number parse(byte[] bytes, int from, int to) {
+		while (from < to && isSpace(bytes[from])) from++;
+		while (to > from && isSpace(bytes[to - 1])) to--;
+
+		if (from == to) {
+			return null;
+		}
+
+		int i = from;
+		boolean neg = false;
+		if (bytes[i] == '-') {
+			neg = true;
+			i++;
+		}
+		else if (bytes[i] == '+') {
+			i++;
+		}
+
+		if (to - i >= 2 && bytes[i] == '0' && (bytes[i + 1] == 'x' || bytes[i + 1] == 'X')) {
+			return parseHex(bytes, from, i + 2, to, neg);
+		}
+		else {
+			return parseDecimal(bytes, from, i, to, neg);
+		}
+	}
+
+	private static Number parseDecimal(byte[] bytes, int from, int i, int to, boolean neg) {
+		// integer: as in l_str2int
+		{
+			long a = 0;
+			boolean overflow = false;
+			int j = i;
+			int d;
+			while (j < to && (d = digitValue(bytes[j])) >= 0) {
+				if (a >= Long.MAX_VALUE / 10 && (a > Long.MAX_VALUE / 10 || d > Long.MAX_VALUE % 10 + (neg ? 1 : 0))) {
+					overflow = true;
+				}
+				a = a * 10 + d;
+				j++;
+			}
+			if (j == to && j > i && !overflow) {
+				return box(neg ? -a : a);
+			}
+		}
+
+		// float: digits [. digits] [(e|E) [sign] digits]
+		long mant = 0;
+		int sigDigits = 0;
+		boolean inexact = false;  // true if non-zero digits were dropped from mant
+		int exp = 0;
+		int digits = 0;
+		boolean point = false;
+
+		int j = i;
+		for (; j < to; j++) {
+			int c = bytes[j];
+			int d = digitValue(c);
+			if (d >= 0) {
+				digits++;
+				if (sigDigits < MAX_SIGNIFICAND_DIGITS) {
+					if (mant != 0 || d != 0) {
+						mant = mant * 10 + d;
+						sigDigits++;
+					}
+					if (point) exp--;
+				}
+				else {
+					if (d != 0) inexact = true;
+					if (!point) exp++;
+				}
+			}
+			else if (c == '.' && !point) {
+				point = true;
+			}
+			else {
+				break;
+			}
+		}
+
+		if (digits == 0) {
+			return null;
+		}
+
+		if (j < to && (bytes[j] == 'e' || bytes[j] == 'E')) {
+			j = j + 1;
+			boolean negExp = false;
+			if (j < to && (bytes[j] == '-' || bytes[j] == '+')) {
+				negExp = bytes[j] == '-';
+				j++;
+			}
+			if (j == to || digitValue(bytes[j]) < 0) {
+				return null;
+			}
+			int e = 0;
+			int d;
+			while (j < to && (d = digitValue(bytes[j])) >= 0) {
+				e = Math.min(e * 10 + d, MAX_EXPONENT);
+				j++;
+			}
+			exp = saturatingAdd(exp, negExp ? -e : e);
+		}
+
+		if (j != to) {
+			return null;
+		}
+
+		double result;
+		if (mant == 0) {
+			result = 0.0;
+		}
+		else if (!inexact && mant <= MAX_EXACT_SIGNIFICAND
+				&& exp >= -(EXACT_POWERS_OF_TEN.length - 1) && exp < EXACT_POWERS_OF_TEN.length) {
+			// both the significand and the power of ten are exact, and therefore
+			// so is the correctly rounded result of the operation
+			result = exp >= 0
+					? (double) mant * EXACT_POWERS_OF_TEN[exp]
+					: (double) mant / EXACT_POWERS_OF_TEN[-exp];
+		}
+		else {
+			// syntax has already been validated, so this does not throw
+			return Double.valueOf(Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.US_ASCII)));
+		}
+
+		return Double.valueOf(neg ? -result : result);
+	}
+
+	private static Number parseHex(byte[] bytes, int from, int i, int to, boolean neg) {
+		// integer: wraps around on overflow, as in l_str2int
+		{
+			long a = 0;
+			int j = i;
+			int d;
+			while (j < to && (d = hexValue(bytes[j])) >= 0) {
+				a = (a << 4) | d;
+				j++;
+			}
+			if (j == to && j > i) {
+				return box(neg ? -a : a);
+			}
+		}
+
+		// float: hexdigits [. hexdigits] [(p|P) [sign] digits]
+		long mant = 0;
+		boolean inexact = false;
+		int exp = 0;  // binary exponent
+		int digits = 0;
+		boolean point = false;
+
+		int j = i;
+		for (; j < to; j++) {
+			int c = bytes[j];
+			int d = hexValue(c);
+			if (d >= 0) {
+				digits++;
+				if (mant < (1L << 56)) {
+					mant = (mant << 4) | d;
+					if (point) exp -= 4;
+				}
+				else {
+					if (d != 0) inexact = true;
+					if (!point) exp += 4;
+				}
+			}
+			else if (c == '.' && !point) {
+				point = true;
+			}
+			else {
+				break;
+			}
+		}
+
+		if (digits == 0) {
+			return null;
+		}
+
+		boolean hasExponent = false;
+		if (j < to && (bytes[j] == 'p' || bytes[j] == 'P')) {
+			j = j + 1;
+			boolean negExp = false;
+			if (j < to && (bytes[j] == '-' || bytes[j] == '+')) {
+				negExp = bytes[j] == '-';
+				j++;
+			}
+			if (j == to || digitValue(bytes[j]) < 0) {
+				return null;
+			}
+			int e = 0;
+			int d;
+			while (j < to && (d = digitValue(bytes[j])) >= 0) {
+				e = Math.min(e * 10 + d, MAX_EXPONENT);
+				j++;
+			}
+			exp = saturatingAdd(exp, negExp ? -e : e);
+			hasExponent = true;
+		}
+
+		if (j != to) {
+			return null;
+		}
+
+		double result;
+		if (mant == 0) {
+			result = 0.0;
+		}
+		else if (!inexact && mant <= MAX_EXACT_SIGNIFICAND
+				&& exp >= Double.MIN_EXPONENT && exp <= Double.MAX_EXPONENT - 53) {
+			// exact: the result is a normal number
+			result = Math.scalb((double) mant, exp);
+		}
+		else {
+			// Java requires the binary exponent
+			String s = new String(bytes, from, to - from, StandardCharsets.US_ASCII);
+			return Double.valueOf(Double.parseDouble(hasExponent ? s : s + "p0"));
+		}
+
+		return Double.valueOf(neg ? -result : result);
+	}
+
+	private static int saturatingAdd(int a, int b) {
+		long sum = (long) a + b;
+		return (int) Math.max(-MAX_EXPONENT, Math.min(MAX_EXPONENT, sum));
+	}
+
+}
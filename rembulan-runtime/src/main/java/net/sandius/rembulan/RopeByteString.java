@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+import net.sandius.rembulan.util.ByteIterator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A byte string representing the concatenation of two byte strings, also known
+ * as a <i>rope</i>.
+ *
+ * <p>Concatenating two ropes (or a rope and another byte string) takes constant time,
+ * and does not copy the contents of the operands. The rope is <i>flattened</i> into
+ * a byte array by a single pre-sized copy the first time its contents are needed
+ * (e.g., when its hash code is computed, or when it is compared to another byte string);
+ * after that, the rope no longer refers to its operands. Repeatedly appending to a string
+ * (as in {@code s = s .. piece}) therefore takes amortised linear time.</p>
+ *
+ * <p>Flattening does not recurse: ropes of arbitrary depth may be flattened without
+ * exhausting the stack.</p>
+ */
+class RopeByteString extends ByteString {
+
+	private static final class Pair {
+
+		final ByteString left;
+		final ByteString right;
+
+		Pair(ByteString left, ByteString right) {
+			this.left = left;
+			this.right = right;
+		}
+
+	}
+
+	private final int length;
+
+	// either a Pair, or the flattened ArrayByteString; both are safely published
+	// since all their fields are final
+	private Object value;
+
+	/**
+	 * Constructs a new rope representing the concatenation of {@code left}
+	 * and {@code right}. The sum of their lengths must not exceed {@link Integer#MAX_VALUE}.
+	 */
+	RopeByteString(ByteString left, ByteString right) {
+		this.length = left.length() + right.length();
+		this.value = new Pair(left, right);
+	}
+
+	private ArrayByteString flatten() {
+		Object v = value;
+		if (v instanceof ArrayByteString) {
+			return (ArrayByteString) v;
+		}
+
+		byte[] bytes = new byte[length];
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+		// fill in the array from its end, visiting the right operands first
+		int end = length;
+		Deque<ByteString> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			ByteString s = stack.pop();
+			Object sv = s instanceof RopeByteString ? ((RopeByteString) s).value : null;
+			if (sv instanceof Pair) {
+				Pair p = (Pair) sv;
+				stack.push(p.left);
+				stack.push(p.right);
+			}
+			else {
+				ByteString leaf = sv != null ? (ByteString) sv : s;
+				end -= leaf.length();
+				buf.position(end);
+				leaf.putTo(buf);
+			}
+		}
+		assert (end == 0);
+
+		ArrayByteString flat = new ArrayByteString(bytes);
+		value = flat;
+		return flat;
+	}
+
+	@Override
+	boolean equals(ByteString that) {
+		int thatLength = that.maybeLength();
+		if (thatLength >= 0 && thatLength != length) return false;
+
+		return flatten().equals(that);
+	}
+
+	@Override
+	public int hashCode() {
+		return flatten().hashCode();
+	}
+
+	@Override
+	int maybeHashCode() {
+		Object v = value;
+		return v instanceof ArrayByteString ? ((ArrayByteString) v).maybeHashCode() : 0;
+	}
+
+	@Override
+	public byte[] getBytes() {
+		return flatten().getBytes();
+	}
+
+	@Override
+	byte[] sharedBytes() {
+		return flatten().sharedBytes();
+	}
+
+	@Override
+	int sharedOffset() {
+		return flatten().sharedOffset();
+	}
+
+	@Override
+	public byte byteAt(int index) {
+		return flatten().byteAt(index);
+	}
+
+	@Override
+	public ByteIterator byteIterator() {
+		return flatten().byteIterator();
+	}
+
+	@Override
+	public InputStream asInputStream() {
+		return flatten().asInputStream();
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	int maybeLength() {
+		return length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	@Override
+	public ByteString substring(int start, int end) {
+		return flatten().substring(start, end);
+	}
+
+	@Override
+	public void putTo(ByteBuffer buffer) {
+		flatten().putTo(buffer);
+	}
+
+	@Override
+	public void writeTo(OutputStream stream) throws IOException {
+		flatten().writeTo(stream);
+	}
+
+	@Override
+	public String toString() {
+		return flatten().toString();
+	}
+
+	@Override
+	public String toRawString() {
+		return flatten().toRawString();
+	}
+
+	@Override
+	public boolean startsWith(byte b) {
+		// only the leftmost operand is needed
+		ByteString s = this;
+		while (s instanceof RopeByteString) {
+			Object v = ((RopeByteString) s).value;
+			s = v instanceof Pair ? ((Pair) v).left : (ByteString) v;
+		}
+		return s.startsWith(b);
+	}
+
+}
@@ -19,6 +19,10 @@ package net.sandius.rembulan;
 /**
  * A global context holding shared metatables and providing methods for instantiating new
  * tables.
+ *
+ * <p>State contexts that keep track of the memory allocated by the state additionally
+ * implement {@link MemoryAccountantProvider}; state contexts that intern the strings
+ * they construct additionally implement {@link StringInternerProvider}.</p>
  */
 public interface StateContext extends MetatableAccessor, TableFactory {
 
@@ -149,6 +149,11 @@ class StringByteString extends ByteString {
 		return Arrays.copyOf(bytes, bytes.length);
 	}
 
+	@Override
+	byte[] sharedBytes() {
+		return toBytes();
+	}
+
 	@Override
 	public byte byteAt(int index) {
 		if (index < 0) {
@@ -175,7 +180,7 @@ class StringByteString extends ByteString {
 	public ByteString substring(int start, int end) {
 		byte[] bytes = toBytes();
 		checkSubstringBounds(start, end, bytes.length);
-		return new ArrayByteString(Arrays.copyOfRange(bytes, start, end));
+		return ArrayByteString.slice(bytes, start, end);
 	}
 
 	@Override
@@ -219,7 +224,8 @@ class StringByteString extends ByteString {
 	public ByteString concat(ByteString other) {
 		if (other instanceof StringByteString) {
 			StringByteString that = (StringByteString) other;
-			if (this.charset.equals(that.charset)) {
+			if (this.charset.equals(that.charset)
+					&& this.string.length() + that.string.length() <= MAX_EAGER_CONCAT_LENGTH) {
 				// Caveat: preserves malformed characters and characters unmappable by charset
 				return ByteString.of(this.string.concat(that.string));
 			}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+/**
+ * An intern table for byte strings, mapping equal byte strings to a canonical instance.
+ *
+ * <p>Strings constructed at runtime (for instance by {@code string.sub}) are distinct
+ * objects even when they are equal. Interning them makes equal strings share a single
+ * instance: this saves memory when many equal strings are retained (e.g., as table keys),
+ * and turns most comparisons of such strings (e.g., in table lookups) into identity
+ * checks.</p>
+ *
+ * <p>Interning is an optimisation only: implementations are free to return their
+ * argument, and two equal interned strings are not guaranteed to be the same object.</p>
+ *
+ * <p>For basic implementations of this interface, see the utility class
+ * {@link net.sandius.rembulan.impl.StringInterners}.</p>
+ */
+public interface StringInterner {
+
+	/**
+	 * Returns a byte string equal to {@code s}, preferring an instance that has been
+	 * returned by a previous invocation of this method.
+	 *
+	 * @param s  the byte string to intern, must not be {@code null}
+	 * @return  a byte string equal to {@code s}
+	 *
+	 * @throws NullPointerException  if {@code s} is {@code null}
+	 */
+	ByteString intern(ByteString s);
+
+}
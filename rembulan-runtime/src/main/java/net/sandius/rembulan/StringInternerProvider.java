@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+/**
+ * An object providing access to the string interner of a Lua state.
+ *
+ * <p>State contexts that intern the strings they construct implement this interface
+ * in addition to {@link StateContext}. Code constructing strings should obtain
+ * the interner of a state context using
+ * {@link net.sandius.rembulan.impl.StringInterners#forContext(StateContext)}, which
+ * also handles state contexts that do not implement this interface.</p>
+ */
+public interface StringInternerProvider {
+
+	/**
+	 * Returns the string interner of this state.
+	 *
+	 * <p>Code constructing short strings that are likely to be compared or used as table keys
+	 * (for instance, library functions extracting substrings) may pass them through
+	 * this interner using {@link StringInterner#intern(ByteString)}.</p>
+	 *
+	 * @return  the string interner of this state, never {@code null}
+	 */
+	StringInterner getStringInterner();
+
+}
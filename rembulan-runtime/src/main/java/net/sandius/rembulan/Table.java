@@ -22,6 +22,7 @@ import net.sandius.rembulan.runtime.ExecutionContext;
 import java.util.Collections;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * An abstract class representing a Lua table.
@@ -90,7 +91,10 @@ public abstract class Table extends LuaObject {
 	 *     <li>float keys that have an integer value must be treated as integer keys
 	 *       (e.g. by using {@link Conversions#normaliseKey(Object)};</li>
 	 *     <li>updates of the value associated with the key {@code "__mode"}
-	 *       must call {@link #updateBasetableModes(Object, Object)}.</li>
+	 *       must call {@link #updateBasetableModes(Object, Object)};</li>
+	 *     <li>updates of the value associated with metatable keys (string keys
+	 *       starting with {@code "__"}) must call
+	 *       {@link #updateMetamethodCache(Object, Object)}.</li>
 	 * </ul>
 	 *
 	 * @param key  the key, must not be {@code null} or <i>NaN</i>
@@ -200,7 +204,14 @@ public abstract class Table extends LuaObject {
 	 * the maximal key.</p>
 	 *
 	 * <p>When no value is associated with the key {@code key} in this table,
-	 * an {@link IllegalArgumentException} is thrown.</p>
+	 * an {@link IllegalArgumentException} is thrown. As an exception to this rule,
+	 * implementations must accept the key most recently returned by this method
+	 * or by {@link #initialKey()} even if its value has since been set to {@code null}:
+	 * as required by §6.1 of the Lua Reference Manual, clearing existing fields
+	 * during a traversal is allowed.</p>
+	 *
+	 * <p>Implementations are encouraged to keep a cursor at the most recently returned key,
+	 * so that a traversal of the entire table takes time linear in its size.</p>
 	 *
 	 * <p>To retrieve the initial key for iterating through this table, use
 	 * {@link #initialKey()}.</p>
@@ -216,7 +227,7 @@ public abstract class Table extends LuaObject {
 	/**
 	 * The metatable of this table, may be {@code null}.
 	 */
-	private Table metatable;
+	private volatile Table metatable;
 
 	/**
 	 * A weak set containing the references to tables this table is a metatable of.
@@ -228,8 +239,12 @@ public abstract class Table extends LuaObject {
 	 * with the key "__mode" in M determines whether T has weak keys, values or both. This means
 	 * that an update of M["__mode"] may trigger a change in the weakness status of all basetables
 	 * of M. Therefore, each table must keep track of its basetables.
+	 *
+	 * The set is synchronised, since an immutable table may be shared by multiple threads
+	 * and used as a metatable in all of them.
 	 */
-	private final Set<Table> basetables = Collections.newSetFromMap(new WeakHashMap<Table, Boolean>());
+	private final Set<Table> basetables = Collections.synchronizedSet(
+			Collections.newSetFromMap(new WeakHashMap<Table, Boolean>()));
 
 	/**
 	 * Sets the metatable of this table to {@code mt}. {@code mt} may be {@code null}:
@@ -262,11 +277,8 @@ public abstract class Table extends LuaObject {
 		if (mt != null) {
 			mt.basetables.add(this);
 			Object m = mt.rawget(Metatables.MT_MODE);
-			if (m instanceof String) {
-				String s = (String) m;
-				wk = s.indexOf('k') > -1;
-				wv = s.indexOf('v') > -1;
-			}
+			wk = hasModeFlag(m, 'k');
+			wv = hasModeFlag(m, 'v');
 		}
 
 		metatable = mt;
@@ -281,6 +293,18 @@ public abstract class Table extends LuaObject {
 		return metatable;
 	}
 
+	private static boolean hasModeFlag(Object mode, char flag) {
+		if (mode instanceof ByteString) {
+			return ((ByteString) mode).contains((byte) flag);
+		}
+		else if (mode instanceof String) {
+			return ((String) mode).indexOf(flag) > -1;
+		}
+		else {
+			return false;
+		}
+	}
+
 	/**
 	 * If {@code key} is equal to {@link Metatables#MT_MODE}, updates the weakness of the tables
 	 * that use this table as their metatable (i.e., the <i>basetables</i> of this table).
@@ -300,19 +324,90 @@ public abstract class Table extends LuaObject {
 	protected void updateBasetableModes(Object key, Object value) {
 		// not thread-safe!
 		if (Metatables.MT_MODE.equals(key)) {
-			boolean wk = false;
-			boolean wv = false;
+			boolean wk = hasModeFlag(value, 'k');
+			boolean wv = hasModeFlag(value, 'v');
 
-			if (value instanceof String) {
-				String s = (String) value;
-				wk = s.indexOf('k') > -1;
-				wv = s.indexOf('v') > -1;
+			// update all tables
+			synchronized (basetables) {
+				for (Table t : basetables) {
+					t.setMode(wk, wv);
+				}
 			}
+		}
+	}
 
-			// update all tables
-			for (Table t : basetables) {
-				t.setMode(wk, wv);
+	/**
+	 * Bit set of metatable events known to be absent from this table, indexed
+	 * by {@link Metatables#eventIndex(ByteString)}.
+	 *
+	 * <p>A bit is set by {@link Metatables} after a raw lookup of the corresponding event
+	 * in this table fails, and all bits are cleared by
+	 * {@link #updateMetamethodCache(Object, Object)} when a metatable key is assigned
+	 * a non-{@code nil} value. This allows metamethod lookups on metatables that
+	 * do not define the event in question to skip the {@link #rawget(Object)} entirely.</p>
+	 *
+	 * <p>The field is volatile so that tables shared by multiple threads may be used
+	 * as metatables. Bits are set using compare-and-set, so that setting a bit never
+	 * restores bits cleared concurrently; see {@link Metatables} for how races between
+	 * setting and clearing the same bit are resolved.</p>
+	 */
+	private volatile int absentMetamethods;
+
+	private static final AtomicIntegerFieldUpdater<Table> ABSENT_METAMETHODS_UPDATER
+			= AtomicIntegerFieldUpdater.newUpdater(Table.class, "absentMetamethods");
+
+	boolean isMetamethodKnownAbsent(int eventIndex) {
+		return (absentMetamethods & (1 << eventIndex)) != 0;
+	}
+
+	void markMetamethodAbsent(int eventIndex) {
+		int bit = 1 << eventIndex;
+		int old;
+		do {
+			old = absentMetamethods;
+			if ((old & bit) != 0) {
+				return;
 			}
+		} while (!ABSENT_METAMETHODS_UPDATER.compareAndSet(this, old, old | bit));
+	}
+
+	void clearAbsentMetamethods() {
+		absentMetamethods = 0;
+	}
+
+	/**
+	 * If {@code key} is a metatable key (i.e., a string starting with {@code "__"}) and
+	 * {@code value} is non-{@code null}, invalidates the cache of metamethods known
+	 * to be absent from this table. Otherwise, this method has no effect.
+	 *
+	 * <p>Whenever applicable, this method <b>must</b> be called by the implementations
+	 * of {@link #rawset(Object, Object)} in order to ensure that metamethods added
+	 * to this table after a failed lookup are visible when this table is used as
+	 * a metatable.</p>
+	 *
+	 * <p>It is safe not to call this method when {@code key} is known not to be a string,
+	 * or when {@code value} is {@code null}.</p>
+	 *
+	 * @param key  the key, may be {@code null}
+	 * @param value  the value, may be {@code null}
+	 */
+	protected void updateMetamethodCache(Object key, Object value) {
+		// not thread-safe!
+		if (absentMetamethods != 0 && value != null && isMetatableKey(key)) {
+			absentMetamethods = 0;
+		}
+	}
+
+	private static boolean isMetatableKey(Object key) {
+		if (key instanceof ByteString) {
+			ByteString s = (ByteString) key;
+			return s.length() > 1 && s.byteAt(0) == '_' && s.byteAt(1) == '_';
+		}
+		else if (key instanceof String) {
+			return ((String) key).startsWith("__");
+		}
+		else {
+			return false;
 		}
 	}
 
@@ -16,8 +16,12 @@
 
 package net.sandius.rembulan.impl;
 
+import net.sandius.rembulan.MemoryAccountant;
+import net.sandius.rembulan.MemoryAccountantProvider;
 import net.sandius.rembulan.MetatableAccessor;
 import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.StringInterner;
+import net.sandius.rembulan.StringInternerProvider;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.TableFactory;
 
@@ -25,16 +29,58 @@ import java.util.Objects;
 
 /**
  * An abstract implementation of a state context that delegates state context methods
- * to an underlying table factory and metatable accessor.
+ * to an underlying table factory, metatable accessor, memory accountant and string interner.
  */
-public abstract class AbstractStateContext implements StateContext {
+public abstract class AbstractStateContext
+		implements StateContext, MemoryAccountantProvider, StringInternerProvider {
 
 	private final TableFactory tableFactory;
 	private final MetatableAccessor metatableAccessor;
+	private final MemoryAccountant memoryAccountant;
+	private final StringInterner stringInterner;
+
+	/**
+	 * Constructs a new {@code AbstractStateContext} with the specified table factory,
+	 * metatable accessor, memory accountant and string interner.
+	 *
+	 * @param tableFactory  the table factory, must not be {@code null}
+	 * @param metatableAccessor  the metatable accessor, must not be {@code null}
+	 * @param memoryAccountant  the memory accountant, must not be {@code null}
+	 * @param stringInterner  the string interner, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code tableFactory}, {@code metatableAccessor},
+	 *                               {@code memoryAccountant} or {@code stringInterner}
+	 *                               is {@code null}
+	 */
+	protected AbstractStateContext(TableFactory tableFactory, MetatableAccessor metatableAccessor,
+			MemoryAccountant memoryAccountant, StringInterner stringInterner) {
+		this.tableFactory = Objects.requireNonNull(tableFactory);
+		this.metatableAccessor = Objects.requireNonNull(metatableAccessor);
+		this.memoryAccountant = Objects.requireNonNull(memoryAccountant);
+		this.stringInterner = Objects.requireNonNull(stringInterner);
+	}
+
+	/**
+	 * Constructs a new {@code AbstractStateContext} with the specified table factory,
+	 * metatable accessor and memory accountant, and a string interner that does not
+	 * intern any strings.
+	 *
+	 * @param tableFactory  the table factory, must not be {@code null}
+	 * @param metatableAccessor  the metatable accessor, must not be {@code null}
+	 * @param memoryAccountant  the memory accountant, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code tableFactory}, {@code metatableAccessor}
+	 *                               or {@code memoryAccountant} is {@code null}
+	 */
+	protected AbstractStateContext(TableFactory tableFactory, MetatableAccessor metatableAccessor,
+			MemoryAccountant memoryAccountant) {
+		this(tableFactory, metatableAccessor, memoryAccountant, StringInterners.none());
+	}
 
 	/**
 	 * Constructs a new {@code AbstractStateContext} with the specified table factory
-	 * and metatable accessor.
+	 * and metatable accessor, a memory accountant that does not enforce any limit,
+	 * and a string interner that does not intern any strings.
 	 *
 	 * @param tableFactory  the table factory, must not be {@code null}
 	 * @param metatableAccessor  the metatable accessor, must not be {@code null}
@@ -43,8 +89,7 @@ public abstract class AbstractStateContext implements StateContext {
 	 *                               is {@code null}
 	 */
 	protected AbstractStateContext(TableFactory tableFactory, MetatableAccessor metatableAccessor) {
-		this.tableFactory = Objects.requireNonNull(tableFactory);
-		this.metatableAccessor = Objects.requireNonNull(metatableAccessor);
+		this(tableFactory, metatableAccessor, MemoryAccountants.unlimited());
 	}
 
 	/**
@@ -56,7 +101,18 @@ public abstract class AbstractStateContext implements StateContext {
 	 * @throws NullPointerException  if {@code stateContext} is {@code null}
 	 */
 	protected AbstractStateContext(StateContext stateContext) {
-		this(stateContext, stateContext);
+		this(stateContext, stateContext, MemoryAccountants.forContext(stateContext),
+				StringInterners.forContext(stateContext));
+	}
+
+	@Override
+	public MemoryAccountant getMemoryAccountant() {
+		return memoryAccountant;
+	}
+
+	@Override
+	public StringInterner getStringInterner() {
+		return stringInterner;
 	}
 
 	@Override
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.TableFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A thread-safe implementation of the Lua table, for sharing data between Lua states
+ * (or coroutines) running concurrently in multiple threads.
+ *
+ * <p>All methods of this class may be called concurrently. Reads ({@link #rawget(Object)},
+ * {@link #initialKey()} and {@link #successorKeyOf(Object)}) never block. Updates of keys
+ * that are already associated with a non-{@code nil} value are lock-free; adding and removing
+ * keys, and setting the metatable, are serialised by a lock private to each table.</p>
+ *
+ * <p>Keys are traversed in the order of their insertion. As in all Lua tables, values of
+ * existing keys may be modified or cleared during a traversal. Removed keys remain
+ * in the table (and therefore remain valid arguments to {@link #successorKeyOf(Object)})
+ * until the table is compacted, which may only happen when a new key is added.</p>
+ *
+ * <p>Note that while individual operations are atomic, compound operations (such as
+ * incrementing a field from Lua code, which consists of a read followed by a write)
+ * are not.</p>
+ *
+ * <p>This table does not support weak keys or weak values: the {@code "__mode"} field
+ * of its metatable is ignored.</p>
+ */
+public class ConcurrentTable extends Table {
+
+	// compact when there are more than this many removed keys, and they outnumber live keys
+	private static final int MIN_DEAD_TO_COMPACT = 16;
+
+	private static final class Node {
+
+		final Object key;
+		volatile Object value;  // null iff the key has been removed
+		volatile Node next;
+
+		Node(Object key, Object value) {
+			this.key = key;
+			this.value = value;
+			this.next = null;
+		}
+
+	}
+
+	private static final AtomicReferenceFieldUpdater<Node, Object> NODE_VALUE
+			= AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+	private final ConcurrentHashMap<Object, Node> nodes;
+	private final Node head;  // sentinel; head.next is the first node in the traversal order
+
+	private final Object lock;
+	private Node tail;  // guarded by lock
+	private int deadCount;  // guarded by lock
+
+	/**
+	 * Constructs a new empty table with the given initial capacity.
+	 *
+	 * @param capacity  the initial capacity
+	 *
+	 * @throws IllegalArgumentException  if {@code capacity} is negative
+	 */
+	public ConcurrentTable(int capacity) {
+		this.nodes = new ConcurrentHashMap<>(capacity);
+		this.head = new Node(null, null);
+		this.lock = new Object();
+		this.tail = head;
+		this.deadCount = 0;
+	}
+
+	/**
+	 * Constructs a new empty table.
+	 */
+	public ConcurrentTable() {
+		this(16);
+	}
+
+	static class Factory implements TableFactory {
+		@Override
+		public Table newTable() {
+			return new ConcurrentTable();
+		}
+
+		@Override
+		public Table newTable(int array, int hash) {
+			return new ConcurrentTable(Math.max(0, array) + Math.max(0, hash));
+		}
+	}
+
+	private static final TableFactory FACTORY_INSTANCE = new Factory();
+
+	/**
+	 * Returns the table factory for constructing instances of {@code ConcurrentTable}.
+	 *
+	 * @return  the table factory for {@code ConcurrentTable}s
+	 */
+	public static TableFactory factory() {
+		return FACTORY_INSTANCE;
+	}
+
+	@Override
+	public Object rawget(Object key) {
+		key = Conversions.normaliseKey(key);
+		if (key == null) {
+			return null;
+		}
+
+		Node n = nodes.get(key);
+		return n != null ? n.value : null;
+	}
+
+	@Override
+	public Object rawget(long idx) {
+		Node n = nodes.get(Long.valueOf(idx));
+		return n != null ? n.value : null;
+	}
+
+	@Override
+	public void rawset(Object key, Object value) {
+		key = Conversions.normaliseKey(key);
+
+		if (key == null) {
+			throw new IllegalArgumentException("table index is nil");
+		}
+		if (key instanceof Double && Double.isNaN(((Double) key).doubleValue())) {
+			throw new IllegalArgumentException("table index is NaN");
+		}
+
+		value = Conversions.canonicalRepresentationOf(value);
+
+		if (value == null || !replace(key, value)) {
+			synchronized (lock) {
+				put(key, value);
+			}
+		}
+
+		updateBasetableModes(key, value);
+		updateMetamethodCache(key, value);
+	}
+
+	@Override
+	public void rawset(long idx, Object value) {
+		rawset(Long.valueOf(idx), value);
+	}
+
+	/**
+	 * Replaces the value associated with {@code key} by {@code value} if {@code key}
+	 * is associated with a non-{@code null} value, without acquiring the lock.
+	 */
+	private boolean replace(Object key, Object value) {
+		Node n = nodes.get(key);
+		if (n != null) {
+			Object old;
+			while ((old = n.value) != null) {
+				// removed nodes are never resurrected by this method, so n cannot have been
+				// compacted away if the CAS succeeds
+				if (NODE_VALUE.compareAndSet(n, old, value)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// must be called with the lock held
+	private void put(Object key, Object value) {
+		Node n = nodes.get(key);
+		if (n != null) {
+			Object old = NODE_VALUE.getAndSet(n, value);
+			if (old == null && value != null) {
+				deadCount -= 1;
+			}
+			else if (old != null && value == null) {
+				deadCount += 1;
+			}
+		}
+		else if (value != null) {
+			// adding new keys is the only operation that may invalidate ongoing traversals
+			if (deadCount > MIN_DEAD_TO_COMPACT && deadCount > nodes.size() - deadCount) {
+				compact();
+			}
+
+			Node m = new Node(key, value);
+			nodes.put(key, m);
+			tail.next = m;
+			tail = m;
+		}
+	}
+
+	// must be called with the lock held
+	private void compact() {
+		Node prev = head;
+		Node n = head.next;
+		while (n != null) {
+			Node next = n.next;
+			if (n.value == null) {
+				nodes.remove(n.key, n);
+				prev.next = next;
+			}
+			else {
+				prev = n;
+			}
+			n = next;
+		}
+		tail = prev;
+		deadCount = 0;
+	}
+
+	private static Object nextLiveKey(Node n) {
+		while (n != null && n.value == null) {
+			n = n.next;
+		}
+		return n != null ? n.key : null;
+	}
+
+	@Override
+	public Object initialKey() {
+		return nextLiveKey(head.next);
+	}
+
+	@Override
+	public Object successorKeyOf(Object key) {
+		key = Conversions.normaliseKey(key);
+		Node n = key != null ? nodes.get(key) : null;
+		if (n == null) {
+			throw new IllegalArgumentException("invalid key to 'next'");
+		}
+		return nextLiveKey(n.next);
+	}
+
+	@Override
+	public Table setMetatable(Table mt) {
+		synchronized (lock) {
+			return super.setMetatable(mt);
+		}
+	}
+
+	@Override
+	protected void setMode(boolean weakKeys, boolean weakValues) {
+		// weak tables are not supported
+	}
+
+}
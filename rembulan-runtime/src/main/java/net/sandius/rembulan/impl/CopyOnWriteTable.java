@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.Table;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A mutable table backed by an immutable base table. Modifications of this table are
+ * recorded in an <i>overlay</i> table, leaving the base table intact; entries that have not
+ * been modified are looked up in the base table, and are never copied.
+ *
+ * <p>This allows large immutable tables (e.g., snapshots obtained using
+ * {@link ImmutableTable#freeze(Table)}) to be shared by multiple Lua states, with each state
+ * holding its own {@code CopyOnWriteTable} view of the shared data at the cost of storing
+ * only the entries it has modified.</p>
+ *
+ * <p>Whenever a value of the base table is itself an {@link ImmutableTable}, it is
+ * wrapped in a {@code CopyOnWriteTable} the first time it is read from this table, so
+ * that nested tables can be modified as well. Subsequent reads return the same wrapper
+ * until the entry is modified.</p>
+ *
+ * <p>The traversal order of this table visits the keys of the base table first (in the
+ * traversal order of the base table), followed by the keys that are not present in the base
+ * table. The weakness mode of this table only applies to the entries in the overlay:
+ * wrappers of nested tables are always held strongly, since they may hold modifications
+ * that are not reachable in any other way.</p>
+ *
+ * <p>Like {@link DefaultTable}, instances of this class are not thread-safe. The base table
+ * is only accessed for reading, and is therefore safe to share as long as it is
+ * not modified.</p>
+ */
+public class CopyOnWriteTable extends Table {
+
+	// the overlay value of keys that are present in the base table, but have been removed
+	private static final Object REMOVED = new Object();
+
+	private final Table base;
+	private final DefaultTable overlay;
+	private final Map<Object, CopyOnWriteTable> wrappers;
+
+	/**
+	 * Constructs a new copy-on-write view of the table {@code base}.
+	 *
+	 * <p>The base table must not be modified for as long as this table is in use.</p>
+	 *
+	 * @param base  the base table, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code base} is {@code null}
+	 */
+	public CopyOnWriteTable(Table base) {
+		this.base = Objects.requireNonNull(base);
+		this.overlay = new DefaultTable();
+		this.wrappers = new HashMap<>();
+	}
+
+	/**
+	 * Returns the base table of this table.
+	 *
+	 * @return  the base table of this table
+	 */
+	public Table base() {
+		return base;
+	}
+
+	private Object fromBase(Object key, Object value) {
+		if (value instanceof ImmutableTable) {
+			// wrap nested immutable tables so that they can be modified, too
+			CopyOnWriteTable wrapper = wrappers.get(key);
+			if (wrapper == null) {
+				wrapper = new CopyOnWriteTable((Table) value);
+				wrappers.put(key, wrapper);
+			}
+			return wrapper;
+		}
+		else {
+			return value;
+		}
+	}
+
+	@Override
+	public Object rawget(Object key) {
+		key = Conversions.normaliseKey(key);
+		if (key == null) {
+			return null;
+		}
+
+		Object v = overlay.rawget(key);
+		if (v == REMOVED) {
+			return null;
+		}
+		else if (v != null) {
+			return v;
+		}
+		else {
+			return fromBase(key, base.rawget(key));
+		}
+	}
+
+	@Override
+	public Object rawget(long idx) {
+		Object v = overlay.rawget(idx);
+		if (v == REMOVED) {
+			return null;
+		}
+		else if (v != null) {
+			return v;
+		}
+		else {
+			v = base.rawget(idx);
+			return v instanceof ImmutableTable ? fromBase(Long.valueOf(idx), v) : v;
+		}
+	}
+
+	@Override
+	public void rawset(Object key, Object value) {
+		key = Conversions.normaliseKey(key);
+		if (key instanceof Long) {
+			rawset(((Long) key).longValue(), value);
+			return;
+		}
+
+		if (value == null && key != null && base.rawget(key) != null) {
+			overlay.rawset(key, REMOVED);
+		}
+		else {
+			// also rejects nil and NaN keys
+			overlay.rawset(key, value);
+		}
+		wrappers.remove(key);
+
+		updateBasetableModes(key, value);
+		updateMetamethodCache(key, value);
+	}
+
+	@Override
+	public void rawset(long idx, Object value) {
+		if (value == null && base.rawget(idx) != null) {
+			overlay.rawset(idx, REMOVED);
+		}
+		else {
+			overlay.rawset(idx, value);
+		}
+		wrappers.remove(Long.valueOf(idx));
+	}
+
+	private Object nextLiveBaseKey(Object key) {
+		while (key != null && overlay.rawget(key) == REMOVED) {
+			key = base.successorKeyOf(key);
+		}
+		return key;
+	}
+
+	private Object nextOverlayOnlyKey(Object key) {
+		// skip keys that are visited as part of the base table
+		while (key != null && base.rawget(key) != null) {
+			key = overlay.successorKeyOf(key);
+		}
+		return key;
+	}
+
+	@Override
+	public Object initialKey() {
+		Object k = nextLiveBaseKey(base.initialKey());
+		return k != null ? k : nextOverlayOnlyKey(overlay.initialKey());
+	}
+
+	@Override
+	public Object successorKeyOf(Object key) {
+		key = Conversions.normaliseKey(key);
+
+		if (key != null && base.rawget(key) != null) {
+			// key is visited as part of the base table
+			Object k = nextLiveBaseKey(base.successorKeyOf(key));
+			return k != null ? k : nextOverlayOnlyKey(overlay.initialKey());
+		}
+		else {
+			return nextOverlayOnlyKey(overlay.successorKeyOf(key));
+		}
+	}
+
+	@Override
+	protected void setMode(boolean weakKeys, boolean weakValues) {
+		overlay.setMode(weakKeys, weakValues);
+	}
+
+}
@@ -16,13 +16,16 @@
 
 package net.sandius.rembulan.impl;
 
+import net.sandius.rembulan.MemoryAccountant;
 import net.sandius.rembulan.MetatableAccessor;
+import net.sandius.rembulan.StringInterner;
 import net.sandius.rembulan.TableFactory;
 
 class DefaultStateContext extends AbstractStateContext {
 
-	protected DefaultStateContext(TableFactory tableFactory, MetatableAccessor metatableAccessor) {
-		super(tableFactory, metatableAccessor);
+	protected DefaultStateContext(TableFactory tableFactory, MetatableAccessor metatableAccessor,
+			MemoryAccountant memoryAccountant, StringInterner stringInterner) {
+		super(tableFactory, metatableAccessor, memoryAccountant, stringInterner);
 	}
 
 }
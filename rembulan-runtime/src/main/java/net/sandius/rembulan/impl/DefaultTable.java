@@ -16,41 +16,174 @@
 
 package net.sandius.rembulan.impl;
 
+import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.MemoryAccountant;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.TableFactory;
 import net.sandius.rembulan.util.TraversableHashMap;
 
-import java.util.NoSuchElementException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
- * Default implementation of the Lua table storing all key-value pairs in a hashmap.
- * The table implementation does not support weak keys or values.
+ * Default implementation of the Lua table.
+ *
+ * <p>Similarly to PUC-Lua, the table consists of two parts: the <i>array part</i>, storing
+ * values associated with the integer keys 1 to <i>n</i> in a contiguous array (where <i>n</i>
+ * is the capacity of the array part), and the <i>hash part</i>, storing all remaining
+ * key-value pairs in a hashmap. The array part is grown whenever a value is assigned
+ * to the integer key immediately following its last slot, so that tables used
+ * as sequences store their contents in the array part without boxing the keys.</p>
+ *
+ * <p>Additionally, string keys are stored in <i>slots</i> whose layout is described by the
+ * {@linkplain Shape shape} of the table. Tables to which the same string keys have
+ * been added in the same order share their shape, which allows accesses to fields with
+ * constant names in compiled code to be cached per site (see {@link FieldCache}).
+ * Removing a string key does not change the shape of the table: the slot is merely
+ * cleared. Once a table accumulates more than {@link Shape#MAX_SIZE} string keys,
+ * all its string keys are moved to the hash part.</p>
+ *
+ * <p>The table maintains a <i>border hint</i>: a cached border (as returned by
+ * {@link #rawlen()}) that is updated incrementally by {@link #rawset(long, Object)},
+ * so that the length of tables grown and shrunk at their end (as in {@code t[#t+1] = v}
+ * or {@code t[#t] = nil}) is available in constant time. When an assignment makes
+ * the hint unreliable, the hint is discarded and recomputed by binary search
+ * on the next call to {@link #rawlen()}.</p>
+ *
+ * <p>The table supports weak keys, weak values, or both (as determined by the
+ * {@code "__mode"} field of its metatable). Weak tables store all their entries in the hash
+ * part, and hold collectable keys and values (i.e., keys and values that are not strings,
+ * numbers or booleans) using {@link WeakReference}s. Entries whose keys or values have
+ * been reclaimed by the garbage collector are removed lazily during subsequent accesses
+ * to the table.</p>
+ *
+ * <p>A table may be constructed with a {@link MemoryAccountant}, in which case it reports
+ * the (approximate) size of its storage to the accountant whenever the storage grows.
+ * Since this may happen in any assignment of a new key, such assignments may throw
+ * a {@link net.sandius.rembulan.MemoryLimitExceededException}.</p>
+ *
+ * <p>Note that the JVM does not support ephemerons: in a table with weak keys
+ * and strong values, a value that (directly or indirectly) refers to its key keeps the key
+ * from being collected.</p>
  */
 public class DefaultTable extends Table {
 
-	private final TraversableHashMap<Object, Object> values;
+	private static final Object[] EMPTY_ARRAY = new Object[0];
+
+	private static final int MIN_ARRAY_CAPACITY = 4;
+	private static final int MAX_ARRAY_CAPACITY = Integer.MAX_VALUE - 8;
+
+	// approximate sizes (in bytes) reported to the memory accountant
+	private static final long TABLE_SIZE = 64;
+	private static final long REFERENCE_SIZE = 8;
+	private static final long ENTRY_SIZE = 64;
+
+	private final MemoryAccountant accountant;  // may be null
+
+	// true while the entries are being re-inserted by setMode, which must not be
+	// accounted for again
+	private boolean reinserting;
+
+	private Object[] array;
+	private TraversableHashMap<Object, Object> values;
+
+	// the shape of the string keys stored in slots; null iff string keys are stored
+	// in the hash part. Package-private for access by FieldCache
+	Shape shape;
+	Object[] slots;
+
+	// if non-negative, a border: (border == 0 || t[border] != nil) && t[border + 1] == nil
+	private long border;
+
+	private boolean weakKeys;
+	private boolean weakValues;
+
+	// non-null iff the table has weak keys or weak values
+	private ReferenceQueue<Object> referenceQueue;
+
+	/**
+	 * Constructs a new empty table with the given initial capacities of the array
+	 * and hash parts, reporting its allocations to the memory accountant {@code accountant}.
+	 *
+	 * @param arrayCapacity  initial capacity of the array part
+	 * @param hashCapacity  initial capacity of the hash part
+	 * @param accountant  the memory accountant, may be {@code null} (in which case
+	 *                    allocations are not reported)
+	 *
+	 * @throws IllegalArgumentException  if {@code arrayCapacity} or {@code hashCapacity}
+	 *                                   is negative
+	 * @throws net.sandius.rembulan.MemoryLimitExceededException  if the accountant rejects
+	 *                                                             the allocation of the table
+	 */
+	public DefaultTable(int arrayCapacity, int hashCapacity, MemoryAccountant accountant) {
+		if (arrayCapacity < 0) {
+			throw new IllegalArgumentException("Illegal array capacity: " + arrayCapacity);
+		}
+		if (hashCapacity < 0) {
+			throw new IllegalArgumentException("Illegal hash capacity: " + hashCapacity);
+		}
+		if (accountant != null) {
+			accountant.allocate(TABLE_SIZE + REFERENCE_SIZE * arrayCapacity
+					+ ENTRY_SIZE * hashCapacity);
+		}
+		this.accountant = accountant;
+		this.array = arrayCapacity > 0 ? new Object[arrayCapacity] : EMPTY_ARRAY;
+		this.values = new TraversableHashMap<>(hashCapacity);
+		this.shape = Shape.EMPTY;
+		this.slots = hashCapacity > 0 ? new Object[Math.min(hashCapacity, Shape.MAX_SIZE)] : EMPTY_ARRAY;
+		this.border = 0;
+		this.weakKeys = false;
+		this.weakValues = false;
+		this.referenceQueue = null;
+	}
+
+	/**
+	 * Constructs a new empty table with the given initial capacities of the array
+	 * and hash parts.
+	 *
+	 * @param arrayCapacity  initial capacity of the array part
+	 * @param hashCapacity  initial capacity of the hash part
+	 *
+	 * @throws IllegalArgumentException  if {@code arrayCapacity} or {@code hashCapacity}
+	 *                                   is negative
+	 */
+	public DefaultTable(int arrayCapacity, int hashCapacity) {
+		this(arrayCapacity, hashCapacity, null);
+	}
 
 	/**
 	 * Constructs a new empty table.
 	 */
 	public DefaultTable() {
-		this.values = new TraversableHashMap<>();
+		this(0, 0);
 	}
 
 	static class Factory implements TableFactory {
+
+		private final MemoryAccountant accountant;
+
+		Factory(MemoryAccountant accountant) {
+			this.accountant = accountant;
+		}
+
 		@Override
 		public Table newTable() {
-			return newTable(0, 0);
+			return new DefaultTable(0, 0, accountant);
 		}
 
 		@Override
 		public Table newTable(int array, int hash) {
-			return new DefaultTable();
+			return new DefaultTable(Math.max(0, array), Math.max(0, hash), accountant);
 		}
+
 	}
 
-	private static final TableFactory FACTORY_INSTANCE = new Factory();
+	private static final TableFactory FACTORY_INSTANCE = new Factory(null);
 
 	/**
 	 * Returns the table factory for constructing instances of {@code DefaultTable}.
@@ -61,10 +194,157 @@ public class DefaultTable extends Table {
 		return FACTORY_INSTANCE;
 	}
 
+	/**
+	 * Returns a table factory for constructing instances of {@code DefaultTable}
+	 * that report their allocations to the memory accountant {@code accountant}.
+	 *
+	 * @param accountant  the memory accountant, must not be {@code null}
+	 * @return  the table factory for {@code DefaultTable}s reporting to {@code accountant}
+	 *
+	 * @throws NullPointerException  if {@code accountant} is {@code null}
+	 */
+	public static TableFactory factory(MemoryAccountant accountant) {
+		return new Factory(Objects.requireNonNull(accountant));
+	}
+
+	private void charge(long bytes) {
+		MemoryAccountant a = accountant;
+		if (a != null && !reinserting) {
+			a.allocate(bytes);
+		}
+	}
+
+	/**
+	 * A weakly-referenced key in the hash part. Two weak keys are equal if they are the same
+	 * object, or if their referents are equal.
+	 */
+	private static final class WeakKey extends WeakReference<Object> {
+
+		private final int hash;
+
+		WeakKey(Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = referent.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof WeakKey)) return false;
+			Object referent = this.get();
+			return referent != null && referent.equals(((WeakKey) o).get());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+	/**
+	 * A weakly-referenced value in the hash part, remembering the (possibly wrapped)
+	 * key it is associated with.
+	 */
+	private static final class WeakValue extends WeakReference<Object> {
+
+		private final Object key;
+
+		WeakValue(Object referent, Object key, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.key = key;
+		}
+
+	}
+
+	private static boolean isCollectable(Object o) {
+		return !(o instanceof Number
+				|| o instanceof Boolean
+				|| o instanceof ByteString
+				|| o instanceof String);
+	}
+
+	private Object wrapKey(Object key, boolean register) {
+		return weakKeys && isCollectable(key)
+				? new WeakKey(key, register ? referenceQueue : null)
+				: key;
+	}
+
+	private static Object unwrapKey(Object key) {
+		return key instanceof WeakKey ? ((WeakKey) key).get() : key;
+	}
+
+	private Object wrapValue(Object wrappedKey, Object value) {
+		return weakValues && isCollectable(value)
+				? new WeakValue(value, wrappedKey, referenceQueue)
+				: value;
+	}
+
+	private static Object unwrapValue(Object value) {
+		return value instanceof WeakValue ? ((WeakValue) value).get() : value;
+	}
+
+	/**
+	 * Removes the entries whose keys or values have been reclaimed by the garbage collector.
+	 */
+	private void expungeStaleEntries() {
+		Reference<?> ref;
+		while ((ref = referenceQueue.poll()) != null) {
+			if (ref instanceof WeakKey) {
+				values.remove(ref);
+			}
+			else {
+				WeakValue wv = (WeakValue) ref;
+				if (values.get(wv.key) == wv) {
+					values.remove(wv.key);
+				}
+			}
+		}
+	}
+
+	private static boolean isArrayIndex(long idx, int capacity) {
+		// equivalent to 1 <= idx && idx <= capacity
+		return idx - 1 < capacity && idx > 0;
+	}
+
 	@Override
 	public Object rawget(Object key) {
 		key = Conversions.normaliseKey(key);
-		return key != null ? values.get(key) : null;
+		if (key instanceof Long) {
+			return rawget(((Long) key).longValue());
+		}
+		else if (key instanceof ByteString && shape != null) {
+			int idx = shape.indexOf((ByteString) key);
+			return idx >= 0 ? slots[idx] : null;
+		}
+		else if (key == null) {
+			return null;
+		}
+		else if (referenceQueue == null) {
+			return values.get(key);
+		}
+		else {
+			expungeStaleEntries();
+			return unwrapValue(values.get(wrapKey(key, false)));
+		}
+	}
+
+	@Override
+	public Object rawget(long idx) {
+		Object[] a = array;
+		if (isArrayIndex(idx, a.length)) {
+			return a[(int) (idx - 1)];
+		}
+		else if (values.isEmpty()) {
+			return null;
+		}
+		else if (referenceQueue == null) {
+			return values.get(Long.valueOf(idx));
+		}
+		else {
+			expungeStaleEntries();
+			return unwrapValue(values.get(Long.valueOf(idx)));
+		}
 	}
 
 	@Override
@@ -74,40 +354,324 @@ public class DefaultTable extends Table {
 		if (key == null) {
 			throw new IllegalArgumentException("table index is nil");
 		}
+		if (key instanceof Long) {
+			rawset(((Long) key).longValue(), value);
+			return;
+		}
 		if (key instanceof Double && Double.isNaN(((Double) key).doubleValue())) {
 			throw new IllegalArgumentException("table index is NaN");
 		}
 
 		value = Conversions.canonicalRepresentationOf(value);
 
-		if (value == null) {
-			values.remove(key);
+		put(key, value);
+
+		updateBasetableModes(key, value);
+		updateMetamethodCache(key, value);
+	}
+
+	@Override
+	public void rawset(long idx, Object value) {
+		value = Conversions.canonicalRepresentationOf(value);
+
+		Object[] a = array;
+		if (isArrayIndex(idx, a.length)) {
+			a[(int) (idx - 1)] = value;
+		}
+		else if (value != null && idx == a.length + 1L && a.length < MAX_ARRAY_CAPACITY
+				&& referenceQueue == null) {
+			growArray();
+			array[(int) (idx - 1)] = value;
+		}
+		else if (value != null || !values.isEmpty()) {
+			hashPut(Long.valueOf(idx), value);
+		}
+
+		updateBorder(idx, value);
+	}
+
+	/**
+	 * Updates the border hint following the assignment of {@code value} to the integer
+	 * key {@code idx}. Only assignments to the keys {@code border} and {@code border + 1}
+	 * may affect the hint; if the adjacent key shows that the moved hint is not a border,
+	 * the hint is discarded.
+	 */
+	private void updateBorder(long idx, Object value) {
+		long b = border;
+		if (b < 0 || idx <= 0) {
+			return;
+		}
+
+		if (value != null) {
+			if (idx == b + 1) {
+				border = rawget(idx + 1) == null ? idx : -1;
+			}
 		}
 		else {
-			values.put(key, value);
+			if (idx == b) {
+				border = idx == 1 || rawget(idx - 1) != null ? idx - 1 : -1;
+			}
 		}
+	}
 
-		updateBasetableModes(key, value);
+	@Override
+	public long rawlen() {
+		if (referenceQueue != null) {
+			// values may disappear at any time, the hint is not maintained
+			return super.rawlen();
+		}
+
+		long b = border;
+		if (b < 0) {
+			border = b = super.rawlen();
+		}
+		return b;
+	}
+
+	// key must not be a Long
+	private void put(Object key, Object value) {
+		if (key instanceof ByteString && shape != null) {
+			slotPut((ByteString) key, value);
+		}
+		else {
+			hashPut(key, value);
+		}
+	}
+
+	private void slotPut(ByteString key, Object value) {
+		Shape s = shape;
+		int idx = s.indexOf(key);
+		if (idx >= 0) {
+			slots[idx] = value;
+		}
+		else if (value != null) {
+			idx = s.size();
+			if (idx < Shape.MAX_SIZE) {
+				if (idx >= slots.length) {
+					int newLength = Math.min(Math.max(4, idx * 2), Shape.MAX_SIZE);
+					charge(REFERENCE_SIZE * newLength);
+					slots = Arrays.copyOf(slots, newLength);
+				}
+				slots[idx] = value;
+				shape = s.withKey(key);
+			}
+			else {
+				moveSlotsToHash();
+				hashPut(key, value);
+			}
+		}
+	}
+
+	/**
+	 * Moves the contents of the slots to the hash part, and stops using shapes
+	 * for this table.
+	 */
+	private void moveSlotsToHash() {
+		Shape s = shape;
+		Object[] sl = slots;
+
+		shape = null;
+		slots = EMPTY_ARRAY;
+
+		for (int i = 0; i < s.size(); i++) {
+			Object v = sl[i];
+			if (v != null) {
+				hashPut(s.keyAt(i), v);
+			}
+		}
+	}
+
+	private void hashPut(Object key, Object value) {
+		if (referenceQueue == null) {
+			if (value == null) {
+				values.remove(key);
+			}
+			else if (values.put(key, value) == null) {
+				charge(ENTRY_SIZE);
+			}
+		}
+		else {
+			expungeStaleEntries();
+			if (value == null) {
+				values.remove(wrapKey(key, false));
+			}
+			else {
+				Object k = wrapKey(key, true);
+				if (values.put(k, wrapValue(k, value)) == null) {
+					charge(ENTRY_SIZE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grows the array part, migrating the integer keys covered by the extended array part
+	 * from the hash part. Continues growing for as long as the key immediately
+	 * following the array part is found in the hash part.
+	 */
+	private void growArray() {
+		Object[] a = array;
+		int oldCapacity = a.length;
+		int newCapacity = oldCapacity;
+
+		do {
+			newCapacity = newCapacity < MIN_ARRAY_CAPACITY
+					? MIN_ARRAY_CAPACITY
+					: (int) Math.min((long) newCapacity << 1, MAX_ARRAY_CAPACITY);
+		} while (newCapacity < MAX_ARRAY_CAPACITY
+				&& !values.isEmpty()
+				&& values.containsKey(Long.valueOf(newCapacity + 1L)));
+
+		charge(REFERENCE_SIZE * newCapacity);
+
+		Object[] na = new Object[newCapacity];
+		System.arraycopy(a, 0, na, 0, oldCapacity);
+
+		if (!values.isEmpty()) {
+			for (int i = oldCapacity; i < newCapacity; i++) {
+				na[i] = values.remove(Long.valueOf(i + 1L));
+			}
+		}
+
+		array = na;
+	}
+
+	private Object nextArrayKey(int fromIndex) {
+		Object[] a = array;
+		for (int i = fromIndex; i < a.length; i++) {
+			if (a[i] != null) {
+				return Long.valueOf(i + 1L);
+			}
+		}
+		return null;
+	}
+
+	private Object nextSlotKey(int fromIndex) {
+		Shape s = shape;
+		if (s != null) {
+			Object[] sl = slots;
+			for (int i = fromIndex; i < s.size(); i++) {
+				if (sl[i] != null) {
+					return s.keyAt(i);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the first key in the hash part starting at (and including) the key
+	 * {@code wrappedKey}, skipping entries whose keys or values have been reclaimed
+	 * by the garbage collector.
+	 */
+	private Object nextLiveHashKey(Object wrappedKey) {
+		while (wrappedKey != null) {
+			Object k = unwrapKey(wrappedKey);
+			if (k != null && unwrapValue(values.get(wrappedKey)) != null) {
+				return k;
+			}
+			wrappedKey = values.getSuccessorOf(wrappedKey);
+		}
+		return null;
 	}
 
 	@Override
 	public Object initialKey() {
-		return values.getFirstKey();
+		Object k = nextArrayKey(0);
+		if (k != null) {
+			return k;
+		}
+		else if (referenceQueue == null) {
+			k = nextSlotKey(0);
+			return k != null ? k : values.getFirstKey();
+		}
+		else {
+			expungeStaleEntries();
+			return nextLiveHashKey(values.getFirstKey());
+		}
 	}
 
 	@Override
 	public Object successorKeyOf(Object key) {
-		try {
-			return values.getSuccessorOf(key);
+		key = Conversions.normaliseKey(key);
+
+		if (key instanceof Long) {
+			long idx = ((Long) key).longValue();
+			if (isArrayIndex(idx, array.length)) {
+				Object k = nextArrayKey((int) idx);
+				if (k == null) k = nextSlotKey(0);
+				return k != null ? k : initialHashKey();
+			}
 		}
-		catch (NoSuchElementException | NullPointerException ex) {
-			throw new IllegalArgumentException("invalid key to 'next'", ex);
+		else if (key instanceof ByteString && shape != null) {
+			int idx = shape.indexOf((ByteString) key);
+			if (idx >= 0) {
+				Object k = nextSlotKey(idx + 1);
+				return k != null ? k : initialHashKey();
+			}
+		}
+
+		Object hashKey = referenceQueue == null || key == null ? key : wrapKey(key, false);
+		if (!values.isTraversalKey(hashKey)) {
+			throw new IllegalArgumentException("invalid key to 'next'");
+		}
+
+		if (referenceQueue == null) {
+			return values.getSuccessorOf(hashKey);
+		}
+		else {
+			Object next = nextLiveHashKey(values.getSuccessorOf(hashKey));
+			expungeStaleEntries();
+			return next;
 		}
 	}
 
+	private Object initialHashKey() {
+		return referenceQueue == null
+				? values.getFirstKey()
+				: nextLiveHashKey(values.getFirstKey());
+	}
+
 	@Override
 	protected void setMode(boolean weakKeys, boolean weakValues) {
-		// TODO
+		if (this.weakKeys == weakKeys && this.weakValues == weakValues) {
+			return;
+		}
+
+		// collect all live entries
+		ArrayList<Object> entries = new ArrayList<>();
+		for (Object k = initialKey(); k != null; k = successorKeyOf(k)) {
+			entries.add(k);
+			entries.add(rawget(k));
+		}
+
+		// reset the table in the new mode
+		this.weakKeys = weakKeys;
+		this.weakValues = weakValues;
+		this.referenceQueue = weakKeys || weakValues ? new ReferenceQueue<>() : null;
+		this.array = EMPTY_ARRAY;
+		this.values = new TraversableHashMap<>();
+		this.shape = referenceQueue == null ? Shape.EMPTY : null;
+		this.slots = EMPTY_ARRAY;
+		this.border = 0;
+
+		// re-insert the entries
+		reinserting = true;
+		try {
+			for (int i = 0; i < entries.size(); i += 2) {
+				Object k = entries.get(i);
+				Object v = entries.get(i + 1);
+				if (k instanceof Long) {
+					rawset(((Long) k).longValue(), v);
+				}
+				else {
+					put(k, v);
+				}
+			}
+		}
+		finally {
+			reinserting = false;
+		}
 	}
 
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.Table;
+
+import java.util.Objects;
+
+/**
+ * An inline cache for raw accesses to a table field with a constant string key.
+ *
+ * <p>Compiled Lua functions use one instance of this class per access site
+ * ({@code t.name} or {@code t.name = v}). The cache remembers the {@linkplain Shape shape}
+ * of the most recently accessed {@link DefaultTable} together with the slot index
+ * of the key in that shape, so that as long as the site keeps seeing tables of the same
+ * shape, the access consists of a shape check and an array access.</p>
+ *
+ * <p>The methods of this class only provide <i>raw</i> access: callers are responsible
+ * for falling back to non-raw access (e.g. via
+ * {@link net.sandius.rembulan.runtime.Dispatch#index(net.sandius.rembulan.runtime.ExecutionContext, Object, Object)})
+ * when the raw access fails.</p>
+ *
+ * <p>Instances of this class are thread-safe.</p>
+ */
+public final class FieldCache {
+
+	private final ByteString key;
+	private final boolean writable;
+
+	// the most recent hit, may be null
+	private Hit hit;
+
+	private static final class Hit {
+
+		final Shape shape;
+		final int index;
+
+		Hit(Shape shape, int index) {
+			this.shape = shape;
+			this.index = index;
+		}
+
+	}
+
+	/**
+	 * Constructs a new inline cache for the key {@code key}.
+	 *
+	 * @param key  the key, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code key} is {@code null}
+	 */
+	public FieldCache(ByteString key) {
+		this.key = Objects.requireNonNull(key);
+		// assignments to metatable keys must go through rawset to keep the caches
+		// in Table up to date
+		this.writable = !key.startsWith((byte) '_');
+		this.hit = null;
+	}
+
+	/**
+	 * Returns the key of this cache.
+	 *
+	 * @return  the key of this cache
+	 */
+	public ByteString key() {
+		return key;
+	}
+
+	private Hit lookup(DefaultTable t) {
+		Hit h = hit;
+		Shape s = t.shape;
+		if (h != null && h.shape == s) {
+			return h;
+		}
+		else if (s != null) {
+			int idx = s.indexOf(key);
+			if (idx >= 0) {
+				h = new Hit(s, idx);
+				hit = h;
+				return h;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the value associated with the key of this cache in {@code o} if {@code o}
+	 * is a table, or {@code null} if {@code o} is not a table or does not contain the key.
+	 *
+	 * @param o  the object to access, may be {@code null}
+	 * @return  the raw value associated with the key of this cache in {@code o},
+	 *          or {@code null}
+	 */
+	public Object rawget(Object o) {
+		if (o != null && o.getClass() == DefaultTable.class) {
+			DefaultTable t = (DefaultTable) o;
+			Hit h = lookup(t);
+			if (h != null) {
+				return t.slots[h.index];
+			}
+			else {
+				// the key is not in the shape, or the table is not using shapes
+				return t.shape != null ? null : t.rawget(key);
+			}
+		}
+		else if (o instanceof Table) {
+			return ((Table) o).rawget(key);
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * If {@code o} is a table in which the key of this cache is associated with
+	 * a non-{@code nil} value, associates {@code value} with the key and returns
+	 * {@code true}. Otherwise, returns {@code false}, leaving {@code o} unmodified.
+	 *
+	 * @param o  the object to access, may be {@code null}
+	 * @param value  the new value, may be {@code null}
+	 * @return  {@code true} if the assignment was performed
+	 */
+	public boolean rawsetIfPresent(Object o, Object value) {
+		if (o != null && o.getClass() == DefaultTable.class && writable) {
+			DefaultTable t = (DefaultTable) o;
+			Hit h = lookup(t);
+			if (h != null) {
+				Object[] slots = t.slots;
+				if (slots[h.index] != null) {
+					slots[h.index] = Conversions.canonicalRepresentationOf(value);
+					return true;
+				}
+				else {
+					return false;
+				}
+			}
+		}
+
+		if (o instanceof Table) {
+			Table t = (Table) o;
+			if (t.rawget(key) != null) {
+				t.rawset(key, value);
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+}
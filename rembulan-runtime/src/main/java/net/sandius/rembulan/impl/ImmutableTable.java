@@ -23,6 +23,7 @@ import net.sandius.rembulan.util.TraversableHashMap;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -36,7 +37,8 @@ import java.util.Objects;
  * <p>The table has no metatable.</p>
  *
  * <p>To instantiate a new {@code ImmutableTable}, use one of the static constructor methods
- * (e.g., {@link #of(Iterable)}), or a {@link ImmutableTable.Builder} as follows:</p>
+ * (e.g., {@link #of(Iterable)} or {@link #freeze(Table)}), or
+ * a {@link ImmutableTable.Builder} as follows:</p>
  *
  * <pre>
  *     ImmutableTable t = new ImmutableTable.Builder()
@@ -47,12 +49,17 @@ import java.util.Objects;
  *
  * <p><b>A word of caution:</b> this class violates the expectation that all Lua tables are
  * mutable, and should therefore be used with care. In order to create a mutable copy of this
- * table, use {@link #newCopy(TableFactory)}.</p>
+ * table, use {@link #newCopy(TableFactory)}; in order to obtain a mutable view of this table
+ * that does not copy its contents, use a {@link CopyOnWriteTable}.</p>
+ *
+ * <p>Instances of this class are thread-safe, and may be shared by multiple Lua states.</p>
  */
 public class ImmutableTable extends Table {
 
 	private final Map<Object, Entry> entries;
 	private final Object initialKey;  // null iff the table is empty
+	private final boolean frozen;  // true iff constructed by freeze(Table)
+	private volatile long length;  // -1 until computed
 
 	static class Entry {
 
@@ -66,9 +73,11 @@ public class ImmutableTable extends Table {
 
 	}
 
-	ImmutableTable(Map<Object, Entry> entries, Object initialKey) {
+	ImmutableTable(Map<Object, Entry> entries, Object initialKey, boolean frozen) {
 		this.entries = Objects.requireNonNull(entries);
 		this.initialKey = initialKey;
+		this.frozen = frozen;
+		this.length = -1;
 	}
 
 	/**
@@ -128,6 +137,60 @@ public class ImmutableTable extends Table {
 		return of(map.entrySet());
 	}
 
+	/**
+	 * Returns a deeply immutable snapshot of the contents of {@code table}.
+	 *
+	 * <p>All tables reachable from {@code table} through its values are replaced by their
+	 * snapshots as well; a table reachable along multiple paths is replaced by the same
+	 * snapshot. Metatables are not part of the snapshot. Keys retain their identity,
+	 * and values other than tables (e.g., functions or userdata) are not copied.</p>
+	 *
+	 * <p>If {@code table} is itself a snapshot returned by this method, it is returned
+	 * as is.</p>
+	 *
+	 * <p>The resulting table does not depend on {@code table}: subsequent modifications
+	 * of {@code table} are not reflected in the snapshot. Since it is immutable,
+	 * the snapshot may be shared by multiple Lua states (and threads); a state may modify
+	 * its view of the snapshot by wrapping it in a {@link CopyOnWriteTable}.</p>
+	 *
+	 * @param table  the table to take a snapshot of, must not be {@code null}
+	 * @return  a deeply immutable snapshot of {@code table}
+	 *
+	 * @throws NullPointerException  if {@code table} is {@code null}
+	 * @throws IllegalArgumentException  if {@code table} refers to itself (directly or
+	 *                                   indirectly)
+	 */
+	public static ImmutableTable freeze(Table table) {
+		return freeze(table, new IdentityHashMap<Table, ImmutableTable>());
+	}
+
+	// done maps tables to their snapshots, or to null while they are being frozen
+	private static ImmutableTable freeze(Table table, Map<Table, ImmutableTable> done) {
+		if (table instanceof ImmutableTable && ((ImmutableTable) table).frozen) {
+			return (ImmutableTable) table;
+		}
+
+		if (done.containsKey(table)) {
+			ImmutableTable result = done.get(table);
+			if (result == null) {
+				throw new IllegalArgumentException("cannot freeze a table containing a reference cycle");
+			}
+			return result;
+		}
+
+		done.put(table, null);
+
+		Builder builder = new Builder();
+		for (Object k = table.initialKey(); k != null; k = table.successorKeyOf(k)) {
+			Object v = table.rawget(k);
+			builder.add(k, v instanceof Table ? freeze((Table) v, done) : v);
+		}
+
+		ImmutableTable result = builder.build(true);
+		done.put(table, result);
+		return result;
+	}
+
 	/**
 	 * Returns a new table constructed using the supplied {@code tableFactory}, and copies
 	 * the contents of this table to it.
@@ -167,6 +230,16 @@ public class ImmutableTable extends Table {
 		return e != null ? e.value : null;
 	}
 
+	@Override
+	public long rawlen() {
+		// the contents never change, so the length only needs to be computed once
+		long len = length;
+		if (len < 0) {
+			length = len = super.rawlen();
+		}
+		return len;
+	}
+
 	/**
 	 * Throws an {@link UnsupportedOperationException}, since this table is immutable.
 	 *
@@ -323,13 +396,17 @@ public class ImmutableTable extends Table {
 		 * @return  a new immutable table
 		 */
 		public ImmutableTable build() {
+			return build(false);
+		}
+
+		ImmutableTable build(boolean frozen) {
 			Map<Object, Entry> tableEntries = new HashMap<>();
 
 			for (Map.Entry<Object, Object> e : entries.entrySet()) {
 				Object k = e.getKey();
 				tableEntries.put(e.getKey(), new Entry(e.getValue(), entries.getSuccessorOf(k)));
 			}
-			return new ImmutableTable(Collections.unmodifiableMap(tableEntries), entries.getFirstKey());
+			return new ImmutableTable(Collections.unmodifiableMap(tableEntries), entries.getFirstKey(), frozen);
 		}
 
 	}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.MemoryAccountant;
+import net.sandius.rembulan.MemoryAccountantProvider;
+import net.sandius.rembulan.MemoryLimitExceededException;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.util.Check;
+
+import java.util.Objects;
+
+/**
+ * Static factory for instantiating memory accountants.
+ */
+public final class MemoryAccountants {
+
+	private MemoryAccountants() {
+		// not to be instantiated
+	}
+
+	private static final MemoryAccountant UNLIMITED_INSTANCE = new UnlimitedMemoryAccountant();
+
+	/**
+	 * Returns a memory accountant that accepts all allocations and never indicates
+	 * that the execution should be paused.
+	 *
+	 * @return  a memory accountant that does not enforce any limit
+	 */
+	public static MemoryAccountant unlimited() {
+		return UNLIMITED_INSTANCE;
+	}
+
+	/**
+	 * Returns the memory accountant of the state context {@code context}.
+	 *
+	 * <p>If {@code context} is a {@link MemoryAccountantProvider}, returns its
+	 * memory accountant; otherwise, returns {@link #unlimited()}.</p>
+	 *
+	 * @param context  the state context, must not be {@code null}
+	 * @return  the memory accountant of {@code context}
+	 *
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 */
+	public static MemoryAccountant forContext(StateContext context) {
+		Objects.requireNonNull(context);
+		return context instanceof MemoryAccountantProvider
+				? ((MemoryAccountantProvider) context).getMemoryAccountant()
+				: UNLIMITED_INSTANCE;
+	}
+
+	/**
+	 * Returns a memory accountant that allows at most {@code max} bytes to be allocated
+	 * in total.
+	 *
+	 * <p>An allocation that would make the total exceed {@code max} is rejected by throwing
+	 * a {@link MemoryLimitExceededException}; rejected allocations are not counted towards
+	 * the total. The accountant never indicates that the execution should be paused.</p>
+	 *
+	 * @param max  the maximum number of bytes, must be non-negative
+	 * @return  a memory accountant that raises an error once {@code max} bytes have been
+	 *          allocated
+	 *
+	 * @throws IllegalArgumentException  when {@code max} is negative
+	 */
+	public static MemoryAccountant newLimit(long max) {
+		return new LimitingMemoryAccountant(max);
+	}
+
+	/**
+	 * Returns a memory accountant that indicates that the execution should be paused
+	 * after every {@code quantum} bytes allocated.
+	 *
+	 * <p>Once at least {@code quantum} bytes have been allocated since the last pause,
+	 * the accountant returns {@code true} from {@link MemoryAccountant#shouldPause()}.
+	 * Doing so resets the counter, giving the host a chance to inspect the state
+	 * (e.g., its actual heap usage) before resuming the execution. The accountant
+	 * accepts all allocations.</p>
+	 *
+	 * @param quantum  the number of bytes between pauses, must be positive
+	 * @return  a memory accountant that requests a pause every {@code quantum} bytes
+	 *
+	 * @throws IllegalArgumentException  when {@code quantum} is not positive
+	 */
+	public static MemoryAccountant newPausingAccountant(long quantum) {
+		return new PausingMemoryAccountant(quantum);
+	}
+
+	private static class UnlimitedMemoryAccountant implements MemoryAccountant {
+
+		@Override
+		public void allocate(long bytes) {
+			// no-op
+		}
+
+		@Override
+		public boolean shouldPause() {
+			return false;
+		}
+
+	}
+
+	private static class LimitingMemoryAccountant implements MemoryAccountant {
+
+		private long allowance;
+
+		public LimitingMemoryAccountant(long max) {
+			Check.nonNegative(max);
+			this.allowance = max;
+		}
+
+		@Override
+		public void allocate(long bytes) {
+			if (bytes > allowance) {
+				throw new MemoryLimitExceededException();
+			}
+			allowance -= bytes;
+		}
+
+		@Override
+		public boolean shouldPause() {
+			return false;
+		}
+
+	}
+
+	private static class PausingMemoryAccountant implements MemoryAccountant {
+
+		private final long quantum;
+		private long allowance;
+
+		public PausingMemoryAccountant(long quantum) {
+			Check.positive(quantum);
+			this.quantum = quantum;
+			this.allowance = quantum;
+		}
+
+		@Override
+		public void allocate(long bytes) {
+			allowance -= Math.max(0, bytes);
+		}
+
+		@Override
+		public boolean shouldPause() {
+			if (allowance <= 0) {
+				allowance = quantum;
+				return true;
+			}
+			else {
+				return false;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.ByteString;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The shape (also known as <i>hidden class</i>) of a {@link DefaultTable}: an immutable
+ * sequence of string keys, mapping each key to the index of the slot storing its value.
+ *
+ * <p>Shapes form a tree rooted in {@link #EMPTY}. Tables that had the same string keys
+ * added in the same order share the same shape, which allows {@link FieldCache}s
+ * to replace the lookup of a string key by a shape check.</p>
+ *
+ * <p>Instances of this class are thread-safe.</p>
+ */
+final class Shape {
+
+	/**
+	 * The maximum number of keys in a shape. Tables with more string keys store them
+	 * in the hash part instead.
+	 */
+	static final int MAX_SIZE = 32;
+
+	// shapes up to this size look keys up by a linear scan
+	private static final int MAX_LINEAR_SIZE = 8;
+
+	/**
+	 * The shape with no keys.
+	 */
+	static final Shape EMPTY = new Shape(new ByteString[0]);
+
+	private final ByteString[] keys;
+	private final Map<ByteString, Integer> indices;  // null if keys.length <= MAX_LINEAR_SIZE
+
+	// guarded by this; children are only weakly reachable from their parent
+	private final Map<ByteString, WeakReference<Shape>> transitions;
+
+	// the most recently taken transition, may be null
+	private volatile Shape lastTransition;
+
+	private Shape(ByteString[] keys) {
+		this.keys = keys;
+		if (keys.length > MAX_LINEAR_SIZE) {
+			Map<ByteString, Integer> m = new HashMap<>(keys.length * 2);
+			for (int i = 0; i < keys.length; i++) {
+				m.put(keys[i], i);
+			}
+			this.indices = m;
+		}
+		else {
+			this.indices = null;
+		}
+		this.transitions = new HashMap<>();
+		this.lastTransition = null;
+	}
+
+	/**
+	 * Returns the number of keys in this shape.
+	 *
+	 * @return  the number of keys in this shape
+	 */
+	int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the key at the index {@code index}.
+	 *
+	 * @param index  the index, must be between 0 (inclusive) and {@link #size()} (exclusive)
+	 * @return  the key at {@code index}
+	 */
+	ByteString keyAt(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Returns the slot index of {@code key} in this shape, or {@code -1} if {@code key}
+	 * is not in this shape.
+	 *
+	 * @param key  the key, must not be {@code null}
+	 * @return  the slot index of {@code key}, or {@code -1} if not found
+	 */
+	int indexOf(ByteString key) {
+		Map<ByteString, Integer> m = indices;
+		if (m == null) {
+			ByteString[] ks = keys;
+			for (int i = 0; i < ks.length; i++) {
+				ByteString k = ks[i];
+				if (k == key || k.equals(key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		else {
+			Integer idx = m.get(key);
+			return idx != null ? idx : -1;
+		}
+	}
+
+	/**
+	 * Returns the shape obtained by appending {@code key} to this shape. The key
+	 * {@code key} must not be in this shape, and the size of this shape must be lower
+	 * than {@link #MAX_SIZE}.
+	 *
+	 * @param key  the key to append, must not be {@code null}
+	 * @return  the shape with {@code key} appended
+	 */
+	Shape withKey(ByteString key) {
+		Shape s = lastTransition;
+		if (s != null && s.keys[keys.length].equals(key)) {
+			return s;
+		}
+
+		synchronized (this) {
+			WeakReference<Shape> ref = transitions.get(key);
+			s = ref != null ? ref.get() : null;
+			if (s == null) {
+				ByteString[] ks = new ByteString[keys.length + 1];
+				System.arraycopy(keys, 0, ks, 0, keys.length);
+				ks[keys.length] = key;
+				s = new Shape(ks);
+				expungeStaleTransitions();
+				transitions.put(key, new WeakReference<>(s));
+			}
+		}
+
+		lastTransition = s;
+		return s;
+	}
+
+	// must be called with the monitor held; amortised by only running at powers of two
+	private void expungeStaleTransitions() {
+		int n = transitions.size();
+		if (n >= 16 && (n & (n - 1)) == 0) {
+			Iterator<WeakReference<Shape>> it = transitions.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().get() == null) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+}
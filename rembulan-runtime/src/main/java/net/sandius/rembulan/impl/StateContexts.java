@@ -16,8 +16,10 @@
 
 package net.sandius.rembulan.impl;
 
+import net.sandius.rembulan.MemoryAccountant;
 import net.sandius.rembulan.MetatableAccessor;
 import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.StringInterner;
 import net.sandius.rembulan.TableFactory;
 
 /**
@@ -42,7 +44,56 @@ public final class StateContexts {
 	 *                               is {@code null}
 	 */
 	public static StateContext newInstance(TableFactory tableFactory, MetatableAccessor metatableAccessor) {
-		return new DefaultStateContext(tableFactory, metatableAccessor);
+		return newInstance(tableFactory, metatableAccessor, MemoryAccountants.unlimited());
+	}
+
+	/**
+	 * Returns a new state context with the specified table factory {@code tableFactory},
+	 * the metatable accessor {@code metatableAccessor} and the memory accountant
+	 * {@code memoryAccountant}.
+	 *
+	 * <p>Note that the accountant is not automatically informed of the tables constructed
+	 * by {@code tableFactory}: to account for tables, use a table factory that reports
+	 * to {@code memoryAccountant} (such as {@link DefaultTable#factory(MemoryAccountant)}).</p>
+	 *
+	 * @param tableFactory  table factory to be used by this state, must not be {@code null}
+	 * @param metatableAccessor  metatable accessor to be used by this state, must not be
+	 *                           {@code null}
+	 * @param memoryAccountant  memory accountant to be used by this state, must not be
+	 *                          {@code null}
+	 * @return  a new default instance with the specified table factory, metatable accessor
+	 *          and memory accountant
+	 *
+	 * @throws NullPointerException  if {@code tableFactory}, {@code metatableAccessor}
+	 *                               or {@code memoryAccountant} is {@code null}
+	 */
+	public static StateContext newInstance(TableFactory tableFactory, MetatableAccessor metatableAccessor,
+			MemoryAccountant memoryAccountant) {
+		return newInstance(tableFactory, metatableAccessor, memoryAccountant, StringInterners.none());
+	}
+
+	/**
+	 * Returns a new state context with the specified table factory {@code tableFactory},
+	 * the metatable accessor {@code metatableAccessor}, the memory accountant
+	 * {@code memoryAccountant} and the string interner {@code stringInterner}.
+	 *
+	 * @param tableFactory  table factory to be used by this state, must not be {@code null}
+	 * @param metatableAccessor  metatable accessor to be used by this state, must not be
+	 *                           {@code null}
+	 * @param memoryAccountant  memory accountant to be used by this state, must not be
+	 *                          {@code null}
+	 * @param stringInterner  string interner to be used by this state, must not be
+	 *                        {@code null}
+	 * @return  a new default instance with the specified table factory, metatable accessor,
+	 *          memory accountant and string interner
+	 *
+	 * @throws NullPointerException  if {@code tableFactory}, {@code metatableAccessor},
+	 *                               {@code memoryAccountant} or {@code stringInterner}
+	 *                               is {@code null}
+	 */
+	public static StateContext newInstance(TableFactory tableFactory, MetatableAccessor metatableAccessor,
+			MemoryAccountant memoryAccountant, StringInterner stringInterner) {
+		return new DefaultStateContext(tableFactory, metatableAccessor, memoryAccountant, stringInterner);
 	}
 
 	/**
@@ -55,4 +106,35 @@ public final class StateContexts {
 		return newInstance(DefaultTable.factory(), new DefaultMetatableAccessor());
 	}
 
+	/**
+	 * Returns a new state context with the default metatable accessor and the memory
+	 * accountant {@code memoryAccountant}. Tables constructed by the state context
+	 * report their allocations to {@code memoryAccountant}.
+	 *
+	 * @param memoryAccountant  memory accountant to be used by this state, must not be
+	 *                          {@code null}
+	 * @return  a new default instance with the specified memory accountant
+	 *
+	 * @throws NullPointerException  if {@code memoryAccountant} is {@code null}
+	 */
+	public static StateContext newDefaultInstance(MemoryAccountant memoryAccountant) {
+		return newInstance(DefaultTable.factory(memoryAccountant), new DefaultMetatableAccessor(),
+				memoryAccountant);
+	}
+
+	/**
+	 * Returns a new state context with the default table factory, the default metatable
+	 * accessor and the string interner {@code stringInterner}.
+	 *
+	 * @param stringInterner  string interner to be used by this state, must not be
+	 *                        {@code null}
+	 * @return  a new default instance with the specified string interner
+	 *
+	 * @throws NullPointerException  if {@code stringInterner} is {@code null}
+	 */
+	public static StateContext newDefaultInstance(StringInterner stringInterner) {
+		return newInstance(DefaultTable.factory(), new DefaultMetatableAccessor(),
+				MemoryAccountants.unlimited(), stringInterner);
+	}
+
 }
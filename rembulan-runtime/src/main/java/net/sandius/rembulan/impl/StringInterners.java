@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.StringInterner;
+import net.sandius.rembulan.StringInternerProvider;
+import net.sandius.rembulan.util.Check;
+
+import java.util.Objects;
+
+/**
+ * Static factory for instantiating string interners.
+ */
+public final class StringInterners {
+
+	private StringInterners() {
+		// not to be instantiated
+	}
+
+	/**
+	 * The default maximum length (in bytes) of strings interned by the interners
+	 * returned by {@link #newDefaultInstance()}.
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 40;
+
+	/**
+	 * The default capacity of the interners returned by {@link #newDefaultInstance()}.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final StringInterner NONE_INSTANCE = new NoStringInterner();
+
+	/**
+	 * Returns a string interner that does not intern any strings, i.e., an interner
+	 * that always returns its argument.
+	 *
+	 * @return  a string interner that does not intern strings
+	 */
+	public static StringInterner none() {
+		return NONE_INSTANCE;
+	}
+
+	/**
+	 * Returns the string interner of the state context {@code context}.
+	 *
+	 * <p>If {@code context} is a {@link StringInternerProvider}, returns its string
+	 * interner; otherwise, returns {@link #none()}.</p>
+	 *
+	 * @param context  the state context, must not be {@code null}
+	 * @return  the string interner of {@code context}
+	 *
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 */
+	public static StringInterner forContext(StateContext context) {
+		Objects.requireNonNull(context);
+		return context instanceof StringInternerProvider
+				? ((StringInternerProvider) context).getStringInterner()
+				: NONE_INSTANCE;
+	}
+
+	/**
+	 * Returns a new string interner that interns strings of at most {@code maxLength} bytes,
+	 * remembering at most {@code capacity} strings.
+	 *
+	 * <p>The interner is a fixed-size cache: when a string is interned, it replaces any
+	 * previously interned string occupying the same entry. The interner therefore never
+	 * holds on to more than {@code capacity} strings, and the strings it does not hold on to
+	 * may be reclaimed by the garbage collector. Strings longer than {@code maxLength}
+	 * bytes are returned unchanged.</p>
+	 *
+	 * <p>Like {@link DefaultTable}, the interner is not thread-safe.</p>
+	 *
+	 * @param capacity  the maximum number of strings, must be positive; rounded up
+	 *                  to the nearest power of two
+	 * @param maxLength  the maximum length in bytes of the interned strings, must not
+	 *                   be negative
+	 * @return  a new string interner
+	 *
+	 * @throws IllegalArgumentException  when {@code capacity} is not positive,
+	 *                                   or {@code maxLength} is negative
+	 */
+	public static StringInterner newInstance(int capacity, int maxLength) {
+		return new CachingStringInterner(capacity, maxLength);
+	}
+
+	/**
+	 * Returns a new string interner that interns strings of at most
+	 * {@link #DEFAULT_MAX_LENGTH} bytes, remembering at most {@link #DEFAULT_CAPACITY}
+	 * strings.
+	 *
+	 * @return  a new string interner with the default settings
+	 *
+	 * @see #newInstance(int, int)
+	 */
+	public static StringInterner newDefaultInstance() {
+		return newInstance(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	private static class NoStringInterner implements StringInterner {
+
+		@Override
+		public ByteString intern(ByteString s) {
+			return Objects.requireNonNull(s);
+		}
+
+	}
+
+	private static class CachingStringInterner implements StringInterner {
+
+		private final int maxLength;
+
+		// a direct-mapped cache indexed by the hash code
+		private final ByteString[] entries;
+
+		public CachingStringInterner(int capacity, int maxLength) {
+			Check.positive(capacity);
+			Check.nonNegative(maxLength);
+			if (capacity > 1 << 30) {
+				throw new IllegalArgumentException("capacity too large: " + capacity);
+			}
+			this.maxLength = maxLength;
+			this.entries = new ByteString[capacity > 1 ? Integer.highestOneBit(capacity - 1) << 1 : 1];
+		}
+
+		@Override
+		public ByteString intern(ByteString s) {
+			if (s.length() > maxLength) {
+				return s;
+			}
+
+			int h = s.hashCode();
+			ByteString[] es = entries;
+			int idx = (h ^ (h >>> 16)) & (es.length - 1);
+
+			ByteString e = es[idx];
+			if (e == s || (e != null && e.equals(s))) {
+				return e;
+			}
+			else {
+				es[idx] = s;
+				return s;
+			}
+		}
+
+	}
+
+}
@@ -396,7 +396,7 @@ class Call {
 
 		@Override
 		public void pauseIfRequested() throws UnresolvedControlThrowable {
-			if (schedulingContext.shouldPause()) {
+			if (schedulingContext.shouldPause() || getMemoryAccountant().shouldPause()) {
 				pause();
 			}
 		}
@@ -18,6 +18,7 @@ package net.sandius.rembulan.runtime;
 
 import net.sandius.rembulan.Arithmetic;
 import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.ByteStringBuilder;
 import net.sandius.rembulan.Conversions;
 import net.sandius.rembulan.LuaMathOperators;
 import net.sandius.rembulan.MetatableProvider;
@@ -25,8 +26,7 @@ import net.sandius.rembulan.Metatables;
 import net.sandius.rembulan.Ordering;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.Userdata;
-
-import java.util.Objects;
+import net.sandius.rembulan.impl.MemoryAccountants;
 
 /**
  * A static class for dispatching operations according to the semantics of Lua 5.3.
@@ -1077,6 +1077,9 @@ public final class Dispatch {
 	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
 	 *                                           a string value and neither {@code a} nor
 	 *                                           {@code b} has the {@code __concat} metamethod
+	 * @throws net.sandius.rembulan.MemoryLimitExceededException  if the memory accountant
+	 *                                                             of {@code context} rejects
+	 *                                                             the allocation of the result
 	 */
 	@SuppressWarnings("unused")
 	public static void concat(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
@@ -1084,6 +1087,7 @@ public final class Dispatch {
 		ByteString sb = Conversions.stringValueOf(b);
 
 		if (sa != null && sb != null) {
+			MemoryAccountants.forContext(context).allocate((long) sa.length() + sb.length());
 			context.getReturnBuffer().setTo(sa.concat(sb));
 		}
 		else {
@@ -1097,6 +1101,121 @@ public final class Dispatch {
 		}
 	}
 
+	/**
+	 * Evaluates the Lua expression {@code a_1 .. a_2 .. ... .. a_n}, where {@code a_i}
+	 * are the elements of the array {@code operands}, including the handling of metamethods,
+	 * and stores the result to the return buffer associated with {@code context}.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>When all operands are strings or numbers, the result is built in a single pass.
+	 * Otherwise, since the concatenation operator is right-associative, the operands are
+	 * concatenated pairwise starting from the right, as in
+	 * {@code a_1 .. (a_2 .. (... .. a_n))}. In that case, the longest run of strings and
+	 * numbers at the end of {@code operands} is still concatenated in a single pass.</p>
+	 *
+	 * <p>The array {@code operands} must not be modified by the caller after this method
+	 * is called.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param operands  the operands, must not be {@code null} and must contain at least two
+	 *                  elements; the elements may be any values
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} or {@code operands} is {@code null}
+	 * @throws IllegalOperationAttemptException  if a pair of operands to be concatenated
+	 *                                           cannot be concatenated (as in
+	 *                                           {@link #concat(ExecutionContext, Object, Object)})
+	 * @throws net.sandius.rembulan.MemoryLimitExceededException  if the memory accountant
+	 *                                                             of {@code context} rejects
+	 *                                                             the allocation of the result
+	 */
+	@SuppressWarnings("unused")
+	public static void concat(ExecutionContext context, Object[] operands) throws UnresolvedControlThrowable {
+		int last = operands.length - 1;
+		ByteString[] strings = new ByteString[operands.length];
+
+		// find the maximal suffix of strings and numbers
+		int i = last;
+		while (i >= 0 && (strings[i] = Conversions.stringValueOf(operands[i])) != null) {
+			i -= 1;
+		}
+
+		if (last - i >= 2) {
+			concatFrom(context, operands, i, concatStrings(context, strings, i + 1, last + 1));
+		}
+		else {
+			// metamethods must be called with the original operands
+			concatFrom(context, operands, last - 1, operands[last]);
+		}
+	}
+
+	private static ByteString concatStrings(ExecutionContext context, ByteString[] strings, int from, int to) {
+		long len = 0;
+		for (int i = from; i < to; i++) {
+			len += strings[i].length();
+		}
+
+		MemoryAccountants.forContext(context).allocate(len);
+		if (len > Integer.MAX_VALUE) {
+			throw new IllegalOperationAttemptException("string length overflow");
+		}
+
+		ByteStringBuilder bld = new ByteStringBuilder((int) len);
+		for (int i = from; i < to; i++) {
+			bld.append(strings[i]);
+		}
+		return bld.toByteString();
+	}
+
+	private static class ConcatState {
+
+		final Object[] operands;
+		final int index;
+
+		ConcatState(Object[] operands, int index) {
+			this.operands = operands;
+			this.index = index;
+		}
+
+	}
+
+	private static final Resumable CONCAT_RESUMABLE = new Resumable() {
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			ConcatState state = (ConcatState) suspendedState;
+			Object acc = context.getReturnBuffer().get0();
+			try {
+				concatFrom(context, state.operands, state.index - 1, acc);
+			}
+			catch (UnresolvedControlThrowable ct) {
+				throw ct.resolve();
+			}
+		}
+	};
+
+	/**
+	 * Concatenates {@code operands[0]} to {@code operands[index]} (inclusive) with
+	 * {@code acc}, the result of concatenating the remaining operands.
+	 */
+	private static void concatFrom(ExecutionContext context, Object[] operands, int index, Object acc)
+			throws UnresolvedControlThrowable {
+
+		for (int i = index; i >= 0; i--) {
+			try {
+				concat(context, operands[i], acc);
+			}
+			catch (UnresolvedControlThrowable ct) {
+				// suspended in a metamethod call
+				throw ct.resolve(CONCAT_RESUMABLE, new ConcatState(operands, i)).unresolve();
+			}
+			acc = context.getReturnBuffer().get0();
+		}
+
+		context.getReturnBuffer().setTo(acc);
+	}
+
 	private static final CmpResultResumable CMP_RESULT_RESUMABLE_TRUE = new CmpResultResumable(true);
 	private static final CmpResultResumable CMP_RESULT_RESUMABLE_FALSE = new CmpResultResumable(false);
 
@@ -1386,16 +1505,14 @@ public final class Dispatch {
 	@SuppressWarnings("unused")
 	public static void index(ExecutionContext context, Object table, Object key) throws UnresolvedControlThrowable {
 		if (table instanceof Table) {
-			Table t = (Table) table;
-			Object value = t.rawget(key);
-
-			if (value != null) {
-				context.getReturnBuffer().setTo(value);
-				return;
-			}
-			// else fall through and check the __index a metamethod
+			index(context, (Table) table, key);
 		}
+		else {
+			mt_index(context, table, key);
+		}
+	}
 
+	private static void mt_index(ExecutionContext context, Object table, Object key) throws UnresolvedControlThrowable {
 		Object handler = Metatables.getMetamethod(context, Metatables.MT_INDEX, table);
 
 		if (handler == null && table instanceof Table) {
@@ -1446,8 +1563,19 @@ public final class Dispatch {
 	 */
 	@SuppressWarnings("unused")
 	public static void index(ExecutionContext context, Table table, Object key) throws UnresolvedControlThrowable {
-		// TODO: don't just delegate to the generic case
-		index(context, (Object) Objects.requireNonNull(table), key);
+		Object value = table.rawget(key);
+
+		if (value != null) {
+			context.getReturnBuffer().setTo(value);
+		}
+		else if (table.getMetatable() == null) {
+			// key not found and no metatable, returning nil
+			context.getReturnBuffer().setTo(null);
+		}
+		else {
+			// check the __index metamethod
+			mt_index(context, table, key);
+		}
 	}
 
 	/**
@@ -1472,8 +1600,49 @@ public final class Dispatch {
 	 */
 	@SuppressWarnings("unused")
 	public static void index(ExecutionContext context, Table table, long key) throws UnresolvedControlThrowable {
-		// TODO: don't just delegate to the generic case
-		index(context, (Object) Objects.requireNonNull(table), Long.valueOf(key));
+		Object value = table.rawget(key);
+
+		if (value != null) {
+			context.getReturnBuffer().setTo(value);
+		}
+		else if (table.getMetatable() == null) {
+			// key not found and no metatable, returning nil
+			context.getReturnBuffer().setTo(null);
+		}
+		else {
+			// check the __index metamethod; only box the key when actually needed
+			mt_index(context, table, Long.valueOf(key));
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code table[key]} (in non-assignment context) including
+	 * the handling of metamethods, and stores the result to the return buffer associated with
+	 * {@code context}.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #index(ExecutionContext, Object, Object)}
+	 * in that {@code key} is an unboxed {@code long}.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param table  the target, may be any value
+	 * @param key  the integer key
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
+	 *                                           not have the {@code __index} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static void index(ExecutionContext context, Object table, long key) throws UnresolvedControlThrowable {
+		if (table instanceof Table) {
+			index(context, (Table) table, key);
+		}
+		else {
+			mt_index(context, table, Long.valueOf(key));
+		}
 	}
 
 	/**
@@ -1496,15 +1665,14 @@ public final class Dispatch {
 	@SuppressWarnings("unused")
 	public static void setindex(ExecutionContext context, Object table, Object key, Object value) throws UnresolvedControlThrowable {
 		if (table instanceof Table) {
-			Table t = (Table) table;
-			Object r = t.rawget(key);
-
-			if (r != null) {
-				t.rawset(key, value);
-				return;
-			}
+			setindex(context, (Table) table, key, value);
 		}
+		else {
+			mt_setindex(context, table, key, value);
+		}
+	}
 
+	private static void mt_setindex(ExecutionContext context, Object table, Object key, Object value) throws UnresolvedControlThrowable {
 		Object handler = Metatables.getMetamethod(context, Metatables.MT_NEWINDEX, table);
 
 		if (handler == null && table instanceof Table) {
@@ -1555,8 +1723,13 @@ public final class Dispatch {
 	 */
 	@SuppressWarnings("unused")
 	public static void setindex(ExecutionContext context, Table table, Object key, Object value) throws UnresolvedControlThrowable {
-		// TODO: don't just delegate to the generic case
-		setindex(context, (Object) Objects.requireNonNull(table), key, value);
+		if (table.getMetatable() == null || table.rawget(key) != null) {
+			// no __newindex metamethod to consider, or key already present
+			table.rawset(key, value);
+		}
+		else {
+			mt_setindex(context, table, key, value);
+		}
 	}
 
 	/**
@@ -1580,8 +1753,44 @@ public final class Dispatch {
 	 */
 	@SuppressWarnings("unused")
 	public static void setindex(ExecutionContext context, Table table, long key, Object value) throws UnresolvedControlThrowable {
-		// TODO: don't just delegate to the generic case
-		setindex(context, (Object) Objects.requireNonNull(table), Long.valueOf(key), value);
+		if (table.getMetatable() == null || table.rawget(key) != null) {
+			// no __newindex metamethod to consider, or key already present
+			table.rawset(key, value);
+		}
+		else {
+			// only box the key when actually needed
+			mt_setindex(context, table, Long.valueOf(key), value);
+		}
+	}
+
+	/**
+	 * Executes the Lua statement {@code table[key] = value}, including the handling of
+	 * metamethods, and stores the result to the return buffer associated with {@code context}.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #setindex(ExecutionContext, Object, Object, Object)}
+	 * in that {@code key} is an unboxed {@code long}.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param table  the target, may be any value
+	 * @param key  the integer key
+	 * @param value  the value, may be any value
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
+	 *                                           not have the {@code __newindex} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static void setindex(ExecutionContext context, Object table, long key, Object value) throws UnresolvedControlThrowable {
+		if (table instanceof Table) {
+			setindex(context, (Table) table, key, value);
+		}
+		else {
+			mt_setindex(context, table, Long.valueOf(key), value);
+		}
 	}
 
 	private static final Long ZERO = Long.valueOf(0L);
@@ -1607,4 +1816,68 @@ public final class Dispatch {
 		return !eq(ZERO, sign) && (lt(ZERO, sign) ? le(a, b) : le(b, a));
 	}
 
+	private static boolean isFloat(Number n) {
+		return n instanceof Double || n instanceof Float;
+	}
+
+	/**
+	 * Returns {@code true} iff the integer {@code a} is lesser than or equal to the number
+	 * {@code b}.
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand, must not be {@code null}
+	 * @return  {@code true} iff {@code a <= b}
+	 *
+	 * @throws NullPointerException  if {@code b} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean le(long a, Number b) {
+		return isFloat(b) ? LuaMathOperators.le(a, b.doubleValue()) : LuaMathOperators.le(a, b.longValue());
+	}
+
+	/**
+	 * Returns {@code true} iff the float {@code a} is lesser than or equal to the number
+	 * {@code b}.
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand, must not be {@code null}
+	 * @return  {@code true} iff {@code a <= b}
+	 *
+	 * @throws NullPointerException  if {@code b} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean le(double a, Number b) {
+		return isFloat(b) ? LuaMathOperators.le(a, b.doubleValue()) : LuaMathOperators.le(a, b.longValue());
+	}
+
+	/**
+	 * Returns {@code true} iff the number {@code a} is lesser than or equal to the integer
+	 * {@code b}.
+	 *
+	 * @param a  the first operand, must not be {@code null}
+	 * @param b  the second operand
+	 * @return  {@code true} iff {@code a <= b}
+	 *
+	 * @throws NullPointerException  if {@code a} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean le(Number a, long b) {
+		return isFloat(a) ? LuaMathOperators.le(a.doubleValue(), b) : LuaMathOperators.le(a.longValue(), b);
+	}
+
+	/**
+	 * Returns {@code true} iff the number {@code a} is lesser than or equal to the float
+	 * {@code b}.
+	 *
+	 * @param a  the first operand, must not be {@code null}
+	 * @param b  the second operand
+	 * @return  {@code true} iff {@code a <= b}
+	 *
+	 * @throws NullPointerException  if {@code a} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean le(Number a, double b) {
+		return isFloat(a) ? LuaMathOperators.le(a.doubleValue(), b) : LuaMathOperators.le(a.longValue(), b);
+	}
+
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+
+/**
+ * A call site of a Lua call with an inline cache on the class of the call target.
+ *
+ * <p>Compiled Lua functions invoke their call targets through {@code invokedynamic}
+ * instructions bootstrapped by {@link #bootstrap(MethodHandles.Lookup, String, MethodType)}.
+ * The type of such a call site is the type of the corresponding {@code Dispatch.call}
+ * method: its parameters are the execution context, the call target, and either
+ * up to five call arguments, or a single array of call arguments.</p>
+ *
+ * <p>Initially, the call site is unlinked. When the call target is a {@link LuaFunction},
+ * the call site links a direct invocation of {@code invoke} guarded by a test on the exact
+ * class of the target, so that the JVM is able to inline the target function into the caller.
+ * Up to {@link #MAX_DEPTH} such entries are chained together; once this limit is exceeded,
+ * or when the call site repeatedly sees call targets that are not functions, the call site
+ * is relinked to the generic {@code Dispatch.call} path. A call whose target is not
+ * matched by any of the entries always takes the generic path.</p>
+ *
+ * <p>In all cases, the semantics of the call is that of {@code Dispatch.call}, including
+ * metamethod handling and tail call evaluation.</p>
+ */
+public final class LuaCallSite extends MutableCallSite {
+
+	/**
+	 * The maximum number of classes in the inline cache of a single call site.
+	 */
+	public static final int MAX_DEPTH = 4;
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodHandle IS_EXACTLY;
+	private static final MethodHandle EVALUATE_TAIL_CALLS;
+	private static final MethodHandle UNRESOLVE;
+	private static final MethodHandle MISS;
+
+	static {
+		try {
+			IS_EXACTLY = LOOKUP.findStatic(LuaCallSite.class, "isExactly",
+					MethodType.methodType(boolean.class, Class.class, Object.class));
+			EVALUATE_TAIL_CALLS = LOOKUP.findStatic(Dispatch.class, "evaluateTailCalls",
+					MethodType.methodType(void.class, ExecutionContext.class));
+			UNRESOLVE = LOOKUP.findStatic(LuaCallSite.class, "unresolve",
+					MethodType.methodType(void.class, ResolvedControlThrowable.class));
+			MISS = LOOKUP.findVirtual(LuaCallSite.class, "miss",
+					MethodType.methodType(void.class, ExecutionContext.class, Object.class, Object[].class));
+		}
+		catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private final boolean varargs;
+	private final MethodHandle fallback;
+	private final MethodHandle generic;
+
+	private Class<?>[] classes;
+	private int misses;
+
+	private LuaCallSite(MethodType type) throws NoSuchMethodException, IllegalAccessException {
+		super(type);
+
+		this.varargs = type.parameterCount() == 3 && type.parameterType(2) == Object[].class;
+
+		MethodHandle miss = MISS.bindTo(this);
+		this.fallback = varargs
+				? miss
+				: miss.asCollector(Object[].class, type.parameterCount() - 2);
+		this.generic = LOOKUP.findStatic(Dispatch.class, "call", type);
+
+		this.classes = new Class<?>[0];
+		this.misses = 0;
+
+		setTarget(fallback);
+	}
+
+	/**
+	 * The bootstrap method for Lua call sites.
+	 *
+	 * <p>{@code type} must be the type of one of the {@code Dispatch.call} methods.</p>
+	 *
+	 * @param lookup  the lookup of the caller, ignored
+	 * @param name  the name of the call site, ignored
+	 * @param type  the type of the call site, must not be {@code null}
+	 * @return  a new unlinked call site of the type {@code type}
+	 *
+	 * @throws NoSuchMethodException  if there is no {@code Dispatch.call} method of
+	 *                                the type {@code type}
+	 * @throws IllegalAccessException  if the {@code Dispatch.call} method of the type
+	 *                                 {@code type} cannot be accessed
+	 */
+	@SuppressWarnings("unused")
+	public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type)
+			throws NoSuchMethodException, IllegalAccessException {
+		return new LuaCallSite(type);
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean isExactly(Class<?> clazz, Object o) {
+		return o != null && o.getClass() == clazz;
+	}
+
+	@SuppressWarnings("unused")
+	private static void unresolve(ResolvedControlThrowable ct) throws UnresolvedControlThrowable {
+		throw ct.unresolve();
+	}
+
+	// (context, target, args...) -> void, for targets whose class is exactly clazz
+	private MethodHandle direct(Class<? extends LuaFunction> clazz)
+			throws NoSuchMethodException, IllegalAccessException {
+
+		MethodType type = type();
+		Class<?>[] argTypes = type.dropParameterTypes(1, 2).parameterArray();
+
+		// (clazz, context, args...) -> void; the receiver is cast to its exact class,
+		// which allows the call to be devirtualised
+		MethodHandle invoke = LOOKUP.findVirtual(LuaFunction.class, "invoke",
+				MethodType.methodType(void.class, argTypes));
+		invoke = invoke.asType(invoke.type().changeParameterType(0, clazz));
+		invoke = invoke.asType(invoke.type().changeParameterType(0, Object.class));
+
+		// swap the receiver and the context
+		int[] reorder = new int[type.parameterCount()];
+		reorder[0] = 1;
+		reorder[1] = 0;
+		for (int i = 2; i < reorder.length; i++) {
+			reorder[i] = i;
+		}
+		invoke = MethodHandles.permuteArguments(invoke, type, reorder);
+
+		// evaluate the tail calls after the invoke returns
+		Class<?>[] rest = type.dropParameterTypes(0, 1).parameterArray();
+		MethodHandle call = MethodHandles.foldArguments(
+				MethodHandles.dropArguments(EVALUATE_TAIL_CALLS, 1, rest),
+				invoke);
+
+		return MethodHandles.catchException(
+				call,
+				ResolvedControlThrowable.class,
+				MethodHandles.dropArguments(UNRESOLVE, 1, type.parameterArray()));
+	}
+
+	private synchronized void relink(Object target) throws NoSuchMethodException, IllegalAccessException {
+		if (classes == null) {
+			// already generic
+			return;
+		}
+
+		if (!(target instanceof LuaFunction)) {
+			if (++misses > MAX_DEPTH) {
+				goGeneric();
+			}
+			return;
+		}
+
+		Class<?> clazz = target.getClass();
+		for (Class<?> c : classes) {
+			if (c == clazz) {
+				// installed by a concurrent miss
+				return;
+			}
+		}
+
+		if (classes.length >= MAX_DEPTH) {
+			goGeneric();
+			return;
+		}
+
+		MethodHandle test = MethodHandles.dropArguments(
+				IS_EXACTLY.bindTo(clazz), 0, ExecutionContext.class);
+
+		setTarget(MethodHandles.guardWithTest(
+				test,
+				direct(clazz.asSubclass(LuaFunction.class)),
+				getTarget()));
+
+		classes = Arrays.copyOf(classes, classes.length + 1);
+		classes[classes.length - 1] = clazz;
+	}
+
+	private void goGeneric() {
+		classes = null;
+		setTarget(generic);
+	}
+
+	@SuppressWarnings("unused")
+	private void miss(ExecutionContext context, Object target, Object[] args)
+			throws UnresolvedControlThrowable {
+
+		try {
+			relink(target);
+		}
+		catch (NoSuchMethodException | IllegalAccessException ex) {
+			// should not happen, since the invoke methods are public
+			throw new IllegalStateException(ex);
+		}
+
+		if (varargs) {
+			Dispatch.call(context, target, args);
+		}
+		else {
+			switch (args.length) {
+				case 0: Dispatch.call(context, target); break;
+				case 1: Dispatch.call(context, target, args[0]); break;
+				case 2: Dispatch.call(context, target, args[0], args[1]); break;
+				case 3: Dispatch.call(context, target, args[0], args[1], args[2]); break;
+				case 4: Dispatch.call(context, target, args[0], args[1], args[2], args[3]); break;
+				case 5: Dispatch.call(context, target, args[0], args[1], args[2], args[3], args[4]); break;
+				default: Dispatch.call(context, target, args); break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.LuaMathOperators;
+import net.sandius.rembulan.Ordering;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A call site of a Lua arithmetic or comparison operation that specialises itself
+ * to the types of the operands it observes.
+ *
+ * <p>Operator call sites are bootstrapped by
+ * {@link #bootstrap(MethodHandles.Lookup, String, MethodType)}. The name of the call site
+ * is the name of the corresponding {@code Dispatch} method (e.g., {@code "add"} or
+ * {@code "lt"}); its type is {@code (ExecutionContext, Object, Object)Object}, and
+ * the value it returns is the result of the operation.</p>
+ *
+ * <p>Initially, the call site evaluates the operation using the generic {@code Dispatch}
+ * method, and records the types of the operands. When both operands are integers, both
+ * are floats, or (for comparisons) both are strings, the call site links a specialised
+ * path for this combination of types guarded by a type test on the operands. When
+ * the test fails, the call site observes the operands again, and may link another
+ * specialised path. After {@link #MAX_MISSES} evaluations with operands that
+ * have no specialised path, the call site stops observing and uses the generic path
+ * for all such operands.</p>
+ *
+ * <p>Metamethods and coercions are handled by the generic path only. Since the generic path
+ * may initiate a non-local control change, the caller must be prepared to resume the
+ * evaluation: in that case, the result is stored in the return buffer of the execution
+ * context, as with the {@code Dispatch} methods.</p>
+ */
+public final class OperatorCallSite extends MutableCallSite {
+
+	/**
+	 * The number of evaluations with operands of types that have no specialised path
+	 * after which the call site stops observing operand types.
+	 */
+	public static final int MAX_MISSES = 8;
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType TYPE = MethodType.methodType(
+			Object.class, ExecutionContext.class, Object.class, Object.class);
+
+	private static final MethodHandle IS_BOTH;
+	private static final MethodHandle NOT;
+	private static final MethodHandle RESULT;
+	private static final MethodHandle OBSERVE;
+
+	static {
+		try {
+			IS_BOTH = LOOKUP.findStatic(OperatorCallSite.class, "isBoth",
+					MethodType.methodType(boolean.class, Class.class, Object.class, Object.class));
+			NOT = LOOKUP.findStatic(OperatorCallSite.class, "not",
+					MethodType.methodType(boolean.class, boolean.class));
+			RESULT = LOOKUP.findStatic(OperatorCallSite.class, "result",
+					MethodType.methodType(Object.class, ExecutionContext.class));
+			OBSERVE = LOOKUP.findVirtual(OperatorCallSite.class, "observe", TYPE);
+		}
+		catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private final String name;
+	private final MethodHandle generic;
+	private final MethodHandle observe;
+
+	private final List<Class<?>> kinds;
+	private int misses;
+
+	private OperatorCallSite(String name) throws NoSuchMethodException, IllegalAccessException {
+		super(TYPE);
+
+		this.name = name;
+
+		// evaluate the operation, then retrieve the result from the return buffer
+		this.generic = MethodHandles.foldArguments(
+				MethodHandles.dropArguments(RESULT, 1, Object.class, Object.class),
+				LOOKUP.findStatic(Dispatch.class, name,
+						MethodType.methodType(void.class, ExecutionContext.class, Object.class, Object.class)));
+		this.observe = OBSERVE.bindTo(this);
+
+		this.kinds = new ArrayList<>();
+		this.misses = 0;
+
+		setTarget(observe);
+	}
+
+	/**
+	 * The bootstrap method for operator call sites.
+	 *
+	 * @param lookup  the lookup of the caller, ignored
+	 * @param name  the name of the operation, must not be {@code null}
+	 * @param type  the type of the call site, must be
+	 *              {@code (ExecutionContext, Object, Object)Object}
+	 * @return  a new operator call site for the operation {@code name}
+	 *
+	 * @throws NoSuchMethodException  if {@code name} is not the name of a binary operation
+	 *                                in {@code Dispatch}
+	 * @throws IllegalAccessException  if the {@code Dispatch} method cannot be accessed
+	 * @throws IllegalArgumentException  if {@code type} is not the type of operator call sites
+	 */
+	@SuppressWarnings("unused")
+	public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type)
+			throws NoSuchMethodException, IllegalAccessException {
+
+		if (!type.equals(TYPE)) {
+			throw new IllegalArgumentException("Illegal operator call site type: " + type);
+		}
+
+		return new OperatorCallSite(name);
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean isBoth(Class<?> clazz, Object a, Object b) {
+		return clazz.isInstance(a) && clazz.isInstance(b);
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean not(boolean b) {
+		return !b;
+	}
+
+	@SuppressWarnings("unused")
+	private static Object result(ExecutionContext context) {
+		return context.getReturnBuffer().get0();
+	}
+
+	// the class of both operands if it has a specialised path, or null
+	private static Class<?> kindOf(Object a, Object b) {
+		if (a instanceof Long && b instanceof Long) return Long.class;
+		else if (a instanceof Double && b instanceof Double) return Double.class;
+		else if (a instanceof ByteString && b instanceof ByteString) return ByteString.class;
+		else return null;
+	}
+
+	private static MethodHandle unreflect(Class<?> owner, String name, Class<?> argType)
+			throws IllegalAccessException {
+
+		try {
+			Method m = owner.getMethod(name, argType, argType);
+			return LOOKUP.unreflect(m);
+		}
+		catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+	// (Object, Object) -> Object, or null if there is no specialised path for kind
+	private MethodHandle specialised(Class<?> kind) throws IllegalAccessException {
+		boolean negate = name.equals("neq");
+		String op = negate ? "eq" : name;
+
+		MethodHandle h;
+		if (kind == Long.class) {
+			h = unreflect(LuaMathOperators.class, op, long.class);
+		}
+		else if (kind == Double.class) {
+			h = unreflect(LuaMathOperators.class, op, double.class);
+		}
+		else if (kind == ByteString.class) {
+			switch (op) {
+				case "eq":
+				case "lt":
+				case "le":
+					h = unreflect(Ordering.StringOrdering.class, op, ByteString.class).bindTo(Ordering.STRING);
+					break;
+				default:
+					h = null;
+					break;
+			}
+		}
+		else {
+			h = null;
+		}
+
+		if (h == null) {
+			return null;
+		}
+
+		if (negate) {
+			h = MethodHandles.filterReturnValue(h, NOT);
+		}
+
+		return h.asType(MethodType.methodType(Object.class, Object.class, Object.class));
+	}
+
+	private void relink() {
+		MethodHandle target = misses > MAX_MISSES ? generic : observe;
+		for (Class<?> kind : kinds) {
+			try {
+				target = MethodHandles.guardWithTest(
+						MethodHandles.dropArguments(IS_BOTH.bindTo(kind), 0, ExecutionContext.class),
+						MethodHandles.dropArguments(specialised(kind), 0, ExecutionContext.class),
+						target);
+			}
+			catch (IllegalAccessException ex) {
+				// should not happen, since the operator methods are public
+				throw new IllegalStateException(ex);
+			}
+		}
+		setTarget(target);
+	}
+
+	private synchronized void record(Object a, Object b) {
+		Class<?> kind = kindOf(a, b);
+
+		boolean specialisable;
+		try {
+			specialisable = kind != null && specialised(kind) != null;
+		}
+		catch (IllegalAccessException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		if (specialisable) {
+			if (!kinds.contains(kind)) {
+				kinds.add(kind);
+				relink();
+			}
+		}
+		else if (misses <= MAX_MISSES) {
+			misses += 1;
+			if (misses > MAX_MISSES) {
+				// stop observing
+				relink();
+			}
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private Object observe(ExecutionContext context, Object a, Object b)
+			throws UnresolvedControlThrowable {
+
+		record(a, b);
+
+		try {
+			return (Object) generic.invokeExact(context, a, b);
+		}
+		catch (UnresolvedControlThrowable | RuntimeException | Error ex) {
+			throw ex;
+		}
+		catch (Throwable ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
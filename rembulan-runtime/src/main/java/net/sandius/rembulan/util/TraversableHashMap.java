@@ -41,20 +41,48 @@ import java.util.Set;
 public class TraversableHashMap<K, V> implements Map<K, V> {
 
 	private final HashMap<K, Entry<K, V>> entries;
-	private K firstKey;
-	private K lastKey;
+	private Entry<K, V> first;
+	private Entry<K, V> last;
+
+	// the entry most recently visited by getFirstKey() or getSuccessorOf(K); may be removed
+	private Entry<K, V> cursor;
+
+	// entries removed since the most recent insertion, so that traversals positioned
+	// at their keys may continue
+	private final HashMap<K, Entry<K, V>> removed;
 
 	private final Set<K> keySet;
 	private final Collection<V> values;
 	private final Set<Map.Entry<K, V>> entrySet;
 
+	/**
+	 * Constructs a new empty map with the specified initial capacity.
+	 *
+	 * @param initialCapacity  the initial capacity
+	 *
+	 * @throws IllegalArgumentException  if {@code initialCapacity} is negative
+	 */
+	public TraversableHashMap(int initialCapacity) {
+		this.entries = new HashMap<>(initialCapacity);
+		this.first = null;
+		this.last = null;
+		this.cursor = null;
+		this.removed = new HashMap<>();
+
+		this.keySet = new KeySet();
+		this.values = new Values();
+		this.entrySet = new EntrySet();
+	}
+
 	/**
 	 * Constructs a new empty map.
 	 */
 	public TraversableHashMap() {
 		this.entries = new HashMap<>();
-		this.firstKey = null;
-		this.lastKey = null;
+		this.first = null;
+		this.last = null;
+		this.cursor = null;
+		this.removed = new HashMap<>();
 
 		this.keySet = new KeySet();
 		this.values = new Values();
@@ -63,14 +91,20 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 
 	static class Entry<K, V> {
 
-		private V value;  // must not be null
-		private K prevKey;  // may be null
-		private K nextKey;  // may be null
+		private final K key;
+		private V value;  // null iff the entry has been removed from the map
+		private Entry<K, V> prev;  // may be null
+		private Entry<K, V> next;  // may be null; retained after removal
 
-		public Entry(V value, K prevKey, K nextKey) {
+		public Entry(K key, V value, Entry<K, V> prev) {
+			this.key = key;
 			this.value = Objects.requireNonNull(value);
-			this.prevKey = prevKey;
-			this.nextKey = nextKey;
+			this.prev = prev;
+			this.next = null;
+		}
+
+		public K getKey() {
+			return key;
 		}
 
 		public V getValue() {
@@ -83,20 +117,8 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 			return oldValue;
 		}
 
-		public K getPreviousKey() {
-			return prevKey;
-		}
-
-		public void setPreviousKey(K key) {
-			this.prevKey = key;
-		}
-
-		public K getNextKey() {
-			return nextKey;
-		}
-
-		public void setNextKey(K key) {
-			this.nextKey = key;
+		private boolean isRemoved() {
+			return value == null;
 		}
 
 	}
@@ -131,6 +153,12 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 
 	@Override
 	public V get(Object key) {
+		// the value at the traversal cursor is retrieved without hashing
+		Entry<K, V> c = cursor;
+		if (c != null && c.key == key && !c.isRemoved()) {
+			return c.value;
+		}
+
 		Entry<K, V> e = entries.get(key);
 		return e != null ? e.getValue() : null;
 	}
@@ -143,19 +171,22 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 		Entry<K, V> e = entries.get(key);
 
 		if (e == null) {
+			// traversals may not be continued across insertions
+			removed.clear();
+
 			// insert key at the end
-			entries.put(key, new Entry<>(value, lastKey, null));
+			Entry<K, V> n = new Entry<>(key, value, last);
+			entries.put(key, n);
 
 			// update the last entry
-			if (lastKey != null) {
-				entries.get(lastKey).setNextKey(key);
+			if (last != null) {
+				last.next = n;
 			}
-			lastKey = key;
-
-			// was this the first key?
-			if (firstKey == null) {
-				firstKey = key;
+			else {
+				// this is the first key
+				first = n;
 			}
+			last = n;
 
 			return null;
 		}
@@ -174,26 +205,33 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 
 		if (e != null) {
 
-			K prevKey = e.getPreviousKey();
-			K nextKey = e.getNextKey();
+			Entry<K, V> prev = e.prev;
+			Entry<K, V> next = e.next;
 
-			if (prevKey != null) {
-				entries.get(prevKey).setNextKey(nextKey);
+			if (prev != null) {
+				prev.next = next;
 			}
 			else {
 				// this was the first entry
-				firstKey = nextKey;
+				first = next;
 			}
 
-			if (nextKey != null) {
-				entries.get(nextKey).setPreviousKey(prevKey);
+			if (next != null) {
+				next.prev = prev;
 			}
 			else {
 				// this was the last entry
-				lastKey = prevKey;
+				last = prev;
 			}
 
-			return e.getValue();
+			// mark as removed, but keep e.next so that a traversal positioned
+			// at this entry may continue
+			V oldValue = e.value;
+			e.value = null;
+			e.prev = null;
+			removed.put(e.key, e);
+
+			return oldValue;
 		}
 		else {
 			return null;
@@ -210,17 +248,23 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	@Override
 	public void clear() {
 		entries.clear();
-		firstKey = null;
-		lastKey = null;
+		first = null;
+		last = null;
+		cursor = null;
+		removed.clear();
 	}
 
 	/**
 	 * Returns the first key in the traversal order.
 	 *
+	 * <p>This method moves the traversal cursor to the first entry.</p>
+	 *
 	 * @return  the first key, or {@code null} if the map is empty
 	 */
 	public K getFirstKey() {
-		return firstKey;
+		Entry<K, V> f = first;
+		cursor = f;
+		return f != null ? f.key : null;
 	}
 
 	/**
@@ -229,26 +273,66 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	 * @return  the last key, or {@code null} if the map is empty
 	 */
 	public K getLastKey() {
-		return lastKey;
+		return last != null ? last.key : null;
 	}
 
 	/**
 	 * Returns the key following {@code key} in the traversal order, or {@code null} if
 	 * {@code key} is the last key in the traversal order.
 	 *
+	 * <p>The map keeps a traversal cursor positioned at the entry most recently returned
+	 * by {@link #getFirstKey()} or by this method. When {@code key} is the key at the cursor,
+	 * the successor is found in constant time without hashing {@code key}; this is the case
+	 * in every step of a traversal of the map by repeated calls of this method.</p>
+	 *
+	 * <p>{@code key} may have been removed from the map since the most recent insertion
+	 * of a new key: the traversal then continues with the entry that followed it.</p>
+	 *
 	 * @param key  the key to find the successor of, must not be {@code null}
 	 * @return  the key following {@code key}, or {@code null} if {@code key} is the last key
 	 *
 	 * @throws NullPointerException  if {@code key} is {@code null}
-	 * @throws NoSuchElementException  if the map does not associate any value to {@code key}
+	 * @throws NoSuchElementException  if {@code key} is not a valid traversal key
+	 *                                 (see {@link #isTraversalKey(Object)})
 	 */
 	public K getSuccessorOf(K key) {
 		Objects.requireNonNull(key);
-		Entry<K, V> e = entries.get(key);
+		Entry<K, V> e = entry(key);
 		if (e == null) {
 			throw new NoSuchElementException(key.toString());
 		}
-		return e.getNextKey();
+
+		// skip entries removed since e was removed
+		Entry<K, V> n = e.next;
+		while (n != null && n.isRemoved()) {
+			n = n.next;
+		}
+
+		cursor = n;
+		return n != null ? n.key : null;
+	}
+
+	/**
+	 * Returns {@code true} iff {@code key} may be passed to {@link #getSuccessorOf(Object)},
+	 * i.e., if the map associates a value with {@code key}, or {@code key} has been removed
+	 * from the map since the most recent insertion of a new key.
+	 *
+	 * @param key  the key, may be {@code null}
+	 * @return  {@code true} iff {@code key} is a valid argument to {@link #getSuccessorOf(Object)}
+	 */
+	public boolean isTraversalKey(Object key) {
+		return key != null && entry(key) != null;
+	}
+
+	// the entry of key, including removed entries that may still be traversed from
+	private Entry<K, V> entry(Object key) {
+		Entry<K, V> e = cursor;
+		if (e != null && (e.key == key || e.key.equals(key))) {
+			return e;
+		}
+
+		e = entries.get(key);
+		return e != null ? e : removed.get(key);
 	}
 
 	/**
@@ -267,46 +351,48 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 		if (e == null) {
 			throw new NoSuchElementException(key.toString());
 		}
-		return e.getPreviousKey();
+		return e.prev != null ? e.prev.key : null;
 	}
 
 	private abstract class AbstractEntryIterator<T> implements Iterator<T> {
 
-		private K key;
-		private boolean nextCalled;
+		private Entry<K, V> next;
+		private Entry<K, V> lastReturned;
 
 		AbstractEntryIterator() {
-			this.key = firstKey;
-			this.nextCalled = false;
+			this.next = first;
+			this.lastReturned = null;
 		}
 
 		@Override
 		public boolean hasNext() {
-			return key != null;
+			while (next != null && next.isRemoved()) {
+				next = next.next;
+			}
+			return next != null;
 		}
 
-		protected abstract T get(K k, Entry<K, V> v);
+		protected abstract T get(Entry<K, V> e);
 
 		@Override
 		public T next() {
-			K k = key;
-			Entry<K, V> e = entries.get(k);
-			if (e == null) {
-				throw new NoSuchElementException(Objects.toString(key));
+			if (!hasNext()) {
+				throw new NoSuchElementException();
 			}
 
-			nextCalled = true;
-			key = e.getNextKey();
-			return get(k, e);
+			Entry<K, V> e = next;
+			lastReturned = e;
+			next = e.next;
+			return get(e);
 		}
 
 		@Override
 		public void remove() {
-			Entry<K, V> e = entries.remove(key);
-			if (!nextCalled) {
+			if (lastReturned == null) {
 				throw new IllegalStateException();
 			}
-			nextCalled = false;
+			TraversableHashMap.this.remove(lastReturned.key);
+			lastReturned = null;
 		}
 
 	}
@@ -314,8 +400,8 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	private class KeyIterator extends AbstractEntryIterator<K> {
 
 		@Override
-		protected K get(K k, Entry<K, V> v) {
-			return k;
+		protected K get(Entry<K, V> e) {
+			return e.getKey();
 		}
 
 	}
@@ -346,8 +432,8 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	private class ValueIterator extends AbstractEntryIterator<V> {
 
 		@Override
-		protected V get(K k, Entry<K, V> v) {
-			return v.getValue();
+		protected V get(Entry<K, V> e) {
+			return e.getValue();
 		}
 
 	}
@@ -423,8 +509,8 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	private class MapEntryIterator extends AbstractEntryIterator<Map.Entry<K, V>> {
 
 		@Override
-		protected Map.Entry<K, V> get(K k, Entry<K, V> v) {
-			return new MapEntryAdapter<>(k, v);
+		protected Map.Entry<K, V> get(Entry<K, V> e) {
+			return new MapEntryAdapter<>(e.getKey(), e);
 		}
 
 	}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib;
+
+import net.sandius.rembulan.util.Check;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded thread-safe cache with approximate least-recently-used eviction.
+ *
+ * <p>Lookups do not block: entries are stored in a {@link ConcurrentHashMap}, and every
+ * entry records the time of its last access as read from a shared logical clock. The clock
+ * is only advanced by insertions and by lookups of entries other than the most recently
+ * accessed one, so that repeated lookups of the same entry do not write to shared state.
+ * When an insertion makes the cache exceed its capacity, the entry with the earliest recorded
+ * access is evicted. Since the recorded times are not updated atomically with the lookups,
+ * the eviction order is approximate, and concurrent insertions may evict more entries
+ * than necessary.</p>
+ *
+ * @param <K>  the key type
+ * @param <V>  the value type
+ */
+final class ConcurrentCache<K, V> {
+
+	private final int capacity;
+	private final ConcurrentHashMap<K, Entry<V>> entries;
+
+	// the time of the most recent access
+	private final AtomicLong clock;
+
+	private static final class Entry<V> {
+
+		final V value;
+		volatile long lastAccess;
+
+		Entry(V value, long lastAccess) {
+			this.value = value;
+			this.lastAccess = lastAccess;
+		}
+
+	}
+
+	/**
+	 * Constructs a new empty cache holding at most {@code capacity} entries.
+	 *
+	 * @param capacity  the maximum number of entries in the cache, must be positive
+	 *
+	 * @throws IllegalArgumentException  if {@code capacity} is not positive
+	 */
+	ConcurrentCache(int capacity) {
+		this.capacity = Check.positive(capacity);
+		this.entries = new ConcurrentHashMap<>();
+		this.clock = new AtomicLong();
+	}
+
+	/**
+	 * Returns the value associated with {@code key}, or {@code null} if there is no such
+	 * value in the cache.
+	 *
+	 * @param key  the key, must not be {@code null}
+	 * @return  the value associated with {@code key}, or {@code null}
+	 *
+	 * @throws NullPointerException  if {@code key} is {@code null}
+	 */
+	V get(K key) {
+		Entry<V> e = entries.get(key);
+		if (e != null) {
+			// avoid advancing the clock for repeated lookups of the same entry
+			if (e.lastAccess != clock.get()) {
+				e.lastAccess = clock.incrementAndGet();
+			}
+			return e.value;
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Associates {@code value} with {@code key} in the cache, evicting the least recently
+	 * used entries if the cache exceeds its capacity.
+	 *
+	 * @param key  the key, must not be {@code null}
+	 * @param value  the value, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code key} or {@code value} is {@code null}
+	 */
+	void put(K key, V value) {
+		entries.put(key, new Entry<>(Objects.requireNonNull(value), clock.incrementAndGet()));
+		while (entries.size() > capacity) {
+			evictEldest();
+		}
+	}
+
+	private void evictEldest() {
+		K eldestKey = null;
+		Entry<V> eldest = null;
+		for (Map.Entry<K, Entry<V>> me : entries.entrySet()) {
+			Entry<V> e = me.getValue();
+			if (eldest == null || e.lastAccess < eldest.lastAccess) {
+				eldestKey = me.getKey();
+				eldest = e;
+			}
+		}
+
+		if (eldest != null) {
+			// may have been replaced or evicted concurrently
+			entries.remove(eldestKey, eldest);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of entries in this cache.
+	 *
+	 * @return  the capacity of this cache
+	 */
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of entries currently in this cache.
+	 *
+	 * @return  the number of entries in this cache
+	 */
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Removes all entries from this cache.
+	 */
+	void clear() {
+		entries.clear();
+	}
+
+}
@@ -52,8 +52,9 @@ import net.sandius.rembulan.Metatables;
 import net.sandius.rembulan.PlainValueTypeNamer;
 import net.sandius.rembulan.StateContext;
 import net.sandius.rembulan.Table;
+import net.sandius.rembulan.impl.MemoryAccountants;
 import net.sandius.rembulan.impl.NonsuspendableFunctionException;
-import net.sandius.rembulan.impl.UnimplementedFunction;
+import net.sandius.rembulan.impl.StringInterners;
 import net.sandius.rembulan.runtime.AbstractFunction0;
 import net.sandius.rembulan.runtime.Dispatch;
 import net.sandius.rembulan.runtime.ExecutionContext;
@@ -490,8 +491,7 @@ public final class StringLib {
 	 * @see <a href="http://www.lua.org/manual/5.3/manual.html#pdf-string.pack">
 	 *     the Lua 5.3 Reference Manual entry for <code>string.pack</code></a>
 	 */
-	// TODO: make public once implemented
-	static LuaFunction pack() {
+	public static LuaFunction pack() {
 		return PACK;
 	}
 
@@ -513,8 +513,7 @@ public final class StringLib {
 	 * @see <a href="http://www.lua.org/manual/5.3/manual.html#pdf-string.packsize">
 	 *     the Lua 5.3 Reference Manual entry for <code>string.packsize</code></a>
 	 */
-	// TODO: make public once implemented
-	static LuaFunction packsize() {
+	public static LuaFunction packsize() {
 		return PACKSIZE;
 	}
 
@@ -612,8 +611,7 @@ public final class StringLib {
 	 * @see <a href="http://www.lua.org/manual/5.3/manual.html#pdf-string.unpack">
 	 *     the Lua 5.3 Reference Manual entry for <code>string.unpack</code></a>
 	 */
-	// TODO: make public once implemented
-	static LuaFunction unpack() {
+	public static LuaFunction unpack() {
 		return UNPACK;
 	}
 
@@ -698,6 +696,29 @@ public final class StringLib {
 		return Math.max(0, Math.min(len, j));
 	}
 
+	// accounts for the characters appended to bld since its length was charged,
+	// returning the new length
+	private static int charge(ExecutionContext context, StringBuilder bld, int charged) {
+		int len = bld.length();
+		if (len > charged) {
+			MemoryAccountants.forContext(context).allocate(len - charged);
+		}
+		return len;
+	}
+
+	private static ByteString intern(ExecutionContext context, ByteString s) {
+		return StringInterners.forContext(context).intern(s);
+	}
+
+	// string captures are converted to interned byte strings, position captures are kept
+	private static List<Object> internCaptures(ExecutionContext context, List<Object> captures) {
+		List<Object> result = new ArrayList<>(captures.size());
+		for (Object o : captures) {
+			result.add(o instanceof String ? intern(context, ByteString.of((String) o)) : o);
+		}
+		return result;
+	}
+
 	private static byte toLower(byte b) {
 		int c = b & 0xff;
 		// FIXME: dealing with ASCII only
@@ -784,7 +805,7 @@ public final class StringLib {
 			}
 
 			ByteString s = ByteString.copyOf(bytes);
-			context.getReturnBuffer().setTo(s);
+			context.getReturnBuffer().setTo(intern(context, s));
 		}
 
 	}
@@ -815,28 +836,33 @@ public final class StringLib {
 
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			String s = args.nextString().toString();  // FIXME
-			String pattern = args.nextString().toString();  // FIXME
+			ByteString bs = args.nextString();
+			ByteString bpattern = args.nextString();
 			int init = args.nextOptionalInt(1);
 			boolean plain = args.nextOptionalBoolean(false);
 
-			init = lowerBound(init, s.length());
-
 			if (plain) {
-				// find a substring
-				int at = s.indexOf(pattern, init - 1);
+				// find a substring, directly in the bytes
+				init = lowerBound(init, bs.length());
+
+				int at = bs.indexOf(bpattern, init - 1);
 				if (at >= 0) {
 					context.getReturnBuffer().setTo(
 							(long) (at + 1),
-							(long) (at + pattern.length()));
+							(long) (at + bpattern.length()));
 				}
 				else {
 					context.getReturnBuffer().setTo(null);
 				}
 			}
 			else {
+				String s = bs.toString();  // FIXME
+				String pattern = bpattern.toString();  // FIXME
+
+				init = lowerBound(init, s.length());
+
 				// find a pattern
-				StringPattern pat = StringPattern.fromString(pattern);
+				StringPattern pat = StringPatternCache.getDefault().get(pattern);
 
 				StringPattern.Match m = pat.match(s, init - 1);
 
@@ -844,7 +870,7 @@ public final class StringLib {
 					List<Object> result = new ArrayList<>();
 					result.add((long) (m.beginIndex() + 1));
 					result.add((long) m.endIndex());
-					result.addAll(m.captures());
+					result.addAll(internCaptures(context, m.captures()));
 					context.getReturnBuffer().setToContentsOf(result);
 				}
 				else {
@@ -1331,7 +1357,7 @@ public final class StringLib {
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			String fmt = args.nextString().toString();  // FIXME
 			StringBuilder bld = new StringBuilder();
-			run(context, fmt, args, bld, 0);
+			run(context, fmt, args, bld, 0, 0);
 		}
 
 		@Override
@@ -1343,16 +1369,18 @@ public final class StringLib {
 			// resume the suspended %s
 			resume_s(context, bld, ss.width, ss.flags, ss.precision);
 
-			// continue the loop
-			run(context, ss.fmt, ss.args, bld, ss.index);
+			// continue the loop; the string so far has already been accounted for
+			run(context, ss.fmt, ss.args, bld, ss.index, ss.str.length());
 		}
 
-		private void run(ExecutionContext context, String fmt, ArgumentIterator args, StringBuilder bld, int idx)
-				throws ResolvedControlThrowable {
+		private void run(ExecutionContext context, String fmt, ArgumentIterator args, StringBuilder bld, int idx,
+				int charged) throws ResolvedControlThrowable {
 			do {
 				idx = literal(fmt, idx, bld);
+				charged = charge(context, bld, charged);
 				if (idx >= 0) {
 					idx = placeholder(context, fmt, idx, bld, args);
+					charged = charge(context, bld, charged);
 				}
 			} while (idx >= 0);
 
@@ -1394,10 +1422,10 @@ public final class StringLib {
 						index.set(endIndex);
 
 						if (!m.captures().isEmpty()) {
-							context.getReturnBuffer().setToContentsOf(m.captures());
+							context.getReturnBuffer().setToContentsOf(internCaptures(context, m.captures()));
 						}
 						else {
-							context.getReturnBuffer().setTo(m.fullMatch());
+							context.getReturnBuffer().setTo(intern(context, ByteString.of(m.fullMatch())));
 						}
 					}
 					else {
@@ -1428,7 +1456,7 @@ public final class StringLib {
 			String s = args.nextString().toString();  // FIXME
 			String pattern = args.nextString().toString();  // FIXME
 
-			StringPattern pat = StringPattern.fromString(pattern, true);
+			StringPattern pat = StringPatternCache.getDefault().get(pattern, true);
 
 			LuaFunction f = new IteratorFunction(s, pat);
 
@@ -1473,9 +1501,9 @@ public final class StringLib {
 
 			int n = args.nextOptionalInt(Integer.MAX_VALUE);
 
-			StringPattern pat = StringPattern.fromString(pattern);
+			StringPattern pat = StringPatternCache.getDefault().get(pattern);
 
-			run(context, s, 0, new StringBuilder(), pat, 0, n, repl);
+			run(context, s, 0, new StringBuilder(), 0, pat, 0, n, repl);
 		}
 
 		private static class State {
@@ -1504,8 +1532,8 @@ public final class StringLib {
 
 		}
 
-		private void run(ExecutionContext context, String str, int idx, StringBuilder bld, StringPattern pat, int count, int num, Object repl)
-				throws ResolvedControlThrowable {
+		private void run(ExecutionContext context, String str, int idx, StringBuilder bld, int charged,
+				StringPattern pat, int count, int num, Object repl) throws ResolvedControlThrowable {
 
 			while (count < num) {
 				StringPattern.Match m = pat.match(str, idx);
@@ -1520,6 +1548,7 @@ public final class StringLib {
 				// non-matching prefix
 				if (idx < m.beginIndex()) {
 					bld.append(str.substring(idx, m.beginIndex()));
+					charged = charge(context, bld, charged);
 				}
 
 				List<Object> captures = m.captures().isEmpty()
@@ -1539,11 +1568,13 @@ public final class StringLib {
 							context, str, pat, idx, count, num, bld,
 							repl, m.fullMatch(), captures);
 				}
+				charged = charge(context, bld, charged);
 			}
 
 			// non-matching suffix
 			if (idx < str.length()) {
 				bld.append(str.substring(idx, str.length()));
+				charge(context, bld, charged);
 			}
 
 			context.getReturnBuffer().setTo(bld.toString(), (long) count);
@@ -1645,8 +1676,10 @@ public final class StringLib {
 		@Override
 		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
 			State state = (State) suspendedState;
+			// the string so far has already been accounted for
+			int charged = state.bld.length();
 			resumeReplace(context, state.bld, state.fullMatch);
-			run(context, state.str, state.idx, state.bld, state.pat, state.count, state.num, state.repl);
+			run(context, state.str, state.idx, state.bld, charged, state.pat, state.count, state.num, state.repl);
 		}
 
 	}
@@ -1676,7 +1709,7 @@ public final class StringLib {
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString s = args.nextString();
-			context.getReturnBuffer().setTo(toLowerCase(s));
+			context.getReturnBuffer().setTo(intern(context, toLowerCase(s)));
 		}
 
 	}
@@ -1696,15 +1729,15 @@ public final class StringLib {
 
 			init = lowerBound(init, s.length());
 
-			StringPattern pat = StringPattern.fromString(pattern);
+			StringPattern pat = StringPatternCache.getDefault().get(pattern);
 
 			StringPattern.Match m = pat.match(s, init - 1);
 			if (m != null) {
 				if (m.captures().isEmpty()) {
-					context.getReturnBuffer().setTo(m.fullMatch());
+					context.getReturnBuffer().setTo(intern(context, ByteString.of(m.fullMatch())));
 				}
 				else {
-					context.getReturnBuffer().setToContentsOf(m.captures());
+					context.getReturnBuffer().setToContentsOf(internCaptures(context, m.captures()));
 				}
 			}
 			else {
@@ -1715,22 +1748,34 @@ public final class StringLib {
 
 	}
 
-	static class Pack extends UnimplementedFunction {
+	static class Pack extends AbstractLibFunction {
 
-		// TODO
+		@Override
+		protected String name() {
+			return "pack";
+		}
 
-		public Pack() {
-			super("string.pack");
+		@Override
+		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
+			ByteString fmt = args.nextString();
+			ByteString result = StringPackFormat.of(fmt).pack(args, name());
+			context.getReturnBuffer().setTo(intern(context, result));
 		}
 
 	}
 
-	static class PackSize extends UnimplementedFunction {
+	static class PackSize extends AbstractLibFunction {
 
-		// TODO
+		@Override
+		protected String name() {
+			return "packsize";
+		}
 
-		public PackSize() {
-			super("string.packsize");
+		@Override
+		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
+			ByteString fmt = args.nextString();
+			long size = StringPackFormat.of(fmt).packSize(name());
+			context.getReturnBuffer().setTo(Long.valueOf(size));
 		}
 
 	}
@@ -1750,6 +1795,10 @@ public final class StringLib {
 
 			final ByteString result;
 			if (n > 0) {
+				// account for the result before building it
+				long len = (long) n * s.length() + (long) (n - 1) * sep.length();
+				MemoryAccountants.forContext(context).allocate(len);
+
 				ByteStringBuilder bld = new ByteStringBuilder();
 
 				for (int i = 0; i < n; i++) {
@@ -1792,7 +1841,7 @@ public final class StringLib {
 
 			ByteString result = ByteString.copyOf(bytes);
 
-			context.getReturnBuffer().setTo(result);
+			context.getReturnBuffer().setTo(intern(context, result));
 		}
 
 	}
@@ -1816,17 +1865,40 @@ public final class StringLib {
 
 			ByteString result = i < j ? s.substring(i, j) : ByteString.empty();
 
-			context.getReturnBuffer().setTo(result);
+			context.getReturnBuffer().setTo(intern(context, result));
 		}
 
 	}
 
-	static class Unpack extends UnimplementedFunction {
+	static class Unpack extends AbstractLibFunction {
+
+		@Override
+		protected String name() {
+			return "unpack";
+		}
+
+		@Override
+		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
+			ByteString fmt = args.nextString();
+			ByteString data = args.nextString();
+			long init = args.nextOptionalInteger(1);
+
+			int len = data.length();
 
-		// TODO
+			// 0-based index of the first byte to read
+			long pos = (init >= 0 ? init : (-init > len ? 0 : len + init + 1)) - 1;
+			if (pos < 0 || pos > len) {
+				throw new BadArgumentException(3, name(), "initial position out of string");
+			}
 
-		public Unpack() {
-			super("string.unpack");
+			List<Object> result = StringPackFormat.of(fmt).unpack(data, (int) pos, name());
+			for (int i = 0; i < result.size(); i++) {
+				Object o = result.get(i);
+				if (o instanceof ByteString) {
+					result.set(i, intern(context, (ByteString) o));
+				}
+			}
+			context.getReturnBuffer().setToContentsOf(result);
 		}
 
 	}
@@ -1841,7 +1913,7 @@ public final class StringLib {
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString s = args.nextString();
-			context.getReturnBuffer().setTo(toUpperCase(s));
+			context.getReturnBuffer().setTo(intern(context, toUpperCase(s)));
 		}
 
 	}
@@ -0,0 +1,645 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * --
+ * Portions of this file are licensed under the Lua license. For Lua
+ * licensing details, please visit
+ *
+ *     http://www.lua.org/license.html
+ *
+ * Copyright (C) 1994-2016 Lua.org, PUC-Rio.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sandius.rembulan.lib;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.LuaRuntimeException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A compiled format string of the functions {@code string.pack}, {@code string.packsize}
+ * and {@code string.unpack}.
+ *
+ * <p>A format string is parsed into a sequence of items once, and the items are then
+ * encoded to (or decoded from) a {@link ByteBuffer} without creating intermediate strings.
+ * Compiled formats are obtained using {@link #of(ByteString)}, which keeps the most
+ * recently used formats in a bounded cache.</p>
+ *
+ * <p>The sizes of the native C types are those of a 64-bit platform: {@code short} is 2 bytes,
+ * {@code int} is 4 bytes, {@code long}, {@code size_t} and {@code lua_Integer} are 8 bytes.
+ * The native maximum alignment is 8 bytes, and the native byte order is
+ * {@link ByteOrder#nativeOrder()}.</p>
+ *
+ * <p>As in PUC-Lua, errors in the format string are only signalled once the items
+ * preceding the error have been processed.</p>
+ */
+final class StringPackFormat {
+
+	static final int SIZE_OF_INTEGER = 8;
+	static final int SIZE_OF_SIZE_T = 8;
+	static final int MAX_INTEGRAL_SIZE = 16;
+	static final int MAX_ALIGN = 8;
+
+	// as in PUC-Lua, the maximum size of a string
+	static final int MAX_SIZE = Integer.MAX_VALUE;
+
+	static final int CACHE_CAPACITY = 64;
+
+	private static final ConcurrentCache<ByteString, StringPackFormat> CACHE = new ConcurrentCache<>(CACHE_CAPACITY);
+
+	enum Kind {
+		INT,
+		UINT,
+		FLOAT,
+		DOUBLE,
+		CHAR,
+		STRING,
+		ZSTR,
+		PADDING,
+		PADDING_ALIGN,
+		NOP
+	}
+
+	static final class Item {
+
+		final Kind kind;
+		final int size;
+		final int align;  // 1 if no alignment is required
+		final ByteOrder order;
+
+		Item(Kind kind, int size, int align, ByteOrder order) {
+			this.kind = Objects.requireNonNull(kind);
+			this.size = size;
+			this.align = align;
+			this.order = Objects.requireNonNull(order);
+		}
+
+		int padding(long offset) {
+			return (int) ((align - (offset & (align - 1))) & (align - 1));
+		}
+
+	}
+
+	private final Item[] items;
+	private final int minimumLength;
+
+	// the error following the items, or null if the format is valid
+	private final String errorMessage;
+	private final boolean argumentError;
+
+	private StringPackFormat(Item[] items, String errorMessage, boolean argumentError) {
+		this.items = Objects.requireNonNull(items);
+		this.errorMessage = errorMessage;
+		this.argumentError = argumentError;
+
+		long len = 0;
+		for (Item item : items) {
+			len += item.size;
+		}
+		this.minimumLength = (int) Math.min(len, MAX_SIZE);
+	}
+
+	/**
+	 * Returns the compiled format {@code fmt}, compiling it if it is not in the cache.
+	 *
+	 * @param fmt  the format string, must not be {@code null}
+	 * @return  the compiled format
+	 *
+	 * @throws NullPointerException  if {@code fmt} is {@code null}
+	 */
+	static StringPackFormat of(ByteString fmt) {
+		Objects.requireNonNull(fmt);
+
+		StringPackFormat result = CACHE.get(fmt);
+		if (result == null) {
+			// formats are immutable, so compiling one concurrently more than once is harmless
+			result = compile(fmt);
+			CACHE.put(fmt, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Compiles the format string {@code fmt}.
+	 *
+	 * <p>This method does not throw an exception when {@code fmt} is malformed: the error
+	 * is signalled when the compiled format is used.</p>
+	 *
+	 * @param fmt  the format string, must not be {@code null}
+	 * @return  the compiled format
+	 *
+	 * @throws NullPointerException  if {@code fmt} is {@code null}
+	 */
+	static StringPackFormat compile(ByteString fmt) {
+		return new Parser(fmt).parse();
+	}
+
+	private static class Parser {
+
+		private final ByteString fmt;
+		private final int end;
+		private int index;
+
+		private ByteOrder order;
+		private int maxAlign;
+
+		private int size;
+
+		private String errorMessage;
+		private boolean argumentError;
+
+		Parser(ByteString fmt) {
+			this.fmt = Objects.requireNonNull(fmt);
+
+			// as a C string, the format ends at the first zero
+			int len = fmt.length();
+			int end = 0;
+			while (end < len && fmt.byteAt(end) != 0) {
+				end++;
+			}
+			this.end = end;
+			this.index = 0;
+
+			this.order = ByteOrder.nativeOrder();
+			this.maxAlign = 1;
+		}
+
+		private Kind error(String message) {
+			this.errorMessage = message;
+			this.argumentError = false;
+			return null;
+		}
+
+		private void argumentError(String message) {
+			this.errorMessage = message;
+			this.argumentError = true;
+		}
+
+		private boolean isDigit(int i) {
+			if (i < end) {
+				byte b = fmt.byteAt(i);
+				return b >= '0' && b <= '9';
+			}
+			else {
+				return false;
+			}
+		}
+
+		private int number(int defaultValue) {
+			if (!isDigit(index)) {
+				return defaultValue;
+			}
+			else {
+				int a = 0;
+				do {
+					a = a * 10 + (fmt.byteAt(index++) - '0');
+				} while (isDigit(index) && a <= (MAX_SIZE - 9) / 10);
+				return a;
+			}
+		}
+
+		private int limitedNumber(int defaultValue) {
+			int n = number(defaultValue);
+			if (n > MAX_INTEGRAL_SIZE || n <= 0) {
+				error("integral size (" + n + ") out of limits [1," + MAX_INTEGRAL_SIZE + "]");
+				return -1;
+			}
+			return n;
+		}
+
+		// returns null on error
+		private Kind option() {
+			int c = fmt.byteAt(index++) & 0xff;
+			size = 0;
+			switch (c) {
+				case 'b': size = 1; return Kind.INT;
+				case 'B': size = 1; return Kind.UINT;
+				case 'h': size = 2; return Kind.INT;
+				case 'H': size = 2; return Kind.UINT;
+				case 'l': size = 8; return Kind.INT;
+				case 'L': size = 8; return Kind.UINT;
+				case 'j': size = SIZE_OF_INTEGER; return Kind.INT;
+				case 'J': size = SIZE_OF_INTEGER; return Kind.UINT;
+				case 'T': size = SIZE_OF_SIZE_T; return Kind.UINT;
+				case 'f': size = 4; return Kind.FLOAT;
+				case 'd': size = 8; return Kind.DOUBLE;
+				case 'n': size = 8; return Kind.DOUBLE;
+				case 'i': size = limitedNumber(4); return size > 0 ? Kind.INT : null;
+				case 'I': size = limitedNumber(4); return size > 0 ? Kind.UINT : null;
+				case 's': size = limitedNumber(SIZE_OF_SIZE_T); return size > 0 ? Kind.STRING : null;
+				case 'c':
+					size = number(-1);
+					if (size == -1) {
+						return error("missing size for format option 'c'");
+					}
+					return Kind.CHAR;
+				case 'z': return Kind.ZSTR;
+				case 'x': size = 1; return Kind.PADDING;
+				case 'X': return Kind.PADDING_ALIGN;
+				case ' ': return Kind.NOP;
+				case '<': order = ByteOrder.LITTLE_ENDIAN; return Kind.NOP;
+				case '>': order = ByteOrder.BIG_ENDIAN; return Kind.NOP;
+				case '=': order = ByteOrder.nativeOrder(); return Kind.NOP;
+				case '!':
+					int a = limitedNumber(MAX_ALIGN);
+					if (a < 0) {
+						return null;
+					}
+					maxAlign = a;
+					return Kind.NOP;
+				default:
+					return error("invalid format option '" + (char) c + "'");
+			}
+		}
+
+		StringPackFormat parse() {
+			List<Item> items = new ArrayList<>();
+
+			while (index < end) {
+				Kind kind = option();
+				if (kind == null) {
+					break;
+				}
+
+				int itemSize = size;
+				int align = size;
+
+				if (kind == Kind.PADDING_ALIGN) {
+					// 'X' gets its alignment from the following option, which is otherwise ignored
+					Kind next = index < end ? option() : Kind.NOP;
+					if (next == null) {
+						break;
+					}
+					align = size;
+					if (next == Kind.CHAR || align == 0) {
+						argumentError("invalid next option for option 'X'");
+						break;
+					}
+				}
+
+				if (align <= 1 || kind == Kind.CHAR) {
+					align = 1;
+				}
+				else {
+					align = Math.min(align, maxAlign);
+					if ((align & (align - 1)) != 0) {
+						argumentError("format asks for alignment not power of 2");
+						break;
+					}
+				}
+
+				if (kind != Kind.NOP) {
+					items.add(new Item(kind, itemSize, align, order));
+				}
+			}
+
+			return new StringPackFormat(items.toArray(new Item[items.size()]), errorMessage, argumentError);
+		}
+
+	}
+
+	private void checkError(String functionName) {
+		if (errorMessage != null) {
+			if (argumentError) {
+				throw new BadArgumentException(1, functionName, errorMessage);
+			}
+			else {
+				throw new LuaRuntimeException(errorMessage);
+			}
+		}
+	}
+
+	/**
+	 * Returns the size of the strings packed using this format.
+	 *
+	 * @param functionName  the name of the function for error reporting
+	 * @return  the size of the packed strings
+	 *
+	 * @throws BadArgumentException  if the format contains a variable-length option,
+	 *                               or it is too large
+	 * @throws LuaRuntimeException  if the format is malformed
+	 */
+	long packSize(String functionName) {
+		long totalSize = 0;
+		for (Item item : items) {
+			long size = item.padding(totalSize) + item.size;
+			if (totalSize > MAX_SIZE - size) {
+				throw new BadArgumentException(1, functionName, "format result too large");
+			}
+			totalSize += size;
+			if (item.kind == Kind.STRING || item.kind == Kind.ZSTR) {
+				throw new BadArgumentException(1, functionName, "variable-length format");
+			}
+		}
+		checkError(functionName);
+		return totalSize;
+	}
+
+	private static final byte PADDING_BYTE = 0x00;
+
+	private static ByteBuffer ensureRemaining(ByteBuffer buf, int n) {
+		if (buf.remaining() >= n) {
+			return buf;
+		}
+		else {
+			long required = (long) buf.position() + n;
+			if (required > MAX_SIZE) {
+				throw new LuaRuntimeException("resulting string too large");
+			}
+			int capacity = (int) Math.min(Math.max(required, 2L * buf.capacity()), MAX_SIZE);
+			ByteBuffer result = ByteBuffer.allocate(capacity);
+			buf.flip();
+			result.put(buf);
+			return result;
+		}
+	}
+
+	// true iff a >= b when both are interpreted as unsigned
+	private static boolean unsignedGreaterOrEqual(long a, long b) {
+		return a + Long.MIN_VALUE >= b + Long.MIN_VALUE;
+	}
+
+	private static void putPadding(ByteBuffer buf, int n) {
+		for (int i = 0; i < n; i++) {
+			buf.put(PADDING_BYTE);
+		}
+	}
+
+	private static void putInteger(ByteBuffer buf, long n, int size, ByteOrder order, boolean negative) {
+		buf.order(order);
+		switch (size) {
+			case 1: buf.put((byte) n); return;
+			case 2: buf.putShort((short) n); return;
+			case 4: buf.putInt((int) n); return;
+			case 8: buf.putLong(n); return;
+			default:
+				int pos = buf.position();
+				boolean little = order == ByteOrder.LITTLE_ENDIAN;
+				for (int i = 0; i < size; i++) {
+					byte b = i < SIZE_OF_INTEGER
+							? (byte) (n >>> (8 * i))
+							: (negative ? (byte) 0xff : (byte) 0x00);  // sign extension
+					buf.put(little ? pos + i : pos + size - 1 - i, b);
+				}
+				buf.position(pos + size);
+		}
+	}
+
+	/**
+	 * Packs the values in {@code args} (starting at the current position) using this format.
+	 *
+	 * @param args  the values to pack, must not be {@code null}
+	 * @param functionName  the name of the function for error reporting
+	 * @return  the packed values
+	 *
+	 * @throws BadArgumentException  if the values do not conform to the format
+	 * @throws LuaRuntimeException  if the format is malformed
+	 */
+	ByteString pack(ArgumentIterator args, String functionName) {
+		ByteBuffer buf = ByteBuffer.allocate(minimumLength);
+
+		for (Item item : items) {
+			int ntoalign = item.padding(buf.position());
+			buf = ensureRemaining(buf, ntoalign + item.size);
+			putPadding(buf, ntoalign);
+
+			int argIndex = args.position() + 1;
+
+			switch (item.kind) {
+
+				case INT: {
+					long n = args.nextInteger();
+					if (item.size < SIZE_OF_INTEGER) {
+						long lim = 1L << (item.size * 8 - 1);
+						if (n < -lim || n >= lim) {
+							throw new BadArgumentException(argIndex, functionName, "integer overflow");
+						}
+					}
+					putInteger(buf, n, item.size, item.order, n < 0);
+					break;
+				}
+
+				case UINT: {
+					long n = args.nextInteger();
+					if (item.size < SIZE_OF_INTEGER) {
+						if (unsignedGreaterOrEqual(n, 1L << (item.size * 8))) {
+							throw new BadArgumentException(argIndex, functionName, "unsigned overflow");
+						}
+					}
+					putInteger(buf, n, item.size, item.order, false);
+					break;
+				}
+
+				case FLOAT:
+					buf.order(item.order).putFloat((float) args.nextFloat());
+					break;
+
+				case DOUBLE:
+					buf.order(item.order).putDouble(args.nextFloat());
+					break;
+
+				case CHAR: {
+					ByteString s = args.nextString();
+					int len = s.length();
+					if (len > item.size) {
+						throw new BadArgumentException(argIndex, functionName, "string longer than given size");
+					}
+					s.putTo(buf);
+					putPadding(buf, item.size - len);
+					break;
+				}
+
+				case STRING: {
+					ByteString s = args.nextString();
+					int len = s.length();
+					if (item.size < SIZE_OF_SIZE_T && (long) len >= (1L << (item.size * 8))) {
+						throw new BadArgumentException(argIndex, functionName, "string length does not fit in given size");
+					}
+					putInteger(buf, len, item.size, item.order, false);
+					buf = ensureRemaining(buf, len);
+					s.putTo(buf);
+					break;
+				}
+
+				case ZSTR: {
+					ByteString s = args.nextString();
+					if (s.contains((byte) 0)) {
+						throw new BadArgumentException(argIndex, functionName, "string contains zeros");
+					}
+					buf = ensureRemaining(buf, s.length() + 1);
+					s.putTo(buf);
+					buf.put((byte) 0);
+					break;
+				}
+
+				case PADDING:
+					putPadding(buf, item.size);
+					break;
+
+				default:
+					break;
+			}
+		}
+
+		checkError(functionName);
+		return ByteString.copyOf(buf.array(), 0, buf.position());
+	}
+
+	private static long getInteger(ByteBuffer buf, int index, int size, ByteOrder order, boolean signed) {
+		buf.order(order);
+		switch (size) {
+			case 1: return signed ? buf.get(index) : buf.get(index) & 0xffL;
+			case 2: return signed ? buf.getShort(index) : buf.getShort(index) & 0xffffL;
+			case 4: return signed ? buf.getInt(index) : buf.getInt(index) & 0xffffffffL;
+			case 8: return buf.getLong(index);
+			default:
+				boolean little = order == ByteOrder.LITTLE_ENDIAN;
+				int limit = Math.min(size, SIZE_OF_INTEGER);
+				long res = 0;
+				for (int i = limit - 1; i >= 0; i--) {
+					res <<= 8;
+					res |= buf.get(little ? index + i : index + size - 1 - i) & 0xffL;
+				}
+				if (size < SIZE_OF_INTEGER) {
+					if (signed) {
+						long mask = 1L << (size * 8 - 1);
+						res = (res ^ mask) - mask;  // sign extension
+					}
+				}
+				else {
+					// must check the unread bytes
+					byte mask = !signed || res >= 0 ? (byte) 0x00 : (byte) 0xff;
+					for (int i = limit; i < size; i++) {
+						if (buf.get(little ? index + i : index + size - 1 - i) != mask) {
+							throw new LuaRuntimeException(size + "-byte integer does not fit into Lua Integer");
+						}
+					}
+				}
+				return res;
+		}
+	}
+
+	/**
+	 * Unpacks the values packed in {@code data} starting at the (0-based) index
+	 * {@code index} using this format.
+	 *
+	 * <p>The unpacked values are followed by the (1-based) index of the first unread
+	 * byte in {@code data}.</p>
+	 *
+	 * @param data  the packed data, must not be {@code null}
+	 * @param index  the index of the first byte to read
+	 * @param functionName  the name of the function for error reporting
+	 * @return  the unpacked values, followed by the next position in {@code data}
+	 *
+	 * @throws BadArgumentException  if {@code data} is too short
+	 * @throws LuaRuntimeException  if the format is malformed, or an integer does not fit
+	 *                              in a Lua integer
+	 */
+	List<Object> unpack(ByteString data, int index, String functionName) {
+		ByteBuffer buf = data.asReadOnlyBuffer();
+		int len = data.length();
+		long pos = index;
+
+		List<Object> result = new ArrayList<>(items.length + 1);
+
+		for (Item item : items) {
+			int ntoalign = item.padding(pos);
+			if (pos + ntoalign + item.size > len) {
+				throw new BadArgumentException(2, functionName, "data string too short");
+			}
+			pos += ntoalign;
+			int p = (int) pos;
+
+			switch (item.kind) {
+
+				case INT:
+				case UINT:
+					result.add(Long.valueOf(getInteger(buf, p, item.size, item.order, item.kind == Kind.INT)));
+					break;
+
+				case FLOAT:
+					result.add(Double.valueOf(buf.order(item.order).getFloat(p)));
+					break;
+
+				case DOUBLE:
+					result.add(Double.valueOf(buf.order(item.order).getDouble(p)));
+					break;
+
+				case CHAR:
+					result.add(data.substring(p, p + item.size));
+					break;
+
+				case STRING: {
+					long n = getInteger(buf, p, item.size, item.order, false);
+					if (n < 0 || n > len - pos - item.size) {
+						throw new BadArgumentException(2, functionName, "data string too short");
+					}
+					int from = p + item.size;
+					result.add(data.substring(from, from + (int) n));
+					pos += n;
+					break;
+				}
+
+				case ZSTR: {
+					int to = p;
+					while (to < len && buf.get(to) != 0) {
+						to++;
+					}
+					if (to >= len) {
+						throw new BadArgumentException(2, functionName, "unfinished string for format 'z'");
+					}
+					result.add(data.substring(p, to));
+					pos += to - p + 1;  // skip the string and the final zero
+					break;
+				}
+
+				default:
+					break;
+			}
+
+			pos += item.size;
+		}
+
+		checkError(functionName);
+
+		result.add(Long.valueOf(pos + 1));
+		return result;
+	}
+
+}
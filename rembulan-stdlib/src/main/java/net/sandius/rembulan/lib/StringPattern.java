@@ -52,6 +52,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Patterns in Lua are described by regular strings, which are interpreted as patterns
@@ -164,11 +165,49 @@ import java.util.Set;
  * <p>As a special case, the empty capture {@code ()} captures the current string position
  * (a number). For instance, if we apply the pattern {@code "()aa()"} on the string
  * {@code "flaaap"}, there will be two captures: 3 and 5.</p>
+ *
+ * <h2>Compilation:</h2>
+ *
+ * <p>Patterns are initially matched by an interpreter. Once a pattern has been used
+ * for more than {@link #COMPILE_THRESHOLD} matches, it is compiled to JVM bytecode,
+ * provided that ASM is available on the class path. The compiled matcher is kept
+ * with the pattern, and matches the same strings as the interpreter. The threshold can be
+ * set using the system property {@value #COMPILE_THRESHOLD_PROPERTY}; a negative value
+ * disables the compilation.</p>
  */
 public class StringPattern {
 
-	private final List<PI> items;
-	private final int numCaptures;
+	/**
+	 * The name of the system property that sets {@link #COMPILE_THRESHOLD}.
+	 */
+	public static final String COMPILE_THRESHOLD_PROPERTY = "net.sandius.rembulan.lib.StringPattern.CompileThreshold";
+
+	/**
+	 * The number of matches after which a pattern is compiled to bytecode. When negative,
+	 * patterns are never compiled.
+	 */
+	public static final int COMPILE_THRESHOLD = Integer.getInteger(COMPILE_THRESHOLD_PROPERTY, 100);
+
+	// set to false when the compiler is not available
+	private static volatile boolean compilerAvailable = true;
+
+	final List<PI> items;
+	final int numCaptures;
+
+	// true iff the pattern is anchored at the beginning of the subject
+	private final boolean anchored;
+
+	// the literal characters the pattern starts with (after the anchor, if any)
+	private final String literalPrefix;
+
+	// true iff the pattern consists of literalPrefix only (and possibly the anchor)
+	private final boolean literal;
+
+	// the compiled matcher, or null if this pattern has not been compiled (yet)
+	private volatile CompiledMatcher compiled;
+
+	// the number of matches by the interpreter
+	private final AtomicInteger interpretedCount;
 
 	private StringPattern(
 			List<PI> items,
@@ -176,10 +215,62 @@ public class StringPattern {
 
 		this.items = Objects.requireNonNull(items);
 		this.numCaptures = Check.nonNegative(numCaptures);
+
+		int idx = 0;
+		this.anchored = !items.isEmpty() && items.get(0) instanceof PI_begin;
+		if (anchored) {
+			idx += 1;
+		}
+
+		StringBuilder prefix = new StringBuilder();
+		while (idx < items.size() && isLiteralChar(items.get(idx))) {
+			prefix.append(((CC_lit) ((PI_cc) items.get(idx)).ccl).ch);
+			idx += 1;
+		}
+		this.literalPrefix = prefix.toString();
+		this.literal = idx == items.size();
+
+		this.compiled = null;
+		this.interpretedCount = new AtomicInteger();
+	}
+
+	private static boolean isLiteralChar(PI pi) {
+		if (pi instanceof PI_cc) {
+			PI_cc cc = (PI_cc) pi;
+			return cc.mod == Repeat.EXACTLY_ONCE && cc.ccl instanceof CC_lit;
+		}
+		else {
+			return false;
+		}
+	}
+
+	/**
+	 * The superclass of compiled matchers. This class is public only in order to be
+	 * accessible from generated code, and is not intended to be used outside of
+	 * this library.
+	 */
+	public static abstract class CompiledMatcher {
+
+		protected CompiledMatcher() {
+			// no-op
+		}
+
+		/**
+		 * Matches the pattern at the index {@code index} of the string {@code str},
+		 * filling in the capture arrays {@code capBegin} and {@code cap}.
+		 *
+		 * @param str  the string to match, must not be {@code null}
+		 * @param index  the index to match at
+		 * @param capBegin  the start indices of the captures, must not be {@code null}
+		 * @param cap  the captures, must not be {@code null}
+		 * @return  the index of the end of the match, or {@code -1} if there is no match
+		 */
+		public abstract int match(String str, int index, int[] capBegin, Object[] cap);
+
 	}
 
 	private static final String MAGIC_CHARS = "^$()%.[]*+-?";
-	private static final String PUNCTUATION_CHARS = ".,;:?!";
+	static final String PUNCTUATION_CHARS = ".,;:?!";
 
 	private static boolean isMagic(char c) {
 		return MAGIC_CHARS.indexOf(c) != -1;
@@ -223,17 +314,72 @@ public class StringPattern {
 
 	// returns null to signal no-match
 	public Match match(String s, int fromIndex) {
-		// iterate one character beyond the last one: empty matches succeed at EOS
-		while (fromIndex >= 0 && fromIndex <= s.length()) {
-			MatchState ms = new MatchState(items, s, fromIndex);
+		if (literal) {
+			// no need to run the matcher
+			int at = nextCandidate(s, fromIndex);
+			return at >= 0
+					? new Match(s, at, at + literalPrefix.length(), Collections.<Object>emptyList())
+					: null;
+		}
+
+		CompiledMatcher cm = compiled;
+		if (cm == null && COMPILE_THRESHOLD >= 0 && interpretedCount.getAndIncrement() >= COMPILE_THRESHOLD) {
+			cm = compile();
+		}
+
+		return cm != null ? matchCompiled(cm, s, fromIndex) : interpret(s, fromIndex);
+	}
+
+	private CompiledMatcher compile() {
+		CompiledMatcher cm = null;
+		if (compilerAvailable) {
+			try {
+				cm = StringPatternCompiler.compile(this);
+			}
+			catch (LinkageError ex) {
+				// ASM is not available
+				compilerAvailable = false;
+			}
+		}
+
+		if (cm != null) {
+			compiled = cm;
+		}
+		else {
+			// don't try again
+			interpretedCount.set(Integer.MIN_VALUE);
+		}
+		return cm;
+	}
+
+	/**
+	 * Returns the first index at or after {@code fromIndex} at which a match of this
+	 * pattern may start, or {@code -1} if there is no such index. Indices up to
+	 * {@code s.length()} (inclusive) are considered: empty matches succeed at EOS.
+	 */
+	private int nextCandidate(String s, int fromIndex) {
+		if (fromIndex < 0 || fromIndex > s.length()) {
+			return -1;
+		}
+		else if (anchored) {
+			// anchored patterns only match at the beginning of the string
+			return fromIndex == 0 && s.startsWith(literalPrefix) ? 0 : -1;
+		}
+		else if (!literalPrefix.isEmpty()) {
+			return s.indexOf(literalPrefix, fromIndex);
+		}
+		else {
+			return fromIndex;
+		}
+	}
+
+	Match interpret(String s, int fromIndex) {
+		for (int i = nextCandidate(s, fromIndex); i >= 0; i = nextCandidate(s, i + 1)) {
+			MatchState ms = new MatchState(items, s, i);
 			int result = ms.start();
 			if (result != NO_MATCH) {
 				// got a match
-				return new Match(s, fromIndex, result, Collections.unmodifiableList(Arrays.asList(ms.cap)));
-			}
-			else {
-				// no match: skip the first character and try again
-				fromIndex += 1;
+				return new Match(s, i, result, Collections.unmodifiableList(Arrays.asList(ms.cap)));
 			}
 		}
 
@@ -241,9 +387,25 @@ public class StringPattern {
 		return null;
 	}
 
+	private static final int[] NO_CAPTURE_BEGINS = new int[0];
+	private static final Object[] NO_CAPTURES = new Object[0];
+
+	Match matchCompiled(CompiledMatcher cm, String s, int fromIndex) {
+		for (int i = nextCandidate(s, fromIndex); i >= 0; i = nextCandidate(s, i + 1)) {
+			int[] capBegin = numCaptures > 0 ? new int[numCaptures] : NO_CAPTURE_BEGINS;
+			Object[] cap = numCaptures > 0 ? new Object[numCaptures] : NO_CAPTURES;
+			int result = cm.match(s, i, capBegin, cap);
+			if (result != NO_MATCH) {
+				return new Match(s, i, result, Collections.unmodifiableList(Arrays.asList(cap)));
+			}
+		}
+
+		return null;
+	}
+
 	static class CharacterSet {
 
-		private final List<SetElement> elements;
+		final List<SetElement> elements;
 
 		CharacterSet(List<SetElement> elements) {
 			this.elements = Objects.requireNonNull(elements);
@@ -275,8 +437,8 @@ public class StringPattern {
 
 		static class RangeSetElement extends SetElement {
 
-			private final char min;
-			private final char max;
+			final char min;
+			final char max;
 
 			RangeSetElement(char min, char max) {
 				this.min = min;
@@ -297,7 +459,7 @@ public class StringPattern {
 
 		static class CharacterClassSetElement extends SetElement {
 
-			private final CC ccl;
+			final CC ccl;
 
 			CharacterClassSetElement(CC ccl) {
 				this.ccl = Objects.requireNonNull(ccl);
@@ -325,7 +487,7 @@ public class StringPattern {
 
 	static class CC_lit extends CC {
 
-		private final char ch;
+		final char ch;
 
 		CC_lit(char ch) {
 			this.ch = ch;
@@ -372,8 +534,8 @@ public class StringPattern {
 
 		}
 
-		private final ClassDesc desc;
-		private final boolean complement;
+		final ClassDesc desc;
+		final boolean complement;
 
 		CC_spec(ClassDesc desc, boolean complement) {
 			Check.isFalse(desc == ClassDesc.ALL && complement);
@@ -432,8 +594,8 @@ public class StringPattern {
 
 	static class CC_set extends CC {
 
-		private final CharacterSet cs;
-		private final boolean complement;
+		final CharacterSet cs;
+		final boolean complement;
 
 		CC_set(CharacterSet cs, boolean complement) {
 			this.cs = Objects.requireNonNull(cs);
@@ -588,8 +750,8 @@ public class StringPattern {
 
 	static class PI_cc extends PI {
 
-		private final CC ccl;
-		private final Repeat mod;
+		final CC ccl;
+		final Repeat mod;
 
 		PI_cc(CC ccl, Repeat mod) {
 			this.ccl = Objects.requireNonNull(ccl);
@@ -711,7 +873,7 @@ public class StringPattern {
 	// %1, %2, ..., %9
 	static class PI_cmatch extends PI {
 
-		private final int index;
+		final int index;
 
 		PI_cmatch(int index) {
 			this.index = Check.inRange(index, 1, 9);
@@ -754,8 +916,8 @@ public class StringPattern {
 	// %bxy
 	static class PI_balanced extends PI {
 
-		private final char first;
-		private final char second;
+		final char first;
+		final char second;
 
 		PI_balanced(char first, char second) {
 			Check.isTrue(first != second);
@@ -809,7 +971,7 @@ public class StringPattern {
 	// %f[set]
 	static class PI_frontier extends PI {
 
-		private final CharacterSet cs;
+		final CharacterSet cs;
 
 		PI_frontier(CharacterSet cs) {
 			this.cs = Objects.requireNonNull(cs);
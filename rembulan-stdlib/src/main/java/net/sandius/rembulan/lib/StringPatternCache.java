@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of compiled {@linkplain StringPattern string patterns}, evicting
+ * (approximately) the least recently used patterns when full.
+ *
+ * <p>The pattern-matching functions of the {@linkplain StringLib string library}
+ * ({@code string.find}, {@code string.match}, {@code string.gmatch} and {@code string.gsub})
+ * obtain their patterns from the {@linkplain #getDefault() default cache}, so that patterns
+ * reused in loops are only parsed once. The number of cache hits and misses is
+ * available using {@link #hitCount()} and {@link #missCount()}.</p>
+ *
+ * <p>Instances of this class are thread-safe. Lookups do not block, and may therefore
+ * be performed concurrently by any number of threads; when several threads parse the same
+ * pattern at the same time, the cache keeps one of the results.</p>
+ */
+public final class StringPatternCache {
+
+	/**
+	 * The capacity of the default cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final StringPatternCache DEFAULT_INSTANCE = new StringPatternCache(DEFAULT_CAPACITY);
+
+	private final ConcurrentCache<Key, StringPattern> patterns;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	private static final class Key {
+
+		final String pattern;
+		final boolean ignoreCaret;
+
+		Key(String pattern, boolean ignoreCaret) {
+			this.pattern = Objects.requireNonNull(pattern);
+			this.ignoreCaret = ignoreCaret;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key that = (Key) o;
+			return this.ignoreCaret == that.ignoreCaret && this.pattern.equals(that.pattern);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * pattern.hashCode() + (ignoreCaret ? 1 : 0);
+		}
+
+	}
+
+	/**
+	 * Constructs a new empty cache holding at most {@code capacity} patterns.
+	 *
+	 * @param capacity  the maximum number of patterns in the cache, must be positive
+	 *
+	 * @throws IllegalArgumentException  if {@code capacity} is not positive
+	 */
+	public StringPatternCache(int capacity) {
+		this.patterns = new ConcurrentCache<>(capacity);
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * Returns the cache used by the string library.
+	 *
+	 * @return  the default cache
+	 */
+	public static StringPatternCache getDefault() {
+		return DEFAULT_INSTANCE;
+	}
+
+	/**
+	 * Returns the compiled pattern {@code pattern}, parsing it if it is not in the cache.
+	 *
+	 * @param pattern  the pattern, must not be {@code null}
+	 * @param ignoreCaret  when {@code true}, do not treat a leading {@code '^'} as an anchor
+	 * @return  the compiled pattern
+	 *
+	 * @throws NullPointerException  if {@code pattern} is {@code null}
+	 * @throws IllegalArgumentException  if {@code pattern} is malformed
+	 *
+	 * @see StringPattern#fromString(String, boolean)
+	 */
+	public StringPattern get(String pattern, boolean ignoreCaret) {
+		Key key = new Key(pattern, ignoreCaret);
+
+		StringPattern result = patterns.get(key);
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+
+		misses.incrementAndGet();
+
+		// malformed patterns are not cached
+		result = StringPattern.fromString(pattern, ignoreCaret);
+		patterns.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Returns the compiled pattern {@code pattern}, parsing it if it is not in the cache.
+	 *
+	 * @param pattern  the pattern, must not be {@code null}
+	 * @return  the compiled pattern
+	 *
+	 * @throws NullPointerException  if {@code pattern} is {@code null}
+	 * @throws IllegalArgumentException  if {@code pattern} is malformed
+	 *
+	 * @see StringPattern#fromString(String)
+	 */
+	public StringPattern get(String pattern) {
+		return get(pattern, false);
+	}
+
+	/**
+	 * Returns the maximum number of patterns in this cache.
+	 *
+	 * @return  the capacity of this cache
+	 */
+	public int capacity() {
+		return patterns.capacity();
+	}
+
+	/**
+	 * Returns the number of patterns currently in this cache.
+	 *
+	 * @return  the number of patterns in this cache
+	 */
+	public int size() {
+		return patterns.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found their pattern in this cache.
+	 *
+	 * @return  the number of cache hits
+	 */
+	public long hitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that had to parse their pattern.
+	 *
+	 * @return  the number of cache misses
+	 */
+	public long missCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Removes all patterns from this cache and resets the hit and miss counters.
+	 *
+	 * <p>Lookups performed concurrently with this method may or may not be reflected
+	 * in the counters.</p>
+	 */
+	public void clear() {
+		patterns.clear();
+		hits.set(0L);
+		misses.set(0L);
+	}
+
+}
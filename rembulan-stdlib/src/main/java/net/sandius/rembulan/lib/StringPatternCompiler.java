@@ -0,0 +1,704 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * A compiler of {@link StringPattern}s to JVM bytecode.
+ *
+ * <p>Each pattern item is compiled to a static method that matches the item at a given
+ * position and then invokes the method of the next item (the continuation), mirroring
+ * the structure of the interpreter in {@code StringPattern.MatchState}. Character class
+ * tests and repetitions are inlined into these methods.</p>
+ *
+ * <p>This class depends on ASM, which is an optional dependency of the standard library:
+ * callers must be prepared to handle a {@link LinkageError} when ASM is not available.</p>
+ */
+final class StringPatternCompiler {
+
+	private StringPatternCompiler() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Patterns with more items than this are not compiled.
+	 */
+	static final int MAX_ITEMS = 256;
+
+	private static final String STRING = Type.getInternalName(String.class);
+	private static final String CHARACTER = Type.getInternalName(Character.class);
+
+	private static final String MATCH_METHOD_DESC = Type.getMethodDescriptor(
+			Type.INT_TYPE,
+			Type.getType(String.class),
+			Type.INT_TYPE,
+			Type.getType(int[].class),
+			Type.getType(Object[].class));
+
+	// method parameters, shared by all generated match methods
+	private static final int STR = 0;
+	private static final int IDX = 1;
+	private static final int CAP_BEGIN = 2;
+	private static final int CAP = 3;
+
+	private static final AtomicInteger classIdx = new AtomicInteger(0);
+
+	private static class MatcherClassLoader extends ClassLoader {
+
+		MatcherClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+	}
+
+	/**
+	 * Compiles the pattern {@code pattern}, returning {@code null} if the pattern is
+	 * too large to be compiled.
+	 *
+	 * @param pattern  the pattern to compile, must not be {@code null}
+	 * @return  the compiled matcher, or {@code null}
+	 *
+	 * @throws LinkageError  if ASM is not available
+	 */
+	static StringPattern.CompiledMatcher compile(StringPattern pattern) {
+		List<StringPattern.PI> items = pattern.items;
+		if (items.size() > MAX_ITEMS) {
+			return null;
+		}
+
+		String className = StringPattern.class.getName() + "Matcher$" + classIdx.getAndIncrement();
+		byte[] bytes = new Emitter(className.replace('.', '/'), items).emit();
+
+		Class<?> clazz = new MatcherClassLoader(StringPattern.class.getClassLoader()).define(className, bytes);
+		try {
+			return (StringPattern.CompiledMatcher) clazz.getConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static class Emitter {
+
+		private final String className;
+		private final List<StringPattern.PI> items;
+
+		private MethodVisitor mv;
+		private int nextLocal;
+
+		Emitter(String className, List<StringPattern.PI> items) {
+			this.className = className;
+			this.items = items;
+		}
+
+		byte[] emit() {
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+			String superName = Type.getInternalName(StringPattern.CompiledMatcher.class);
+
+			cw.visit(V1_7, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, superName, null);
+
+			mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			mv = cw.visitMethod(ACC_PUBLIC, "match", MATCH_METHOD_DESC, null, null);
+			mv.visitCode();
+			if (items.isEmpty()) {
+				mv.visitVarInsn(ILOAD, IDX + 1);
+			}
+			else {
+				mv.visitVarInsn(ALOAD, STR + 1);
+				mv.visitVarInsn(ILOAD, IDX + 1);
+				mv.visitVarInsn(ALOAD, CAP_BEGIN + 1);
+				mv.visitVarInsn(ALOAD, CAP + 1);
+				mv.visitMethodInsn(INVOKESTATIC, className, methodName(0), MATCH_METHOD_DESC, false);
+			}
+			mv.visitInsn(IRETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			for (int i = 0; i < items.size(); i++) {
+				mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, methodName(i), MATCH_METHOD_DESC, null, null);
+				mv.visitCode();
+				nextLocal = CAP + 1;
+
+				Label fail = new Label();
+				item(i, items.get(i), fail);
+
+				mv.visitLabel(fail);
+				pushInt(-1);
+				mv.visitInsn(IRETURN);
+				mv.visitMaxs(0, 0);
+				mv.visitEnd();
+			}
+
+			cw.visitEnd();
+			return cw.toByteArray();
+		}
+
+		private static String methodName(int i) {
+			return "m" + i;
+		}
+
+		private int newLocal() {
+			return nextLocal++;
+		}
+
+		private void pushInt(int n) {
+			if (n >= -1 && n <= 5) {
+				mv.visitInsn(ICONST_0 + n);
+			}
+			else if (n >= Byte.MIN_VALUE && n <= Byte.MAX_VALUE) {
+				mv.visitIntInsn(BIPUSH, n);
+			}
+			else if (n >= Short.MIN_VALUE && n <= Short.MAX_VALUE) {
+				mv.visitIntInsn(SIPUSH, n);
+			}
+			else {
+				mv.visitLdcInsn(n);
+			}
+		}
+
+		private void length() {
+			mv.visitVarInsn(ALOAD, STR);
+			mv.visitMethodInsn(INVOKEVIRTUAL, STRING, "length", "()I", false);
+		}
+
+		// charAt with the index on the stack
+		private void charAt() {
+			mv.visitMethodInsn(INVOKEVIRTUAL, STRING, "charAt", "(I)C", false);
+		}
+
+		// stores the character at the index in the local posVar, or -1 if out of bounds, in a new local
+		private int peek(int posVar) {
+			Label outOfBounds = new Label();
+			Label done = new Label();
+			int c = newLocal();
+
+			mv.visitVarInsn(ILOAD, posVar);
+			length();
+			mv.visitJumpInsn(IF_ICMPGE, outOfBounds);
+			mv.visitVarInsn(ALOAD, STR);
+			mv.visitVarInsn(ILOAD, posVar);
+			charAt();
+			mv.visitVarInsn(ISTORE, c);
+			mv.visitJumpInsn(GOTO, done);
+			mv.visitLabel(outOfBounds);
+			pushInt(-1);
+			mv.visitVarInsn(ISTORE, c);
+			mv.visitLabel(done);
+
+			return c;
+		}
+
+		// invokes the continuation of item i with the index in the local idxVar plus delta,
+		// leaving the result on the stack
+		private void next(int i, int idxVar, int delta) {
+			boolean last = i + 1 >= items.size();
+			if (!last) {
+				mv.visitVarInsn(ALOAD, STR);
+			}
+			mv.visitVarInsn(ILOAD, idxVar);
+			if (delta != 0) {
+				pushInt(delta);
+				mv.visitInsn(IADD);
+			}
+			if (!last) {
+				mv.visitVarInsn(ALOAD, CAP_BEGIN);
+				mv.visitVarInsn(ALOAD, CAP);
+				mv.visitMethodInsn(INVOKESTATIC, className, methodName(i + 1), MATCH_METHOD_DESC, false);
+			}
+		}
+
+		private void returnNext(int i, int idxVar, int delta) {
+			next(i, idxVar, delta);
+			mv.visitInsn(IRETURN);
+		}
+
+		// returns the result of the continuation if it is a match, otherwise jumps to onNoMatch
+		private void returnNextIfMatch(int i, int idxVar, Label onNoMatch) {
+			int r = newLocal();
+			next(i, idxVar, 0);
+			mv.visitVarInsn(ISTORE, r);
+			mv.visitVarInsn(ILOAD, r);
+			pushInt(-1);
+			mv.visitJumpInsn(IF_ICMPEQ, onNoMatch);
+			mv.visitVarInsn(ILOAD, r);
+			mv.visitInsn(IRETURN);
+		}
+
+		private void item(int i, StringPattern.PI pi, Label fail) {
+			if (pi instanceof StringPattern.PI_begin) {
+				mv.visitVarInsn(ILOAD, IDX);
+				mv.visitJumpInsn(IFNE, fail);
+				returnNext(i, IDX, 0);
+			}
+			else if (pi instanceof StringPattern.PI_eos) {
+				mv.visitVarInsn(ILOAD, IDX);
+				length();
+				pushInt(1);
+				mv.visitInsn(ISUB);
+				mv.visitJumpInsn(IF_ICMPNE, fail);
+				returnNext(i, IDX, 0);
+			}
+			else if (pi instanceof StringPattern.PI_cc) {
+				cc(i, (StringPattern.PI_cc) pi, fail);
+			}
+			else if (pi instanceof StringPattern.PI_cmatch) {
+				cmatch(i, (StringPattern.PI_cmatch) pi, fail);
+			}
+			else if (pi instanceof StringPattern.PI_balanced) {
+				balanced(i, (StringPattern.PI_balanced) pi, fail);
+			}
+			else if (pi instanceof StringPattern.PI_frontier) {
+				frontier(i, (StringPattern.PI_frontier) pi, fail);
+			}
+			else if (pi instanceof StringPattern.PI_capture_pos) {
+				mv.visitVarInsn(ALOAD, CAP);
+				pushInt(((StringPattern.PI_capture_pos) pi).index - 1);
+				mv.visitVarInsn(ILOAD, IDX);
+				pushInt(1);
+				mv.visitInsn(IADD);
+				mv.visitInsn(I2L);
+				mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Long.class), "valueOf", "(J)Ljava/lang/Long;", false);
+				mv.visitInsn(AASTORE);
+				returnNext(i, IDX, 0);
+			}
+			else if (pi instanceof StringPattern.PI_capture_begin) {
+				mv.visitVarInsn(ALOAD, CAP_BEGIN);
+				pushInt(((StringPattern.PI_capture_begin) pi).index - 1);
+				mv.visitVarInsn(ILOAD, IDX);
+				mv.visitInsn(IASTORE);
+				returnNext(i, IDX, 0);
+			}
+			else if (pi instanceof StringPattern.PI_capture_end) {
+				int k = ((StringPattern.PI_capture_end) pi).index - 1;
+				mv.visitVarInsn(ALOAD, CAP);
+				pushInt(k);
+				mv.visitVarInsn(ALOAD, STR);
+				mv.visitVarInsn(ALOAD, CAP_BEGIN);
+				pushInt(k);
+				mv.visitInsn(IALOAD);
+				length();
+				mv.visitVarInsn(ILOAD, IDX);
+				mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Math.class), "min", "(II)I", false);
+				mv.visitMethodInsn(INVOKEVIRTUAL, STRING, "substring", "(II)Ljava/lang/String;", false);
+				mv.visitInsn(AASTORE);
+				returnNext(i, IDX, 0);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown pattern item: " + pi);
+			}
+		}
+
+		// stores the end of the longest run of characters matching ccl starting at the index
+		// in the local fromVar in a new local
+		private int longestRun(StringPattern.CC ccl, int fromVar) {
+			int max = newLocal();
+			Label loop = new Label();
+			Label end = new Label();
+
+			mv.visitVarInsn(ILOAD, fromVar);
+			mv.visitVarInsn(ISTORE, max);
+			mv.visitLabel(loop);
+			int c = peek(max);
+			test(ccl, c, end);
+			mv.visitIincInsn(max, 1);
+			mv.visitJumpInsn(GOTO, loop);
+			mv.visitLabel(end);
+
+			return max;
+		}
+
+		// tries the continuation at positions from the local max down to the local min (inclusive)
+		private void backtrackDown(int i, int max, int min, Label fail) {
+			Label loop = new Label();
+			Label noMatch = new Label();
+
+			mv.visitLabel(loop);
+			mv.visitVarInsn(ILOAD, max);
+			mv.visitVarInsn(ILOAD, min);
+			mv.visitJumpInsn(IF_ICMPLT, fail);
+			returnNextIfMatch(i, max, noMatch);
+			mv.visitLabel(noMatch);
+			mv.visitIincInsn(max, -1);
+			mv.visitJumpInsn(GOTO, loop);
+		}
+
+		private void cc(int i, StringPattern.PI_cc pi, Label fail) {
+			switch (pi.mod) {
+
+				case EXACTLY_ONCE: {
+					int c = peek(IDX);
+					test(pi.ccl, c, fail);
+					returnNext(i, IDX, 1);
+					break;
+				}
+
+				case LONGEST_ZERO_OR_MORE: {
+					int max = longestRun(pi.ccl, IDX);
+					backtrackDown(i, max, IDX, fail);
+					break;
+				}
+
+				case SHORTEST_ZERO_OR_MORE: {
+					int max = longestRun(pi.ccl, IDX);
+					int j = newLocal();
+					Label loop = new Label();
+					Label noMatch = new Label();
+
+					mv.visitVarInsn(ILOAD, IDX);
+					mv.visitVarInsn(ISTORE, j);
+					mv.visitLabel(loop);
+					mv.visitVarInsn(ILOAD, j);
+					mv.visitVarInsn(ILOAD, max);
+					mv.visitJumpInsn(IF_ICMPGE, fail);
+					returnNextIfMatch(i, j, noMatch);
+					mv.visitLabel(noMatch);
+					mv.visitIincInsn(j, 1);
+					mv.visitJumpInsn(GOTO, loop);
+					break;
+				}
+
+				case ONE_OR_MORE: {
+					int c = peek(IDX);
+					test(pi.ccl, c, fail);
+					int min = newLocal();
+					mv.visitVarInsn(ILOAD, IDX);
+					pushInt(1);
+					mv.visitInsn(IADD);
+					mv.visitVarInsn(ISTORE, min);
+					int max = longestRun(pi.ccl, min);
+					backtrackDown(i, max, min, fail);
+					break;
+				}
+
+				case AT_MOST_ONCE: {
+					Label without = new Label();
+					int c = peek(IDX);
+					test(pi.ccl, c, without);
+					int j = newLocal();
+					mv.visitVarInsn(ILOAD, IDX);
+					pushInt(1);
+					mv.visitInsn(IADD);
+					mv.visitVarInsn(ISTORE, j);
+					returnNextIfMatch(i, j, without);
+					mv.visitLabel(without);
+					returnNext(i, IDX, 0);
+					break;
+				}
+
+				default:
+					throw new IllegalStateException();
+			}
+		}
+
+		private void cmatch(int i, StringPattern.PI_cmatch pi, Label fail) {
+			int o = newLocal();
+			int end = newLocal();
+
+			mv.visitVarInsn(ALOAD, CAP);
+			pushInt(pi.index - 1);
+			mv.visitInsn(AALOAD);
+			mv.visitVarInsn(ASTORE, o);
+			mv.visitVarInsn(ALOAD, o);
+			mv.visitTypeInsn(INSTANCEOF, STRING);
+			mv.visitJumpInsn(IFEQ, fail);  // don't match positions
+
+			mv.visitVarInsn(ALOAD, STR);
+			mv.visitVarInsn(ALOAD, o);
+			mv.visitTypeInsn(CHECKCAST, STRING);
+			mv.visitVarInsn(ILOAD, IDX);
+			mv.visitMethodInsn(INVOKEVIRTUAL, STRING, "startsWith", "(Ljava/lang/String;I)Z", false);
+			mv.visitJumpInsn(IFEQ, fail);
+
+			mv.visitVarInsn(ILOAD, IDX);
+			mv.visitVarInsn(ALOAD, o);
+			mv.visitTypeInsn(CHECKCAST, STRING);
+			mv.visitMethodInsn(INVOKEVIRTUAL, STRING, "length", "()I", false);
+			mv.visitInsn(IADD);
+			mv.visitVarInsn(ISTORE, end);
+			returnNext(i, end, 0);
+		}
+
+		private void balanced(int i, StringPattern.PI_balanced pi, Label fail) {
+			int balance = newLocal();
+			int pos = newLocal();
+			int c = newLocal();
+			Label loop = new Label();
+			Label notFirst = new Label();
+			Label counted = new Label();
+
+			mv.visitVarInsn(ILOAD, IDX);
+			length();
+			mv.visitJumpInsn(IF_ICMPGE, fail);
+			mv.visitVarInsn(ALOAD, STR);
+			mv.visitVarInsn(ILOAD, IDX);
+			charAt();
+			pushInt(pi.first);
+			mv.visitJumpInsn(IF_ICMPNE, fail);
+
+			pushInt(0);
+			mv.visitVarInsn(ISTORE, balance);
+			mv.visitVarInsn(ILOAD, IDX);
+			mv.visitVarInsn(ISTORE, pos);
+
+			mv.visitLabel(loop);
+			mv.visitVarInsn(ILOAD, pos);
+			length();
+			mv.visitJumpInsn(IF_ICMPGE, fail);  // not balanced
+
+			mv.visitVarInsn(ALOAD, STR);
+			mv.visitVarInsn(ILOAD, pos);
+			charAt();
+			mv.visitVarInsn(ISTORE, c);
+
+			mv.visitVarInsn(ILOAD, c);
+			pushInt(pi.first);
+			mv.visitJumpInsn(IF_ICMPNE, notFirst);
+			mv.visitIincInsn(balance, 1);
+			mv.visitJumpInsn(GOTO, counted);
+			mv.visitLabel(notFirst);
+			mv.visitVarInsn(ILOAD, c);
+			pushInt(pi.second);
+			mv.visitJumpInsn(IF_ICMPNE, counted);
+			mv.visitIincInsn(balance, -1);
+			mv.visitLabel(counted);
+
+			mv.visitIincInsn(pos, 1);
+			mv.visitVarInsn(ILOAD, balance);
+			mv.visitJumpInsn(IFNE, loop);
+			returnNextIfMatch(i, pos, loop);
+		}
+
+		private void frontier(int i, StringPattern.PI_frontier pi, Label fail) {
+			int c = newLocal();
+			int d = newLocal();
+			Label dIn = new Label();
+
+			mv.visitVarInsn(ILOAD, IDX);
+			mv.visitJumpInsn(IFLE, fail);
+			mv.visitVarInsn(ILOAD, IDX);
+			length();
+			mv.visitJumpInsn(IF_ICMPGE, fail);
+
+			mv.visitVarInsn(ALOAD, STR);
+			mv.visitVarInsn(ILOAD, IDX);
+			pushInt(1);
+			mv.visitInsn(ISUB);
+			charAt();
+			mv.visitVarInsn(ISTORE, c);
+			mv.visitVarInsn(ALOAD, STR);
+			mv.visitVarInsn(ILOAD, IDX);
+			charAt();
+			mv.visitVarInsn(ISTORE, d);
+
+			jumpIfInSet(pi.cs, c, fail);
+			jumpIfInSet(pi.cs, d, dIn);
+			mv.visitJumpInsn(GOTO, fail);
+			mv.visitLabel(dIn);
+			returnNext(i, IDX, 0);
+		}
+
+		// falls through if the character (or -1) in the local c matches ccl, otherwise jumps to noMatch
+		private void test(StringPattern.CC ccl, int c, Label noMatch) {
+			mv.visitVarInsn(ILOAD, c);
+			mv.visitJumpInsn(IFLT, noMatch);
+			testChar(ccl, c, noMatch);
+		}
+
+		// like test, but the local c is known to be non-negative
+		private void testChar(StringPattern.CC ccl, int c, Label noMatch) {
+			if (ccl instanceof StringPattern.CC_lit) {
+				mv.visitVarInsn(ILOAD, c);
+				pushInt(((StringPattern.CC_lit) ccl).ch);
+				mv.visitJumpInsn(IF_ICMPNE, noMatch);
+			}
+			else if (ccl instanceof StringPattern.CC_spec) {
+				StringPattern.CC_spec spec = (StringPattern.CC_spec) ccl;
+				if (spec.desc != StringPattern.CC_spec.ClassDesc.ALL) {
+					if (!spec.complement) {
+						testClass(spec.desc, c, noMatch);
+					}
+					else {
+						Label notInClass = new Label();
+						testClass(spec.desc, c, notInClass);
+						mv.visitJumpInsn(GOTO, noMatch);
+						mv.visitLabel(notInClass);
+					}
+				}
+			}
+			else if (ccl instanceof StringPattern.CC_set) {
+				StringPattern.CC_set set = (StringPattern.CC_set) ccl;
+				if (!set.complement) {
+					Label in = new Label();
+					jumpIfInSet(set.cs, c, in);
+					mv.visitJumpInsn(GOTO, noMatch);
+					mv.visitLabel(in);
+				}
+				else {
+					jumpIfInSet(set.cs, c, noMatch);
+				}
+			}
+			else {
+				throw new IllegalArgumentException("Unknown character class: " + ccl);
+			}
+		}
+
+		private void jumpIfInSet(StringPattern.CharacterSet cs, int c, Label in) {
+			for (StringPattern.CharacterSet.SetElement elem : cs.elements) {
+				if (elem instanceof StringPattern.CharacterSet.RangeSetElement) {
+					StringPattern.CharacterSet.RangeSetElement range = (StringPattern.CharacterSet.RangeSetElement) elem;
+					jumpIfInRange(c, range.min, range.max, in);
+				}
+				else if (elem instanceof StringPattern.CharacterSet.CharacterClassSetElement) {
+					Label notThis = new Label();
+					testChar(((StringPattern.CharacterSet.CharacterClassSetElement) elem).ccl, c, notThis);
+					mv.visitJumpInsn(GOTO, in);
+					mv.visitLabel(notThis);
+				}
+				else {
+					throw new IllegalArgumentException("Unknown set element: " + elem);
+				}
+			}
+		}
+
+		private void jumpIfInRange(int c, char min, char max, Label in) {
+			Label below = new Label();
+			mv.visitVarInsn(ILOAD, c);
+			pushInt(min);
+			mv.visitJumpInsn(IF_ICMPLT, below);
+			mv.visitVarInsn(ILOAD, c);
+			pushInt(max);
+			mv.visitJumpInsn(IF_ICMPLE, in);
+			mv.visitLabel(below);
+		}
+
+		private void characterTest(String name, int c) {
+			mv.visitVarInsn(ILOAD, c);
+			mv.visitMethodInsn(INVOKESTATIC, CHARACTER, name, "(C)Z", false);
+		}
+
+		// falls through if the character in the local c is in the class desc, otherwise
+		// jumps to notInClass; mirrors StringPattern.CC_spec.matches(int)
+		private void testClass(StringPattern.CC_spec.ClassDesc desc, int c, Label notInClass) {
+			switch (desc) {
+				case LETTERS:
+					characterTest("isLetter", c);
+					mv.visitJumpInsn(IFEQ, notInClass);
+					break;
+
+				case LOWERCASE_LETTERS:
+					characterTest("isLetter", c);
+					mv.visitJumpInsn(IFEQ, notInClass);
+					characterTest("isLowerCase", c);
+					mv.visitJumpInsn(IFEQ, notInClass);
+					break;
+
+				case UPPERCASE_LETTERS:
+					characterTest("isLetter", c);
+					mv.visitJumpInsn(IFEQ, notInClass);
+					characterTest("isUpperCase", c);
+					mv.visitJumpInsn(IFEQ, notInClass);
+					break;
+
+				case DECIMAL_DIGITS: {
+					Label in = new Label();
+					jumpIfInRange(c, '0', '9', in);
+					mv.visitJumpInsn(GOTO, notInClass);
+					mv.visitLabel(in);
+					break;
+				}
+
+				case HEXADECIMAL_DIGITS: {
+					Label in = new Label();
+					jumpIfInRange(c, '0', '9', in);
+					jumpIfInRange(c, 'a', 'f', in);
+					jumpIfInRange(c, 'A', 'F', in);
+					mv.visitJumpInsn(GOTO, notInClass);
+					mv.visitLabel(in);
+					break;
+				}
+
+				case ALPHANUMERIC: {
+					Label in = new Label();
+					int lc = newLocal();
+					mv.visitVarInsn(ILOAD, c);
+					mv.visitMethodInsn(INVOKESTATIC, CHARACTER, "toLowerCase", "(C)C", false);
+					mv.visitVarInsn(ISTORE, lc);
+					jumpIfInRange(lc, '0', '9', in);
+					jumpIfInRange(lc, 'a', 'z', in);
+					mv.visitJumpInsn(GOTO, notInClass);
+					mv.visitLabel(in);
+					break;
+				}
+
+				case SPACE:
+					characterTest("isWhitespace", c);
+					mv.visitJumpInsn(IFEQ, notInClass);
+					break;
+
+				case CONTROL_CHARS:
+					characterTest("isISOControl", c);
+					mv.visitJumpInsn(IFEQ, notInClass);
+					break;
+
+				case PUNCTUATION: {
+					Label in = new Label();
+					for (int i = 0; i < StringPattern.PUNCTUATION_CHARS.length(); i++) {
+						mv.visitVarInsn(ILOAD, c);
+						pushInt(StringPattern.PUNCTUATION_CHARS.charAt(i));
+						mv.visitJumpInsn(IF_ICMPEQ, in);
+					}
+					mv.visitJumpInsn(GOTO, notInClass);
+					mv.visitLabel(in);
+					break;
+				}
+
+				case PRINTABLE_EXCEPT_SPACE:
+					characterTest("isISOControl", c);
+					mv.visitJumpInsn(IFNE, notInClass);
+					mv.visitVarInsn(ILOAD, c);
+					pushInt(' ');
+					mv.visitJumpInsn(IF_ICMPEQ, notInClass);
+					break;
+
+				default:
+					throw new IllegalStateException();
+			}
+		}
+
+	}
+
+}
@@ -46,11 +46,13 @@ package net.sandius.rembulan.lib;
 import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.ByteStringBuilder;
 import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.LuaFormat;
 import net.sandius.rembulan.LuaRuntimeException;
 import net.sandius.rembulan.Ordering;
 import net.sandius.rembulan.PlainValueTypeNamer;
 import net.sandius.rembulan.StateContext;
 import net.sandius.rembulan.Table;
+import net.sandius.rembulan.impl.MemoryAccountants;
 import net.sandius.rembulan.runtime.Dispatch;
 import net.sandius.rembulan.runtime.ExecutionContext;
 import net.sandius.rembulan.runtime.LuaFunction;
@@ -342,6 +344,16 @@ public final class TableLib {
 		}
 
 		private static void appendToBuilder(ByteStringBuilder bld, long index, Object o) {
+			// format numbers directly into the builder
+			if (o instanceof Long) {
+				LuaFormat.appendTo(bld, ((Long) o).longValue());
+				return;
+			}
+			else if (o instanceof Double) {
+				LuaFormat.appendTo(bld, ((Double) o).doubleValue());
+				return;
+			}
+
 			ByteString s = Conversions.stringValueOf(o);
 			if (s != null) {
 				bld.append(s);
@@ -363,6 +375,7 @@ public final class TableLib {
 					bld.append(sep);
 				}
 			}
+			MemoryAccountants.forContext(context).allocate(bld.length());
 			context.getReturnBuffer().setTo(bld.toByteString());
 		}
 
@@ -452,6 +465,7 @@ public final class TableLib {
 						assert (k > j);
 
 						// we're done!
+						MemoryAccountants.forContext(context).allocate(bld.length());
 						context.getReturnBuffer().setTo(bld.toByteString());
 						return;
 					}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class ByteStringSpec extends FunSpec with MustMatchers {
+
+  describe ("concatenation") {
+
+    val piece = ByteString.of("0123456789")
+    val n = 100
+
+    def leftDeep: ByteString = (1 to n).foldLeft(ByteString.empty())((acc, _) => acc.concat(piece))
+    def rightDeep: ByteString = (1 to n).foldLeft(ByteString.empty())((acc, _) => piece.concat(acc))
+    def expected: ByteString = ByteString.of("0123456789" * n)
+
+    it ("has the contents of its operands") {
+      leftDeep.length mustBe 10 * n
+      leftDeep mustBe expected
+      rightDeep mustBe expected
+      expected mustBe leftDeep
+      leftDeep.toString mustBe expected.toString
+      leftDeep.getBytes mustBe expected.getBytes
+      leftDeep.byteAt(11) mustBe '1'.toByte
+    }
+
+    it ("is consistent with hashCode and compareTo") {
+      leftDeep.hashCode mustBe expected.hashCode
+      rightDeep.hashCode mustBe expected.hashCode
+      leftDeep.compareTo(expected) mustBe 0
+      leftDeep.compareTo(expected.concat(piece)) must be < 0
+      leftDeep.concat(piece).compareTo(expected) must be > 0
+    }
+
+    it ("can be nested in another concatenation after being flattened") {
+      val a = leftDeep
+      a.hashCode  // flatten
+      val b = a.concat(rightDeep)
+      b.length mustBe 20 * n
+      b mustBe ByteString.of("0123456789" * (2 * n))
+      b.startsWith('0'.toByte) mustBe true
+    }
+
+    it ("does not exhaust the stack when flattening deep concatenations") {
+      val x = ByteString.of("x")
+      var s = ByteString.empty()
+      for (i <- 1 to 200000) {
+        s = s.concat(x)
+      }
+      s.length mustBe 200000
+      s.byteAt(199999) mustBe 'x'.toByte
+    }
+
+  }
+
+  describe ("indexOf") {
+
+    // compare against java.lang.String on ASCII strings
+    def check(haystack: String, needle: String): Unit = {
+      val h = ByteString.of(haystack)
+      val n = ByteString.of(needle)
+      for (from <- -1 to haystack.length + 1) {
+        val expected = if (from > haystack.length) -1 else haystack.indexOf(needle, from)
+        withClue ("\"" + needle + "\" from " + from + ": ") {
+          h.indexOf(n, from) mustBe expected
+        }
+      }
+    }
+
+    it ("finds short needles") {
+      check("hello there", "e")
+      check("hello there", "he")
+      check("hello there", "")
+      check("aaab", "aab")
+      check("", "x")
+    }
+
+    it ("finds long needles in long haystacks") {
+      val haystack = ("abcabd" * 20) + "abcabcabd" + ("xyz" * 10) + "abcabcabd"
+      check(haystack, "abcabcabd")
+      check(haystack, "xyzxyz")
+      check(haystack, "abcabe")
+      check(haystack, haystack)
+      check(haystack, haystack + "a")
+    }
+
+    it ("works on all kinds of byte strings") {
+      val needle = ByteString.of("0123456789")
+      val rope = (1 to 10).foldLeft(ByteString.of("x"))((acc, _) => acc.concat(ByteString.of("0123456789")))
+      rope.indexOf(needle, 0) mustBe 1
+      rope.indexOf(needle, 2) mustBe 11
+      ByteString.copyOf("0123456789".getBytes).indexOf(needle, 0) mustBe 0
+      ByteString.copyOf(Array(0xc3, 0xa9, 0x74, 0xc3, 0xa9).map(_.toByte)).indexOf(ByteString.of("t"), 0) mustBe 2
+    }
+
+  }
+
+  describe ("substring") {
+
+    val text = "0123456789abcdefghijklmnopqrstuvwxyz" * 2
+    def parent: ByteString = ByteString.copyOf(text.getBytes)
+
+    it ("shares the array of its parent when long enough") {
+      val p = parent
+      val s = p.substring(10, 60)
+      s.sharedBytes() must be theSameInstanceAs p.sharedBytes()
+      s.sharedOffset() mustBe 10
+      s.substring(5, 40).sharedBytes() must be theSameInstanceAs p.sharedBytes()
+    }
+
+    it ("copies short substrings and substrings of much larger strings") {
+      val p = parent
+      p.substring(10, 12).sharedBytes() must not be theSameInstanceAs (p.sharedBytes())
+      val large = ByteString.copyOf(("x" * 10000).getBytes)
+      large.substring(0, 100).sharedBytes().length mustBe 100
+    }
+
+    it ("behaves like a copy") {
+      val p = parent
+      for ((start, end) <- Seq((0, 72), (1, 71), (10, 60), (36, 72), (20, 20))) {
+        val s = p.substring(start, end)
+        val expected = ByteString.copyOf(text.substring(start, end).getBytes)
+        withClue ("[" + start + ", " + end + "): ") {
+          s.length mustBe end - start
+          s mustBe expected
+          expected mustBe s
+          s.hashCode mustBe expected.hashCode
+          s.compareTo(expected) mustBe 0
+          s.toString mustBe text.substring(start, end)
+          s.toRawString mustBe text.substring(start, end)
+          s.getBytes mustBe text.substring(start, end).getBytes
+          s.isEmpty mustBe (start == end)
+          s.startsWith('a'.toByte) mustBe text.substring(start, end).startsWith("a")
+
+          val it = s.byteIterator()
+          val fromIterator = new StringBuilder
+          while (it.hasNext) fromIterator.append(it.nextByte().toChar)
+          fromIterator.toString mustBe text.substring(start, end)
+
+          val buf = s.asReadOnlyBuffer()
+          buf.remaining mustBe end - start
+          if (end > start) buf.get(0) mustBe text.charAt(start).toByte
+
+          val in = s.asInputStream()
+          in.available mustBe end - start
+        }
+      }
+    }
+
+    it ("checks its bounds") {
+      val s = parent.substring(10, 60)
+      an [IndexOutOfBoundsException] must be thrownBy s.byteAt(-1)
+      an [IndexOutOfBoundsException] must be thrownBy s.byteAt(50)
+      an [IndexOutOfBoundsException] must be thrownBy s.substring(0, 51)
+    }
+
+    it ("can be searched in and searched for") {
+      val s = parent.substring(10, 70)
+      s.indexOf(ByteString.of("abc"), 0) mustBe 0
+      s.indexOf(ByteString.of("0123"), 0) mustBe 26
+      s.indexOf(ByteString.of("89a"), 0) mustBe 34
+      s.indexOf(parent.substring(36, 60), 0) mustBe 26
+      s.indexOf(parent.substring(0, 40), 0) mustBe -1
+    }
+
+    it ("can be converted to a number") {
+      val p = ByteString.copyOf("xxxx   1234567.5e3    xxxx".getBytes)
+      val s = p.substring(4, 22)
+      s.sharedBytes() must be theSameInstanceAs p.sharedBytes()
+      Conversions.numericalValueOf(s) mustBe java.lang.Double.valueOf(1234567.5e3)
+    }
+
+    it ("can be concatenated") {
+      val s = parent.substring(10, 60)
+      val t = s.concat(s.concat(s))
+      t mustBe ByteString.of(text.substring(10, 60) * 3)
+    }
+
+  }
+
+}
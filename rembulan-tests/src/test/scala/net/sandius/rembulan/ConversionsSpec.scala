@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.util.Random
+
+@RunWith(classOf[JUnitRunner])
+class ConversionsSpec extends FunSpec with MustMatchers {
+
+  describe ("numerical value of a string") {
+
+    def valueOf(s: String): Number = Conversions.numericalValueOf(ByteString.of(s))
+
+    def mustBeFloat(s: String, expected: Double): Unit = {
+      withClue ("parsing \"" + s + "\": ") {
+        val n = valueOf(s)
+        n mustBe a [java.lang.Double]
+        java.lang.Double.doubleToRawLongBits(n.doubleValue) mustBe java.lang.Double.doubleToRawLongBits(expected)
+      }
+    }
+
+    it ("is an integer for integer numerals") {
+      valueOf("0") mustBe java.lang.Long.valueOf(0L)
+      valueOf("-0") mustBe java.lang.Long.valueOf(0L)
+      valueOf("  +42\t") mustBe java.lang.Long.valueOf(42L)
+      valueOf("007") mustBe java.lang.Long.valueOf(7L)
+      valueOf("0x7fffffffffffffff") mustBe java.lang.Long.valueOf(Long.MaxValue)
+      valueOf("0x8000000000000000") mustBe java.lang.Long.valueOf(Long.MinValue)
+      valueOf("-0x1") mustBe java.lang.Long.valueOf(-1L)
+      valueOf("0x10000000000000001") mustBe java.lang.Long.valueOf(1L)
+    }
+
+    it ("returns cached boxes for small integers") {
+      valueOf("1000") must be theSameInstanceAs valueOf(" 1000 ")
+    }
+
+    it ("is a float for float numerals and decimal integers out of range") {
+      mustBeFloat("-0.0", -0.0)
+      mustBeFloat("0e1000", 0.0)
+      mustBeFloat("1e400", Double.PositiveInfinity)
+      mustBeFloat("-1e400", Double.NegativeInfinity)
+      mustBeFloat("1e-400", 0.0)
+      mustBeFloat("-9223372036854775809", -9223372036854775809.0)
+      mustBeFloat("12345678901234567890123", 12345678901234567890123.0)
+      mustBeFloat("0.000000000000000000000000000001", 1e-30)
+      mustBeFloat("4.9406564584124654e-324", java.lang.Double.MIN_VALUE)
+      mustBeFloat("0x1.8p1", 3.0)
+      mustBeFloat("0xA.8P-1", 5.25)
+      mustBeFloat("0x1p-1074", java.lang.Double.MIN_VALUE)
+      mustBeFloat("0x1.fffffffffffffp1023", Double.MaxValue)
+      mustBeFloat("0x1.00000000000000000001p0", 1.0)
+      mustBeFloat("0x1.00000000000008000001p0", java.lang.Math.nextUp(1.0))
+    }
+
+    it ("is nil for non-numerals") {
+      for (s <- Seq("", " ", "-", "+", "--1", "+-1", "1 2", "1..2", "1.2.3", "1e", "1e+", "1p1",
+        "0x", "0x.", "0xg", "0x1p", "0x1e+1p", "1f", "1L", "0b1", "inf", "-inf", "nan", "NaN", "Infinity",
+        "1\u0000", " 1")) {
+        withClue ("parsing \"" + s + "\": ") {
+          valueOf(s) mustBe null
+        }
+      }
+    }
+
+    // integral values may be formatted without a decimal point or exponent
+    def asFloatNumeral(s: String): String = {
+      if (s.contains('.') || s.contains('e') || s.contains('E')) s else s + ".0"
+    }
+
+    it ("agrees with Double.parseDouble on decimal and hexadecimal floats") {
+      val rnd = new Random(5678)
+      for (i <- 1 to 20000) {
+        val f = java.lang.Double.longBitsToDouble(rnd.nextLong())
+        if (!f.isNaN && !f.isInfinite) {
+          val dec = java.lang.Double.toString(f)
+          mustBeFloat(dec, f)
+          mustBeFloat(java.lang.Double.toHexString(f), f)
+          mustBeFloat(asFloatNumeral(new java.math.BigDecimal(f).toString), f)
+          mustBeFloat(asFloatNumeral(String.format("%.17g", Double.box(f))), f)
+        }
+
+        val short = java.lang.Double.longBitsToDouble(
+            java.lang.Double.doubleToRawLongBits(rnd.nextInt(1000000) / math.pow(10, rnd.nextInt(10))))
+        mustBeFloat(java.lang.Double.toString(short), short)
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan
+
+import java.math.{MathContext, RoundingMode}
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.util.Random
+
+@RunWith(classOf[JUnitRunner])
+class LuaFormatSpec extends FunSpec with MustMatchers {
+
+  describe ("integer formatting") {
+
+    val values = Seq(0L, 1L, -1L, 9L, 10L, -10L, 99L, 100L, 123456789L, 999999999999999999L,
+      1000000000000000000L, Long.MaxValue, Long.MinValue, Long.MinValue + 1)
+
+    it ("agrees with java.lang.Long") {
+      for (l <- values) {
+        LuaFormat.toByteString(l).toString mustBe l.toString
+      }
+    }
+
+    it ("appends to a builder") {
+      val bld = new ByteStringBuilder()
+      for (l <- values) {
+        LuaFormat.appendTo(bld, l).append(',': Byte)
+      }
+      bld.toString mustBe values.map(_.toString).mkString("", ",", ",")
+    }
+
+  }
+
+  describe ("float formatting") {
+
+    val mc = new MathContext(14, RoundingMode.HALF_EVEN)
+
+    // checks that s is f rounded to 14 significant digits, in the %.14g format
+    def checkFormat(f: Double, s: String): Unit = {
+      withClue ("formatting " + f + " (0x" + java.lang.Long.toHexString(java.lang.Double.doubleToRawLongBits(f)) + "): ") {
+        val expected = new java.math.BigDecimal(f).round(mc)
+        new java.math.BigDecimal(s).compareTo(expected) mustBe 0
+
+        val exp = expected.precision - expected.scale - 1
+        s.contains("e") mustBe (exp < -4 || exp >= 14)
+        s.contains(".") || s.contains("e") mustBe true
+        if (s.contains("e")) {
+          s must fullyMatch regex """-?[1-9](\.[0-9]*[1-9])?e[+-][0-9]{2,3}"""
+        }
+        else {
+          s must fullyMatch regex """-?[0-9]+\.([0-9]*[1-9]|0)"""
+        }
+      }
+    }
+
+    it ("uses the PUC-Lua format") {
+      LuaFormat.toString(0.0) mustBe "0.0"
+      LuaFormat.toString(-0.0) mustBe "-0.0"
+      LuaFormat.toString(1.0) mustBe "1.0"
+      LuaFormat.toString(-1.5) mustBe "-1.5"
+      LuaFormat.toString(100.0) mustBe "100.0"
+      LuaFormat.toString(0.1) mustBe "0.1"
+      LuaFormat.toString(1.0 / 3) mustBe "0.33333333333333"
+      LuaFormat.toString(2.0 / 3) mustBe "0.66666666666667"
+      LuaFormat.toString(123456789012345.0) mustBe "1.2345678901234e+14"
+      LuaFormat.toString(123456789012355.0) mustBe "1.2345678901236e+14"
+      LuaFormat.toString(99999999999999.5) mustBe "1e+14"
+      LuaFormat.toString(1e15) mustBe "1e+15"
+      LuaFormat.toString(1e-5) mustBe "1e-05"
+      LuaFormat.toString(1.5e-300) mustBe "1.5e-300"
+      LuaFormat.toString(Double.MaxValue) mustBe "1.7976931348623e+308"
+      LuaFormat.toString(java.lang.Double.MIN_NORMAL) mustBe "2.2250738585072e-308"
+      LuaFormat.toString(java.lang.Double.MIN_VALUE) mustBe "4.9406564584125e-324"
+      LuaFormat.toString(Double.PositiveInfinity) mustBe "inf"
+      LuaFormat.toString(Double.NegativeInfinity) mustBe "-inf"
+      LuaFormat.toString(Double.NaN) mustBe "nan"
+    }
+
+    it ("rounds correctly at all magnitudes") {
+      val rnd = new Random(1234)
+      for (i <- 1 to 20000) {
+        val f = java.lang.Double.longBitsToDouble(rnd.nextLong())
+        if (!f.isNaN && !f.isInfinite) {
+          checkFormat(f, LuaFormat.toString(f))
+        }
+      }
+    }
+
+    it ("rounds correctly near powers of ten and at ties") {
+      for (e <- -20 to 25; d <- Seq(1.0, 5.0, 9.99999999999995, 9.999999999999949, 1.00000000000005, 1.5)) {
+        val f = d * math.pow(10, e)
+        for (g <- Seq(f, java.lang.Math.nextUp(f), java.lang.Math.nextDown(f), -f)) {
+          checkFormat(g, LuaFormat.toString(g))
+        }
+      }
+      for (i <- 0 to 2000) {
+        // integers with 15 or more digits, including exact ties
+        val l = 100000000000000L * (i + 1) + i * 5
+        checkFormat(l.toDouble, LuaFormat.toString(l.toDouble))
+      }
+    }
+
+    it ("appends to a builder") {
+      val bld = new ByteStringBuilder()
+      val values = Seq(0.0, -0.0, 0.5, 1e100, -1.0 / 3, Double.NegativeInfinity, Double.NaN)
+      for (f <- values) {
+        LuaFormat.appendTo(bld, f).append(',': Byte)
+      }
+      bld.toString mustBe values.map(LuaFormat.toString(_)).mkString("", ",", ",")
+    }
+
+  }
+
+}
@@ -156,14 +156,14 @@ class IRTranslationTest extends FunSpec with MustMatchers {
     IRTranslator.translate(resolved)
   }
 
-  def compile(fn: IRFunc): CompiledFn = {
+  def compile(fn: IRFunc, mod: Module): CompiledFn = {
     val compiler = new LuaCompiler()
-    val pfn = compiler.processFunction(fn)
+    val pfn = compiler.processFunction(fn, mod)
     CompiledFn(pfn.fn, pfn.types)
   }
 
   def compile(mod: Module): CompiledModule = {
-    CompiledModule(for (fn <- mod.fns().asScala) yield compile(fn))
+    CompiledModule(for (fn <- mod.fns().asScala) yield compile(fn, mod))
   }
 
   for (b <- bundles) {
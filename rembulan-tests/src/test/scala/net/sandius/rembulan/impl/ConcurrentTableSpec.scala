@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl
+
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+
+import net.sandius.rembulan.{ByteString, Table}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class ConcurrentTableSpec extends FunSpec with MustMatchers {
+
+  private def keyCount(t: Table): Int = {
+    var n = 0
+    var k = t.initialKey()
+    while (k != null) {
+      n += 1
+      k = t.successorKeyOf(k)
+    }
+    n
+  }
+
+  private def inParallel(threads: Int)(body: Int => Unit): Unit = {
+    val pool = Executors.newFixedThreadPool(threads)
+    val start = new CountDownLatch(1)
+    val futures = for (i <- 0 until threads) yield pool.submit(new Runnable {
+      override def run(): Unit = {
+        start.await()
+        body(i)
+      }
+    })
+    start.countDown()
+    futures foreach { _.get(30, TimeUnit.SECONDS) }
+    pool.shutdown()
+  }
+
+  describe ("a concurrent table") {
+
+    it ("behaves like a table when used from a single thread") {
+      val t: Table = new ConcurrentTable()
+      t.rawset(1L, "a")
+      t.rawset(2.0, "b")
+      t.rawset(ByteString.of("x"), java.lang.Boolean.TRUE)
+      t.rawget(1L) mustBe ByteString.of("a")
+      t.rawget(2L) mustBe ByteString.of("b")
+      t.rawget("x") mustBe true
+      t.rawlen() mustBe 2
+      keyCount(t) mustBe 3
+
+      t.rawset(1L, null)
+      t.rawget(1L) mustBe null
+      keyCount(t) mustBe 2
+    }
+
+    it ("allows keys to be cleared during traversal") {
+      val t: Table = new ConcurrentTable()
+      for (i <- 1 to 100) t.rawset(ByteString.of("k" + i), java.lang.Long.valueOf(i))
+      var k = t.initialKey()
+      var n = 0
+      while (k != null) {
+        t.rawset(k, null)
+        n += 1
+        k = t.successorKeyOf(k)
+      }
+      n mustBe 100
+      t.initialKey() mustBe null
+    }
+
+    it ("compacts removed keys") {
+      val t: Table = new ConcurrentTable()
+      for (round <- 1 to 10; i <- 1 to 100) {
+        t.rawset(java.lang.Long.valueOf(round * 1000 + i), "v")
+        t.rawset(java.lang.Long.valueOf(round * 1000 + i), null)
+      }
+      t.rawset(ByteString.of("last"), "v")
+      keyCount(t) mustBe 1
+    }
+
+    it ("does not lose concurrently added keys") {
+      val t: Table = new ConcurrentTable()
+      val threads = 4
+      val perThread = 5000
+      inParallel(threads) { i =>
+        for (j <- 0 until perThread) {
+          t.rawset(java.lang.Long.valueOf(i * perThread + j + 1), java.lang.Long.valueOf(j))
+        }
+      }
+      keyCount(t) mustBe threads * perThread
+      t.rawlen() mustBe threads * perThread
+    }
+
+    it ("can be traversed while being modified") {
+      val t: Table = new ConcurrentTable()
+      for (i <- 1 to 1000) t.rawset(java.lang.Long.valueOf(i), java.lang.Long.valueOf(i))
+      inParallel(4) { i =>
+        if (i == 0) {
+          for (j <- 1 to 1000) {
+            t.rawset(java.lang.Long.valueOf(j), if (j % 2 == 0) null else java.lang.Long.valueOf(-j))
+          }
+        }
+        else {
+          for (_ <- 1 to 20) keyCount(t) must be <= 1000
+        }
+      }
+      keyCount(t) mustBe 500
+    }
+
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl
+
+import net.sandius.rembulan.{ByteString, Table}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.collection.mutable.ArrayBuffer
+
+@RunWith(classOf[JUnitRunner])
+class CopyOnWriteTableSpec extends FunSpec with MustMatchers {
+
+  private def s(str: String) = ByteString.of(str)
+
+  private def keysOf(t: Table): Seq[Any] = {
+    val result = ArrayBuffer.empty[Any]
+    var k = t.initialKey()
+    while (k != null) {
+      result += k
+      k = t.successorKeyOf(k)
+    }
+    result
+  }
+
+  private def config(): Table = {
+    val nested = new DefaultTable()
+    nested.rawset(s("host"), s("localhost"))
+    nested.rawset(s("port"), java.lang.Long.valueOf(8080))
+
+    val t = new DefaultTable()
+    t.rawset(1L, s("one"))
+    t.rawset(2L, s("two"))
+    t.rawset(s("db"), nested)
+    t.rawset(s("backup"), nested)
+    t.rawset(s("name"), s("config"))
+    t
+  }
+
+  describe ("ImmutableTable.freeze") {
+
+    it ("copies the contents of the table") {
+      val f: Table = ImmutableTable.freeze(config())
+      f.rawget(1L) mustBe s("one")
+      f.rawget(s("name")) mustBe s("config")
+      f.rawlen() mustBe 2
+      keysOf(f).size mustBe 5
+    }
+
+    it ("replaces nested tables by immutable snapshots, preserving sharing") {
+      val f: Table = ImmutableTable.freeze(config())
+      val db = f.rawget(s("db"))
+      db mustBe an [ImmutableTable]
+      db.asInstanceOf[Table].rawget(s("port")) mustBe 8080L
+      (f.rawget(s("backup")) eq db) mustBe true
+    }
+
+    it ("is not affected by subsequent modifications of the original") {
+      val t = config()
+      val f: Table = ImmutableTable.freeze(t)
+      t.rawset(s("name"), null)
+      t.rawget(s("db")).asInstanceOf[Table].rawset(s("port"), java.lang.Long.valueOf(1))
+      f.rawget(s("name")) mustBe s("config")
+      f.rawget(s("db")).asInstanceOf[Table].rawget(s("port")) mustBe 8080L
+    }
+
+    it ("returns snapshots as they are") {
+      val f: Table = ImmutableTable.freeze(config())
+      (ImmutableTable.freeze(f) eq f) mustBe true
+    }
+
+    it ("throws an IllegalArgumentException for cyclic tables") {
+      val t = new DefaultTable()
+      t.rawset(s("self"), t)
+      intercept[IllegalArgumentException] {
+        ImmutableTable.freeze(t)
+      }
+    }
+
+  }
+
+  describe ("CopyOnWriteTable") {
+
+    it ("reads through to the base table") {
+      val c = new CopyOnWriteTable(ImmutableTable.freeze(config()))
+      c.rawget(1L) mustBe s("one")
+      c.rawget(s("name")) mustBe s("config")
+      c.rawlen() mustBe 2
+    }
+
+    it ("records modifications without altering the base table") {
+      val f: Table = ImmutableTable.freeze(config())
+      val c = new CopyOnWriteTable(f)
+      c.rawset(s("name"), s("local"))
+      c.rawset(1L, null)
+      c.rawset(s("extra"), java.lang.Boolean.TRUE)
+
+      c.rawget(s("name")) mustBe s("local")
+      c.rawget(1L) mustBe null
+      c.rawget(s("extra")) mustBe true
+      f.rawget(s("name")) mustBe s("config")
+      f.rawget(1L) mustBe s("one")
+      f.rawget(s("extra")) mustBe null
+    }
+
+    it ("allows nested tables to be modified") {
+      val f: Table = ImmutableTable.freeze(config())
+      val c = new CopyOnWriteTable(f)
+      val db = c.rawget(s("db")).asInstanceOf[Table]
+      db mustBe a [CopyOnWriteTable]
+      db.rawset(s("port"), java.lang.Long.valueOf(9090))
+      (c.rawget(s("db")) eq db) mustBe true
+      c.rawget(s("db")).asInstanceOf[Table].rawget(s("port")) mustBe 9090L
+      f.rawget(s("db")).asInstanceOf[Table].rawget(s("port")) mustBe 8080L
+    }
+
+    it ("keeps modified nested tables in weak-valued mode") {
+      val c = new CopyOnWriteTable(ImmutableTable.freeze(config()))
+      val mt = new DefaultTable()
+      mt.rawset(s("__mode"), s("v"))
+      c.setMetatable(mt)
+
+      def modify(): Unit = {
+        c.rawget(s("db")).asInstanceOf[Table].rawset(s("port"), java.lang.Long.valueOf(9090))
+      }
+
+      modify()
+      for (_ <- 1 to 3) System.gc()
+      c.rawget(s("db")).asInstanceOf[Table].rawget(s("port")) mustBe 9090L
+    }
+
+    it ("visits every live key exactly once") {
+      val c = new CopyOnWriteTable(ImmutableTable.freeze(config()))
+      c.rawset(s("name"), s("local"))
+      c.rawset(2L, null)
+      c.rawset(s("extra"), java.lang.Boolean.TRUE)
+      keysOf(c).toSet mustBe Set(1L, s("db"), s("backup"), s("name"), s("extra"))
+      keysOf(c).size mustBe 5
+    }
+
+    it ("allows fields to be modified and cleared during traversal") {
+      val c = new CopyOnWriteTable(ImmutableTable.freeze(config()))
+      c.rawset(s("extra"), java.lang.Boolean.TRUE)
+      var n = 0
+      var k = c.initialKey()
+      while (k != null) {
+        n += 1
+        if (n % 2 == 0) c.rawset(k, null) else c.rawset(k, s("x"))
+        k = c.successorKeyOf(k)
+      }
+      n mustBe 6
+      keysOf(c).size mustBe 3
+    }
+
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl
+
+import net.sandius.rembulan.compiler.CompilerChunkLoader
+import net.sandius.rembulan.env.RuntimeEnvironments
+import net.sandius.rembulan.exec.{CallPausedException, DirectCallExecutor}
+import net.sandius.rembulan.lib.StandardLibrary
+import net.sandius.rembulan.{ByteString, MemoryAccountant, MemoryLimitExceededException, StateContext, Table, Variable}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class MemoryAccountantsSpec extends FunSpec with MustMatchers {
+
+  class RecordingAccountant extends MemoryAccountant {
+    var total = 0L
+    override def allocate(bytes: Long): Unit = total += bytes
+    override def shouldPause(): Boolean = false
+  }
+
+  private def run(state: StateContext, program: String): Array[AnyRef] = {
+    val env = StandardLibrary.in(RuntimeEnvironments.system()).installInto(state)
+    val main = CompilerChunkLoader.of("memory_accountants_spec").loadTextChunk(new Variable(env), "test", program)
+    DirectCallExecutor.newExecutor().call(state, main)
+  }
+
+  describe ("a limiting memory accountant") {
+
+    it ("rejects allocations exceeding the limit without counting them") {
+      val ma = MemoryAccountants.newLimit(100)
+      ma.allocate(60)
+      a [MemoryLimitExceededException] must be thrownBy { ma.allocate(50) }
+      ma.allocate(40)
+      a [MemoryLimitExceededException] must be thrownBy { ma.allocate(1) }
+      ma.shouldPause() mustBe false
+    }
+
+    it ("raises an error catchable by pcall") {
+      val state = StateContexts.newDefaultInstance(MemoryAccountants.newLimit(1000000))
+      val result = run(state, "return pcall(string.rep, 'x', 10000000)")
+      result(0) mustBe java.lang.Boolean.FALSE
+      result(1).toString mustBe "not enough memory"
+    }
+
+    it ("stops string.gsub and string.format while building their results") {
+      val state = StateContexts.newDefaultInstance(MemoryAccountants.newLimit(1000000))
+      val result = run(state,
+        """local big = string.rep('y', 10000)
+          |local args = {}
+          |for i = 1, 200 do args[i] = big end
+          |local ok1, err1 = pcall(string.gsub, string.rep('x', 200), 'x', big)
+          |local ok2, err2 = pcall(string.format, string.rep('%s', 200), table.unpack(args))
+          |return ok1, err1, ok2, err2
+        """.stripMargin)
+      result(0) mustBe java.lang.Boolean.FALSE
+      result(1).toString mustBe "not enough memory"
+      result(2) mustBe java.lang.Boolean.FALSE
+      result(3).toString mustBe "not enough memory"
+    }
+
+    it ("limits the growth of tables") {
+      val state = StateContexts.newDefaultInstance(MemoryAccountants.newLimit(1000000))
+      val result = run(state, "local t = {}; local ok = pcall(function() for i = 1, 1000000 do t[i] = i end end); return ok, #t")
+      result(0) mustBe java.lang.Boolean.FALSE
+      result(1).asInstanceOf[java.lang.Long].longValue must be < 1000000L
+    }
+
+  }
+
+  describe ("a pausing memory accountant") {
+
+    it ("requests a pause once per quantum") {
+      val ma = MemoryAccountants.newPausingAccountant(100)
+      ma.shouldPause() mustBe false
+      ma.allocate(150)
+      ma.shouldPause() mustBe true
+      ma.shouldPause() mustBe false
+      ma.allocate(100)
+      ma.shouldPause() mustBe true
+    }
+
+    it ("pauses the call") {
+      val state = StateContexts.newDefaultInstance(MemoryAccountants.newPausingAccountant(100000))
+      val ex = the [CallPausedException] thrownBy {
+        run(state, "local s = ''; for i = 1, 10000 do s = s .. 'x' end; return #s")
+      }
+      var continuation = ex.getContinuation
+      var result: Array[AnyRef] = null
+      while (result == null) {
+        try {
+          result = DirectCallExecutor.newExecutor().resume(continuation)
+        }
+        catch {
+          case ex: CallPausedException => continuation = ex.getContinuation
+        }
+      }
+      result(0) mustBe java.lang.Long.valueOf(10000L)
+    }
+
+  }
+
+  describe ("a default table with a memory accountant") {
+
+    it ("reports the growth of its storage") {
+      val ma = new RecordingAccountant
+      val t: Table = new DefaultTable(0, 0, ma)
+      val initial = ma.total
+      initial must be > 0L
+
+      for (i <- 1 to 100) {
+        t.rawset(i.toLong, java.lang.Long.valueOf(i))
+      }
+      val afterArray = ma.total
+      afterArray must be > initial
+
+      // no growth, nothing to report
+      t.rawset(1L, java.lang.Boolean.TRUE)
+      ma.total mustBe afterArray
+
+      t.rawset(java.lang.Double.valueOf(0.5), java.lang.Boolean.TRUE)
+      ma.total must be > afterArray
+    }
+
+    it ("does not report its entries again when its mode changes") {
+      val ma = new RecordingAccountant
+      val t: Table = new DefaultTable(0, 0, ma)
+      for (i <- 1 to 100) {
+        t.rawset(ByteString.of("k" + i), java.lang.Long.valueOf(i))
+      }
+      val before = ma.total
+
+      val mt = new DefaultTable()
+      mt.rawset(ByteString.of("__mode"), ByteString.of("k"))
+      t.setMetatable(mt)
+
+      ma.total mustBe before
+      t.rawget(ByteString.of("k1")) mustBe 1L
+    }
+
+    it ("does not report to accountants of other tables") {
+      val ma = new RecordingAccountant
+      val fact = DefaultTable.factory(ma)
+      fact.newTable()
+      val afterOne = ma.total
+      DefaultTable.factory().newTable()
+      ma.total mustBe afterOne
+    }
+
+  }
+
+}
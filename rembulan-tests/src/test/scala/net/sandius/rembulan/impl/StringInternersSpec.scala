@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl
+
+import net.sandius.rembulan.compiler.CompilerChunkLoader
+import net.sandius.rembulan.env.RuntimeEnvironments
+import net.sandius.rembulan.exec.DirectCallExecutor
+import net.sandius.rembulan.lib.StandardLibrary
+import net.sandius.rembulan.{ByteString, StateContext, Table, Variable}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class StringInternersSpec extends FunSpec with MustMatchers {
+
+  // strings returned to Java are converted to java.lang.String, so return them in a table
+  private def stringsIn(state: StateContext): Seq[AnyRef] = {
+    val env = StandardLibrary.in(RuntimeEnvironments.system()).installInto(state)
+    val program = "return {string.sub('xhello', 2), string.sub('hello!', 1, 5), string.match('say hello', '%a+', 5)}"
+    val main = CompilerChunkLoader.of("string_interners_spec").loadTextChunk(new Variable(env), "test", program)
+    val t = DirectCallExecutor.newExecutor().call(state, main)(0).asInstanceOf[Table]
+    for (i <- 1 to 3) yield t.rawget(i)
+  }
+
+  describe ("a caching string interner") {
+
+    it ("returns the same instance for equal strings") {
+      val si = StringInterners.newInstance(16, 40)
+      val a = ByteString.copyOf("hello".getBytes)
+      val b = ByteString.copyOf("hello".getBytes)
+      a must not be theSameInstanceAs (b)
+      si.intern(a) must be theSameInstanceAs (a)
+      si.intern(b) must be theSameInstanceAs (a)
+    }
+
+    it ("does not intern long strings") {
+      val si = StringInterners.newInstance(16, 4)
+      val a = ByteString.of("hello")
+      val b = ByteString.of("hello")
+      si.intern(a) must be theSameInstanceAs (a)
+      si.intern(b) must be theSameInstanceAs (b)
+    }
+
+    it ("is used by the string library") {
+      val state = StateContexts.newDefaultInstance(StringInterners.newDefaultInstance())
+      val result = stringsIn(state)
+      result(0) mustBe ByteString.of("hello")
+      result(1) must be theSameInstanceAs (result(0))
+      result(2) must be theSameInstanceAs (result(0))
+    }
+
+  }
+
+  describe ("the no-op string interner") {
+
+    it ("returns its argument") {
+      val a = ByteString.of("hello")
+      StringInterners.none().intern(a) must be theSameInstanceAs (a)
+    }
+
+    it ("is used by default") {
+      val state = StateContexts.newDefaultInstance()
+      StringInterners.forContext(state) must be theSameInstanceAs (StringInterners.none())
+      val result = stringsIn(state)
+      result(0) mustBe ByteString.of("hello")
+      result(1) mustBe ByteString.of("hello")
+      result(1) must not be theSameInstanceAs (result(0))
+    }
+
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class StringPatternCacheSpec extends FunSpec with MustMatchers {
+
+  describe ("a string pattern cache") {
+
+    it ("parses each pattern once") {
+      val cache = new StringPatternCache(4)
+      val p = cache.get("%a+")
+      cache.get("%a+") must be theSameInstanceAs (p)
+      cache.hitCount() mustBe 1L
+      cache.missCount() mustBe 1L
+    }
+
+    it ("distinguishes patterns with an ignored caret") {
+      val cache = new StringPatternCache(4)
+      cache.get("^a", true) must not be theSameInstanceAs (cache.get("^a"))
+      cache.missCount() mustBe 2L
+      cache.size() mustBe 2
+    }
+
+    it ("evicts the least recently used pattern") {
+      val cache = new StringPatternCache(2)
+      val a = cache.get("a")
+      cache.get("b")
+      cache.get("a")
+      cache.get("c")  // evicts "b"
+      cache.size() mustBe 2
+      cache.get("a") must be theSameInstanceAs (a)
+      cache.get("b")
+      cache.hitCount() mustBe 2L
+      cache.missCount() mustBe 4L
+    }
+
+    it ("can be used by multiple threads") {
+      val cache = new StringPatternCache(8)
+      val threads = for (t <- 0 until 4) yield new Thread(new Runnable {
+        override def run(): Unit = {
+          for (i <- 0 until 1000) {
+            cache.get("%d" + ((i + t) % 16))
+          }
+        }
+      })
+      threads foreach { _.start() }
+      threads foreach { _.join() }
+      cache.size() must be <= 8
+      cache.hitCount() + cache.missCount() mustBe 4000L
+      cache.get("%d3").`match`("x123", 0).fullMatch() mustBe "23"
+    }
+
+    it ("does not cache malformed patterns") {
+      val cache = new StringPatternCache(2)
+      an [IllegalArgumentException] must be thrownBy { cache.get("%") }
+      cache.size() mustBe 0
+    }
+
+    it ("can be cleared") {
+      val cache = new StringPatternCache(2)
+      cache.get("a")
+      cache.get("a")
+      cache.clear()
+      cache.size() mustBe 0
+      cache.hitCount() mustBe 0L
+      cache.missCount() mustBe 0L
+    }
+
+  }
+
+}
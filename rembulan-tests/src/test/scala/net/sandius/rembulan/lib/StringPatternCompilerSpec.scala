@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class StringPatternCompilerSpec extends FunSpec with MustMatchers {
+
+  val patterns = Seq(
+    "", "a", "^a", "a$", "^$", ".", "%a+", "%l*x", "%u-", "%d?%d", "%x+", "%w+", "%s*", "%c", "%p",
+    "%g+", "%A+", "%S+", "%W", "[abc]+", "[^abc]+", "[a-z%d]+", "[%a_][%w_]*", "[%]]", "[^%s]-%s",
+    "(%a+)=(%d+)", "()a()", "(h)(e)%2", "(%a)%1", "%b()", "%b{}x", "%f[%a]%a+", "%f[%A]",
+    "^(%w+)%s*(.-)%s*$", "x*y-z?", "a.-b", "(a*(.)%w(%s*))", "he", "^he", "th%a+", "ll(o)"
+  )
+
+  val subjects = Seq(
+    "", "a", "ab", "hello world", "HeLLo", "key=123, x=4", "  padded  ", "(a(b)c)d{e}x",
+    "aab", "heehee", "THE (quick) fox", "x1y2z3", "\t\n", "a.b,c;d:e?f!g", "été", "xxyyz"
+  )
+
+  describe ("a compiled string pattern") {
+
+    it ("matches the same strings as the interpreter") {
+      for (p <- patterns) {
+        val pat = StringPattern.fromString(p)
+        val cm = StringPatternCompiler.compile(pat)
+        cm must not be (null)
+
+        for (s <- subjects; from <- 0 to s.length + 1) {
+          val expected = pat.interpret(s, from)
+          val actual = pat.matchCompiled(cm, s, from)
+          withClue ("pattern \"" + p + "\" on \"" + s + "\" from " + from + ": ") {
+            if (expected == null) {
+              actual mustBe null
+            }
+            else {
+              actual must not be (null)
+              actual.beginIndex mustBe expected.beginIndex
+              actual.endIndex mustBe expected.endIndex
+              actual.captures mustBe expected.captures
+            }
+          }
+        }
+      }
+    }
+
+    it ("is used after the compile threshold has been reached") {
+      val pat = StringPattern.fromString("(%a+)")
+      for (i <- 0 to StringPattern.COMPILE_THRESHOLD + 1) {
+        pat.`match`("  abc", 0).captures.get(0) mustBe "abc"
+      }
+    }
+
+  }
+
+}
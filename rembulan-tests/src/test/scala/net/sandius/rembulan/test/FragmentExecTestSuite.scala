@@ -126,11 +126,19 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
       case true => "t"
       case false => "f"
     }
+    val tfb = settings.typeFeedback() match {
+      case true => "t"
+      case false => "f"
+    }
+    val inl = settings.inlining() match {
+      case true => "t"
+      case false => "f"
+    }
     val nlimit = settings.nodeSizeLimit() match {
       case 0 => "0"
       case n => n.toString
     }
-    cpu + cfold + ccache + "_" + nlimit
+    cpu + cfold + ccache + tfb + inl + "_" + nlimit
   }
 
   case class RembulanChkLoader(settings: CompilerSettings) extends ChkLoader {
@@ -150,11 +158,15 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
       cpu <- CPUAccountingMode.values();
       cfold <- bools;
       ccache <- bools;
+      tfb <- bools;
+      inl <- bools;
       nlimit <- limits
     ) yield CompilerSettings.defaultSettings()
         .withCPUAccountingMode(cpu)
         .withConstFolding(cfold)
         .withConstCaching(ccache)
+        .withTypeFeedback(tfb)
+        .withInlining(inl)
         .withNodeSizeLimit(nlimit)
 
     case object DefaultOnly extends CompilerConfigs(Seq(CompilerSettings.defaultSettings()))
@@ -145,6 +145,16 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   Or3 in EmptyContext succeedsWith (true)
   Or3 in BasicContext succeedsWith (true)
 
+  val AndOr = fragment ("AndOr") {
+    """local x = 1
+      |local a = (x == 0) and "a" or "b"
+      |local b = (x == 1) and "a" or "b"
+      |local c = (x == 0) and 2.0 or 2
+      |return a, b, c
+    """
+  }
+  AndOr in EmptyContext succeedsWith ("b", "a", 2)
+
   val IfOr1 = fragment ("IfOr1") {
     """local x
       |if assert then x = assert else x = function() return end end
@@ -1609,4 +1619,443 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
     }
   }
 
+  about ("string concatenation") {
+    in (BasicContext) {
+
+      program (
+        """local a, b = "", ""
+          |for i = 1, 1000 do a = a .. "xy"; b = "xy" .. b end
+          |local t = {[a] = true}
+          |return #a, a == b, t[b], a < b .. "z", b .. "z" > a
+        """) succeedsWith (2000, true, true, true, true)
+
+      program (
+        """local s = ""
+          |for i = 1, 20000 do s = s .. i % 10 end
+          |local u = ""
+          |for i = 1, 2000 do u = u .. "1234567890" end
+          |return #s, s == u
+        """) succeedsWith (20000, true)
+
+    }
+  }
+
+  about ("table storage") {
+    in (BasicContext) {
+
+      program ("""local t = {}; for i = 1, 100 do t[i] = i end; return #t, t[1], t[100], t[101]""") succeedsWith (100, 1, 100, null)
+      program ("""local t = {}; for i = 100, 1, -1 do t[i] = i end; return #t, t[1], t[50], t[100]""") succeedsWith (100, 1, 50, 100)
+      program ("""local t = {1, 2, 3}; t[2.0] = "x"; return t[2], t[2.0], rawget(t, 2)""") succeedsWith ("x", "x", "x")
+      program ("""local t = {1, 2, 3}; t[0] = 0; t[-1] = -1; return t[0], t[-1], #t""") succeedsWith (0, -1, 3)
+
+      program (
+        """local t = {10, 20, 30, x = "y"}
+          |local n, s = 0, 0
+          |for k, v in pairs(t) do
+          |  n = n + 1
+          |  if type(v) == "number" then s = s + v end
+          |end
+          |return n, s
+        """) succeedsWith (4, 60)
+
+      program (
+        """local t = {}
+          |for i = 1, 10 do t[i] = i end
+          |for k in pairs(t) do t[k] = nil end
+          |return next(t)
+        """) succeedsWith (null)
+
+      program (
+        """local t = {}
+          |for i = 1, 10 do t["k" .. i] = i end
+          |local n, s = 0, 0
+          |for k, v in pairs(t) do
+          |  n = n + 1; s = s + v
+          |  t[k] = nil
+          |end
+          |return n, s, next(t)
+        """) succeedsWith (10, 55, null)
+
+      program (
+        """local t = {a = 1, b = 2, c = 3, d = 4}
+          |local n = 0
+          |for k, v in pairs(t) do
+          |  n = n + 1
+          |  t[k] = v * 10
+          |end
+          |return n, t.a, t.b, t.c, t.d
+        """) succeedsWith (4, 10, 20, 30, 40)
+
+      program (
+        """local t = {x = 1, y = 2}
+          |local k = next(t)
+          |t[k] = nil
+          |local k2 = next(t, k)
+          |return k2 ~= k, t[k2] ~= nil, next(t, k2)
+        """) succeedsWith (true, true, null)
+
+      program (
+        """local t = {}
+          |for i = 1, 10 do t[i + 0.5] = i end  -- keys in the hash part
+          |local n, empty = 0, false
+          |for k in pairs(t) do
+          |  n = n + 1
+          |  t[k] = nil
+          |  if next(t) == nil then empty = true end
+          |end
+          |return n, empty
+        """) succeedsWith (10, true)
+
+      program (
+        """local t = {}
+          |for i = 1, 10 do t[i + 0.5] = i end  -- keys in the hash part
+          |local n, m = 0, 0
+          |for k in pairs(t) do
+          |  n = n + 1
+          |  t[k] = nil
+          |  for _ in pairs(t) do m = m + 1 end
+          |end
+          |return n, m, next(t)
+        """) succeedsWith (10, 45, null)
+
+      program (
+        """local t = setmetatable({}, {__mode = "k"})
+          |local ks = {}
+          |for i = 1, 10 do ks[i] = {}; t[ks[i]] = i end
+          |local n, s = 0, 0
+          |for k, v in pairs(t) do
+          |  n = n + 1; s = s + v
+          |  t[k] = nil
+          |  next(t)
+          |end
+          |return n, s, next(t)
+        """) succeedsWith (10, 55, null)
+
+      program ("""local t = {x = 1}; return (pcall(next, t, "y"))""") succeedsWith (false)
+
+      program (
+        """local function point(x, y) return {x = x, y = y} end
+          |local s = 0
+          |for i = 1, 10 do
+          |  local p = point(i, 2 * i)
+          |  p.x = p.x + 1
+          |  s = s + p.x + p.y
+          |end
+          |local q = {y = 1, x = 2}
+          |return s, q.x, q.y, q.z
+        """) succeedsWith (175, 2, 1, null)
+
+      program (
+        """local t = {a = 1, b = 2, c = 3}
+          |t.b = nil
+          |local n = 0
+          |for k, v in pairs(t) do n = n + v end
+          |local b1 = t.b
+          |t.b = 20
+          |return n, b1, t.b, t.a + t.c
+        """) succeedsWith (4, null, 20, 4)
+
+      program (
+        """local t = {}
+          |for i = 1, 100 do t["k" .. i] = i end
+          |local n, s = 0, 0
+          |for k, v in pairs(t) do n = n + 1; s = s + v end
+          |t.k50 = nil
+          |return n, s, t.k1, t.k50, t.k100
+        """) succeedsWith (100, 5050, 1, null, 100)
+
+      program (
+        """local function get(o) return o.name end
+          |local a = {name = "a"}
+          |local b = {id = 1, name = "b"}
+          |local c = setmetatable({}, {__index = {name = "c"}})
+          |local d = {}
+          |return get(a), get(b), get(c), get(d), get(a)
+        """) succeedsWith ("a", "b", "c", null, "a")
+
+      program (
+        """local log = {}
+          |local function set(o, v) o.name = v end
+          |local a = {name = 1}
+          |local b = setmetatable({}, {__newindex = function(t, k, v) log[#log + 1] = v end})
+          |set(a, 2); set(b, 3); set(a, nil); set(a, 4)
+          |return a.name, rawget(b, "name"), log[1], #log
+        """) succeedsWith (4, null, 3, 1)
+
+      program (
+        """local t = {}
+          |for i = 1, 10 do t[#t + 1] = i end
+          |local a = #t
+          |for i = 1, 4 do t[#t] = nil end
+          |local b = #t
+          |t[#t + 1] = "x"
+          |return a, b, #t, t[7], t[8]
+        """) succeedsWith (10, 6, 7, "x", null)
+
+      program (
+        """local t = {}
+          |t[1] = 1; t[3] = 3
+          |local a = #t
+          |t[2] = 2
+          |local b = #t
+          |t[3] = nil; t[2] = nil
+          |return a, b, #t
+        """) succeedsWith (1, 3, 1)
+
+      program (
+        """local t = {}
+          |for i = 2, 5 do t[i] = i end
+          |local a = #t
+          |t[1] = 1
+          |return a, #t
+        """) succeedsWith (0, 5)
+
+    }
+  }
+
+  about ("statically typed arithmetic") {
+    in (EmptyContext) {
+
+      program (
+        """local s, x = 0, 1.5
+          |for i = 1, 10 do
+          |  local a = i * 2
+          |  s = s + a * 3 - 1
+          |  x = x * 0.5 + 1.0
+          |end
+          |return s, x
+        """) succeedsWith (320, 1.99951171875)
+
+      program (
+        """local a, b = 7, -2
+          |return a // b, a % b, a / b, a ^ 2, -a, ~a, a & b, a | b, a ~ b, a << 2, a >> 1
+        """) succeedsWith (-4, -1, -3.5, 49.0, -7, -8, 6, -1, -7, 28, 3)
+
+      program (
+        """local a, b = 7.5, 2
+          |return a // b, a % b, a + b, a - b, a * b, -a
+        """) succeedsWith (3.0, 1.5, 9.5, 5.5, 15.0, -7.5)
+
+      program (
+        """local i, f, nan = 1, 1.0, 0.0 / 0.0
+          |return i == f, i ~= f, i < f, i <= f, f < 2, 2 <= f, nan == nan, nan ~= nan, nan < 1
+        """) succeedsWith (true, false, false, true, true, false, false, true, false)
+
+      program (
+        """local maxint, z = 0x7fffffffffffffff, 0.0
+          |return maxint + 1, -z, 0 * -1.0
+        """) succeedsWith (Long.MinValue, -0.0, -0.0)
+
+      program (
+        """local a = 1
+          |local f = function() a = "x" end
+          |local b = a + 1
+          |f()
+          |return b, a
+        """) succeedsWith (2, "x")
+
+      program (
+        """local a, b = 1, 0
+          |return a // b
+        """) failsWith "attempt to divide by zero"
+
+      program (
+        """local a, b = 1, 0
+          |return a % b
+        """) failsWith "attempt to perform 'n%0'"
+
+    }
+  }
+
+  about ("statically typed numeric for loops") {
+    in (EmptyContext) {
+
+      program (
+        """local s = 0
+          |for i = 10, 1, -3 do s = s + i end
+          |return s
+        """) succeedsWith (22)
+
+      program (
+        """local s, t = 0, 0
+          |local up, down = 2, -2
+          |for i = 1, 10, up do s = s + i end
+          |for i = 10, 1, down do t = t + i end
+          |return s, t
+        """) succeedsWith (25, 30)
+
+      program (
+        """local s, n = 0, 0
+          |for i = 1, 3.5 do s = s + i end
+          |for i = 1, 0 / 0 do n = n + 1 end
+          |return s, n
+        """) succeedsWith (6, 0)
+
+      program (
+        """local s = 0
+          |for i = 1, 2, 0.25 do s = s + i end
+          |return s
+        """) succeedsWith (7.5)
+
+      program (
+        """local function lim() return 4 end
+          |local s = 0
+          |for i = 1, lim() do s = s + i end
+          |return s
+        """) succeedsWith (10)
+
+      program (
+        """local t = {}
+          |for i = 1, 3 do t[i] = function() return i end end
+          |return t[1](), t[3]()
+        """) succeedsWith (1, 3)
+
+    }
+  }
+
+  about ("call sites") {
+    in (BasicContext) {
+
+      program (
+        """local fs = {
+          |  function(x) return x + 1 end, function(x) return x * 2 end,
+          |  function(x) return -x end, function(x) return x - 1 end,
+          |  function(x) return x end, function(x) return x // 2 end
+          |}
+          |local s = 0
+          |for j = 1, 2 do
+          |  for i = 1, #fs do s = s + fs[i](3) end
+          |end
+          |return s
+        """) succeedsWith (26)
+
+      program (
+        """local t = setmetatable({}, {__call = function(self, x) return x + 10 end})
+          |local function f(x) return x + 1 end
+          |local s = 0
+          |for i = 1, 10 do
+          |  local g = (i % 2 == 0) and t or f
+          |  s = s + g(i)
+          |end
+          |return s
+        """) succeedsWith (110)
+
+      program (
+        """local function g(x) return x * 2 end
+          |local function f(x) return g(x + 1) end
+          |return f(1), f(2)
+        """) succeedsWith (4, 6)
+
+      program (
+        """local f = function() end
+          |for i = 1, 2 do f = f() or nil end
+        """) failsWith "attempt to call a nil value"
+
+    }
+  }
+
+  about ("operand type changes") {
+    in (BasicContext) {
+
+      program (
+        """local function f(a, b) return a + b, a < b, a ~= b end
+          |local mt = {__add = function(x, y) return "add" end, __lt = function(x, y) return true end}
+          |local t = setmetatable({}, mt)
+          |local a, b, c = f(1, 2)
+          |local d, e, g = f(1.5, 2.5)
+          |local h, i, j = f(1, 2.5)
+          |local k, l, m = f(t, t)
+          |local n, o, p = f(3, 2)
+          |return a, b, c, d, e, g, h, i, j, k, l, m, n, o, p
+        """) succeedsWith (3, true, true, 4.0, true, true, 3.5, true, true, "add", true, false, 5, false, true)
+
+      program (
+        """local function f(a, b) return a <= b, a == b end
+          |local x, y = f("a", "b")
+          |local z, w = f(2, 2)
+          |local u, v = f("b", "a")
+          |local p, q = f(2.0, 2)
+          |return x, y, z, w, u, v, p, q
+        """) succeedsWith (true, false, true, true, false, false, true, true)
+
+      program (
+        """local function f(a, b) return a % b end
+          |local s = 0
+          |for i = 1, 20 do
+          |  local b = (i % 3 == 0) and 2.0 or 2
+          |  s = s + f(i, b)
+          |end
+          |return s, f("10", 3)
+        """) succeedsWith (10.0, 1.0)
+
+    }
+  }
+
+  about ("inlined local functions") {
+    in (EmptyContext) {
+
+      program (
+        """local function sq(x) return x * x end
+          |local s = 0
+          |for i = 1, 10 do
+          |  s = s + sq(i)
+          |end
+          |return s
+        """) succeedsWith (385)
+
+      program (
+        """local n = 0
+          |local function inc(d) n = n + (d or 1); return n end
+          |inc()
+          |inc(5)
+          |local x = inc(2, 100)
+          |return n, x
+        """) succeedsWith (8, 8)
+
+      program (
+        """local k = 10
+          |local function outer(x)
+          |  local function add(y) return x + y + k end
+          |  return add(1), add(2)
+          |end
+          |local a, b = outer(5)
+          |return a, b
+        """) succeedsWith (16, 17)
+
+      program (
+        """local function g(a, b) return b, a end
+          |local function f(a, b, c) return g(a, c) end
+          |local x, y, z = f(1, 2, 3, 4)
+          |local p, q = f(1)
+          |return x, y, z, p, q
+        """) succeedsWith (3, 1, null, null, 1)
+
+      program (
+        """local function fact(n) if n <= 1 then return 1 else return n * fact(n - 1) end end
+          |local f = function(x) return x + 1 end
+          |local a = f(1)
+          |f = function(x) return x + 2 end
+          |local b = f(1)
+          |return fact(5), a, b
+        """) succeedsWith (120, 2, 3)
+
+      program (
+        """local f
+          |local x = 0
+          |for i = 1, 3 do
+          |  if i > 1 then x = x + f() end
+          |  f = function() return i end
+          |end
+          |return x
+        """) succeedsWith (3)
+
+      program (
+        """local function f(x) return x + 1 end
+          |local y = f("a")
+          |return y
+        """) failsWith "attempt to perform arithmetic on a string value"
+
+    }
+  }
+
 }
@@ -80,6 +80,20 @@ object BasicLibFragments extends FragmentBundle with FragmentExpectations with O
       program ("return tostring(-1 / 0)") succeedsWith "-inf"
       program ("return tostring(0 / 0)") succeedsWith "nan"
 
+      program ("return tostring(1.0)") succeedsWith "1.0"
+      program ("return tostring(0.1)") succeedsWith "0.1"
+      program ("return tostring(1 / 3)") succeedsWith "0.33333333333333"
+      program ("return tostring(-2 / 3)") succeedsWith "-0.66666666666667"
+      program ("return tostring(2^53)") succeedsWith "9.007199254741e+15"
+      program ("return tostring(1e13)") succeedsWith "10000000000000.0"
+      program ("return tostring(1e14)") succeedsWith "1e+14"
+      program ("return tostring(1e100)") succeedsWith "1e+100"
+      program ("return tostring(0.0001)") succeedsWith "0.0001"
+      program ("return tostring(0.00001)") succeedsWith "1e-05"
+      program ("return tostring(3.14159265358979)") succeedsWith "3.1415926535898"
+      program ("return tostring(-1e309 // 1)") succeedsWith "-inf"
+      program ("return 1.5 .. '|' .. 10 // 1.0 .. '|' .. (-9223372036854775807 - 1)") succeedsWith "1.5|10.0|-9223372036854775808"
+
       program ("return tostring(function() end)") succeedsWith (stringStartingWith("function: "))
       program ("return tostring(tostring)") succeedsWith (stringStartingWith("function: "))
       program ("return tostring({})") succeedsWith (stringStartingWith("table: "))
@@ -103,6 +117,16 @@ object BasicLibFragments extends FragmentBundle with FragmentExpectations with O
       program ("return tonumber(\"2\")") succeedsWith 2
       program ("return tonumber(\"0.4\")") succeedsWith 0.4
       program ("return tonumber(\"3.0\")") succeedsWith 3.0
+      program ("return tonumber(\" \\t-0x10\\n\")") succeedsWith -16
+      program ("return tonumber(\"0x1p4\")") succeedsWith 16.0
+      program ("return tonumber(\"0x.8\")") succeedsWith 0.5
+      program ("return tonumber(\"0xffffffffffffffffff\")") succeedsWith -1
+      program ("return tonumber(\"9223372036854775807\")") succeedsWith Long.MaxValue
+      program ("return tonumber(\"-9223372036854775808\")") succeedsWith Long.MinValue
+      program ("return tonumber(\"9223372036854775808\")") succeedsWith 9223372036854775808.0
+      program ("return tonumber(\"1e2\"), tonumber(\".5\"), tonumber(\"5.\"), tonumber(\"+1E-1\")") succeedsWith (100.0, 0.5, 5.0, 0.1)
+      program ("return tonumber(\"1e\"), tonumber(\".\"), tonumber(\"0x\"), tonumber(\"1d\"), tonumber(\"- 1\")") succeedsWith (null, null, null, null, null)
+      program ("return tonumber(\"inf\"), tonumber(\"nan\"), tonumber(\"Infinity\"), tonumber(\"1\\0\")") succeedsWith (null, null, null, null)
       program ("return tonumber({})") succeedsWith null
 
       program ("tonumber(1, \"x\")") failsWith "bad argument #2 to 'tonumber' (number expected, got string)"
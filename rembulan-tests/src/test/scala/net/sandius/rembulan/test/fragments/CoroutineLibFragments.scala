@@ -157,4 +157,17 @@ object CoroutineLibFragments extends FragmentBundle with FragmentExpectations  {
   }
   WrappedCoroutineRunning in CoroContext succeedsWith (classOf[Coroutine], false)
 
+  val YieldInConcatMetamethod = fragment ("YieldInConcatMetamethod") {
+    """local mt = {__concat = function(a, b)
+      |  return coroutine.yield(type(a) .. "," .. type(b))
+      |end}
+      |local t = setmetatable({}, mt)
+      |local f = coroutine.wrap(function() return "a" .. 1 .. t .. "b" .. "c" end)
+      |local r1 = f()
+      |local r2 = f("X")
+      |return r1, r2
+    """
+  }
+  YieldInConcatMetamethod in CoroContext succeedsWith ("table,string", "a1X")
+
 }
@@ -171,6 +171,22 @@ object MetatableFragments extends FragmentBundle with FragmentExpectations with
   
     }
   
+    val ConcatMetamethodsInLongChain = fragment("__concat metamethods in a chain of concatenations") {
+      """local log = {}
+        |local mt = {__concat = function(a, b)
+        |  local sa = type(a) == "table" and a.name or a
+        |  local sb = type(b) == "table" and b.name or b
+        |  log[#log + 1] = sa .. "+" .. sb
+        |  return sa .. sb
+        |end}
+        |local x = setmetatable({name = "x"}, mt)
+        |local y = setmetatable({name = "y"}, mt)
+        |local r = "a" .. x .. "b" .. "c" .. y .. 1
+        |return r, #log, log[1], log[2]
+      """
+    }
+    ConcatMetamethodsInLongChain in thisContext succeedsWith ("axbcy1", 2, "y+1", "x+bcy1")
+
     val binaryBooleanMts = Seq(
       "__lt" -> ("<",  Associative.Left, true),
       "__lt" -> (">",  Associative.Left, false),
@@ -285,6 +301,81 @@ object MetatableFragments extends FragmentBundle with FragmentExpectations with
 
     }
 
+    val IntegerKeyIndexMetamethod = fragment("__index is called for missing integer keys") {
+      """local t = setmetatable({10, 20}, {__index = function(t, k) return k * 100 end})
+        |local i = 3
+        |return t[1], t[2], t[3], t[i], t[i - 1]
+      """
+    }
+    IntegerKeyIndexMetamethod in thisContext succeedsWith (10, 20, 300, 300, 20)
+
+    val IntegerKeyNewIndexMetamethod = fragment("__newindex is only called for absent integer keys") {
+      """local log = {}
+        |local t = setmetatable({1}, {__newindex = function(t, k, v) log[#log + 1] = k; rawset(t, k, v) end})
+        |for i = 1, 3 do t[i] = i * 2 end
+        |t[2] = 0
+        |return t[1], t[2], t[3], #log, log[1], log[2]
+      """
+    }
+    IntegerKeyNewIndexMetamethod in thisContext succeedsWith (2, 0, 6, 2, 2, 3)
+
+    val IntegerKeyIndexChain = fragment("__index tables are consulted for missing integer keys") {
+      """local t = setmetatable({}, {__index = setmetatable({5}, {__index = {6, 7}})})
+        |local i = 2
+        |return t[1], t[i], t[3], t[4]
+      """
+    }
+    IntegerKeyIndexChain in thisContext succeedsWith (5, 7, null, null)
+
+    val WeakTableKeepsEntries = fragment("weak tables keep reachable entries") {
+      """local k1, k2, v = {}, {}, {}
+        |local t = setmetatable({}, {__mode = "kv"})
+        |t[k1] = "a"; t[k2] = v; t.x = v; t[1] = 10; t[2] = 20
+        |t[k1] = nil
+        |local n = 0
+        |for k, w in pairs(t) do n = n + 1 end
+        |return n, t[k1], t[k2] == v, t.x == v, t[1], t[2], #t
+      """
+    }
+    WeakTableKeepsEntries in thisContext succeedsWith (4, null, true, true, 10, 20, 2)
+
+    val ModeChangePreservesEntries = fragment("changing __mode preserves table contents") {
+      """local mt = {}
+        |local k = {}
+        |local t = setmetatable({1, 2, 3, [k] = "k", s = "s"}, mt)
+        |mt.__mode = "k"
+        |local a = t[1] + t[2] + t[3]
+        |t[4] = 4
+        |mt.__mode = nil
+        |return a, t[k], t.s, #t, t[4]
+      """
+    }
+    ModeChangePreservesEntries in thisContext succeedsWith (6, "k", "s", 4, 4)
+
+    val MetamethodAddedAfterMiss = fragment("metamethods added after a failed lookup take effect") {
+      """local mt = {}
+        |local t = setmetatable({}, mt)
+        |local a = t.x
+        |local ok = pcall(function() return t + 1 end)
+        |mt.__index = function(tbl, k) return k end
+        |mt.__add = function(x, y) return 42 end
+        |return a, ok, t.x, t + 1
+      """
+    }
+    MetamethodAddedAfterMiss in thisContext succeedsWith (null, false, "x", 42)
+
+    val MetamethodReaddedAfterRemoval = fragment("metamethods re-added after removal take effect") {
+      """local mt = {__index = function() return 1 end}
+        |local t = setmetatable({}, mt)
+        |local a = t.x
+        |mt.__index = nil
+        |local b = t.x
+        |rawset(mt, "__index", {x = 3})
+        |return a, b, t.x
+      """
+    }
+    MetamethodReaddedAfterRemoval in thisContext succeedsWith (1, null, 3)
+
   }
   
 }
@@ -142,6 +142,68 @@ object StringLibFragments extends FragmentBundle with FragmentExpectations with
 
     }
 
+    about ("pack") {
+      program ("""return string.pack("<i4", 0x01020304):byte(1, -1)""") succeedsWith (4, 3, 2, 1)
+      program ("""return string.pack(">i4", 0x01020304):byte(1, -1)""") succeedsWith (1, 2, 3, 4)
+      program ("""return string.pack("<i3", -2):byte(1, -1)""") succeedsWith (254, 255, 255)
+      program ("""return string.pack(">i9", -1):byte(1, -1)""") succeedsWith (255, 255, 255, 255, 255, 255, 255, 255, 255)
+      program ("""return string.pack("<I9", 1):byte(1, -1)""") succeedsWith (1, 0, 0, 0, 0, 0, 0, 0, 0)
+      program ("""return string.pack(">s1", "hi")""") succeedsWith ("\u0002hi")
+      program ("""return string.pack("z", "hi")""") succeedsWith ("hi\u0000")
+      program ("""return string.pack("c5", "hi")""") succeedsWith ("hi\u0000\u0000\u0000")
+      program ("""return #string.pack("!4 b i4", 1, 2), #string.pack("!2 b i4", 1, 2), #string.pack("b i4", 1, 2)""") succeedsWith (8, 6, 5)
+      program ("""return #string.pack("!8 b Xd", 1), #string.pack("b Xh z", 1, "a")""") succeedsWith (8, 3)
+      program ("""return string.pack("i4 x\0i8", 1)""") succeedsWith ("\u0001\u0000\u0000\u0000\u0000")
+
+      program ("""return string.pack("i0", 1)""") failsWith "integral size (0) out of limits [1,16]"
+      program ("""return string.pack("i17", 1)""") failsWith "integral size (17) out of limits [1,16]"
+      program ("""return string.pack("c", "")""") failsWith "missing size for format option 'c'"
+      program ("""return string.pack("r", 1)""") failsWith "invalid format option 'r'"
+      program ("""return string.pack("Xc1")""") failsWith "bad argument #1 to 'pack' (invalid next option for option 'X')"
+      program ("""return string.pack("!3 i3", 1)""") failsWith "bad argument #1 to 'pack' (format asks for alignment not power of 2)"
+      program ("""return string.pack("i1", 128)""") failsWith "bad argument #2 to 'pack' (integer overflow)"
+      program ("""return string.pack("b I1", 1, -1)""") failsWith "bad argument #3 to 'pack' (unsigned overflow)"
+      program ("""return string.pack("c2", "abc")""") failsWith "bad argument #2 to 'pack' (string longer than given size)"
+      program ("""return string.pack("s1", string.rep("x", 256))""") failsWith "bad argument #2 to 'pack' (string length does not fit in given size)"
+      program ("""return string.pack("z", "a\0b")""") failsWith "bad argument #2 to 'pack' (string contains zeros)"
+      program ("""return string.pack("i4")""") failsWith "bad argument #2 to 'pack' (number expected, got no value)"
+      program ("""return string.pack("i4", 1.5)""") failsWith "bad argument #2 to 'pack' (number has no integer representation)"
+      program ("""return string.pack("i4 r", {})""") failsWith "bad argument #2 to 'pack' (number expected, got table)"
+    }
+
+    about ("packsize") {
+      program ("""return string.packsize("")""") succeedsWith (0)
+      program ("""return string.packsize("b h i l j T f d n")""") succeedsWith (1 + 2 + 4 + 8 + 8 + 8 + 4 + 8 + 8)
+      program ("""return string.packsize("!8 b d"), string.packsize("!4 b d"), string.packsize("!b d")""") succeedsWith (16, 12, 16)
+      program ("""return string.packsize("c10 i16 x")""") succeedsWith (27)
+
+      program ("""return string.packsize("s")""") failsWith "bad argument #1 to 'packsize' (variable-length format)"
+      program ("""return string.packsize("z")""") failsWith "bad argument #1 to 'packsize' (variable-length format)"
+      program ("""return string.packsize("c2000000000 c2000000000")""") failsWith "bad argument #1 to 'packsize' (format result too large)"
+    }
+
+    about ("unpack") {
+      program ("""return string.unpack("<i4", "\4\3\2\1")""") succeedsWith (0x01020304, 5)
+      program ("""return string.unpack(">I2 i2", "\255\255\255\255")""") succeedsWith (65535, -1, 5)
+      program ("""return string.unpack("<i3", "\254\255\255")""") succeedsWith (-2, 4)
+      program ("""return string.unpack("<i9", string.pack("<i9", 1 << 63))""") succeedsWith (Long.MinValue, 10)
+      program ("""return string.unpack("<d >f", string.pack("<d >f", 0.5, -2.25))""") succeedsWith (0.5, -2.25, 13)
+      program ("""return string.unpack("s1 z c2", "\2hiab\0xy")""") succeedsWith ("hi", "ab", "xy", 9)
+      program ("""return string.unpack("b", "abc", 2), string.unpack("b", "abc", -1)""") succeedsWith (98, 99, 4)
+      program ("""return string.unpack("!4 b i4", string.pack("!4 b i4", 7, 9))""") succeedsWith (7, 9, 9)
+      program ("""return string.unpack("!4 b Xi4 b", "abcde", 2)""") succeedsWith (98, 101, 6)
+      program ("""return string.unpack("z", "abc", 4)""") failsWith "bad argument #2 to 'unpack' (unfinished string for format 'z')"
+
+      program ("""return string.unpack("i4", "abc")""") failsWith "bad argument #2 to 'unpack' (data string too short)"
+      program ("""return string.unpack("s1", "\5abc")""") failsWith "bad argument #2 to 'unpack' (data string too short)"
+      program ("""return string.unpack("z", "abc")""") failsWith "bad argument #2 to 'unpack' (unfinished string for format 'z')"
+      program ("""return string.unpack("b", "abc", 5)""") failsWith "bad argument #3 to 'unpack' (initial position out of string)"
+      program ("""return string.unpack("b", "abc", -4)""") failsWith "bad argument #3 to 'unpack' (initial position out of string)"
+      program ("""return string.unpack("<i9", "\0\0\0\0\0\0\0\0\1")""") failsWith "9-byte integer does not fit into Lua Integer"
+      program ("""return string.unpack("b", "")""") failsWith "bad argument #2 to 'unpack' (data string too short)"
+      program ("""return string.unpack("", "abc", 4)""") succeedsWith (4)
+    }
+
     about ("format") {
       program ("""return ("%s%d"):format("0", 10.0)""") succeedsWith ("010")
 
@@ -243,6 +305,17 @@ object StringLibFragments extends FragmentBundle with FragmentExpectations with
       program ("""return string.find("hello there", "he", -3, true)""") succeedsWith (null)
       program ("""return string.find("hello there", "he", -4, true)""") succeedsWith (8, 9)
 
+      program ("""return string.find("hello there", "the")""") succeedsWith (7, 9)
+      program ("""return string.find("hello there", "he", 2)""") succeedsWith (8, 9)
+      program ("""return string.find("hello there", "^he")""") succeedsWith (1, 2)
+      program ("""return string.find("hello there", "^he", 2)""") succeedsWith (null)
+      program ("""return string.find("hello there", "^the")""") succeedsWith (null)
+      program ("""return string.find("hello there", "th%a+")""") succeedsWith (7, 11)
+      program ("""return string.find("hello there", "th(%a)", 8)""") succeedsWith (null)
+      program ("""return string.find("hello there", "", 20)""") succeedsWith (null)
+      program ("""return string.find("hello there", "", 20, true)""") succeedsWith (null)
+      program ("""return string.find("\195\169t\195\169", "t", 1, true)""") succeedsWith (3, 3)
+
       program ("""return string.find("hello there", "()(.)%2")""") succeedsWith (3, 4, 3, "l")
 
     }